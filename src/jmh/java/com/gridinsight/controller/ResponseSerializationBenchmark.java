@@ -0,0 +1,103 @@
+package com.gridinsight.controller;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.gridinsight.domain.model.MetricValue;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.http.converter.json.Jackson2ObjectMapperBuilder;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 控制器响应JSON序列化基准测试
+ * 响应结构与单指标查询、批量查询和历史查询接口一致，ObjectMapper按Spring Boot默认方式构建
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ResponseSerializationBenchmark {
+
+    private static final int BATCH_SIZE = 100;
+    private static final int HISTORY_POINTS = 1_000;
+
+    private ObjectMapper objectMapper;
+    private Map<String, Object> queryResponse;
+    private Map<String, Object> batchResponse;
+    private Map<String, Object> historyResponse;
+
+    @Setup
+    public void setUp() {
+        objectMapper = Jackson2ObjectMapperBuilder.json().build();
+        LocalDateTime now = LocalDateTime.now().withNano(0);
+
+        // GET /api/metrics/query
+        MetricValue latest = MetricValue.good("生产指标.电量.总发电量", 12345.6, "kWh");
+        queryResponse = new HashMap<>();
+        queryResponse.put("success", true);
+        queryResponse.put("identifier", latest.getMetricIdentifier());
+        queryResponse.put("value", latest.getValue());
+        queryResponse.put("unit", latest.getUnit());
+        queryResponse.put("timestamp", latest.getTimestamp());
+        queryResponse.put("quality", latest.getQuality());
+        queryResponse.put("dataSource", latest.getDataSource());
+
+        // POST /api/metrics/batch-query
+        Map<String, Object> successResults = new LinkedHashMap<>();
+        for (int i = 0; i < BATCH_SIZE; i++) {
+            String identifier = "生产指标.电量.机组" + i;
+            successResults.put(identifier, new MetricController.LatestValueView(
+                    new MetricValue(identifier, 100.0 + i, "kWh", now)));
+        }
+        batchResponse = new HashMap<>();
+        batchResponse.put("success", true);
+        batchResponse.put("successCount", successResults.size());
+        batchResponse.put("errorCount", 0);
+        batchResponse.put("successResults", successResults);
+        batchResponse.put("errorResults", new HashMap<>());
+
+        // GET /api/timeseries/history
+        List<MetricValue> history = new ArrayList<>(HISTORY_POINTS);
+        for (int i = 0; i < HISTORY_POINTS; i++) {
+            history.add(new MetricValue("生产指标.电量.总发电量", Math.sin(i / 60.0) * 100, "kWh",
+                    now.minusSeconds(HISTORY_POINTS - i)));
+        }
+        historyResponse = new HashMap<>();
+        historyResponse.put("success", true);
+        historyResponse.put("metric", "生产指标.电量.总发电量");
+        historyResponse.put("count", history.size());
+        historyResponse.put("data", history);
+    }
+
+    @Benchmark
+    public byte[] serializeQuery() throws JsonProcessingException {
+        return objectMapper.writeValueAsBytes(queryResponse);
+    }
+
+    @Benchmark
+    public byte[] serializeBatchQuery() throws JsonProcessingException {
+        return objectMapper.writeValueAsBytes(batchResponse);
+    }
+
+    @Benchmark
+    public byte[] serializeHistory() throws JsonProcessingException {
+        return objectMapper.writeValueAsBytes(historyResponse);
+    }
+}
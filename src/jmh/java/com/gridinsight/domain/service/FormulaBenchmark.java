@@ -0,0 +1,99 @@
+package com.gridinsight.domain.service;
+
+import com.gridinsight.domain.model.MetricValue;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 公式计算与依赖解析基准测试
+ * 按公式形态分别测量FormulaEngine.calculate和FormulaParser.extractMetricIdentifiers
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class FormulaBenchmark {
+
+    private static final int INPUT_COUNT = 32;
+
+    /**
+     * 公式形态：两项加法、多层括号、函数调用、32项求和
+     */
+    @Param({"SIMPLE", "NESTED", "FUNCTIONS", "WIDE"})
+    public String shape;
+
+    private String formula;
+    private Map<String, MetricValue> values;
+
+    @Setup
+    public void setUp() {
+        values = new HashMap<>();
+        for (int i = 0; i < INPUT_COUNT; i++) {
+            values.put(input(i), MetricValue.good(input(i), 1.0 + i, "个"));
+        }
+
+        switch (shape) {
+            case "SIMPLE":
+                formula = input(0) + " + " + input(1);
+                break;
+            case "NESTED":
+                formula = "((" + input(0) + " + " + input(1) + ") * " + input(2) + " - " + input(3)
+                        + ") / " + input(4);
+                break;
+            case "FUNCTIONS":
+                formula = "sqrt(" + input(0) + " * " + input(1) + ") + max(" + input(2) + ", " + input(3)
+                        + ") + abs(" + input(4) + " - " + input(5) + ")";
+                break;
+            case "WIDE":
+                StringBuilder builder = new StringBuilder();
+                for (int i = 0; i < INPUT_COUNT; i++) {
+                    if (i > 0) {
+                        builder.append(" + ");
+                    }
+                    builder.append(input(i));
+                }
+                formula = builder.toString();
+                break;
+            default:
+                throw new IllegalArgumentException("未知的公式形态: " + shape);
+        }
+
+        MetricValue result = FormulaEngine.calculate(formula, values);
+        if (!result.isValid()) {
+            throw new IllegalStateException("基准公式计算失败: " + formula + ", " + result.getDataSource());
+        }
+    }
+
+    /**
+     * 输入指标标识符（编号定长，避免标识符互为前缀）
+     */
+    private static String input(int index) {
+        return String.format("基准.输入.指标%02d", index);
+    }
+
+    @Benchmark
+    public MetricValue calculate() {
+        return FormulaEngine.calculate(formula, values);
+    }
+
+    @Benchmark
+    public List<String> extractMetricIdentifiers() {
+        return FormulaParser.extractMetricIdentifiers(formula);
+    }
+}
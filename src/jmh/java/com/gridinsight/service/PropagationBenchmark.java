@@ -0,0 +1,214 @@
+package com.gridinsight.service;
+
+import com.gridinsight.domain.event.MetricUpdateEvent;
+import com.gridinsight.domain.model.BasicMetric;
+import com.gridinsight.domain.model.DerivedMetric;
+import com.gridinsight.domain.model.Metric;
+import com.gridinsight.domain.service.MetricCalculationService;
+import com.gridinsight.service.timeseries.TimeRanges;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.util.FileSystemUtils;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 派生指标依赖传播基准测试
+ * 在随机生成的分层DAG上，按生产装配方式连接事件驱动更新服务、编译/增量公式服务和MapTSDB存储，
+ * 测量一个基础指标更新事件经handleMetricUpdateEvent传播到所有受影响派生指标（计算、存储并发布下一级事件）的耗时；
+ * 事件在发布线程中同步处理，一次调用覆盖整条传播链
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class PropagationBenchmark {
+
+    private static final int BASIC_COUNT = 32;
+
+    @Param({"100", "1000"})
+    public int derivedCount;
+
+    /**
+     * 每个派生指标的依赖数量
+     */
+    @Param({"4"})
+    public int fanIn;
+
+    /**
+     * 派生指标的层数：每层只依赖上一层（第一层依赖基础指标）。
+     * 经多条路径受影响的派生指标每条路径各重新计算一次，不分层的随机DAG链路过深时单次传播的计算次数随深度指数增长
+     */
+    @Param({"4"})
+    public int depth;
+
+    private Path dataDir;
+    private MapTsdbTimeSeriesDataService timeSeriesDataService;
+    private EventDrivenMetricUpdateService service;
+    private int[] basicIds;
+    private String[] basicIdentifiers;
+    private long sampleTime;
+    private int nextBasic;
+    // 本次传播中发布的派生指标更新事件数（只在基准线程中访问）
+    private int recalculated;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        dataDir = Files.createTempDirectory("gridinsight-jmh");
+
+        // 注册表、时序存储和计算服务共用同一个符号表（与Spring容器中一致）
+        MetricSymbolTable symbols = new MetricSymbolTable();
+        timeSeriesDataService = new MapTsdbTimeSeriesDataService();
+        ReflectionTestUtils.setField(timeSeriesDataService, "symbols", symbols);
+        ReflectionTestUtils.setField(timeSeriesDataService, "dataPath", dataDir.toString());
+        ReflectionTestUtils.setField(timeSeriesDataService, "enableCache", true);
+        ReflectionTestUtils.setField(timeSeriesDataService, "retentionDays", 30);
+        ReflectionTestUtils.setField(timeSeriesDataService, "rollupRetentionDays", 365);
+        ReflectionTestUtils.setField(timeSeriesDataService, "commitBatchSize", 5000);
+        ReflectionTestUtils.setField(timeSeriesDataService, "commitIntervalMs", 200L);
+        ReflectionTestUtils.setField(timeSeriesDataService, "writeQueueCapacity", 100_000);
+        ReflectionTestUtils.setField(timeSeriesDataService, "latestReadThreads", 4);
+        timeSeriesDataService.init();
+
+        MetricCalculationService metricCalculationService = new MetricCalculationService();
+        ReflectionTestUtils.setField(metricCalculationService, "symbols", symbols);
+        ExternalMetricConfigService metricConfigService = new ExternalMetricConfigService();
+        ReflectionTestUtils.setField(metricConfigService, "symbols", symbols);
+        ReflectionTestUtils.setField(metricConfigService, "metricCalculationService", metricCalculationService);
+
+        DerivedMetricUpdatePolicy updatePolicy = new DerivedMetricUpdatePolicy();
+        ReflectionTestUtils.setField(updatePolicy, "metricConfigService", metricConfigService);
+
+        CompiledFormulaService compiledFormulas = new CompiledFormulaService();
+        ReflectionTestUtils.setField(compiledFormulas, "metricConfigService", metricConfigService);
+        ReflectionTestUtils.setField(compiledFormulas, "timeSeriesDataService", timeSeriesDataService);
+
+        IncrementalFormulaService incrementalFormulas = new IncrementalFormulaService();
+        ReflectionTestUtils.setField(incrementalFormulas, "compiledFormulaService", compiledFormulas);
+        ReflectionTestUtils.setField(incrementalFormulas, "metricConfigService", metricConfigService);
+        ReflectionTestUtils.setField(incrementalFormulas, "timeSeriesDataService", timeSeriesDataService);
+        ReflectionTestUtils.setField(incrementalFormulas, "updatePolicy", updatePolicy);
+
+        PropagationLatencyTracker latencyTracker = new PropagationLatencyTracker();
+        ReflectionTestUtils.setField(latencyTracker, "metricConfigService", metricConfigService);
+
+        service = new EventDrivenMetricUpdateService();
+        // 派生指标更新事件在发布线程中同步处理，继续向下一级传播
+        ApplicationEventPublisher eventPublisher = event -> {
+            if (event instanceof MetricUpdateEvent) {
+                recalculated++;
+                service.handleMetricUpdateEvent((MetricUpdateEvent) event);
+            }
+        };
+        MetricEventPublisher metricEventPublisher = new MetricEventPublisher();
+        ReflectionTestUtils.setField(metricEventPublisher, "eventPublisher", eventPublisher);
+        ReflectionTestUtils.setField(metricEventPublisher, "traceSampler", new UpdateTraceSampler());
+        ReflectionTestUtils.setField(service, "eventPublisher", eventPublisher);
+        ReflectionTestUtils.setField(service, "metricEventPublisher", metricEventPublisher);
+        ReflectionTestUtils.setField(service, "metricConfigService", metricConfigService);
+        ReflectionTestUtils.setField(service, "metricCalculationService", metricCalculationService);
+        ReflectionTestUtils.setField(service, "timeSeriesDataService", timeSeriesDataService);
+        ReflectionTestUtils.setField(service, "latencyTracker", latencyTracker);
+        ReflectionTestUtils.setField(service, "meters", GridInsightMeters.noop());
+        ReflectionTestUtils.setField(service, "updatePolicy", updatePolicy);
+        ReflectionTestUtils.setField(service, "compiledFormulas", compiledFormulas);
+        ReflectionTestUtils.setField(service, "incrementalFormulas", incrementalFormulas);
+
+        Random random = new Random(42);
+        List<Metric> previousLayer = new ArrayList<>();
+        for (int i = 0; i < BASIC_COUNT; i++) {
+            BasicMetric basic = new BasicMetric(String.format("基础%04d", i), "基准", "传播", "个", "", null);
+            metricConfigService.addBasicMetric(basic.getIdentifier(), basic);
+            previousLayer.add(basic);
+        }
+
+        // 派生指标平均分到各层，每个只依赖上一层的指标，保证无环；平均值公式为线性，按输入增量修正
+        List<Metric> layer = new ArrayList<>();
+        int layerSize = Math.max(1, derivedCount / depth);
+        for (int i = 0; i < derivedCount; i++) {
+            if (layer.size() == layerSize && i + layerSize <= derivedCount) {
+                previousLayer = layer;
+                layer = new ArrayList<>();
+            }
+            List<Metric> dependencies = new ArrayList<>();
+            StringBuilder formula = new StringBuilder();
+            for (int j = 0; j < fanIn; j++) {
+                Metric dependency = previousLayer.get(random.nextInt(previousLayer.size()));
+                if (dependencies.contains(dependency)) {
+                    continue;
+                }
+                if (formula.length() > 0) {
+                    formula.append(" + ");
+                }
+                formula.append(dependency.getIdentifier());
+                dependencies.add(dependency);
+            }
+            DerivedMetric derived = new DerivedMetric(String.format("派生%04d", i), "基准", "传播", "个", "",
+                    "(" + formula + ") / " + dependencies.size(), dependencies);
+            metricConfigService.addDerivedMetric(derived.getIdentifier(), derived);
+            layer.add(derived);
+        }
+
+        MetricRegistrySnapshot registry = metricConfigService.getRegistrySnapshot();
+        basicIds = registry.getBasicMetricIds();
+        basicIdentifiers = new String[basicIds.length];
+        for (int i = 0; i < basicIds.length; i++) {
+            basicIdentifiers[i] = registry.getSymbols().nameOf(basicIds[i]);
+        }
+
+        // 写入所有基础指标的初始值，再逐个传播一次，使每个派生指标都有计算结果
+        sampleTime = TimeRanges.nowEpochMillis();
+        for (int i = 0; i < basicIds.length; i++) {
+            timeSeriesDataService.storeSample(basicIds[i], sampleTime, 1.0 + i);
+        }
+        for (int i = 0; i < basicIds.length; i++) {
+            handle(i, 1.0 + i);
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        timeSeriesDataService.destroy();
+        FileSystemUtils.deleteRecursively(dataDir);
+    }
+
+    /**
+     * 轮流修改一个基础指标，经handleMetricUpdateEvent传播到所有受影响的派生指标
+     * @return 本次传播发布的派生指标更新事件数（经多条路径受影响的派生指标每条路径各重新计算一次）
+     */
+    @Benchmark
+    public int propagate() {
+        int index = nextBasic++ % basicIds.length;
+        double value = nextBasic;
+        timeSeriesDataService.storeSample(basicIds[index], ++sampleTime, value);
+        return handle(index, value);
+    }
+
+    private int handle(int index, double value) {
+        recalculated = 0;
+        service.handleMetricUpdateEvent(new MetricUpdateEvent(basicIds[index], basicIdentifiers[index], "BASIC",
+                value, "BENCHMARK", sampleTime, System.nanoTime(), 0));
+        return recalculated;
+    }
+}
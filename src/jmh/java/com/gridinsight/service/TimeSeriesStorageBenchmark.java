@@ -0,0 +1,124 @@
+package com.gridinsight.service;
+
+import com.gridinsight.domain.model.MetricValue;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.util.FileSystemUtils;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 时序存储基准测试
+ * 分别测量JSON文件和MapTSDB两种后端的单点写入与历史查询
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class TimeSeriesStorageBenchmark {
+
+    private static final String HISTORY_METRIC = "基准.存储.历史";
+    private static final int HISTORY_POINTS = 2_000;
+    private static final int WRITE_METRICS = 100;
+
+    @Param({"JSON", "MAPTSDB"})
+    public String backend;
+
+    private Path dataDir;
+    private TimeSeriesDataService service;
+    private LocalDateTime historyStart;
+    private LocalDateTime historyEnd;
+    private String[] writeMetrics;
+    private LocalDateTime writeTime;
+    private long writeCount;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        dataDir = Files.createTempDirectory("gridinsight-jmh");
+        service = createService(backend, dataDir.toString());
+
+        // 准备一条按秒采样的历史数据
+        historyStart = LocalDateTime.now().withNano(0).minusSeconds(HISTORY_POINTS);
+        for (int i = 0; i < HISTORY_POINTS; i++) {
+            LocalDateTime timestamp = historyStart.plusSeconds(i);
+            service.storeMetricValue(HISTORY_METRIC,
+                    new MetricValue(HISTORY_METRIC, Math.sin(i / 60.0) * 100, "个", timestamp), timestamp);
+        }
+        historyEnd = historyStart.plusSeconds(HISTORY_POINTS);
+        if (service instanceof MapTsdbTimeSeriesDataService) {
+            ((MapTsdbTimeSeriesDataService) service).commitAll();
+        }
+
+        writeMetrics = new String[WRITE_METRICS];
+        for (int i = 0; i < WRITE_METRICS; i++) {
+            writeMetrics[i] = "基准.存储.写入" + i;
+        }
+        writeTime = historyEnd;
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        if (service instanceof MapTsdbTimeSeriesDataService) {
+            ((MapTsdbTimeSeriesDataService) service).destroy();
+        } else if (service instanceof JsonTimeSeriesDataService) {
+            ((JsonTimeSeriesDataService) service).cleanup();
+        }
+        FileSystemUtils.deleteRecursively(dataDir);
+    }
+
+    /**
+     * 按后端名称创建并初始化服务（配置取application.properties中的默认值）
+     */
+    static TimeSeriesDataService createService(String backend, String dataPath) {
+        if ("JSON".equals(backend)) {
+            JsonTimeSeriesDataService json = new JsonTimeSeriesDataService();
+            ReflectionTestUtils.setField(json, "dataPath", dataPath);
+            ReflectionTestUtils.setField(json, "rollupRetentionDays", 365);
+            ReflectionTestUtils.setField(json, "latestReadThreads", 4);
+            json.init();
+            return json;
+        }
+        MapTsdbTimeSeriesDataService mapTsdb = new MapTsdbTimeSeriesDataService();
+        ReflectionTestUtils.setField(mapTsdb, "dataPath", dataPath);
+        ReflectionTestUtils.setField(mapTsdb, "enableCache", true);
+        ReflectionTestUtils.setField(mapTsdb, "retentionDays", 30);
+        ReflectionTestUtils.setField(mapTsdb, "rollupRetentionDays", 365);
+        ReflectionTestUtils.setField(mapTsdb, "commitBatchSize", 5000);
+        ReflectionTestUtils.setField(mapTsdb, "commitIntervalMs", 200L);
+        ReflectionTestUtils.setField(mapTsdb, "writeQueueCapacity", 100_000);
+        ReflectionTestUtils.setField(mapTsdb, "latestReadThreads", 4);
+        mapTsdb.init();
+        return mapTsdb;
+    }
+
+    @Benchmark
+    public void storeMetricValue() {
+        String metric = writeMetrics[(int) (writeCount % WRITE_METRICS)];
+        LocalDateTime timestamp = writeTime.plusNanos(writeCount++ * 1_000_000L);
+        service.storeMetricValue(metric, new MetricValue(metric, (double) writeCount, "个", timestamp), timestamp);
+    }
+
+    @Benchmark
+    public List<MetricValue> getMetricHistory() {
+        return service.getMetricHistory(HISTORY_METRIC, historyStart, historyEnd);
+    }
+}
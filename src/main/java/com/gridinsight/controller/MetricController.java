@@ -4,14 +4,22 @@ import com.gridinsight.domain.model.MetricValue;
 import com.gridinsight.domain.model.Metric;
 import com.gridinsight.domain.model.BasicMetric;
 import com.gridinsight.domain.model.DerivedMetric;
+import com.gridinsight.service.EventDrivenMetricUpdateService;
 import com.gridinsight.service.TimeSeriesDataService;
 import com.gridinsight.service.ExternalMetricConfigService;
+import com.gridinsight.service.MetricResponseCache;
+import com.gridinsight.service.MetricSubscriptionService;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
 
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import java.io.IOException;
+import java.time.LocalDateTime;
 import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 
@@ -29,42 +37,29 @@ public class MetricController {
     @Autowired
     private ExternalMetricConfigService metricConfigService;
 
+    @Autowired
+    private MetricSubscriptionService subscriptionService;
+
+    @Autowired
+    private MetricResponseCache responseCache;
+
+    @Autowired
+    private EventDrivenMetricUpdateService eventDrivenUpdateService;
+
     /**
      * 根据标识符查询指标值（从时序数据库获取最新值）
      * GET /api/metrics/query?identifier=xxx
+     * 响应带ETag（指标数据版本号），If-None-Match匹配时返回304
      */
     @GetMapping("/query")
-    public ResponseEntity<Map<String, Object>> queryMetric(
-            @RequestParam String identifier) {
+    public ResponseEntity<?> queryMetric(
+            @RequestParam String identifier,
+            @RequestHeader(value = "If-None-Match", required = false) String ifNoneMatch) {
         
         try {
-            // 直接从时序数据库获取最新值
-            MetricValue response = timeSeriesDataService.getLatestMetricValue(identifier);
-            
-            Map<String, Object> result = new HashMap<>();
-            
-            if (response != null && response.isValid()) {
-                result.put("success", true);
-                result.put("identifier", response.getMetricIdentifier());
-                result.put("value", response.getValue());
-                result.put("unit", response.getUnit());
-                result.put("timestamp", response.getTimestamp());
-                result.put("quality", response.getQuality());
-                result.put("dataSource", response.getDataSource());
-                
-                return ResponseEntity.ok(result);
-            } else {
-                result.put("success", false);
-                result.put("identifier", identifier);
-                result.put("error", response != null ? response.getQuality() : "指标不存在或没有数据");
-                result.put("value", null);
-                result.put("unit", null);
-                result.put("timestamp", null);
-                result.put("quality", "ERROR");
-                result.put("dataSource", null);
-                
-                return ResponseEntity.ok(result);
-            }
+            // 按需计算的派生指标在依赖变化后首次查询时先计算（同时推进ETag版本）
+            eventDrivenUpdateService.refreshIfStale(identifier);
+            return responseCache.respond("query", identifier, ifNoneMatch, () -> buildQueryResult(identifier));
             
         } catch (Exception e) {
             Map<String, Object> errorResult = new HashMap<>();
@@ -73,6 +68,36 @@ public class MetricController {
             return ResponseEntity.internalServerError().body(errorResult);
         }
     }
+
+    /**
+     * 构造单指标查询结果
+     */
+    private Map<String, Object> buildQueryResult(String identifier) {
+        // 直接从时序数据库获取最新值
+        MetricValue response = timeSeriesDataService.getLatestMetricValue(identifier);
+        
+        Map<String, Object> result = new HashMap<>();
+        
+        if (response != null && response.isValid()) {
+            result.put("success", true);
+            result.put("identifier", response.getMetricIdentifier());
+            result.put("value", response.getValue());
+            result.put("unit", response.getUnit());
+            result.put("timestamp", response.getTimestamp());
+            result.put("quality", response.getQuality());
+            result.put("dataSource", response.getDataSource());
+        } else {
+            result.put("success", false);
+            result.put("identifier", identifier);
+            result.put("error", response != null ? response.getQuality() : "指标不存在或没有数据");
+            result.put("value", null);
+            result.put("unit", null);
+            result.put("timestamp", null);
+            result.put("quality", "ERROR");
+            result.put("dataSource", null);
+        }
+        return result;
+    }
     
     /**
      * 根据UUID查询指标值（从时序数据库获取最新值）
@@ -95,6 +120,7 @@ public class MetricController {
             }
             
             // 从时序数据库获取最新值
+            eventDrivenUpdateService.refreshIfStale(metric.getIdentifier());
             MetricValue response = timeSeriesDataService.getLatestMetricValue(metric.getIdentifier());
             
             Map<String, Object> result = new HashMap<>();
@@ -169,35 +195,24 @@ public class MetricController {
     /**
      * 批量查询指标值（从时序数据库获取最新值）
      * POST /api/metrics/batch-query
+     * 一次批量读取所有指标的最新值，结果直接由扁平的LatestValueView序列化
      */
     @PostMapping("/batch-query")
     public ResponseEntity<Map<String, Object>> batchQueryMetrics(
             @RequestBody List<String> identifiers) {
         
         try {
-            Map<String, Object> successResults = new HashMap<>();
-            Map<String, Object> errorResults = new HashMap<>();
+            eventDrivenUpdateService.refreshIfStale(identifiers);
+            Map<String, MetricValue> values = timeSeriesDataService.getLatestMetricValues(identifiers);
             
+            Map<String, LatestValueView> successResults = new LinkedHashMap<>(identifiers.size() * 4 / 3 + 1);
+            Map<String, Object> errorResults = new LinkedHashMap<>();
             for (String identifier : identifiers) {
-                try {
-                    // 直接从时序数据库获取最新值
-                    MetricValue value = timeSeriesDataService.getLatestMetricValue(identifier);
-                    
-                    if (value != null && value.isValid()) {
-                        Map<String, Object> result = new HashMap<>();
-                        result.put("identifier", value.getMetricIdentifier());
-                        result.put("value", value.getValue());
-                        result.put("unit", value.getUnit());
-                        result.put("timestamp", value.getTimestamp());
-                        result.put("quality", value.getQuality());
-                        result.put("dataSource", value.getDataSource());
-                        
-                        successResults.put(identifier, result);
-                    } else {
-                        errorResults.put(identifier, value != null ? value.getQuality() : "指标不存在或没有数据");
-                    }
-                } catch (Exception e) {
-                    errorResults.put(identifier, "查询失败: " + e.getMessage());
+                MetricValue value = values.get(identifier);
+                if (value != null && value.isValid()) {
+                    successResults.put(identifier, new LatestValueView(value));
+                } else {
+                    errorResults.put(identifier, value != null ? value.getQuality() : "指标不存在或没有数据");
                 }
             }
             
@@ -218,6 +233,85 @@ public class MetricController {
         }
     }
 
+    /**
+     * 批量查询结果项，直接引用MetricValue的字段，不为每个指标构造Map
+     */
+    public static final class LatestValueView {
+        private final MetricValue value;
+
+        LatestValueView(MetricValue value) {
+            this.value = value;
+        }
+
+        public String getIdentifier() {
+            return value.getMetricIdentifier();
+        }
+
+        public Double getValue() {
+            return value.getValue();
+        }
+
+        public String getUnit() {
+            return value.getUnit();
+        }
+
+        public LocalDateTime getTimestamp() {
+            return value.getTimestamp();
+        }
+
+        public MetricValue.DataQuality getQuality() {
+            return value.getQuality();
+        }
+
+        public String getDataSource() {
+            return value.getDataSource();
+        }
+    }
+
+    /**
+     * 订阅指标实时更新（Server-Sent Events）
+     * GET /api/metrics/subscribe?identifiers=a,b&uuids=x&prefixes=生产指标.
+     * 事件名为"metrics"，数据为 [{metric, value, timestamp}, ...]，只包含值发生变化的指标
+     */
+    @GetMapping("/subscribe")
+    public ResponseEntity<?> subscribe(@RequestParam(required = false) List<String> identifiers,
+                                       @RequestParam(required = false) List<String> uuids,
+                                       @RequestParam(required = false) List<String> prefixes,
+                                       HttpServletRequest request, HttpServletResponse response) {
+        try {
+            subscriptionService.subscribe(identifiers, uuids, prefixes, request, response);
+            // 请求已转为异步，响应由推送服务写出
+            return null;
+        } catch (IllegalArgumentException e) {
+            Map<String, Object> errorResult = new HashMap<>();
+            errorResult.put("success", false);
+            errorResult.put("error", e.getMessage());
+            return ResponseEntity.badRequest().body(errorResult);
+        } catch (IllegalStateException e) {
+            Map<String, Object> errorResult = new HashMap<>();
+            errorResult.put("success", false);
+            errorResult.put("error", e.getMessage());
+            return ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE).body(errorResult);
+        } catch (IOException e) {
+            Map<String, Object> errorResult = new HashMap<>();
+            errorResult.put("success", false);
+            errorResult.put("error", "建立订阅连接失败: " + e.getMessage());
+            return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR).body(errorResult);
+        }
+    }
+
+    /**
+     * 实时推送订阅统计
+     * GET /api/metrics/subscriptions
+     */
+    @GetMapping("/subscriptions")
+    public ResponseEntity<Map<String, Object>> getSubscriptions() {
+        Map<String, Object> result = new HashMap<>();
+        result.put("success", true);
+        result.put("subscriptions", subscriptionService.getStatistics());
+        return ResponseEntity.ok(result);
+    }
+
     /**
      * 健康检查接口
      * GET /api/metrics/health
@@ -248,6 +342,7 @@ public class MetricController {
     public ResponseEntity<Map<String, Object>> clearData() {
         try {
             timeSeriesDataService.clearAllData();
+            responseCache.clear();
             
             Map<String, Object> result = new HashMap<>();
             result.put("success", true);
@@ -198,7 +198,8 @@ public class MetricManagementController {
         form.setUnit(metric.getUnit());
         form.setDescription(metric.getDescription());
         form.setFormula(metric.getFormula());
-        // updateStrategy和calculationInterval已移除，所有派生指标现在都使用事件驱动机制
+        form.setUpdateStrategy(metric.getUpdateStrategy().name());
+        form.setCalculationInterval(metric.getCalculationInterval());
         
         List<String> dependencies = metric.getDependencies().stream()
                 .map(Metric::getIdentifier)
@@ -269,7 +270,7 @@ public class MetricManagementController {
             try {
                 updateStrategy = DerivedMetricUpdateStrategy.valueOf(form.getUpdateStrategy());
             } catch (Exception e) {
-                updateStrategy = DerivedMetricUpdateStrategy.REALTIME;
+                updateStrategy = DerivedMetricUpdateStrategy.DEPENDENCY_DRIVEN;
             }
 
             // 创建派生指标
@@ -282,6 +283,8 @@ public class MetricManagementController {
                 form.getFormula(),
                 dependencies
             );
+            metric.setUpdateStrategy(updateStrategy);
+            metric.setCalculationInterval(form.getCalculationInterval());
 
             // 保存指标
             metricConfigService.addDerivedMetric(form.getIdentifier(), metric);
@@ -337,7 +340,7 @@ public class MetricManagementController {
             try {
                 updateStrategy = DerivedMetricUpdateStrategy.valueOf(form.getUpdateStrategy());
             } catch (Exception e) {
-                updateStrategy = DerivedMetricUpdateStrategy.REALTIME;
+                updateStrategy = DerivedMetricUpdateStrategy.DEPENDENCY_DRIVEN;
             }
 
             // 创建派生指标
@@ -350,6 +353,8 @@ public class MetricManagementController {
                 form.getFormula(),
                 dependencies
             );
+            metric.setUpdateStrategy(updateStrategy);
+            metric.setCalculationInterval(form.getCalculationInterval());
 
             // 更新指标
             metricConfigService.updateDerivedMetric(form.getIdentifier(), metric);
@@ -656,7 +661,7 @@ public class MetricManagementController {
         private String description;
         private String formula;
         private List<String> dependencies;
-        private String updateStrategy = "REALTIME";
+        private String updateStrategy = "DEPENDENCY_DRIVEN";
         private Integer calculationInterval = 300;
 
         // Getters and Setters
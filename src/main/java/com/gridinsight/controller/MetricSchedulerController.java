@@ -1,6 +1,10 @@
 package com.gridinsight.controller;
 
+import com.gridinsight.service.CompiledFormulaService;
+import com.gridinsight.service.DerivedMetricUpdatePolicy;
+import com.gridinsight.service.IncrementalFormulaService;
 import com.gridinsight.service.MetricSchedulerService;
+import com.gridinsight.service.PropagationLatencyTracker;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
@@ -20,6 +24,18 @@ public class MetricSchedulerController {
     @Autowired
     private MetricSchedulerService metricSchedulerService;
 
+    @Autowired
+    private PropagationLatencyTracker latencyTracker;
+
+    @Autowired
+    private DerivedMetricUpdatePolicy derivedUpdatePolicy;
+
+    @Autowired
+    private CompiledFormulaService compiledFormulaService;
+
+    @Autowired
+    private IncrementalFormulaService incrementalFormulaService;
+
     /**
      * 获取调度统计信息
      */
@@ -38,6 +54,94 @@ public class MetricSchedulerController {
         }
     }
 
+    /**
+     * 获取端到端传播延迟统计
+     * 源头到存储延迟和事件排队延迟的分位数，按依赖深度和按指标分别统计
+     * @param identifier 只返回该指标的统计（可选）
+     * @param limit 未指定指标时返回p99最高的指标数量
+     */
+    @GetMapping("/latency")
+    public ResponseEntity<Map<String, Object>> getPropagationLatency(
+            @RequestParam(required = false) String identifier,
+            @RequestParam(defaultValue = "20") int limit) {
+        Map<String, Object> response = new HashMap<>();
+        try {
+            response.put("success", true);
+            response.put("data", latencyTracker.getStatistics(identifier, limit));
+            return ResponseEntity.ok(response);
+        } catch (Exception e) {
+            response.put("success", false);
+            response.put("error", "获取延迟统计失败: " + e.getMessage());
+            return ResponseEntity.badRequest().body(response);
+        }
+    }
+
+    /**
+     * 清空传播延迟统计
+     */
+    @PostMapping("/latency/reset")
+    public ResponseEntity<Map<String, Object>> resetPropagationLatency() {
+        Map<String, Object> response = new HashMap<>();
+        latencyTracker.reset();
+        response.put("success", true);
+        response.put("message", "延迟统计已清空");
+        return ResponseEntity.ok(response);
+    }
+
+    /**
+     * 获取派生指标更新策略执行统计
+     * 各策略的指标数，以及立即计算、标记过期、查询时计算、命中上次结果、定时计算和定时跳过的次数
+     */
+    @GetMapping("/derived-policy")
+    public ResponseEntity<Map<String, Object>> getDerivedUpdatePolicy() {
+        Map<String, Object> response = new HashMap<>();
+        try {
+            response.put("success", true);
+            response.put("data", derivedUpdatePolicy.getStatistics());
+            return ResponseEntity.ok(response);
+        } catch (Exception e) {
+            response.put("success", false);
+            response.put("error", "获取派生指标更新策略统计失败: " + e.getMessage());
+            return ResponseEntity.badRequest().body(response);
+        }
+    }
+
+    /**
+     * 获取派生指标公式共享子表达式统计
+     * 合并后的计算图节点数、共享节点数，以及累计实际求值节点数和相比逐公式求值节省的节点数
+     */
+    @GetMapping("/formula-sharing")
+    public ResponseEntity<Map<String, Object>> getFormulaSharing() {
+        Map<String, Object> response = new HashMap<>();
+        try {
+            response.put("success", true);
+            response.put("data", compiledFormulaService.getStatistics());
+            return ResponseEntity.ok(response);
+        } catch (Exception e) {
+            response.put("success", false);
+            response.put("error", "获取公式共享统计失败: " + e.getMessage());
+            return ResponseEntity.badRequest().body(response);
+        }
+    }
+
+    /**
+     * 获取线性公式增量计算统计
+     * 线性公式数、增量计算的公式数、增量修正与全量重算次数，以及省去的输入读取次数
+     */
+    @GetMapping("/incremental-formulas")
+    public ResponseEntity<Map<String, Object>> getIncrementalFormulas() {
+        Map<String, Object> response = new HashMap<>();
+        try {
+            response.put("success", true);
+            response.put("data", incrementalFormulaService.getStatistics());
+            return ResponseEntity.ok(response);
+        } catch (Exception e) {
+            response.put("success", false);
+            response.put("error", "获取增量计算统计失败: " + e.getMessage());
+            return ResponseEntity.badRequest().body(response);
+        }
+    }
+
     /**
      * 获取待更新的指标列表
      */
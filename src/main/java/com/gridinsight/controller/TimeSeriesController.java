@@ -3,15 +3,33 @@ package com.gridinsight.controller;
 import com.gridinsight.domain.model.MetricValue;
 import com.gridinsight.domain.model.BasicMetric;
 import com.gridinsight.domain.model.DerivedMetric;
+import com.gridinsight.service.AlignedHistoryService;
+import com.gridinsight.service.EventDrivenMetricUpdateService;
+import com.gridinsight.service.MetricResponseCache;
 import com.gridinsight.service.TimeSeriesDataService;
 import com.gridinsight.service.ExternalMetricConfigService;
+import com.gridinsight.service.timeseries.AlignedSeries;
+import com.gridinsight.service.timeseries.ColumnarSeriesFormat;
+import com.gridinsight.service.timeseries.DownsampleMethod;
+import com.gridinsight.service.timeseries.FillPolicy;
+import com.gridinsight.service.timeseries.JsonPointStreamWriter;
+import com.gridinsight.service.timeseries.RollupQueries;
+import com.gridinsight.service.timeseries.SeriesBuffer;
+import com.gridinsight.service.timeseries.TimeRanges;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.format.annotation.DateTimeFormat;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
 import java.time.LocalDateTime;
 import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 
@@ -24,60 +42,95 @@ import java.util.Map;
 @CrossOrigin(origins = "*")
 public class TimeSeriesController {
 
+    private static final Logger log = LoggerFactory.getLogger(TimeSeriesController.class);
+
     @Autowired
     private TimeSeriesDataService timeSeriesDataService;
     
     @Autowired
     private ExternalMetricConfigService metricConfigService;
 
+    @Autowired
+    private AlignedHistoryService alignedHistoryService;
+
+    @Autowired
+    private MetricResponseCache responseCache;
+
+    @Autowired
+    private EventDrivenMetricUpdateService eventDrivenUpdateService;
+
+    // lttb/m4降采样未指定maxPoints时的默认点数
+    private static final int DEFAULT_MAX_POINTS = 1000;
+
     /**
      * 查询指标历史数据
-     * GET /api/timeseries/history?metric=xxx&start=xxx&end=xxx
+     * GET /api/timeseries/history?metric=xxx&start=xxx&end=xxx[&step=5m][&maxPoints=1000][&downsample=avg|lttb|m4]
+     * avg（默认）：指定step或maxPoints时自动选择合适的汇总层级，返回每个时间桶的平均值
+     * lttb/m4：返回不超过maxPoints个保留曲线形状/峰值的数据点（未指定maxPoints时默认1000）
+     * Accept: application/vnd.gridinsight.columnar 时返回列式二进制格式
      */
     @GetMapping("/history")
-    public ResponseEntity<Map<String, Object>> getMetricHistory(
+    public ResponseEntity<?> getMetricHistory(
             @RequestParam(required = false) String metric,
             @RequestParam(required = false) String metricUuid,
             @RequestParam @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) LocalDateTime start,
-            @RequestParam @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) LocalDateTime end) {
+            @RequestParam @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) LocalDateTime end,
+            @RequestParam(required = false) String step,
+            @RequestParam(required = false) Integer maxPoints,
+            @RequestParam(required = false) String downsample,
+            @RequestHeader(value = "Accept", required = false) String accept) {
         
         try {
-            String metricIdentifier = metric;
-            
-            // 如果提供了UUID，先通过UUID获取identifier
-            if (metricUuid != null && !metricUuid.isEmpty()) {
-                BasicMetric basicMetric = metricConfigService.getBasicMetricByUuid(metricUuid);
-                if (basicMetric != null) {
-                    metricIdentifier = basicMetric.getIdentifier();
-                } else {
-                    DerivedMetric derivedMetric = metricConfigService.getDerivedMetricByUuid(metricUuid);
-                    if (derivedMetric != null) {
-                        metricIdentifier = derivedMetric.getIdentifier();
-                    } else {
-                        Map<String, Object> result = new HashMap<>();
-                        result.put("success", false);
-                        result.put("error", "未找到UUID对应的指标: " + metricUuid);
-                        return ResponseEntity.badRequest().body(result);
-                    }
-                }
-            }
-            
-            if (metricIdentifier == null || metricIdentifier.isEmpty()) {
+            String metricIdentifier;
+            try {
+                metricIdentifier = resolveMetricIdentifier(metric, metricUuid);
+            } catch (IllegalArgumentException e) {
                 Map<String, Object> result = new HashMap<>();
                 result.put("success", false);
-                result.put("error", "必须提供metric或metricUuid参数");
+                result.put("error", e.getMessage());
                 return ResponseEntity.badRequest().body(result);
             }
             
-            List<MetricValue> history = timeSeriesDataService.getMetricHistory(metricIdentifier, start, end);
+            if (ColumnarSeriesFormat.isAccepted(accept)) {
+                Map<String, SeriesBuffer> series = new LinkedHashMap<>();
+                series.put(metricIdentifier, queryHistorySeries(metricIdentifier, start, end, step, maxPoints, downsample));
+                return columnarResponse(series);
+            }
             
             Map<String, Object> result = new HashMap<>();
             result.put("success", true);
             result.put("metric", metricIdentifier);
             result.put("startTime", start);
             result.put("endTime", end);
-            result.put("count", history.size());
-            result.put("data", history);
+            
+            if (step == null && maxPoints == null && downsample == null) {
+                // 未要求降采样：返回完整的原始数据
+                List<MetricValue> history = timeSeriesDataService.getMetricHistory(metricIdentifier, start, end);
+                result.put("count", history.size());
+                result.put("data", history);
+                return ResponseEntity.ok(result);
+            }
+            
+            DownsampleMethod method = DownsampleMethod.fromName(downsample);
+            long startMillis = TimeRanges.toEpochMillis(start);
+            long endMillis = TimeRanges.toEpochMillis(end);
+            long stepMillis = TimeRanges.parseDurationMillis(step, 0L);
+            int maxPointCount = maxPoints != null ? maxPoints : (method == DownsampleMethod.AVG ? 0 : DEFAULT_MAX_POINTS);
+            
+            SeriesBuffer series = timeSeriesDataService.getDownsampledHistory(
+                    metricIdentifier, startMillis, endMillis, stepMillis, maxPointCount, method);
+            
+            result.put("downsample", method.getName());
+            result.put("count", series.size());
+            result.put("data", series.toMetricValues(metricIdentifier, ""));
+            if (method == DownsampleMethod.AVG) {
+                long effectiveStep = RollupQueries.effectiveStep(startMillis, endMillis, stepMillis, maxPointCount);
+                if (effectiveStep > 0) {
+                    result.put("stepMillis", effectiveStep);
+                }
+            } else {
+                result.put("maxPoints", maxPointCount);
+            }
             
             return ResponseEntity.ok(result);
             
@@ -90,21 +143,233 @@ public class TimeSeriesController {
     }
 
     /**
-     * 查询指标最新值
-     * GET /api/timeseries/latest?metric=xxx
+     * 批量查询多个指标的历史数据（列式）
+     * POST /api/timeseries/history-batch?start=xxx&end=xxx[&step=5m][&maxPoints=1000][&downsample=avg|lttb|m4]
+     * 请求体为指标标识符列表；JSON响应中每个指标为 timestamps/values 两个数组，
+     * Accept: application/vnd.gridinsight.columnar 时返回列式二进制格式
      */
-    @GetMapping("/latest")
-    public ResponseEntity<Map<String, Object>> getLatestMetricValue(@RequestParam String metric) {
+    @PostMapping("/history-batch")
+    public ResponseEntity<?> getMetricHistoryBatch(
+            @RequestBody List<String> metrics,
+            @RequestParam @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) LocalDateTime start,
+            @RequestParam @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) LocalDateTime end,
+            @RequestParam(required = false) String step,
+            @RequestParam(required = false) Integer maxPoints,
+            @RequestParam(required = false) String downsample,
+            @RequestHeader(value = "Accept", required = false) String accept) {
+        
         try {
-            MetricValue value = timeSeriesDataService.getLatestMetricValue(metric);
+            Map<String, SeriesBuffer> series = new LinkedHashMap<>();
+            for (String metricIdentifier : metrics) {
+                series.put(metricIdentifier, queryHistorySeries(metricIdentifier, start, end, step, maxPoints, downsample));
+            }
+            
+            if (ColumnarSeriesFormat.isAccepted(accept)) {
+                return columnarResponse(series);
+            }
+            
+            Map<String, Object> data = new LinkedHashMap<>();
+            for (Map.Entry<String, SeriesBuffer> entry : series.entrySet()) {
+                Map<String, Object> columns = new HashMap<>();
+                columns.put("timestamps", entry.getValue().timestampArray());
+                columns.put("values", entry.getValue().valueArray());
+                data.put(entry.getKey(), columns);
+            }
             
             Map<String, Object> result = new HashMap<>();
             result.put("success", true);
-            result.put("metric", metric);
-            result.put("value", value);
+            result.put("startTime", start);
+            result.put("endTime", end);
+            result.put("count", data.size());
+            result.put("series", data);
+            return ResponseEntity.ok(result);
+            
+        } catch (Exception e) {
+            Map<String, Object> errorResult = new HashMap<>();
+            errorResult.put("success", false);
+            errorResult.put("error", "批量查询历史数据失败: " + e.getMessage());
+            return ResponseEntity.badRequest().body(errorResult);
+        }
+    }
+
+    /**
+     * 查询时间对齐的多指标矩阵
+     * POST /api/timeseries/aligned?start=xxx&end=xxx[&step=5m][&maxPoints=1000][&fill=previous|linear|null]
+     * 请求体为指标标识符列表；各指标并行读取后按时间戳归并，
+     * 响应为共享的timestamps列和按行排列的values矩阵（列顺序与metrics一致，缺失值为null）；
+     * Accept: application/vnd.gridinsight.columnar 时每个指标输出一个共享时间戳的序列，缺失值为NaN
+     */
+    @PostMapping("/aligned")
+    public ResponseEntity<?> getAlignedHistory(
+            @RequestBody List<String> metrics,
+            @RequestParam @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) LocalDateTime start,
+            @RequestParam @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) LocalDateTime end,
+            @RequestParam(required = false) String step,
+            @RequestParam(required = false) Integer maxPoints,
+            @RequestParam(required = false) String fill,
+            @RequestHeader(value = "Accept", required = false) String accept) {
+        
+        try {
+            FillPolicy fillPolicy = FillPolicy.fromName(fill);
+            AlignedSeries aligned = alignedHistoryService.queryAligned(metrics,
+                    TimeRanges.toEpochMillis(start), TimeRanges.toEpochMillis(end),
+                    TimeRanges.parseDurationMillis(step, 0L), maxPoints != null ? maxPoints : 0, fillPolicy);
+            
+            if (ColumnarSeriesFormat.isAccepted(accept)) {
+                Map<String, SeriesBuffer> series = new LinkedHashMap<>();
+                for (int i = 0; i < aligned.getMetrics().size(); i++) {
+                    series.put(aligned.getMetrics().get(i), aligned.toSeries(i));
+                }
+                return columnarResponse(series);
+            }
             
+            Map<String, Object> result = new HashMap<>();
+            result.put("success", true);
+            result.put("startTime", start);
+            result.put("endTime", end);
+            result.put("fill", fillPolicy.getName());
+            result.put("metrics", aligned.getMetrics());
+            result.put("count", aligned.getRowCount());
+            result.put("timestamps", aligned.timestampArray());
+            result.put("values", aligned.toRows());
             return ResponseEntity.ok(result);
             
+        } catch (Exception e) {
+            Map<String, Object> errorResult = new HashMap<>();
+            errorResult.put("success", false);
+            errorResult.put("error", "对齐查询失败: " + e.getMessage());
+            return ResponseEntity.badRequest().body(errorResult);
+        }
+    }
+
+    /**
+     * 按降采样参数查询单个指标的历史数据列
+     */
+    private SeriesBuffer queryHistorySeries(String metricIdentifier, LocalDateTime start, LocalDateTime end,
+                                            String step, Integer maxPoints, String downsample) {
+        DownsampleMethod method = DownsampleMethod.fromName(downsample);
+        long stepMillis = TimeRanges.parseDurationMillis(step, 0L);
+        int maxPointCount = maxPoints != null ? maxPoints : (method == DownsampleMethod.AVG ? 0 : DEFAULT_MAX_POINTS);
+        return timeSeriesDataService.getDownsampledHistory(metricIdentifier,
+                TimeRanges.toEpochMillis(start), TimeRanges.toEpochMillis(end), stepMillis, maxPointCount, method);
+    }
+
+    /**
+     * 以列式二进制格式输出多个序列
+     */
+    private ResponseEntity<StreamingResponseBody> columnarResponse(Map<String, SeriesBuffer> series) {
+        StreamingResponseBody body = outputStream -> {
+            DataOutputStream out = new DataOutputStream(new BufferedOutputStream(outputStream, 65536));
+            ColumnarSeriesFormat.writeHeader(out, series.size());
+            for (Map.Entry<String, SeriesBuffer> entry : series.entrySet()) {
+                ColumnarSeriesFormat.writeSeries(out, entry.getKey(), entry.getValue());
+            }
+            out.flush();
+        };
+        return ResponseEntity.ok()
+                .contentType(MediaType.parseMediaType(ColumnarSeriesFormat.MEDIA_TYPE))
+                .body(body);
+    }
+
+    /**
+     * 流式查询指标历史数据
+     * GET /api/timeseries/history/stream?metric=xxx&start=xxx&end=xxx[&format=ndjson|json]
+     * 边扫描存储边写出数据点，内存占用与查询区间宽度无关；客户端断开时停止扫描
+     */
+    @GetMapping("/history/stream")
+    public ResponseEntity<?> streamMetricHistory(
+            @RequestParam(required = false) String metric,
+            @RequestParam(required = false) String metricUuid,
+            @RequestParam @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) LocalDateTime start,
+            @RequestParam @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) LocalDateTime end,
+            @RequestParam(defaultValue = "ndjson") String format) {
+        
+        String metricIdentifier;
+        JsonPointStreamWriter.Format outputFormat;
+        try {
+            metricIdentifier = resolveMetricIdentifier(metric, metricUuid);
+            if ("ndjson".equalsIgnoreCase(format)) {
+                outputFormat = JsonPointStreamWriter.Format.NDJSON;
+            } else if ("json".equalsIgnoreCase(format)) {
+                outputFormat = JsonPointStreamWriter.Format.JSON_ARRAY;
+            } else {
+                throw new IllegalArgumentException("不支持的输出格式: " + format);
+            }
+        } catch (IllegalArgumentException e) {
+            Map<String, Object> errorResult = new HashMap<>();
+            errorResult.put("success", false);
+            errorResult.put("error", e.getMessage());
+            return ResponseEntity.badRequest().body(errorResult);
+        }
+        
+        long startMillis = TimeRanges.toEpochMillis(start);
+        long endMillis = TimeRanges.toEpochMillis(end);
+        StreamingResponseBody body = outputStream -> {
+            JsonPointStreamWriter writer = new JsonPointStreamWriter(outputStream, outputFormat);
+            writer.begin();
+            timeSeriesDataService.scanMetricHistory(metricIdentifier, startMillis, endMillis, writer);
+            writer.end();
+            if (writer.getFailure() != null) {
+                log.info("历史数据流已中断: {}, 已写出 {} 个数据点, 原因: {}", metricIdentifier,
+                        writer.getWrittenCount(), writer.getFailure().getMessage());
+            }
+        };
+        
+        MediaType contentType = outputFormat == JsonPointStreamWriter.Format.NDJSON
+                ? MediaType.APPLICATION_NDJSON : MediaType.APPLICATION_JSON;
+        return ResponseEntity.ok().contentType(contentType).body(body);
+    }
+
+    /**
+     * 根据指标标识符或UUID确定指标标识符
+     * @throws IllegalArgumentException UUID不存在或两者都未提供
+     */
+    private String resolveMetricIdentifier(String metric, String metricUuid) {
+        String metricIdentifier = metric;
+        
+        // 如果提供了UUID，先通过UUID获取identifier
+        if (metricUuid != null && !metricUuid.isEmpty()) {
+            BasicMetric basicMetric = metricConfigService.getBasicMetricByUuid(metricUuid);
+            if (basicMetric != null) {
+                metricIdentifier = basicMetric.getIdentifier();
+            } else {
+                DerivedMetric derivedMetric = metricConfigService.getDerivedMetricByUuid(metricUuid);
+                if (derivedMetric != null) {
+                    metricIdentifier = derivedMetric.getIdentifier();
+                } else {
+                    throw new IllegalArgumentException("未找到UUID对应的指标: " + metricUuid);
+                }
+            }
+        }
+        
+        if (metricIdentifier == null || metricIdentifier.isEmpty()) {
+            throw new IllegalArgumentException("必须提供metric或metricUuid参数");
+        }
+        return metricIdentifier;
+    }
+
+    /**
+     * 查询指标最新值
+     * GET /api/timeseries/latest?metric=xxx
+     * 响应带ETag（指标数据版本号），If-None-Match匹配时返回304
+     */
+    @GetMapping("/latest")
+    public ResponseEntity<?> getLatestMetricValue(
+            @RequestParam String metric,
+            @RequestHeader(value = "If-None-Match", required = false) String ifNoneMatch) {
+        try {
+            // 按需计算的派生指标在依赖变化后首次查询时先计算
+            eventDrivenUpdateService.refreshIfStale(metric);
+            return responseCache.respond("latest", metric, ifNoneMatch, () -> {
+                MetricValue value = timeSeriesDataService.getLatestMetricValue(metric);
+                
+                Map<String, Object> result = new HashMap<>();
+                result.put("success", true);
+                result.put("metric", metric);
+                result.put("value", value);
+                return result;
+            });
+            
         } catch (Exception e) {
             Map<String, Object> errorResult = new HashMap<>();
             errorResult.put("success", false);
@@ -116,12 +381,30 @@ public class TimeSeriesController {
     /**
      * 批量查询最新值
      * POST /api/timeseries/latest-batch
+     * Accept: application/vnd.gridinsight.columnar 时返回列式二进制格式（每个指标0或1个点）
      */
     @PostMapping("/latest-batch")
-    public ResponseEntity<Map<String, Object>> getLatestMetricValues(@RequestBody List<String> metrics) {
+    public ResponseEntity<?> getLatestMetricValues(
+            @RequestBody List<String> metrics,
+            @RequestHeader(value = "Accept", required = false) String accept) {
         try {
+            eventDrivenUpdateService.refreshIfStale(metrics);
             Map<String, MetricValue> values = timeSeriesDataService.getLatestMetricValues(metrics);
             
+            if (ColumnarSeriesFormat.isAccepted(accept)) {
+                // 每个请求的指标一个序列，无有效最新值时为空序列
+                Map<String, SeriesBuffer> series = new LinkedHashMap<>();
+                for (String metricIdentifier : metrics) {
+                    SeriesBuffer latest = new SeriesBuffer(1);
+                    MetricValue value = values.get(metricIdentifier);
+                    if (value != null && value.isValid() && value.getTimestamp() != null) {
+                        latest.add(TimeRanges.toEpochMillis(value.getTimestamp()), value.getValue());
+                    }
+                    series.put(metricIdentifier, latest);
+                }
+                return columnarResponse(series);
+            }
+            
             Map<String, Object> result = new HashMap<>();
             result.put("success", true);
             result.put("count", values.size());
@@ -177,6 +460,7 @@ public class TimeSeriesController {
             Map<String, Object> result = new HashMap<>();
             result.put("success", true);
             result.put("storageStats", stats);
+            result.put("responseCache", responseCache.getStatistics());
             
             return ResponseEntity.ok(result);
             
@@ -196,6 +480,7 @@ public class TimeSeriesController {
     public ResponseEntity<Map<String, Object>> clearAllData() {
         try {
             timeSeriesDataService.clearAllData();
+            responseCache.clear();
             
             Map<String, Object> result = new HashMap<>();
             result.put("success", true);
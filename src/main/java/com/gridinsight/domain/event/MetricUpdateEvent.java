@@ -1,5 +1,7 @@
 package com.gridinsight.domain.event;
 
+import com.gridinsight.service.timeseries.TimeRanges;
+
 import java.time.LocalDateTime;
 
 /**
@@ -13,18 +15,33 @@ public class MetricUpdateEvent {
      */
     private final String metricIdentifier;
     
+    /**
+     * 更新的指标在注册表符号表中的ID，发布方未提供时为-1（处理方按标识符查找一次）
+     */
+    private final int metricId;
+    
     /**
      * 指标类型（基础指标或派生指标）
      */
     private final String metricType;
     
     /**
-     * 更新后的指标值
+     * 更新后的指标值（按基本类型发布的事件为null，读取时再装箱）
      */
     private final Object metricValue;
     
     /**
-     * 更新时间
+     * 更新后的数值，指标值不是数值时为NaN
+     */
+    private final double numericValue;
+    
+    /**
+     * 是否按基本类型发布（采集和传播路径），此时不保存装箱值和更新时间
+     */
+    private final boolean primitive;
+    
+    /**
+     * 更新时间（按基本类型发布的事件为null，读取时由样本时间换算）
      */
     private final LocalDateTime updateTime;
     
@@ -32,30 +49,106 @@ public class MetricUpdateEvent {
      * 事件源（哪个服务触发的更新）
      */
     private final String eventSource;
+    
+    /**
+     * 本次更新写入的样本时间戳（毫秒），用于识别乱序到达的旧事件
+     */
+    private final long sampleTimeMillis;
+    
+    /**
+     * 源头基础指标采集完成的时间（System.nanoTime），沿派生指标的重新计算逐级传递
+     */
+    private final long sourceTimeNanos;
+    
+    /**
+     * 事件发布时间（System.nanoTime），用于统计事件排队等待时间
+     */
+    private final long publishTimeNanos;
+    
+    /**
+     * 依赖深度：基础指标为0，派生指标为触发它的事件深度加1
+     */
+    private final int depth;
 
     public MetricUpdateEvent(String metricIdentifier, String metricType, 
                            Object metricValue, LocalDateTime updateTime, String eventSource) {
+        this(metricIdentifier, metricType, metricValue, updateTime, eventSource, System.nanoTime(), 0);
+    }
+
+    public MetricUpdateEvent(String metricIdentifier, String metricType,
+                           Object metricValue, LocalDateTime updateTime, String eventSource,
+                           long sourceTimeNanos, int depth) {
+        this(metricIdentifier, metricType, metricValue, updateTime, eventSource,
+             TimeRanges.nowEpochMillis(), sourceTimeNanos, depth);
+    }
+
+    public MetricUpdateEvent(String metricIdentifier, String metricType,
+                           Object metricValue, LocalDateTime updateTime, String eventSource,
+                           long sampleTimeMillis, long sourceTimeNanos, int depth) {
+        this(-1, metricIdentifier, metricType, metricValue, updateTime, eventSource,
+             sampleTimeMillis, sourceTimeNanos, depth);
+    }
+
+    public MetricUpdateEvent(int metricId, String metricIdentifier, String metricType,
+                           Object metricValue, LocalDateTime updateTime, String eventSource,
+                           long sampleTimeMillis, long sourceTimeNanos, int depth) {
+        this(metricId, metricIdentifier, metricType, metricValue,
+             metricValue instanceof Number ? ((Number) metricValue).doubleValue() : Double.NaN, false,
+             updateTime, eventSource, sampleTimeMillis, sourceTimeNanos, depth);
+    }
+
+    /**
+     * 按基本类型构造（采集和传播路径使用），不分配装箱值和更新时间
+     */
+    public MetricUpdateEvent(int metricId, String metricIdentifier, String metricType,
+                           double metricValue, String eventSource,
+                           long sampleTimeMillis, long sourceTimeNanos, int depth) {
+        this(metricId, metricIdentifier, metricType, null, metricValue, true, null, eventSource,
+             sampleTimeMillis, sourceTimeNanos, depth);
+    }
+
+    private MetricUpdateEvent(int metricId, String metricIdentifier, String metricType,
+                            Object metricValue, double numericValue, boolean primitive,
+                            LocalDateTime updateTime, String eventSource,
+                            long sampleTimeMillis, long sourceTimeNanos, int depth) {
+        this.metricId = metricId;
         this.metricIdentifier = metricIdentifier;
         this.metricType = metricType;
         this.metricValue = metricValue;
+        this.numericValue = numericValue;
+        this.primitive = primitive;
         this.updateTime = updateTime;
         this.eventSource = eventSource;
+        this.sampleTimeMillis = sampleTimeMillis;
+        this.sourceTimeNanos = sourceTimeNanos;
+        this.publishTimeNanos = System.nanoTime();
+        this.depth = depth;
     }
 
     // Getters
     public String getMetricIdentifier() { return metricIdentifier; }
+    public int getMetricId() { return metricId; }
     public String getMetricType() { return metricType; }
-    public Object getMetricValue() { return metricValue; }
-    public LocalDateTime getUpdateTime() { return updateTime; }
+    public Object getMetricValue() { return primitive ? Double.valueOf(numericValue) : metricValue; }
+    public boolean hasNumericValue() { return primitive || metricValue instanceof Number; }
+    public double getNumericValue() { return numericValue; }
+    public LocalDateTime getUpdateTime() {
+        return updateTime != null || !primitive ? updateTime : TimeRanges.toLocalDateTime(sampleTimeMillis);
+    }
     public String getEventSource() { return eventSource; }
+    public long getSampleTimeMillis() { return sampleTimeMillis; }
+    public long getSourceTimeNanos() { return sourceTimeNanos; }
+    public long getPublishTimeNanos() { return publishTimeNanos; }
+    public int getDepth() { return depth; }
 
     @Override
     public String toString() {
         return "MetricUpdateEvent{" +
                "metricIdentifier='" + metricIdentifier + '\'' +
                ", metricType='" + metricType + '\'' +
-               ", updateTime=" + updateTime +
+               ", updateTime=" + getUpdateTime() +
                ", eventSource='" + eventSource + '\'' +
+               ", depth=" + depth +
                '}';
     }
 }
@@ -4,7 +4,7 @@ import java.time.LocalDateTime;
 
 /**
  * 指标值变化事件
- * 当基础指标的值发生变化时发布此事件
+ * 当基础指标的值发生变化、或派生指标在查询时重新计算后值发生变化时发布此事件
  */
 public class MetricValueChangedEvent {
     
@@ -23,7 +23,15 @@ public class DerivedMetric extends Metric {
      */
     private List<Metric> dependencies;
     
-    // 注意：updateStrategy和calculationInterval已移除，所有派生指标现在都使用事件驱动机制
+    /**
+     * 更新策略，默认依赖驱动（依赖变化时立即重新计算）
+     */
+    private DerivedMetricUpdateStrategy updateStrategy = DerivedMetricUpdateStrategy.DEPENDENCY_DRIVEN;
+    
+    /**
+     * 计算间隔（秒），只对SCHEDULED策略有效
+     */
+    private Integer calculationInterval = 300;
     
     /**
      * 公式是否有效
@@ -176,7 +184,21 @@ public class DerivedMetric extends Metric {
         this.validFormula = validFormula;
     }
     
-    // updateStrategy和calculationInterval的getter/setter方法已移除，因为现在所有派生指标都使用事件驱动机制
+    public DerivedMetricUpdateStrategy getUpdateStrategy() {
+        return updateStrategy;
+    }
+    
+    public void setUpdateStrategy(DerivedMetricUpdateStrategy updateStrategy) {
+        this.updateStrategy = updateStrategy != null ? updateStrategy : DerivedMetricUpdateStrategy.DEPENDENCY_DRIVEN;
+    }
+    
+    public Integer getCalculationInterval() {
+        return calculationInterval;
+    }
+    
+    public void setCalculationInterval(Integer calculationInterval) {
+        this.calculationInterval = calculationInterval;
+    }
     
     @Override
     public String toString() {
@@ -187,6 +209,7 @@ public class DerivedMetric extends Metric {
                ", unit='" + getUnit() + '\'' +
                ", identifier='" + getIdentifier() + '\'' +
                ", formula='" + formula + '\'' +
+               ", updateStrategy=" + updateStrategy +
                ", dependencies=" + dependencies.size() + " items" +
                ", validFormula=" + validFormula +
                '}';
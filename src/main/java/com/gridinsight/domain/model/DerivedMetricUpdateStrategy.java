@@ -7,9 +7,9 @@ public enum DerivedMetricUpdateStrategy {
     
     /**
      * 实时计算策略
-     * 每次查询时实时计算，不预存储
-     * 优点：数据总是最新的，存储空间小
-     * 缺点：查询时计算开销大，响应时间较长
+     * 依赖变化时只标记过期，查询时按需计算；依赖未再变化时直接返回上次计算结果
+     * 优点：数据总是最新的，很少被查询的指标几乎没有计算开销
+     * 缺点：依赖变化后的首次查询需要计算，响应时间较长
      */
     REALTIME("实时计算"),
     
@@ -31,7 +31,8 @@ public enum DerivedMetricUpdateStrategy {
     
     /**
      * 混合策略
-     * 结合实时计算和预计算，根据指标重要性选择策略
+     * 按观察到的读写比例在依赖驱动和实时计算之间切换：
+     * 查询频率不低于依赖变化频率时预计算，否则查询时按需计算
      * 优点：平衡性能和实时性
      * 缺点：实现复杂度较高
      */
@@ -1,6 +1,7 @@
 package com.gridinsight.domain.model;
 
 import com.fasterxml.jackson.annotation.JsonFormat;
+import com.fasterxml.jackson.annotation.JsonIgnore;
 import com.fasterxml.jackson.annotation.JsonIgnoreProperties;
 
 import java.time.LocalDateTime;
@@ -53,6 +54,19 @@ public class MetricValue {
         public String getDisplayName() {
             return displayName;
         }
+        
+        /**
+         * 紧凑编码，用于在采集、存储和传播之间以基本类型传递
+         */
+        public byte code() {
+            return (byte) ordinal();
+        }
+        
+        public static DataQuality ofCode(byte code) {
+            return code >= 0 && code < BY_CODE.length ? BY_CODE[code] : UNKNOWN;
+        }
+        
+        private static final DataQuality[] BY_CODE = values();
     }
     
     /**
@@ -66,24 +80,20 @@ public class MetricValue {
     private String dataSource;
     
     /**
-     * 默认构造函数
+     * 默认构造函数（用于反序列化，时间戳由调用方设置）
      */
     public MetricValue() {
-        this.timestamp = LocalDateTime.now();
         this.quality = DataQuality.GOOD;
     }
     
     /**
-     * 构造函数
+     * 构造函数（时间戳取当前时间）
      * @param metricIdentifier 指标标识符
      * @param value 指标数值
      * @param unit 数值单位
      */
     public MetricValue(String metricIdentifier, Double value, String unit) {
-        this();
-        this.metricIdentifier = metricIdentifier;
-        this.value = value;
-        this.unit = unit;
+        this(metricIdentifier, value, unit, LocalDateTime.now());
     }
     
     /**
@@ -94,8 +104,7 @@ public class MetricValue {
      * @param timestamp 数据时间戳
      */
     public MetricValue(String metricIdentifier, Double value, String unit, LocalDateTime timestamp) {
-        this(metricIdentifier, value, unit);
-        this.timestamp = timestamp;
+        this(metricIdentifier, value, unit, timestamp, DataQuality.GOOD);
     }
     
     /**
@@ -108,7 +117,10 @@ public class MetricValue {
      */
     public MetricValue(String metricIdentifier, Double value, String unit, 
                        LocalDateTime timestamp, DataQuality quality) {
-        this(metricIdentifier, value, unit, timestamp);
+        this.metricIdentifier = metricIdentifier;
+        this.value = value;
+        this.unit = unit;
+        this.timestamp = timestamp;
         this.quality = quality;
     }
     
@@ -193,6 +205,14 @@ public class MetricValue {
         this.quality = quality;
     }
     
+    /**
+     * 数据质量编码（基本类型存储和传播使用），未设置质量时按GOOD
+     */
+    @JsonIgnore
+    public byte getQualityCode() {
+        return quality != null ? quality.code() : DataQuality.GOOD.code();
+    }
+    
     public String getDataSource() {
         return dataSource;
     }
@@ -0,0 +1,200 @@
+package com.gridinsight.domain.service;
+
+import java.util.Arrays;
+import java.util.function.IntToDoubleFunction;
+
+/**
+ * 一次传播波次内的共享计算图求值
+ * 同一波次中多个派生指标共用的子表达式（以及指标叶子的读取）只求值一次，后续直接复用；
+ * 中间结果保存在按节点编号的开放寻址表中，只占用本波次实际访问的节点，不按图大小分配；
+ * 派生指标和指标叶子都以指标ID定位，求值过程不做字符串查找。
+ * 单线程使用；每个波次新建实例
+ */
+public final class FormulaWave {
+
+    private final SharedFormulaGraph graph;
+    private final IntToDoubleFunction metricValues;
+
+    // 节点编号 → 结果（键为节点编号+1，0表示空槽）
+    private int[] keys = new int[64];
+    private double[] values = new double[64];
+    private int size;
+
+    private int rootsEvaluated;
+    private long nodesEvaluated;
+    private long nodesReused;
+    private long treeNodes;
+
+    /**
+     * @param metricValues 按指标ID读取最新值，没有有效值时返回NaN
+     */
+    public FormulaWave(SharedFormulaGraph graph, IntToDoubleFunction metricValues) {
+        this.graph = graph;
+        this.metricValues = metricValues;
+    }
+
+    public SharedFormulaGraph getGraph() {
+        return graph;
+    }
+
+    /**
+     * 计算派生指标，公式未编译时返回null（由调用方回退到FormulaEngine）
+     * @return 计算结果；引用的指标没有值、除零等情况返回NaN或无穷大
+     */
+    public Double evaluate(int derivedId) {
+        int root = graph.rootOf(derivedId);
+        if (root < 0) {
+            return null;
+        }
+        rootsEvaluated++;
+        treeNodes += graph.treeSizeOf(derivedId);
+        return valueOf(root);
+    }
+
+    private double valueOf(int node) {
+        int slot = find(node);
+        if (keys[slot] != 0) {
+            nodesReused++;
+            return values[slot];
+        }
+        double value = compute(node);
+        nodesEvaluated++;
+        // 计算子节点期间表可能已扩容，重新定位
+        put(node, value);
+        return value;
+    }
+
+    private double compute(int node) {
+        int[] children = graph.childrenOf(node);
+        switch (graph.opOf(node)) {
+            case SharedFormulaGraph.CONST:
+                return graph.constantOf(node);
+            case SharedFormulaGraph.METRIC:
+                return metricValues.applyAsDouble(graph.metricIdOfNode(node));
+            case SharedFormulaGraph.ADD:
+                return valueOf(children[0]) + valueOf(children[1]);
+            case SharedFormulaGraph.SUB:
+                return valueOf(children[0]) - valueOf(children[1]);
+            case SharedFormulaGraph.MUL:
+                return valueOf(children[0]) * valueOf(children[1]);
+            case SharedFormulaGraph.DIV: {
+                double dividend = valueOf(children[0]);
+                double divisor = valueOf(children[1]);
+                // 与FormulaEngine一致，除零视为计算错误
+                return divisor == 0.0 ? Double.NaN : dividend / divisor;
+            }
+            case SharedFormulaGraph.POW:
+                return Math.pow(valueOf(children[0]), valueOf(children[1]));
+            case SharedFormulaGraph.NEG:
+                return -valueOf(children[0]);
+            case SharedFormulaGraph.ABS:
+                return Math.abs(valueOf(children[0]));
+            case SharedFormulaGraph.SQRT:
+                return Math.sqrt(valueOf(children[0]));
+            case SharedFormulaGraph.LOG:
+                return Math.log(valueOf(children[0]));
+            case SharedFormulaGraph.EXP:
+                return Math.exp(valueOf(children[0]));
+            case SharedFormulaGraph.MIN: {
+                double min = valueOf(children[0]);
+                for (int i = 1; i < children.length; i++) {
+                    min = Math.min(min, valueOf(children[i]));
+                }
+                return min;
+            }
+            case SharedFormulaGraph.MAX: {
+                double max = valueOf(children[0]);
+                for (int i = 1; i < children.length; i++) {
+                    max = Math.max(max, valueOf(children[i]));
+                }
+                return max;
+            }
+            default:
+                throw new IllegalStateException("未知的节点运算符: " + graph.opOf(node));
+        }
+    }
+
+    private int find(int node) {
+        int mask = keys.length - 1;
+        int hash = node * 0x9E3779B9;
+        int slot = (hash ^ (hash >>> 16)) & mask;
+        while (keys[slot] != 0 && keys[slot] != node + 1) {
+            slot = (slot + 1) & mask;
+        }
+        return slot;
+    }
+
+    private void put(int node, double value) {
+        if ((size + 1) * 2 > keys.length) {
+            grow();
+        }
+        int slot = find(node);
+        if (keys[slot] == 0) {
+            keys[slot] = node + 1;
+            size++;
+        }
+        values[slot] = value;
+    }
+
+    private void grow() {
+        int[] oldKeys = keys;
+        double[] oldValues = values;
+        keys = new int[oldKeys.length * 2];
+        values = new double[oldValues.length * 2];
+        for (int i = 0; i < oldKeys.length; i++) {
+            if (oldKeys[i] != 0) {
+                int slot = find(oldKeys[i] - 1);
+                keys[slot] = oldKeys[i];
+                values[slot] = oldValues[i];
+            }
+        }
+    }
+
+    /**
+     * 波次内某个指标写入了新值：如果本波次已读取过它的旧值，清空中间结果，后续计算重新读取
+     */
+    public void metricUpdated(int metricId) {
+        int leaf = graph.leafOf(metricId);
+        if (leaf >= 0 && keys[find(leaf)] != 0) {
+            Arrays.fill(keys, 0);
+            size = 0;
+        }
+    }
+
+    /**
+     * 波次内某个指标计算出新值并已写入：在metricUpdated的基础上直接记录新值，
+     * 下游在同一波次中使用该值而不再从存储读取
+     */
+    public void metricStored(int metricId, double value) {
+        metricUpdated(metricId);
+        int leaf = graph.leafOf(metricId);
+        if (leaf >= 0) {
+            put(leaf, value);
+        }
+    }
+
+    public int getRootsEvaluated() {
+        return rootsEvaluated;
+    }
+
+    /**
+     * 本波次实际求值的节点数
+     */
+    public long getNodesEvaluated() {
+        return nodesEvaluated;
+    }
+
+    /**
+     * 本波次直接复用已有结果的节点数
+     */
+    public long getNodesReused() {
+        return nodesReused;
+    }
+
+    /**
+     * 不共享子表达式时本波次需要求值的节点数（各公式展开为树后的节点数之和）
+     */
+    public long getTreeNodes() {
+        return treeNodes;
+    }
+}
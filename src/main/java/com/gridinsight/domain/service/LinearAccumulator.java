@@ -0,0 +1,92 @@
+package com.gridinsight.domain.service;
+
+import java.util.Arrays;
+import java.util.function.IntToDoubleFunction;
+
+/**
+ * 线性公式的增量计算状态
+ * 保存当前结果和计算时各输入的值，某个输入变化时按 coefficient * (new - old) 修正结果，
+ * 与输入个数无关；累计增量修正次数或距上次全量计算的时间超过阈值时全量重算，限制浮点误差累积。
+ * 同时记录各输入已应用的样本时间，乱序到达的旧样本不再修正结果。
+ * 非线程安全，调用方按实例加锁
+ */
+public final class LinearAccumulator {
+
+    private final LinearForm form;
+    private final double[] inputValues;
+    private final long[] inputTimes;
+    private double result = Double.NaN;
+    private int deltasSinceFull;
+    private long lastFullMillis;
+
+    public LinearAccumulator(LinearForm form) {
+        this.form = form;
+        this.inputValues = new double[form.size()];
+        Arrays.fill(inputValues, Double.NaN);
+        this.inputTimes = new long[form.size()];
+        Arrays.fill(inputTimes, Long.MIN_VALUE);
+    }
+
+    public LinearForm getForm() {
+        return form;
+    }
+
+    /**
+     * 是否需要全量计算：尚未计算过、上次结果无效，或增量修正次数/时间达到阈值
+     */
+    public boolean needsFullRecompute(long nowMillis, int maxDeltas, long maxAgeMillis) {
+        return !Double.isFinite(result)
+               || deltasSinceFull >= maxDeltas
+               || nowMillis - lastFullMillis >= maxAgeMillis;
+    }
+
+    /**
+     * 全量计算：读取所有输入的当前值，读取时已存储的样本均视为已应用
+     * @param metricValues 按指标ID读取最新值，没有有效值时返回NaN
+     * @param nowMillis 读取时间，与样本时间戳使用同一时间基准
+     * @return 计算结果，任一输入缺失时返回NaN（下次仍全量计算）
+     */
+    public double recompute(IntToDoubleFunction metricValues, long nowMillis) {
+        double sum = form.getConstant();
+        for (int i = 0; i < inputValues.length; i++) {
+            inputValues[i] = metricValues.applyAsDouble(form.inputIdAt(i));
+            inputTimes[i] = nowMillis;
+            sum += form.coefficientAt(i) * inputValues[i];
+        }
+        result = sum;
+        deltasSinceFull = 0;
+        lastFullMillis = nowMillis;
+        return result;
+    }
+
+    /**
+     * 样本是否早于该输入已应用的样本（乱序到达的旧更新），旧更新不应再修正结果
+     */
+    public boolean isStale(int inputId, long sampleTimeMillis) {
+        int index = form.indexOfId(inputId);
+        return index >= 0 && sampleTimeMillis < inputTimes[index];
+    }
+
+    /**
+     * 增量修正：输入变化为newValue
+     * @param sampleTimeMillis 新值的样本时间
+     * @return 修正后的结果；输入不在公式中、新值或旧值无效，或样本时间不晚于已应用的样本
+     *         （无法判断先后）时返回NaN，调用方应改为全量计算
+     */
+    public double applyDelta(int inputId, double newValue, long sampleTimeMillis) {
+        int index = form.indexOfId(inputId);
+        if (index < 0 || !Double.isFinite(newValue) || !Double.isFinite(inputValues[index])
+            || sampleTimeMillis <= inputTimes[index]) {
+            return Double.NaN;
+        }
+        result += form.coefficientAt(index) * (newValue - inputValues[index]);
+        inputValues[index] = newValue;
+        inputTimes[index] = sampleTimeMillis;
+        deltasSinceFull++;
+        return result;
+    }
+
+    public double getResult() {
+        return result;
+    }
+}
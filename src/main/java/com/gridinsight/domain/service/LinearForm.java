@@ -0,0 +1,133 @@
+package com.gridinsight.domain.service;
+
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * 线性公式：constant + Σ coefficient[i] * input[i]
+ * 由SharedFormulaGraph对只包含加减、取负、乘除常量的公式推导，同一指标多次出现时系数合并。
+ * 输入以指标ID标识，按ID查找下标为有序数组上的二分查找，不分配对象
+ */
+public final class LinearForm {
+
+    private final String[] inputs;
+    private final int[] inputIds;
+    private final double[] coefficients;
+    private final double constant;
+    // 按ID升序排列的输入ID及其下标
+    private final int[] sortedIds;
+    private final int[] sortedIndexes;
+
+    private LinearForm(String[] inputs, int[] inputIds, double[] coefficients, double constant) {
+        this.inputs = inputs;
+        this.inputIds = inputIds;
+        this.coefficients = coefficients;
+        this.constant = constant;
+        long[] packed = new long[inputIds.length];
+        for (int i = 0; i < inputIds.length; i++) {
+            packed[i] = ((long) inputIds[i] << 32) | i;
+        }
+        Arrays.sort(packed);
+        this.sortedIds = new int[packed.length];
+        this.sortedIndexes = new int[packed.length];
+        for (int i = 0; i < packed.length; i++) {
+            sortedIds[i] = (int) (packed[i] >>> 32);
+            sortedIndexes[i] = (int) packed[i];
+        }
+    }
+
+    static LinearForm constant(double value) {
+        return new LinearForm(new String[0], new int[0], new double[0], value);
+    }
+
+    static LinearForm metric(String identifier, int metricId) {
+        return new LinearForm(new String[]{identifier}, new int[]{metricId}, new double[]{1.0}, 0.0);
+    }
+
+    /**
+     * this + scale * other
+     */
+    LinearForm plus(LinearForm other, double scale) {
+        Map<Integer, Double> terms = new LinkedHashMap<>();
+        Map<Integer, String> names = new LinkedHashMap<>();
+        for (int i = 0; i < inputs.length; i++) {
+            terms.merge(inputIds[i], coefficients[i], Double::sum);
+            names.put(inputIds[i], inputs[i]);
+        }
+        for (int i = 0; i < other.inputs.length; i++) {
+            terms.merge(other.inputIds[i], scale * other.coefficients[i], Double::sum);
+            names.put(other.inputIds[i], other.inputs[i]);
+        }
+        String[] mergedInputs = new String[terms.size()];
+        int[] mergedIds = new int[terms.size()];
+        double[] mergedCoefficients = new double[terms.size()];
+        int i = 0;
+        for (Map.Entry<Integer, Double> term : terms.entrySet()) {
+            mergedIds[i] = term.getKey();
+            mergedInputs[i] = names.get(term.getKey());
+            mergedCoefficients[i] = term.getValue();
+            i++;
+        }
+        return new LinearForm(mergedInputs, mergedIds, mergedCoefficients, constant + scale * other.constant);
+    }
+
+    LinearForm times(double scale) {
+        double[] scaled = new double[coefficients.length];
+        for (int i = 0; i < coefficients.length; i++) {
+            scaled[i] = coefficients[i] * scale;
+        }
+        return new LinearForm(inputs, inputIds, scaled, constant * scale);
+    }
+
+    boolean isConstant() {
+        return inputs.length == 0;
+    }
+
+    public int size() {
+        return inputs.length;
+    }
+
+    public String inputAt(int index) {
+        return inputs[index];
+    }
+
+    public int inputIdAt(int index) {
+        return inputIds[index];
+    }
+
+    public double coefficientAt(int index) {
+        return coefficients[index];
+    }
+
+    public double getConstant() {
+        return constant;
+    }
+
+    /**
+     * 输入在公式中的下标，不引用该指标时返回-1
+     */
+    public int indexOfId(int metricId) {
+        int found = Arrays.binarySearch(sortedIds, metricId);
+        return found >= 0 ? sortedIndexes[found] : -1;
+    }
+
+    /**
+     * 按标识符查找输入下标（逐个比较，只用于统计和测试）
+     */
+    public int indexOf(String identifier) {
+        for (int i = 0; i < inputs.length; i++) {
+            if (inputs[i].equals(identifier)) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    @Override
+    public String toString() {
+        return "LinearForm{inputs=" + Arrays.toString(inputs) +
+               ", coefficients=" + Arrays.toString(coefficients) +
+               ", constant=" + constant + '}';
+    }
+}
@@ -2,6 +2,8 @@ package com.gridinsight.domain.service;
 
 import com.gridinsight.domain.model.*;
 import com.gridinsight.service.DataSourceService;
+import com.gridinsight.service.MetricIdArray;
+import com.gridinsight.service.MetricSymbolTable;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Service;
 import java.util.*;
@@ -15,13 +17,18 @@ import java.util.concurrent.ConcurrentHashMap;
 public class MetricCalculationService {
     
     private final Map<String, Metric> metrics = new ConcurrentHashMap<>();
-    private final Map<String, MetricValue> valueCache = new ConcurrentHashMap<>();
+    // 指标值缓存（以指标ID为下标）
+    private final MetricIdArray<MetricValue> valueCache = new MetricIdArray<>(256);
     private final Map<String, BasicMetric> basicMetrics = new ConcurrentHashMap<>();
     private final Map<String, DerivedMetric> derivedMetrics = new ConcurrentHashMap<>();
     
     @Autowired
     private DataSourceService dataSourceService;
     
+    // 指标符号表，与注册表共用；脱离Spring容器创建时使用独立的符号表
+    @Autowired(required = false)
+    private MetricSymbolTable symbols = new MetricSymbolTable();
+    
     
     /**
      * 添加指标
@@ -45,7 +52,7 @@ public class MetricCalculationService {
     public void setBasicMetricValue(String metricIdentifier, Double value) {
         if (basicMetrics.containsKey(metricIdentifier)) {
             MetricValue metricValue = MetricValue.good(metricIdentifier, value, "个");
-            valueCache.put(metricIdentifier, metricValue);
+            valueCache.set(symbols.intern(metricIdentifier), metricValue);
             // 设置基础指标值
         }
     }
@@ -159,6 +166,35 @@ public class MetricCalculationService {
     }
     
     
+    /**
+     * 按给定的输入值计算派生指标，不重新获取或计算依赖
+     * 用于依赖已写入存储、直接读取其最新值计算的场景
+     * @param metricIdentifier 派生指标标识符
+     * @param inputValues 公式引用的指标值
+     * @return 指标值
+     */
+    public MetricValue calculateDerivedMetric(String metricIdentifier, Map<String, MetricValue> inputValues) {
+        Metric metric = metrics.get(metricIdentifier);
+        if (!(metric instanceof DerivedMetric)) {
+            return MetricValue.error(metricIdentifier, "派生指标不存在: " + metricIdentifier);
+        }
+        DerivedMetric derivedMetric = (DerivedMetric) metric;
+
+        for (String identifier : FormulaParser.extractMetricIdentifiers(derivedMetric.getFormula())) {
+            MetricValue inputValue = inputValues.get(identifier);
+            if (inputValue == null || !inputValue.isValid()) {
+                return MetricValue.error(metricIdentifier, "指标计算失败: " + identifier);
+            }
+        }
+
+        MetricValue result = FormulaEngine.calculate(derivedMetric.getFormula(), inputValues);
+        if (result.isValid()) {
+            result.setMetricIdentifier(metricIdentifier);
+            result.setUnit(derivedMetric.getUnit());
+        }
+        return result;
+    }
+
     /**
      * 批量计算指标
      * @param metricIdentifiers 指标标识符列表
@@ -204,7 +240,10 @@ public class MetricCalculationService {
         if (metricIdentifier == null) {
             valueCache.clear();
         } else {
-            valueCache.remove(metricIdentifier);
+            int id = symbols.idOf(metricIdentifier);
+            if (id != MetricSymbolTable.UNKNOWN) {
+                valueCache.set(id, null);
+            }
         }
     }
     
@@ -0,0 +1,545 @@
+package com.gridinsight.domain.service;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.ToIntFunction;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * 派生指标公式的共享计算图
+ * 所有派生指标公式编译为表达式树后按结构哈希合并（hash-consing）：运算符和子节点都相同的子表达式只保留一个节点，
+ * 加法、乘法、min、max的子节点按节点编号排序，a + b 与 b + a 合并为同一节点。
+ * 叶子节点为常量或指标引用，指标值在计算时从FormulaWave读取。
+ * 构建时为每个指标取得符号表ID，派生指标的根节点、指标叶子和线性形式按ID建立数组索引，传播过程中不再按标识符查找。
+ * 构建后只读，可在多个线程间共享；每次计算的中间结果保存在FormulaWave中
+ */
+public final class SharedFormulaGraph {
+
+    // 节点运算符
+    static final int CONST = 0;
+    static final int METRIC = 1;
+    static final int ADD = 2;
+    static final int SUB = 3;
+    static final int MUL = 4;
+    static final int DIV = 5;
+    static final int POW = 6;
+    static final int NEG = 7;
+    static final int ABS = 8;
+    static final int SQRT = 9;
+    static final int LOG = 10;
+    static final int EXP = 11;
+    static final int MIN = 12;
+    static final int MAX = 13;
+
+    private static final int[] NO_CHILDREN = new int[0];
+
+    private final int[] ops;
+    private final int[][] children;
+    private final double[] constants;
+    private final String[] metricIdentifiers;
+    // 指标叶子节点的指标ID，其余节点为-1
+    private final int[] metricIds;
+    // 派生指标标识符 → 根节点
+    private final Map<String, Integer> roots;
+    // 公式涉及的指标标识符 → 指标ID
+    private final Map<String, Integer> identifierIds;
+    // 以指标ID为下标：派生指标的根节点、指标的叶子节点（-1表示没有）、线性形式、展开为树后的节点数
+    private final int[] rootById;
+    private final int[] leafById;
+    private final LinearForm[] linearFormById;
+    private final int[] treeSizeById;
+    private final int linearCount;
+    private final List<String> uncompiled;
+    private final int treeNodeCount;
+    private final int sharedNodeCount;
+
+    private SharedFormulaGraph(Builder builder) {
+        int size = builder.ops.size();
+        this.ops = new int[size];
+        this.children = new int[size][];
+        this.constants = new double[size];
+        this.metricIdentifiers = new String[size];
+        this.metricIds = new int[size];
+        for (int i = 0; i < size; i++) {
+            ops[i] = builder.ops.get(i);
+            children[i] = builder.children.get(i);
+            constants[i] = builder.constants.get(i);
+            metricIdentifiers[i] = builder.metricIdentifiers.get(i);
+            metricIds[i] = metricIdentifiers[i] != null ? builder.idOf(metricIdentifiers[i]) : -1;
+        }
+        this.roots = Collections.unmodifiableMap(builder.roots);
+        this.identifierIds = builder.ids;
+        this.uncompiled = Collections.unmodifiableList(builder.uncompiled);
+
+        int idCapacity = 0;
+        for (int id : identifierIds.values()) {
+            idCapacity = Math.max(idCapacity, id + 1);
+        }
+        this.rootById = new int[idCapacity];
+        this.leafById = new int[idCapacity];
+        this.linearFormById = new LinearForm[idCapacity];
+        this.treeSizeById = new int[idCapacity];
+        Arrays.fill(rootById, -1);
+        Arrays.fill(leafById, -1);
+        for (Map.Entry<String, Integer> leaf : builder.leaves.entrySet()) {
+            leafById[builder.idOf(leaf.getKey())] = leaf.getValue();
+        }
+
+        // 统计：各公式展开后的节点数，以及被多个父节点或多个公式引用的节点数
+        long[] subtreeSizes = new long[size];
+        int[] parents = new int[size];
+        for (int i = 0; i < size; i++) {
+            long subtree = 1;
+            for (int child : children[i]) {
+                subtree += subtreeSizes[child];
+                parents[child]++;
+            }
+            subtreeSizes[i] = subtree;
+        }
+        long totalTreeNodes = 0;
+        for (Map.Entry<String, Integer> root : roots.entrySet()) {
+            int treeSize = (int) Math.min(Integer.MAX_VALUE, subtreeSizes[root.getValue()]);
+            int derivedId = builder.idOf(root.getKey());
+            rootById[derivedId] = root.getValue();
+            treeSizeById[derivedId] = treeSize;
+            totalTreeNodes += treeSize;
+            parents[root.getValue()]++;
+        }
+        this.treeNodeCount = (int) Math.min(Integer.MAX_VALUE, totalTreeNodes);
+        int shared = 0;
+        for (int i = 0; i < size; i++) {
+            if (parents[i] > 1 && ops[i] != CONST && ops[i] != METRIC) {
+                shared++;
+            }
+        }
+        this.sharedNodeCount = shared;
+
+        // 推导线性公式（子节点编号总小于父节点，按编号顺序即为自底向上）
+        LinearForm[] linear = new LinearForm[size];
+        for (int i = 0; i < size; i++) {
+            linear[i] = linearize(i, linear);
+        }
+        int linearRoots = 0;
+        for (Map.Entry<String, Integer> root : roots.entrySet()) {
+            LinearForm form = linear[root.getValue()];
+            if (form != null && !form.isConstant()) {
+                linearFormById[builder.idOf(root.getKey())] = form;
+                linearRoots++;
+            }
+        }
+        this.linearCount = linearRoots;
+    }
+
+    /**
+     * 节点的线性形式：加减、取负，以及与常量相乘、除以非零常量保持线性，其余运算返回null
+     */
+    private LinearForm linearize(int node, LinearForm[] linear) {
+        int[] operands = children[node];
+        switch (ops[node]) {
+            case CONST:
+                return LinearForm.constant(constants[node]);
+            case METRIC:
+                return LinearForm.metric(metricIdentifiers[node], metricIds[node]);
+            case ADD:
+            case SUB: {
+                LinearForm left = linear[operands[0]];
+                LinearForm right = linear[operands[1]];
+                if (left == null || right == null) {
+                    return null;
+                }
+                return left.plus(right, ops[node] == ADD ? 1.0 : -1.0);
+            }
+            case NEG:
+                return linear[operands[0]] != null ? linear[operands[0]].times(-1.0) : null;
+            case MUL: {
+                LinearForm left = linear[operands[0]];
+                LinearForm right = linear[operands[1]];
+                if (left == null || right == null) {
+                    return null;
+                }
+                if (left.isConstant()) {
+                    return right.times(left.getConstant());
+                }
+                return right.isConstant() ? left.times(right.getConstant()) : null;
+            }
+            case DIV: {
+                LinearForm dividend = linear[operands[0]];
+                LinearForm divisor = linear[operands[1]];
+                if (dividend == null || divisor == null || !divisor.isConstant() || divisor.getConstant() == 0.0) {
+                    return null;
+                }
+                return dividend.times(1.0 / divisor.getConstant());
+            }
+            default:
+                return null;
+        }
+    }
+
+    /**
+     * 编译所有派生指标公式，指标ID在本图内按出现顺序分配（用于不依赖符号表的场景）
+     * @param formulas 派生指标标识符 → 公式
+     */
+    public static SharedFormulaGraph build(Map<String, String> formulas) {
+        Map<String, Integer> localIds = new HashMap<>();
+        return build(formulas, identifier -> localIds.computeIfAbsent(identifier, key -> localIds.size()));
+    }
+
+    /**
+     * 编译所有派生指标公式，无法编译的公式记录在getUncompiled中，由调用方回退到FormulaEngine
+     * @param formulas 派生指标标识符 → 公式
+     * @param metricIds 指标标识符 → 指标ID（非负，同一标识符总是返回同一ID）
+     */
+    public static SharedFormulaGraph build(Map<String, String> formulas, ToIntFunction<String> metricIds) {
+        Builder builder = new Builder(metricIds);
+        for (Map.Entry<String, String> entry : formulas.entrySet()) {
+            builder.add(entry.getKey(), entry.getValue());
+        }
+        return new SharedFormulaGraph(builder);
+    }
+
+    /**
+     * 构建时为指标分配的ID，公式中未出现该指标时返回-1
+     */
+    public int metricIdOf(String identifier) {
+        Integer id = identifierIds.get(identifier);
+        return id != null ? id : -1;
+    }
+
+    /**
+     * 派生指标的根节点，公式未编译时返回-1
+     */
+    public int rootOf(int derivedId) {
+        return derivedId >= 0 && derivedId < rootById.length ? rootById[derivedId] : -1;
+    }
+
+    public int rootOf(String derivedIdentifier) {
+        Integer root = roots.get(derivedIdentifier);
+        return root != null ? root : -1;
+    }
+
+    /**
+     * 派生指标公式的线性形式，公式非线性、未编译或不引用任何指标时返回null
+     */
+    public LinearForm linearFormOf(int derivedId) {
+        return derivedId >= 0 && derivedId < linearFormById.length ? linearFormById[derivedId] : null;
+    }
+
+    public LinearForm linearFormOf(String derivedIdentifier) {
+        return linearFormOf(metricIdOf(derivedIdentifier));
+    }
+
+    public int getLinearCount() {
+        return linearCount;
+    }
+
+    /**
+     * 引用指定指标的叶子节点，没有公式引用该指标时返回-1
+     */
+    public int leafOf(int metricId) {
+        return metricId >= 0 && metricId < leafById.length ? leafById[metricId] : -1;
+    }
+
+    /**
+     * 派生指标公式展开为树后的节点数，公式未编译时返回0
+     */
+    public int treeSizeOf(int derivedId) {
+        return derivedId >= 0 && derivedId < treeSizeById.length ? treeSizeById[derivedId] : 0;
+    }
+
+    /**
+     * 合并后的节点数
+     */
+    public int getNodeCount() {
+        return ops.length;
+    }
+
+    /**
+     * 所有公式展开为树后的节点总数
+     */
+    public int getTreeNodeCount() {
+        return treeNodeCount;
+    }
+
+    /**
+     * 被多个父节点或多个公式共享的运算节点数
+     */
+    public int getSharedNodeCount() {
+        return sharedNodeCount;
+    }
+
+    public int getCompiledCount() {
+        return roots.size();
+    }
+
+    public List<String> getUncompiled() {
+        return uncompiled;
+    }
+
+    int opOf(int node) {
+        return ops[node];
+    }
+
+    int[] childrenOf(int node) {
+        return children[node];
+    }
+
+    double constantOf(int node) {
+        return constants[node];
+    }
+
+    int metricIdOfNode(int node) {
+        return metricIds[node];
+    }
+
+    /**
+     * 按结构合并节点的构建器：节点键为运算符 + 子节点编号（或常量值、指标标识符）
+     */
+    private static final class Builder {
+
+        private final ToIntFunction<String> metricIds;
+        private final Map<String, Integer> ids = new HashMap<>();
+        private final List<Integer> ops = new ArrayList<>();
+        private final List<int[]> children = new ArrayList<>();
+        private final List<Double> constants = new ArrayList<>();
+        private final List<String> metricIdentifiers = new ArrayList<>();
+        private final Map<String, Integer> nodesByKey = new HashMap<>();
+        private final Map<String, Integer> roots = new LinkedHashMap<>();
+        private final Map<String, Integer> leaves = new HashMap<>();
+        private final List<String> uncompiled = new ArrayList<>();
+
+        Builder(ToIntFunction<String> metricIds) {
+            this.metricIds = metricIds;
+        }
+
+        int idOf(String identifier) {
+            return ids.computeIfAbsent(identifier, metricIds::applyAsInt);
+        }
+
+        void add(String derivedIdentifier, String formula) {
+            if (formula == null || formula.trim().isEmpty()) {
+                uncompiled.add(derivedIdentifier);
+                return;
+            }
+            try {
+                roots.put(derivedIdentifier, new Parser(formula, this).parse());
+                idOf(derivedIdentifier);
+            } catch (IllegalArgumentException e) {
+                uncompiled.add(derivedIdentifier);
+            }
+        }
+
+        int constant(double value) {
+            return intern("C:" + Double.doubleToLongBits(value), CONST, NO_CHILDREN, value, null);
+        }
+
+        int metric(String identifier) {
+            int node = intern("M:" + identifier, METRIC, NO_CHILDREN, 0.0, identifier);
+            leaves.put(identifier, node);
+            idOf(identifier);
+            return node;
+        }
+
+        int operation(int op, int... operands) {
+            // 可交换运算的子节点排序后合并
+            if (op == ADD || op == MUL || op == MIN || op == MAX) {
+                operands = operands.clone();
+                Arrays.sort(operands);
+            }
+            return intern(op + ":" + Arrays.toString(operands), op, operands, 0.0, null);
+        }
+
+        private int intern(String key, int op, int[] operands, double constant, String identifier) {
+            Integer existing = nodesByKey.get(key);
+            if (existing != null) {
+                return existing;
+            }
+            int node = ops.size();
+            ops.add(op);
+            children.add(operands);
+            constants.add(constant);
+            metricIdentifiers.add(identifier);
+            nodesByKey.put(key, node);
+            return node;
+        }
+    }
+
+    /**
+     * 递归下降解析器，语法与FormulaEngine一致：
+     * expr := term (('+'|'-') term)*；term := power (('*'|'/') power)*；power := unary ('^' power)?；
+     * unary := '-' unary | primary；primary := 数字 | 指标标识符 | {指标标识符} | 函数(expr, ...) | (expr)
+     */
+    private static final class Parser {
+
+        private static final Pattern METRIC_PATTERN =
+            Pattern.compile("[\\w\\u4e00-\\u9fa5]+\\.[\\w\\u4e00-\\u9fa5]+\\.[\\w\\u4e00-\\u9fa5]+");
+        private static final Pattern NUMBER_PATTERN = Pattern.compile("\\d+(\\.\\d+)?([eE][+-]?\\d+)?|\\.\\d+");
+        private static final Pattern FUNCTION_PATTERN = Pattern.compile("[a-zA-Z]+");
+
+        private final String formula;
+        private final Builder builder;
+        private final Matcher matcher;
+        private int pos;
+
+        Parser(String formula, Builder builder) {
+            this.formula = formula;
+            this.builder = builder;
+            this.matcher = METRIC_PATTERN.matcher(formula);
+        }
+
+        int parse() {
+            int node = expression();
+            skipSpaces();
+            if (pos != formula.length()) {
+                throw error("多余的字符");
+            }
+            return node;
+        }
+
+        private int expression() {
+            int node = term();
+            while (true) {
+                if (accept('+')) {
+                    node = builder.operation(ADD, node, term());
+                } else if (accept('-')) {
+                    node = builder.operation(SUB, node, term());
+                } else {
+                    return node;
+                }
+            }
+        }
+
+        private int term() {
+            int node = power();
+            while (true) {
+                if (accept('*')) {
+                    node = builder.operation(MUL, node, power());
+                } else if (accept('/')) {
+                    node = builder.operation(DIV, node, power());
+                } else {
+                    return node;
+                }
+            }
+        }
+
+        private int power() {
+            int base = unary();
+            if (accept('^')) {
+                return builder.operation(POW, base, power());
+            }
+            return base;
+        }
+
+        private int unary() {
+            if (accept('-')) {
+                return builder.operation(NEG, unary());
+            }
+            return primary();
+        }
+
+        private int primary() {
+            skipSpaces();
+            if (accept('(')) {
+                int node = expression();
+                expect(')');
+                return node;
+            }
+            if (accept('{')) {
+                int node = metric();
+                expect('}');
+                return node;
+            }
+            matcher.region(pos, formula.length());
+            if (matcher.lookingAt()) {
+                return metric();
+            }
+            Matcher number = NUMBER_PATTERN.matcher(formula).region(pos, formula.length());
+            if (number.lookingAt()) {
+                pos = number.end();
+                return builder.constant(Double.parseDouble(number.group()));
+            }
+            Matcher function = FUNCTION_PATTERN.matcher(formula).region(pos, formula.length());
+            if (function.lookingAt()) {
+                pos = function.end();
+                return function(function.group());
+            }
+            throw error("无法识别的符号");
+        }
+
+        private int metric() {
+            skipSpaces();
+            matcher.region(pos, formula.length());
+            if (!matcher.lookingAt()) {
+                throw error("缺少指标标识符");
+            }
+            pos = matcher.end();
+            return builder.metric(matcher.group());
+        }
+
+        private int function(String name) {
+            expect('(');
+            List<Integer> args = new ArrayList<>();
+            args.add(expression());
+            while (accept(',')) {
+                args.add(expression());
+            }
+            expect(')');
+            int[] operands = args.stream().mapToInt(Integer::intValue).toArray();
+            switch (name) {
+                case "abs":
+                    return builder.operation(ABS, single(name, operands));
+                case "sqrt":
+                    return builder.operation(SQRT, single(name, operands));
+                case "log":
+                    return builder.operation(LOG, single(name, operands));
+                case "exp":
+                    return builder.operation(EXP, single(name, operands));
+                case "min":
+                case "max":
+                    if (operands.length < 2) {
+                        throw error(name + "函数需要至少2个参数");
+                    }
+                    return builder.operation(name.equals("min") ? MIN : MAX, operands);
+                default:
+                    throw error("不支持的函数: " + name);
+            }
+        }
+
+        private int single(String name, int[] operands) {
+            if (operands.length != 1) {
+                throw error(name + "函数需要1个参数");
+            }
+            return operands[0];
+        }
+
+        private boolean accept(char c) {
+            skipSpaces();
+            if (pos < formula.length() && formula.charAt(pos) == c) {
+                pos++;
+                return true;
+            }
+            return false;
+        }
+
+        private void expect(char c) {
+            if (!accept(c)) {
+                throw error("缺少 '" + c + "'");
+            }
+        }
+
+        private void skipSpaces() {
+            while (pos < formula.length() && Character.isWhitespace(formula.charAt(pos))) {
+                pos++;
+            }
+        }
+
+        private IllegalArgumentException error(String message) {
+            return new IllegalArgumentException(message + "（位置 " + pos + "）: " + formula);
+        }
+    }
+}
@@ -0,0 +1,110 @@
+package com.gridinsight.service;
+
+import com.gridinsight.service.timeseries.AlignedSeries;
+import com.gridinsight.service.timeseries.DownsampleMethod;
+import com.gridinsight.service.timeseries.FillPolicy;
+import com.gridinsight.service.timeseries.SeriesBuffer;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * 多指标对齐查询服务
+ * 并行读取各指标的（降采样）历史数据，再k路归并为共享时间戳的矩阵
+ */
+@Service
+public class AlignedHistoryService {
+
+    @Autowired
+    private TimeSeriesDataService timeSeriesDataService;
+
+    @Value("${gridinsight.timeseries.aligned.read-threads:4}")
+    private int readThreads = 4;
+
+    @Value("${gridinsight.timeseries.aligned.max-metrics:200}")
+    private int maxMetrics = 200;
+
+    private ExecutorService readers;
+
+    @PostConstruct
+    public void init() {
+        AtomicInteger threadIndex = new AtomicInteger();
+        readers = Executors.newFixedThreadPool(Math.max(1, readThreads), runnable -> {
+            Thread thread = new Thread(runnable, "aligned-history-reader-" + threadIndex.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    @PreDestroy
+    public void destroy() {
+        if (readers != null) {
+            readers.shutdownNow();
+        }
+    }
+
+    /**
+     * 查询时间对齐的多指标矩阵
+     * @param metricIdentifiers 指标标识符
+     * @param startMillis 开始时间（UTC毫秒）
+     * @param endMillis 结束时间（UTC毫秒）
+     * @param stepMillis 步长（毫秒），小于等于0时按原始时间戳对齐
+     * @param maxPoints 最大行数，小于等于0表示不限制
+     * @param fill 缺失值填充策略
+     */
+    public AlignedSeries queryAligned(List<String> metricIdentifiers, long startMillis, long endMillis,
+                                      long stepMillis, int maxPoints, FillPolicy fill) {
+        if (metricIdentifiers == null || metricIdentifiers.isEmpty()) {
+            throw new IllegalArgumentException("必须指定至少一个指标");
+        }
+        if (metricIdentifiers.size() > maxMetrics) {
+            throw new IllegalArgumentException("指标数量超过上限: " + maxMetrics);
+        }
+
+        List<SeriesBuffer> series = new ArrayList<>(metricIdentifiers.size());
+        if (metricIdentifiers.size() == 1 || readers == null) {
+            for (String metricIdentifier : metricIdentifiers) {
+                series.add(readSeries(metricIdentifier, startMillis, endMillis, stepMillis, maxPoints));
+            }
+        } else {
+            List<Future<SeriesBuffer>> futures = new ArrayList<>(metricIdentifiers.size());
+            for (String metricIdentifier : metricIdentifiers) {
+                futures.add(readers.submit(() -> readSeries(metricIdentifier, startMillis, endMillis, stepMillis, maxPoints)));
+            }
+            try {
+                for (Future<SeriesBuffer> future : futures) {
+                    series.add(future.get());
+                }
+            } catch (InterruptedException e) {
+                futures.forEach(future -> future.cancel(true));
+                Thread.currentThread().interrupt();
+                throw new IllegalStateException("对齐查询被中断", e);
+            } catch (ExecutionException e) {
+                futures.forEach(future -> future.cancel(true));
+                Throwable cause = e.getCause();
+                if (cause instanceof RuntimeException) {
+                    throw (RuntimeException) cause;
+                }
+                throw new IllegalStateException("读取历史数据失败: " + cause.getMessage(), cause);
+            }
+        }
+
+        return AlignedSeries.merge(metricIdentifiers, series, fill);
+    }
+
+    private SeriesBuffer readSeries(String metricIdentifier, long startMillis, long endMillis,
+                                    long stepMillis, int maxPoints) {
+        return timeSeriesDataService.getDownsampledHistory(metricIdentifier, startMillis, endMillis,
+                stepMillis, maxPoints, DownsampleMethod.AVG);
+    }
+}
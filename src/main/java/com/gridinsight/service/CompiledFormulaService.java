@@ -0,0 +1,133 @@
+package com.gridinsight.service;
+
+import com.gridinsight.domain.model.DerivedMetric;
+import com.gridinsight.domain.model.MetricValue;
+import com.gridinsight.domain.service.FormulaWave;
+import com.gridinsight.domain.service.SharedFormulaGraph;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 派生指标公式的共享子表达式计算
+ * 所有派生指标公式编译为一张合并了公共子表达式的计算图（SharedFormulaGraph），随注册表快照版本重建；
+ * 同一传播波次（一次指标更新事件的所有下游、一次查询或一次定时计算）内共用的子表达式只求值一次。
+ * 计算图以注册表的符号表ID索引，编译计算按ID直接读取依赖在存储中的最新值；
+ * 未能编译的公式返回null，由调用方回退到FormulaEngine
+ */
+@Service
+public class CompiledFormulaService {
+
+    @Autowired
+    private ExternalMetricConfigService metricConfigService;
+
+    @Autowired
+    private TimeSeriesDataService timeSeriesDataService;
+
+    // 是否启用共享子表达式计算，关闭时全部回退到FormulaEngine
+    @Value("${gridinsight.derived.shared-formulas:true}")
+    private boolean enabled = true;
+
+    private volatile long graphVersion = -1L;
+    private volatile SharedFormulaGraph graph = SharedFormulaGraph.build(new LinkedHashMap<>());
+
+    private final LongAdder waves = new LongAdder();
+    private final LongAdder rootsEvaluated = new LongAdder();
+    private final LongAdder nodesEvaluated = new LongAdder();
+    private final LongAdder nodesReused = new LongAdder();
+    private final LongAdder treeNodes = new LongAdder();
+
+    /**
+     * 开始一个传播波次，未启用时返回null
+     */
+    public FormulaWave newWave() {
+        if (!enabled) {
+            return null;
+        }
+        return new FormulaWave(getGraph(), timeSeriesDataService::getLatestValue);
+    }
+
+    /**
+     * 在波次内计算派生指标
+     * @param derivedId 派生指标在注册表符号表中的ID
+     * @return 计算结果；wave为null或公式未编译时返回null
+     */
+    public MetricValue evaluate(FormulaWave wave, int derivedId, DerivedMetric metric) {
+        if (wave == null) {
+            return null;
+        }
+        Double value = wave.evaluate(derivedId);
+        if (value == null) {
+            return null;
+        }
+        if (Double.isNaN(value) || Double.isInfinite(value)) {
+            return MetricValue.error(metric.getIdentifier(), "公式计算失败: 依赖缺失或计算结果无效");
+        }
+        return MetricValue.good(metric.getIdentifier(), value, metric.getUnit());
+    }
+
+    /**
+     * 结束波次，累计求值统计
+     */
+    public void complete(FormulaWave wave) {
+        if (wave == null || wave.getRootsEvaluated() == 0) {
+            return;
+        }
+        waves.increment();
+        rootsEvaluated.add(wave.getRootsEvaluated());
+        nodesEvaluated.add(wave.getNodesEvaluated());
+        nodesReused.add(wave.getNodesReused());
+        treeNodes.add(wave.getTreeNodes());
+    }
+
+    /**
+     * 当前注册表快照对应的计算图，快照版本变化时重新编译（不受共享开关影响）
+     */
+    public SharedFormulaGraph getGraph() {
+        MetricRegistrySnapshot registry = metricConfigService.getRegistrySnapshot();
+        if (graphVersion == registry.getVersion()) {
+            return graph;
+        }
+        synchronized (this) {
+            if (graphVersion != registry.getVersion()) {
+                Map<String, String> formulas = new LinkedHashMap<>();
+                for (Map.Entry<String, DerivedMetric> entry : registry.getDerivedMetrics().entrySet()) {
+                    formulas.put(entry.getKey(), entry.getValue().getFormula());
+                }
+                graph = SharedFormulaGraph.build(formulas, registry.getSymbols()::intern);
+                graphVersion = registry.getVersion();
+            }
+            return graph;
+        }
+    }
+
+    /**
+     * 获取共享子表达式统计
+     * 计算图节点数（合并后/展开为树）、共享节点数、编译情况，以及累计求值节点数和相比逐公式求值节省的节点数
+     */
+    public Map<String, Object> getStatistics() {
+        SharedFormulaGraph current = getGraph();
+        long evaluated = nodesEvaluated.sum();
+        long tree = treeNodes.sum();
+
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("enabled", enabled);
+        stats.put("graphNodes", current.getNodeCount());
+        stats.put("treeNodes", current.getTreeNodeCount());
+        stats.put("sharedNodes", current.getSharedNodeCount());
+        stats.put("compiledFormulas", current.getCompiledCount());
+        stats.put("uncompiledFormulas", current.getUncompiled());
+        stats.put("waves", waves.sum());
+        stats.put("formulasEvaluated", rootsEvaluated.sum());
+        stats.put("nodesEvaluated", evaluated);
+        stats.put("nodesReused", nodesReused.sum());
+        stats.put("nodesWithoutSharing", tree);
+        stats.put("nodesSaved", tree - evaluated);
+        stats.put("savedRatio", tree > 0 ? (double) (tree - evaluated) / tree : 0.0);
+        return stats;
+    }
+}
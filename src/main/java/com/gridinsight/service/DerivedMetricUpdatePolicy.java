@@ -0,0 +1,269 @@
+package com.gridinsight.service;
+
+import com.gridinsight.domain.model.DerivedMetric;
+import com.gridinsight.domain.model.DerivedMetricUpdateStrategy;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.util.Arrays;
+import java.util.EnumMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.LongSupplier;
+
+/**
+ * 派生指标更新策略的执行决策
+ * 每个派生指标按指标ID维护输入版本（依赖变化次数）和最近一次计算时的输入版本，据此决定何时重新计算：
+ * - DEPENDENCY_DRIVEN：依赖变化时立即重新计算
+ * - REALTIME：依赖变化时只推进输入版本，查询时版本不一致才计算，否则直接返回上次结果
+ * - SCHEDULED：按calculationInterval定时计算，到期时输入版本未变化则跳过
+ * - HYBRID：按窗口统计查询次数和依赖变化次数，查询不少于变化（乘以比例）时按依赖驱动，否则按实时计算
+ * 拉取模式（gridinsight.derived.propagation-mode=pull）下依赖变化只推进直接下游的输入版本，
+ * 除SCHEDULED外的所有派生指标都在查询时沿过期链路计算
+ * 决策只读写按ID下标的原子数组，不加锁；并发时偶尔多算一次或少记一次计数，不影响结果正确性
+ */
+@Service
+public class DerivedMetricUpdatePolicy {
+
+    @Autowired
+    private ExternalMetricConfigService metricConfigService;
+
+    // 派生指标传播模式：push（依赖变化时按更新策略推送计算）或pull（只标记过期，查询时计算）
+    @Value("${gridinsight.derived.propagation-mode:push}")
+    private String propagationMode = "push";
+
+    // HYBRID策略统计读写比例的窗口长度
+    @Value("${gridinsight.derived.hybrid-window-ms:60000}")
+    private long hybridWindowMs = 60000L;
+
+    // HYBRID策略：窗口内查询次数 >= 依赖变化次数 * 该比例时按依赖驱动预计算
+    @Value("${gridinsight.derived.hybrid-eager-read-ratio:1.0}")
+    private double hybridEagerReadRatio = 1.0;
+
+    // 按指标ID：输入版本、最近一次计算时的输入版本
+    private final MetricIdLongArray inputVersions = new MetricIdLongArray(256);
+    private final MetricIdLongArray computedVersions = new MetricIdLongArray(256);
+    // SCHEDULED：最近一次到期检查时间（epoch毫秒）
+    private final MetricIdLongArray lastScheduledMillis = new MetricIdLongArray(256);
+    // HYBRID：窗口内查询次数、依赖变化次数、窗口开始时间、当前是否按需计算（1：按需计算，0：预计算）
+    private final MetricIdLongArray windowReads = new MetricIdLongArray(256);
+    private final MetricIdLongArray windowWrites = new MetricIdLongArray(256);
+    private final MetricIdLongArray windowStartMillis = new MetricIdLongArray(256);
+    private final MetricIdLongArray hybridLazy = new MetricIdLongArray(256);
+
+    // HYBRID窗口使用的时钟（epoch毫秒）
+    private LongSupplier clock = System::currentTimeMillis;
+
+    // 定时计算指标ID，随注册表快照版本重建
+    private volatile long scheduledVersion = -1L;
+    private volatile int[] scheduledIds = new int[0];
+
+    private final LongAdder eagerRecomputes = new LongAdder();
+    private final LongAdder deferredChanges = new LongAdder();
+    private final LongAdder readRecomputes = new LongAdder();
+    private final LongAdder memoizedReads = new LongAdder();
+    private final LongAdder inputRefreshes = new LongAdder();
+    private final LongAdder scheduledRecomputes = new LongAdder();
+    private final LongAdder scheduledSkips = new LongAdder();
+
+    /**
+     * 派生指标的某个依赖已更新
+     * @return true 需要立即重新计算；false 只标记过期，由查询或定时任务计算
+     */
+    public boolean onInputChanged(DerivedMetric metric, int id) {
+        inputVersions.incrementAndGet(id);
+        if (metric.getUpdateStrategy() == DerivedMetricUpdateStrategy.HYBRID) {
+            rollHybridWindow(id, clock.getAsLong());
+            windowWrites.incrementAndGet(id);
+        }
+        boolean eager = isEager(metric, id);
+        if (eager) {
+            eagerRecomputes.increment();
+        } else {
+            deferredChanges.increment();
+        }
+        return eager;
+    }
+
+    /**
+     * 依赖变化时是否立即重新计算（不计入统计）
+     */
+    public boolean isEager(DerivedMetric metric, int id) {
+        if (isPullMode()) {
+            return false;
+        }
+        switch (metric.getUpdateStrategy()) {
+            case DEPENDENCY_DRIVEN:
+                return true;
+            case HYBRID:
+                return hybridLazy.get(id) == 0L;
+            default:
+                return false;
+        }
+    }
+
+    /**
+     * 替换HYBRID窗口使用的时钟（测试中显式推进窗口）
+     */
+    void setClock(LongSupplier clock) {
+        this.clock = clock;
+    }
+
+    /**
+     * 是否为拉取模式
+     */
+    public boolean isPullMode() {
+        return "pull".equalsIgnoreCase(propagationMode);
+    }
+
+    /**
+     * 查询派生指标前调用
+     * 推送模式下只有REALTIME和HYBRID指标会在查询时计算，拉取模式下除SCHEDULED外都在查询时计算；
+     * 其余指标直接读存储
+     * @return 需要计算时返回当前输入版本（计算成功后传给markComputed），不需要时返回-1
+     */
+    public long staleVersionForRead(DerivedMetric metric, int id) {
+        DerivedMetricUpdateStrategy strategy = metric.getUpdateStrategy();
+        if (isPullMode()) {
+            if (strategy == DerivedMetricUpdateStrategy.SCHEDULED) {
+                return -1L;
+            }
+        } else if (strategy == DerivedMetricUpdateStrategy.HYBRID) {
+            rollHybridWindow(id, clock.getAsLong());
+            windowReads.incrementAndGet(id);
+        } else if (strategy != DerivedMetricUpdateStrategy.REALTIME) {
+            return -1L;
+        }
+        long inputVersion = inputVersions.get(id);
+        if (inputVersion == computedVersions.get(id)) {
+            memoizedReads.increment();
+            return -1L;
+        }
+        readRecomputes.increment();
+        return inputVersion;
+    }
+
+    /**
+     * 推送模式下依赖驱动计算前检查派生输入：被标记过期、尚未在查询时计算的实时计算/混合指标需要先计算，
+     * 否则下游读取到的是它过期的存储值。不计入查询次数
+     * @return 需要计算时返回当前输入版本（计算成功后传给markComputed），不需要时返回-1
+     */
+    public long staleVersionForInput(DerivedMetric metric, int id) {
+        DerivedMetricUpdateStrategy strategy = metric.getUpdateStrategy();
+        if (strategy != DerivedMetricUpdateStrategy.REALTIME && strategy != DerivedMetricUpdateStrategy.HYBRID) {
+            return -1L;
+        }
+        long inputVersion = inputVersions.get(id);
+        if (inputVersion == computedVersions.get(id)) {
+            return -1L;
+        }
+        inputRefreshes.increment();
+        return inputVersion;
+    }
+
+    /**
+     * 当前输入版本，重新计算前读取
+     */
+    public long inputVersion(int id) {
+        return inputVersions.get(id);
+    }
+
+    /**
+     * 派生指标已按指定输入版本计算并存储
+     */
+    public void markComputed(int id, long inputVersion) {
+        if (inputVersion > computedVersions.get(id)) {
+            computedVersions.set(id, inputVersion);
+        }
+    }
+
+    /**
+     * 到期且依赖已变化的定时计算指标ID；到期但依赖未变化的指标跳过本次计算
+     */
+    public int[] dueScheduledIds(MetricRegistrySnapshot registry, long now) {
+        int[] ids = scheduledIds(registry);
+        int[] due = new int[ids.length];
+        int count = 0;
+        for (int id : ids) {
+            DerivedMetric metric = (DerivedMetric) registry.getMetric(id);
+            int interval = metric.getCalculationInterval() != null && metric.getCalculationInterval() > 0
+                ? metric.getCalculationInterval() : 300;
+            long lastScheduled = lastScheduledMillis.get(id);
+            if (lastScheduled != 0L && lastScheduled + interval * 1000L > now) {
+                continue;
+            }
+            lastScheduledMillis.set(id, now);
+            if (inputVersions.get(id) == computedVersions.get(id)) {
+                scheduledSkips.increment();
+                continue;
+            }
+            scheduledRecomputes.increment();
+            due[count++] = id;
+        }
+        return count == due.length ? due : Arrays.copyOf(due, count);
+    }
+
+    private int[] scheduledIds(MetricRegistrySnapshot registry) {
+        if (registry.getVersion() != scheduledVersion) {
+            scheduledIds = registry.getDerivedMetrics().entrySet().stream()
+                .filter(entry -> entry.getValue().getUpdateStrategy() == DerivedMetricUpdateStrategy.SCHEDULED)
+                .mapToInt(entry -> registry.idOf(entry.getKey()))
+                .toArray();
+            scheduledVersion = registry.getVersion();
+        }
+        return scheduledIds;
+    }
+
+    /**
+     * HYBRID窗口到期时按上一窗口的读写比例切换模式并清零计数；窗口内没有依赖变化时保持原模式
+     */
+    private void rollHybridWindow(int id, long now) {
+        long windowStart = windowStartMillis.get(id);
+        if (now - windowStart < hybridWindowMs) {
+            return;
+        }
+        windowStartMillis.set(id, now);
+        long writes = windowWrites.get(id);
+        long reads = windowReads.get(id);
+        windowWrites.set(id, 0L);
+        windowReads.set(id, 0L);
+        if (writes > 0) {
+            hybridLazy.set(id, reads >= writes * hybridEagerReadRatio ? 0L : 1L);
+        }
+    }
+
+    /**
+     * 策略执行统计：各策略指标数、HYBRID当前按需计算的指标数、各类计算和跳过次数
+     */
+    public Map<String, Object> getStatistics() {
+        MetricRegistrySnapshot registry = metricConfigService.getRegistrySnapshot();
+        Map<DerivedMetricUpdateStrategy, Integer> strategies = new EnumMap<>(DerivedMetricUpdateStrategy.class);
+        int hybridLazyCount = 0;
+        for (Map.Entry<String, DerivedMetric> entry : registry.getDerivedMetrics().entrySet()) {
+            DerivedMetricUpdateStrategy strategy = entry.getValue().getUpdateStrategy();
+            strategies.merge(strategy, 1, Integer::sum);
+            if (strategy == DerivedMetricUpdateStrategy.HYBRID && hybridLazy.get(registry.idOf(entry.getKey())) != 0L) {
+                hybridLazyCount++;
+            }
+        }
+        Map<String, Integer> strategyCounts = new LinkedHashMap<>();
+        for (DerivedMetricUpdateStrategy strategy : DerivedMetricUpdateStrategy.values()) {
+            strategyCounts.put(strategy.name(), strategies.getOrDefault(strategy, 0));
+        }
+
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("propagationMode", isPullMode() ? "pull" : "push");
+        stats.put("strategies", strategyCounts);
+        stats.put("hybridLazyMetrics", hybridLazyCount);
+        stats.put("eagerRecomputes", eagerRecomputes.sum());
+        stats.put("deferredChanges", deferredChanges.sum());
+        stats.put("readRecomputes", readRecomputes.sum());
+        stats.put("memoizedReads", memoizedReads.sum());
+        stats.put("inputRefreshes", inputRefreshes.sum());
+        stats.put("scheduledRecomputes", scheduledRecomputes.sum());
+        stats.put("scheduledSkips", scheduledSkips.sum());
+        return stats;
+    }
+}
@@ -2,7 +2,12 @@ package com.gridinsight.service;
 
 import com.gridinsight.domain.event.MetricUpdateEvent;
 import com.gridinsight.domain.model.*;
+import com.gridinsight.domain.service.FormulaParser;
+import com.gridinsight.domain.service.FormulaWave;
 import com.gridinsight.domain.service.MetricCalculationService;
+import com.gridinsight.service.jfr.FormulaEvaluateEvent;
+import com.gridinsight.service.jfr.PropagationWaveEvent;
+import com.gridinsight.service.timeseries.TimeRanges;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.context.ApplicationEventPublisher;
 import org.springframework.scheduling.annotation.Async;
@@ -10,7 +15,6 @@ import org.springframework.stereotype.Service;
 
 import java.time.LocalDateTime;
 import java.util.*;
-import java.util.concurrent.ConcurrentHashMap;
 
 /**
  * 事件驱动的指标更新服务
@@ -30,74 +34,117 @@ public class EventDrivenMetricUpdateService {
     
     @Autowired
     private TimeSeriesDataService timeSeriesDataService;
-
-    // 指标依赖关系映射：指标标识符 -> 依赖它的派生指标列表
-    private final Map<String, Set<String>> dependencyMap = new ConcurrentHashMap<>();
     
-
-    /**
-     * 应用启动时初始化依赖关系映射
-     */
-    @javax.annotation.PostConstruct
-    public void init() {
-        // 延迟初始化，确保所有指标都已加载
-        new Thread(() -> {
-            try {
-                Thread.sleep(2000); // 等待指标配置加载完成
-                initializeDependencyMap();
-            } catch (InterruptedException e) {
-                Thread.currentThread().interrupt();
-            }
-        }).start();
-    }
+    @Autowired
+    private PropagationLatencyTracker latencyTracker;
+    
+    @Autowired
+    private GridInsightMeters meters;
+    
+    @Autowired
+    private DerivedMetricUpdatePolicy updatePolicy;
+    
+    @Autowired
+    private CompiledFormulaService compiledFormulas;
+    
+    @Autowired
+    private IncrementalFormulaService incrementalFormulas;
+    
+    @Autowired
+    private MetricEventPublisher metricEventPublisher;
 
     /**
      * 初始化依赖关系映射
+     * 依赖关系已由注册表快照按指标ID维护，随配置重新加载自动更新；保留此方法以兼容原有调用
      */
     public void initializeDependencyMap() {
-        dependencyMap.clear();
-        
-        // 构建依赖关系映射
-        Map<String, DerivedMetric> derivedMetrics = metricConfigService.getAllDerivedMetrics();
-        
-        for (DerivedMetric derivedMetric : derivedMetrics.values()) {
-            String derivedIdentifier = derivedMetric.getIdentifier();
-            
-            // 遍历派生指标的依赖
-            for (Metric dependency : derivedMetric.getDependencies()) {
-                String depIdentifier = dependency.getIdentifier();
-                
-                // 将派生指标添加到依赖指标的依赖者列表中
-                dependencyMap.computeIfAbsent(depIdentifier, k -> ConcurrentHashMap.newKeySet())
-                            .add(derivedIdentifier);
-            }
-        }
-        
-        // 依赖关系映射初始化完成
+        // 无需处理
     }
 
     /**
      * 发布指标更新事件
      */
     public void publishMetricUpdateEvent(String metricIdentifier, Object metricValue, String eventSource) {
-        Metric metric = metricConfigService.getMetric(metricIdentifier);
+        publishMetricUpdateEvent(metricIdentifier, metricValue, eventSource, System.nanoTime(), 0);
+    }
+
+    /**
+     * 发布指标更新事件，携带源头采集时间和依赖深度用于传播延迟统计
+     * @param sourceTimeNanos 源头基础指标采集完成时间（System.nanoTime）
+     * @param depth 依赖深度（基础指标为0）
+     */
+    public void publishMetricUpdateEvent(String metricIdentifier, Object metricValue, String eventSource,
+                                         long sourceTimeNanos, int depth) {
+        publishMetricUpdateEvent(metricIdentifier, metricValue, eventSource, TimeRanges.nowEpochMillis(),
+                                 sourceTimeNanos, depth);
+    }
+
+    /**
+     * 发布指标更新事件，携带本次写入的样本时间戳；事件在线程池中可能乱序处理，增量计算按样本时间忽略旧事件
+     * @param sampleTimeMillis 本次更新写入存储的样本时间戳
+     */
+    public void publishMetricUpdateEvent(String metricIdentifier, Object metricValue, String eventSource,
+                                         long sampleTimeMillis, long sourceTimeNanos, int depth) {
+        MetricRegistrySnapshot registry = metricConfigService.getRegistrySnapshot();
+        int metricId = registry.idOf(metricIdentifier);
+        publishMetricUpdateEvent(metricId, registry.getMetric(metricId), metricValue, eventSource,
+                                 sampleTimeMillis, sourceTimeNanos, depth);
+    }
+
+    /**
+     * 按指标ID发布数值更新事件（调度和传播路径使用，不做标识符查找，数值不装箱）
+     * @param metricId 指标在注册表符号表中的ID
+     */
+    public void publishMetricUpdateEvent(int metricId, double metricValue, String eventSource,
+                                         long sampleTimeMillis, long sourceTimeNanos, int depth) {
+        publishMetricUpdateEvent(metricId, metricConfigService.getRegistrySnapshot().getMetric(metricId),
+                                 metricValue, eventSource, sampleTimeMillis, sourceTimeNanos, depth);
+    }
+
+    private void publishMetricUpdateEvent(int metricId, Metric metric, Object metricValue, String eventSource,
+                                          long sampleTimeMillis, long sourceTimeNanos, int depth) {
         if (metric == null) {
             // 指标不存在，跳过处理
             return;
         }
         
-        String metricType = metric instanceof BasicMetric ? "BASIC" : "DERIVED";
-        
-        MetricUpdateEvent event = new MetricUpdateEvent(
-            metricIdentifier, 
-            metricType, 
+        publish(new MetricUpdateEvent(
+            metricId,
+            metric.getIdentifier(), 
+            metricTypeOf(metric), 
             metricValue, 
             LocalDateTime.now(), 
-            eventSource
-        );
+            eventSource,
+            sampleTimeMillis,
+            sourceTimeNanos,
+            depth
+        ));
+    }
+
+    private void publishMetricUpdateEvent(int metricId, Metric metric, double metricValue, String eventSource,
+                                          long sampleTimeMillis, long sourceTimeNanos, int depth) {
+        if (metric == null) {
+            // 指标不存在，跳过处理
+            return;
+        }
         
-        // 发布指标更新事件
-        eventPublisher.publishEvent(event);
+        publish(new MetricUpdateEvent(metricId, metric.getIdentifier(), metricTypeOf(metric), metricValue,
+                                      eventSource, sampleTimeMillis, sourceTimeNanos, depth));
+    }
+
+    private static String metricTypeOf(Metric metric) {
+        return metric instanceof BasicMetric ? "BASIC" : "DERIVED";
+    }
+
+    private void publish(MetricUpdateEvent event) {
+        // 发布指标更新事件；异步执行器拒绝时不计入待处理事件
+        meters.eventPublished();
+        try {
+            eventPublisher.publishEvent(event);
+        } catch (RuntimeException e) {
+            meters.eventHandled();
+            throw e;
+        }
     }
 
     /**
@@ -106,53 +153,322 @@ public class EventDrivenMetricUpdateService {
     @Async
     public void handleMetricUpdateEvent(MetricUpdateEvent event) {
         String metricIdentifier = event.getMetricIdentifier();
+        long queueWaitNanos = System.nanoTime() - event.getPublishTimeNanos();
+        latencyTracker.recordQueueWait(event.getDepth(), event.getPublishTimeNanos());
+        PropagationWaveEvent waveEvent = new PropagationWaveEvent();
+        waveEvent.begin();
+        int dependentCount = 0;
+        // 同一事件的所有下游共用一个计算波次，公共子表达式只求值一次
+        FormulaWave wave = compiledFormulas.newWave();
         
         // 防止循环依赖 - 使用简单的冷却机制
         // 注意：这里简化了循环依赖检测，实际项目中可以使用更复杂的算法
         
         try {
-            // 获取依赖此指标的所有派生指标
-            Set<String> dependentMetrics = dependencyMap.get(metricIdentifier);
+            // 获取依赖此指标的所有派生指标（事件未携带ID时只在入口做一次标识符到ID的转换）
+            MetricRegistrySnapshot registry = metricConfigService.getRegistrySnapshot();
+            int metricId = event.getMetricId() >= 0 ? event.getMetricId() : registry.idOf(metricIdentifier);
+            int[] dependentIds = registry.getDependentIds(metricId);
+            dependentCount = dependentIds.length;
             
-            if (dependentMetrics != null && !dependentMetrics.isEmpty()) {
-                // 触发依赖指标更新
-                
-                // 异步更新所有依赖的派生指标
-                for (String dependentIdentifier : dependentMetrics) {
-                    updateDerivedMetricIfNeeded(dependentIdentifier, event);
+            // 按各派生指标的更新策略重新计算或标记过期
+            propagateToDependents(registry, dependentIds, metricId, event, wave, null);
+            
+        } catch (Exception e) {
+            // 处理指标更新事件异常，记录日志但不中断流程
+        } finally {
+            compiledFormulas.complete(wave);
+            meters.eventHandled();
+            waveEvent.complete(metricIdentifier, event.getDepth(), dependentCount, queueWaitNanos);
+        }
+    }
+
+    /**
+     * 依赖已变化的派生指标：依赖驱动的立即重新计算；其余只标记过期。
+     * 推送模式下实时计算/混合策略的指标被标记过期时不会发布更新事件，因此继续向其下游传播；
+     * 拉取模式下只标记直接下游，更深的链路在查询时逐级检查；
+     * 定时计算指标的下游在定时计算完成并发布事件后更新
+     * @param triggerId 触发事件的指标ID
+     * @param visited 已传播过的派生指标ID，只在经过被标记过期的指标时创建
+     */
+    private void propagateToDependents(MetricRegistrySnapshot registry, int[] dependentIds, int triggerId,
+                                       MetricUpdateEvent event, FormulaWave wave, BitSet visited) {
+        for (int dependentId : dependentIds) {
+            Metric dependent = registry.getMetric(dependentId);
+            if (!(dependent instanceof DerivedMetric)) {
+                continue;
+            }
+            if (visited != null) {
+                if (visited.get(dependentId)) {
+                    continue;
                 }
-            } else {
-                // 没有依赖的派生指标
+                visited.set(dependentId);
+            }
+            DerivedMetric derived = (DerivedMetric) dependent;
+            if (updatePolicy.onInputChanged(derived, dependentId)) {
+                updateDerivedMetricIfNeeded(registry, dependentId, derived, triggerId, event, wave);
+            } else if (!updatePolicy.isPullMode()
+                       && derived.getUpdateStrategy() != DerivedMetricUpdateStrategy.SCHEDULED) {
+                propagateToDependents(registry, registry.getDependentIds(dependentId), triggerId, event, wave,
+                                      visited != null ? visited : new BitSet());
+            }
+        }
+    }
+
+    /**
+     * 查询派生指标前调用：实时计算/混合策略的指标在依赖变化后首次查询时计算并存储，
+     * 依赖未再变化时直接使用上次存储的结果。
+     * 计算结果在返回前已写入最新值缓存并推进版本号，调用方随后读取的值和ETag即为本次计算的结果
+     */
+    public void refreshIfStale(String metricIdentifier) {
+        MetricRegistrySnapshot registry = metricConfigService.getRegistrySnapshot();
+        int id = registry.idOf(metricIdentifier);
+        Metric metric = registry.getMetric(id);
+        if (!(metric instanceof DerivedMetric)) {
+            return;
+        }
+        if (updatePolicy.isPullMode()) {
+            FormulaWave wave = compiledFormulas.newWave();
+            try {
+                refreshDirtyChain(registry, id, wave, new BitSet());
+            } finally {
+                compiledFormulas.complete(wave);
+            }
+            return;
+        }
+        long inputVersion = updatePolicy.staleVersionForRead((DerivedMetric) metric, id);
+        if (inputVersion >= 0) {
+            double oldValue = timeSeriesDataService.getLatestValue(id);
+            MetricValue value = computeAndStore(registry, id, inputVersion);
+            if (value != null && value.isValid()) {
+                publishRecomputedValue(metric, oldValue, value.getValue());
+            }
+        }
+    }
+
+    /**
+     * 拉取模式：先刷新过期的派生依赖，再按输入版本判断自身是否需要重新计算。
+     * 只计算被查询指标上游的过期链路，本次刚计算的上游值经波次直接传给下一级，其余依赖读取存储中的最新值；
+     * 结果变化时标记直接下游过期，结果未变化时下游保持有效
+     */
+    private void refreshDirtyChain(MetricRegistrySnapshot registry, int id, FormulaWave wave, BitSet visited) {
+        if (visited.get(id)) {
+            return;
+        }
+        visited.set(id);
+        DerivedMetric metric = (DerivedMetric) registry.getMetric(id);
+        for (int dependencyId : registry.getDependencyIds(id)) {
+            if (registry.getMetric(dependencyId) instanceof DerivedMetric) {
+                refreshDirtyChain(registry, dependencyId, wave, visited);
+            }
+        }
+        
+        long inputVersion = updatePolicy.staleVersionForRead(metric, id);
+        if (inputVersion < 0) {
+            return;
+        }
+        String identifier = metric.getIdentifier();
+        try {
+            long calculationStart = System.nanoTime();
+            MetricValue value = compiledFormulas.evaluate(wave, id, metric);
+            if (value == null) {
+                Map<String, MetricValue> inputValues = timeSeriesDataService.getLatestMetricValues(
+                    FormulaParser.extractMetricIdentifiers(metric.getFormula()));
+                value = metricCalculationService.calculateDerivedMetric(identifier, inputValues);
+            }
+            meters.recordFormulaEvaluation(System.nanoTime() - calculationStart);
+            if (!value.isValid()) {
+                return;
+            }
+            double oldValue = timeSeriesDataService.getLatestValue(id);
+            long storeStart = System.nanoTime();
+            timeSeriesDataService.storeSample(id, TimeRanges.nowEpochMillis(), value.getValue());
+            meters.recordStore(System.nanoTime() - storeStart);
+            updatePolicy.markComputed(id, inputVersion);
+            if (wave != null) {
+                wave.metricStored(id, value.getValue());
             }
             
+            if (Double.compare(oldValue, value.getValue()) != 0) {
+                publishRecomputedValue(metric, oldValue, value.getValue());
+                for (int dependentId : registry.getDependentIds(id)) {
+                    Metric dependent = registry.getMetric(dependentId);
+                    if (dependent instanceof DerivedMetric) {
+                        updatePolicy.onInputChanged((DerivedMetric) dependent, dependentId);
+                    }
+                }
+            }
         } catch (Exception e) {
-            // 处理指标更新事件异常，记录日志但不中断流程
+            // 计算异常时保留上次结果，下次查询重试
         }
     }
 
     /**
-     * 更新派生指标（如果需要）
+     * 批量查询前调用
+     */
+    public void refreshIfStale(Collection<String> metricIdentifiers) {
+        for (String metricIdentifier : metricIdentifiers) {
+            refreshIfStale(metricIdentifier);
+        }
+    }
+
+    /**
+     * 定时计算指标到期：重新计算、存储并发布更新事件，触发下游指标
      */
     @Async
-    private void updateDerivedMetricIfNeeded(String derivedIdentifier, MetricUpdateEvent triggerEvent) {
+    public void recomputeScheduled(String derivedIdentifier) {
+        MetricRegistrySnapshot registry = metricConfigService.getRegistrySnapshot();
+        int id = registry.idOf(derivedIdentifier);
+        long sourceTimeNanos = System.nanoTime();
+        MetricValue value = computeAndStore(registry, id, updatePolicy.inputVersion(id));
+        if (value != null && value.isValid()) {
+            publishMetricUpdateEvent(id, registry.getMetric(id), (double) value.getValue(), "SCHEDULED_UPDATE",
+                                     TimeRanges.nowEpochMillis(), sourceTimeNanos, 0);
+        }
+    }
+
+    /**
+     * 计算派生指标并存储，成功时记录已计算的输入版本
+     * @return 计算结果，异常时返回null
+     */
+    private MetricValue computeAndStore(MetricRegistrySnapshot registry, int id, long inputVersion) {
+        FormulaWave wave = compiledFormulas.newWave();
         try {
-            Metric metric = metricConfigService.getMetric(derivedIdentifier);
-            if (!(metric instanceof DerivedMetric)) {
-                return;
+            refreshStaleInputs(registry, id, wave, new BitSet());
+            long calculationStart = System.nanoTime();
+            MetricValue value = calculate(wave, registry, id, MetricSymbolTable.UNKNOWN, null);
+            meters.recordFormulaEvaluation(System.nanoTime() - calculationStart);
+            if (value.isValid()) {
+                long storeStart = System.nanoTime();
+                timeSeriesDataService.storeSample(id, TimeRanges.nowEpochMillis(), value.getValue());
+                meters.recordStore(System.nanoTime() - storeStart);
+                updatePolicy.markComputed(id, inputVersion);
+            }
+            return value;
+        } catch (Exception e) {
+            // 计算异常时保留上次结果
+            return null;
+        } finally {
+            compiledFormulas.complete(wave);
+        }
+    }
+
+    /**
+     * 推送模式下重新计算派生指标前调用：输入中被标记过期的实时计算/混合（按需）指标先沿过期链路计算并存储，
+     * 避免按过期的存储值计算后被记为已计算
+     * @param visited 已检查过的派生指标ID
+     */
+    private void refreshStaleInputs(MetricRegistrySnapshot registry, int id, FormulaWave wave, BitSet visited) {
+        for (int dependencyId : registry.getDependencyIds(id)) {
+            Metric input = registry.getMetric(dependencyId);
+            if (!(input instanceof DerivedMetric) || visited.get(dependencyId)) {
+                continue;
             }
+            visited.set(dependencyId);
+            long inputVersion = updatePolicy.staleVersionForInput((DerivedMetric) input, dependencyId);
+            if (inputVersion < 0) {
+                continue;
+            }
+            refreshStaleInputs(registry, dependencyId, wave, visited);
+            try {
+                long calculationStart = System.nanoTime();
+                MetricValue value = calculate(wave, registry, dependencyId, MetricSymbolTable.UNKNOWN, null);
+                meters.recordFormulaEvaluation(System.nanoTime() - calculationStart);
+                if (value.isValid()) {
+                    double oldValue = timeSeriesDataService.getLatestValue(dependencyId);
+                    long storeStart = System.nanoTime();
+                    timeSeriesDataService.storeSample(dependencyId, TimeRanges.nowEpochMillis(), value.getValue());
+                    meters.recordStore(System.nanoTime() - storeStart);
+                    updatePolicy.markComputed(dependencyId, inputVersion);
+                    if (wave != null) {
+                        wave.metricStored(dependencyId, value.getValue());
+                    }
+                    publishRecomputedValue(input, oldValue, value.getValue());
+                }
+            } catch (Exception e) {
+                // 计算异常时保留上次结果，下次查询重试
+            }
+        }
+    }
+
+    /**
+     * 查询或下游计算触发的重新计算不发布指标更新事件（下游已被标记过期），
+     * 结果变化时发布值变化事件，使订阅该派生指标的连接收到新值
+     */
+    private void publishRecomputedValue(Metric metric, double oldValue, double newValue) {
+        if (Double.isNaN(oldValue)) {
+            metricEventPublisher.publishFirstValue(metric.getIdentifier(), metric.getUuid(), newValue);
+        } else if (Double.compare(oldValue, newValue) != 0) {
+            metricEventPublisher.publishValueChanged(metric.getIdentifier(), metric.getUuid(), oldValue, newValue);
+        }
+    }
+
+    /**
+     * 计算派生指标：线性公式按触发输入的变化增量修正；其余在波次内按共享计算图求值，公式未编译时回退到FormulaEngine
+     * @param derivedId 派生指标ID，指标从注册表快照按ID取得
+     * @param triggerId 触发重新计算的输入指标ID，不是由输入更新触发时为MetricSymbolTable.UNKNOWN
+     * @param triggerEvent 触发重新计算的输入更新事件（携带输入的新值），不是由输入更新触发时为null
+     */
+    private MetricValue calculate(FormulaWave wave, MetricRegistrySnapshot registry, int derivedId, int triggerId,
+                                  MetricUpdateEvent triggerEvent) {
+        Metric metric = registry.getMetric(derivedId);
+        if (metric instanceof DerivedMetric) {
+            MetricValue value = null;
+            if (triggerEvent != null && triggerEvent.hasNumericValue()) {
+                value = incrementalFormulas.applyInputChange((DerivedMetric) metric, derivedId, triggerId,
+                    triggerEvent.getNumericValue(), triggerEvent.getSampleTimeMillis());
+            }
+            if (value == null) {
+                value = compiledFormulas.evaluate(wave, derivedId, (DerivedMetric) metric);
+            }
+            if (value != null) {
+                return value;
+            }
+        }
+        return metricCalculationService.calculateMetric(registry.getSymbols().nameOf(derivedId));
+    }
+
+    /**
+     * 更新派生指标（如果需要）
+     */
+    @Async
+    private void updateDerivedMetricIfNeeded(MetricRegistrySnapshot registry, int derivedId, DerivedMetric metric,
+                                             int triggerId, MetricUpdateEvent triggerEvent, FormulaWave wave) {
+        try {
+            String derivedIdentifier = metric.getIdentifier();
+            
+            // 计算前读取输入版本，计算期间依赖再次变化时版本不一致，下次查询仍会重新计算
+            long inputVersion = updatePolicy.inputVersion(derivedId);
             
-            // 现在所有派生指标都使用事件驱动机制
-            // 开始更新派生指标
+            // 途经的实时计算/混合指标只被标记过期，先计算它们，再按其新值计算
+            refreshStaleInputs(registry, derivedId, wave, new BitSet());
             
             // 计算派生指标值
-            MetricValue value = metricCalculationService.calculateMetric(derivedIdentifier);
+            FormulaEvaluateEvent evaluateEvent = new FormulaEvaluateEvent();
+            evaluateEvent.begin();
+            long calculationStart = System.nanoTime();
+            MetricValue value = calculate(wave, registry, derivedId, triggerId, triggerEvent);
+            meters.recordFormulaEvaluation(System.nanoTime() - calculationStart);
+            evaluateEvent.complete(derivedIdentifier, triggerEvent.getDepth() + 1, value.isValid());
             
             if (value.isValid()) {
                 // 存储到时序数据库
-                timeSeriesDataService.storeMetricValue(derivedIdentifier, value, LocalDateTime.now());
+                long sampleTime = TimeRanges.nowEpochMillis();
+                long storeStart = System.nanoTime();
+                timeSeriesDataService.storeSample(derivedId, sampleTime, value.getValue());
+                meters.recordStore(System.nanoTime() - storeStart);
+                updatePolicy.markComputed(derivedId, inputVersion);
+                if (wave != null) {
+                    wave.metricStored(derivedId, value.getValue());
+                }
+                
+                // 源头采集时间沿依赖链传递
+                int depth = triggerEvent.getDepth() + 1;
+                latencyTracker.recordStore(derivedId, depth, triggerEvent.getSourceTimeNanos());
                 
                 // 发布派生指标更新事件，触发下一级依赖
-                publishMetricUpdateEvent(derivedIdentifier, value.getValue(), "DERIVED_UPDATE");
+                publishMetricUpdateEvent(derivedId, metric, (double) value.getValue(), "DERIVED_UPDATE", sampleTime,
+                                         triggerEvent.getSourceTimeNanos(), depth);
                 
                 // 派生指标更新成功
             } else {
@@ -168,28 +484,46 @@ public class EventDrivenMetricUpdateService {
      * 获取指标依赖关系
      */
     public Map<String, Set<String>> getDependencyMap() {
-        return new HashMap<>(dependencyMap);
+        MetricRegistrySnapshot registry = metricConfigService.getRegistrySnapshot();
+        MetricSymbolTable symbols = registry.getSymbols();
+        Map<String, Set<String>> dependencyMap = new HashMap<>();
+        for (int id = 0; id < symbols.size(); id++) {
+            int[] dependents = registry.getDependentIds(id);
+            if (dependents.length > 0) {
+                dependencyMap.put(symbols.nameOf(id), toIdentifiers(symbols, dependents));
+            }
+        }
+        return dependencyMap;
     }
 
     /**
      * 获取依赖指定指标的所有派生指标
      */
     public Set<String> getDependentMetrics(String metricIdentifier) {
-        return new HashSet<>(dependencyMap.getOrDefault(metricIdentifier, Collections.emptySet()));
+        MetricRegistrySnapshot registry = metricConfigService.getRegistrySnapshot();
+        return toIdentifiers(registry.getSymbols(), registry.getDependentIds(registry.idOf(metricIdentifier)));
+    }
+
+    private Set<String> toIdentifiers(MetricSymbolTable symbols, int[] ids) {
+        Set<String> identifiers = new HashSet<>();
+        for (int id : ids) {
+            identifiers.add(symbols.nameOf(id));
+        }
+        return identifiers;
     }
 
     /**
      * 检查是否存在循环依赖
      */
     public boolean hasCircularDependency() {
-        Set<String> visited = new HashSet<>();
-        Set<String> recursionStack = new HashSet<>();
+        MetricRegistrySnapshot registry = metricConfigService.getRegistrySnapshot();
+        int idCount = registry.getSymbols().size();
+        // 0：未访问，1：在递归栈中，2：已完成
+        byte[] state = new byte[idCount];
         
-        for (String metric : dependencyMap.keySet()) {
-            if (!visited.contains(metric)) {
-                if (hasCircularDependencyDFS(metric, visited, recursionStack)) {
-                    return true;
-                }
+        for (int id = 0; id < idCount; id++) {
+            if (state[id] == 0 && hasCircularDependencyDFS(registry, id, state)) {
+                return true;
             }
         }
         
@@ -199,24 +533,22 @@ public class EventDrivenMetricUpdateService {
     /**
      * 深度优先搜索检查循环依赖
      */
-    private boolean hasCircularDependencyDFS(String metric, Set<String> visited, Set<String> recursionStack) {
-        visited.add(metric);
-        recursionStack.add(metric);
+    private boolean hasCircularDependencyDFS(MetricRegistrySnapshot registry, int id, byte[] state) {
+        state[id] = 1;
         
-        Set<String> dependents = dependencyMap.get(metric);
-        if (dependents != null) {
-            for (String dependent : dependents) {
-                if (!visited.contains(dependent)) {
-                    if (hasCircularDependencyDFS(dependent, visited, recursionStack)) {
-                        return true;
-                    }
-                } else if (recursionStack.contains(dependent)) {
-                    return true; // 发现循环依赖
-                }
+        for (int dependent : registry.getDependentIds(id)) {
+            if (dependent >= state.length) {
+                continue;
+            }
+            if (state[dependent] == 1) {
+                return true; // 发现循环依赖
+            }
+            if (state[dependent] == 0 && hasCircularDependencyDFS(registry, dependent, state)) {
+                return true;
             }
         }
         
-        recursionStack.remove(metric);
+        state[id] = 2;
         return false;
     }
 
@@ -225,26 +557,28 @@ public class EventDrivenMetricUpdateService {
      */
     public List<String> getDependencyChain(String metricIdentifier) {
         List<String> chain = new ArrayList<>();
-        Set<String> visited = new HashSet<>();
+        MetricRegistrySnapshot registry = metricConfigService.getRegistrySnapshot();
+        int id = registry.idOf(metricIdentifier);
+        if (id == MetricSymbolTable.UNKNOWN) {
+            chain.add(metricIdentifier);
+            return chain;
+        }
         
-        buildDependencyChain(metricIdentifier, chain, visited);
+        buildDependencyChain(registry, id, chain, new BitSet());
         
         return chain;
     }
 
-    private void buildDependencyChain(String metric, List<String> chain, Set<String> visited) {
-        if (visited.contains(metric)) {
+    private void buildDependencyChain(MetricRegistrySnapshot registry, int id, List<String> chain, BitSet visited) {
+        if (visited.get(id)) {
             return;
         }
         
-        visited.add(metric);
-        chain.add(metric);
+        visited.set(id);
+        chain.add(registry.getSymbols().nameOf(id));
         
-        Set<String> dependents = dependencyMap.get(metric);
-        if (dependents != null) {
-            for (String dependent : dependents) {
-                buildDependencyChain(dependent, chain, visited);
-            }
+        for (int dependent : registry.getDependentIds(id)) {
+            buildDependencyChain(registry, dependent, chain, visited);
         }
     }
 
@@ -2,6 +2,8 @@ package com.gridinsight.service;
 
 import com.gridinsight.domain.model.*;
 import com.gridinsight.domain.service.MetricCalculationService;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
@@ -14,17 +16,24 @@ import java.io.File;
 import java.io.FileInputStream;
 import java.io.InputStream;
 import java.util.*;
-import java.util.concurrent.ConcurrentHashMap;
 
 /**
  * 外部指标配置管理服务
+ * 指标保存在不可变的注册表快照中，读取直接访问当前快照（含标识符和UUID索引）；
+ * 加载和增删改时在副本上修改并整体替换快照
  */
 @Service
 public class ExternalMetricConfigService {
 
-    private final Map<String, BasicMetric> basicMetrics = new ConcurrentHashMap<>();
-    private final Map<String, DerivedMetric> derivedMetrics = new ConcurrentHashMap<>();
-    private final Map<String, DataSource> dataSources = new ConcurrentHashMap<>();
+    private static final Logger log = LoggerFactory.getLogger(ExternalMetricConfigService.class);
+
+    // 指标符号表，所有快照以及时序存储共用，ID在进程内保持不变；脱离Spring容器创建时使用独立的符号表
+    @Autowired(required = false)
+    private MetricSymbolTable symbols = new MetricSymbolTable();
+
+    // 当前注册表快照，只通过replaceRegistry替换
+    private volatile MetricRegistrySnapshot registry =
+            new MetricRegistrySnapshot(0L, symbols, Collections.emptyMap(), Collections.emptyMap());
 
     @Autowired
     private MetricCalculationService metricCalculationService;
@@ -43,23 +52,39 @@ public class ExternalMetricConfigService {
     /**
      * 加载所有配置
      */
-    public void loadConfigurations() {
-        loadBasicMetrics();
-        loadDerivedMetrics();
+    public synchronized void loadConfigurations() {
+        MetricRegistrySnapshot current = registry;
+        Map<String, BasicMetric> basicMetrics = loadBasicMetrics();
+        if (basicMetrics == null) {
+            basicMetrics = new LinkedHashMap<>(current.getBasicMetrics());
+        }
+        Map<String, DerivedMetric> derivedMetrics = loadDerivedMetrics(basicMetrics);
+        if (derivedMetrics == null) {
+            derivedMetrics = new LinkedHashMap<>(current.getDerivedMetrics());
+        }
+        replaceRegistry(basicMetrics, derivedMetrics);
         syncToCalculationService();
-        System.out.println("外部指标配置加载完成 - 基础指标: " + basicMetrics.size() + ", 派生指标: " + derivedMetrics.size());
+        log.info("外部指标配置加载完成 - 基础指标: {}, 派生指标: {}", basicMetrics.size(), derivedMetrics.size());
+    }
+
+    /**
+     * 以新的指标集合替换注册表快照（调用方持有本对象的锁）
+     */
+    private void replaceRegistry(Map<String, BasicMetric> basicMetrics, Map<String, DerivedMetric> derivedMetrics) {
+        registry = new MetricRegistrySnapshot(registry.getVersion() + 1, symbols, basicMetrics, derivedMetrics);
     }
 
 
     /**
      * 加载基础指标配置
+     * @return 加载的基础指标，配置文件不存在或加载失败时返回null（保留现有配置）
      */
-    private void loadBasicMetrics() {
+    private Map<String, BasicMetric> loadBasicMetrics() {
         try {
             File configFile = new File(basicConfigFile);
             if (!configFile.exists()) {
-                System.out.println("基础指标配置文件不存在: " + basicConfigFile);
-                return;
+                log.warn("基础指标配置文件不存在: {}", basicConfigFile);
+                return null;
             }
 
             InputStream inputStream = new FileInputStream(configFile);
@@ -67,38 +92,39 @@ public class ExternalMetricConfigService {
             Constructor constructor = new Constructor(BasicMetricsConfig.class, loaderOptions);
             Yaml yaml = new Yaml(constructor);
             BasicMetricsConfig config = yaml.load(inputStream);
+            inputStream.close();
 
-            if (config.getBasicMetrics() != null) {
-                // 清空现有配置
-                basicMetrics.clear();
-                dataSources.clear();
-
-                for (Map.Entry<String, BasicMetricConfig> entry : config.getBasicMetrics().entrySet()) {
-                    String identifier = entry.getKey();
-                    BasicMetricConfig metricConfig = entry.getValue();
-                    
-                    BasicMetric metric = createBasicMetric(identifier, metricConfig);
-                    basicMetrics.put(identifier, metric);
-                    dataSources.put(identifier, metric.getDataSource());
-                }
+            if (config.getBasicMetrics() == null) {
+                return null;
             }
 
-            inputStream.close();
-            System.out.println("基础指标配置加载完成: " + basicMetrics.size() + " 个指标");
+            Map<String, BasicMetric> basicMetrics = new LinkedHashMap<>();
+            for (Map.Entry<String, BasicMetricConfig> entry : config.getBasicMetrics().entrySet()) {
+                String identifier = entry.getKey();
+                BasicMetricConfig metricConfig = entry.getValue();
+                
+                basicMetrics.put(identifier, createBasicMetric(identifier, metricConfig));
+            }
+
+            log.info("基础指标配置加载完成: {} 个指标", basicMetrics.size());
+            return basicMetrics;
         } catch (Exception e) {
-            System.err.println("加载基础指标配置失败: " + e.getMessage());
+            log.error("加载基础指标配置失败: {}", e.getMessage());
+            return null;
         }
     }
 
     /**
      * 加载派生指标配置
+     * 依赖按新加载的基础指标和已加载的派生指标解析
+     * @return 加载的派生指标，配置文件不存在或加载失败时返回null（保留现有配置）
      */
-    private void loadDerivedMetrics() {
+    private Map<String, DerivedMetric> loadDerivedMetrics(Map<String, BasicMetric> basicMetrics) {
         try {
             File configFile = new File(derivedConfigFile);
             if (!configFile.exists()) {
-                System.out.println("派生指标配置文件不存在: " + derivedConfigFile);
-                return;
+                log.warn("派生指标配置文件不存在: {}", derivedConfigFile);
+                return null;
             }
 
             InputStream inputStream = new FileInputStream(configFile);
@@ -106,24 +132,25 @@ public class ExternalMetricConfigService {
             Constructor constructor = new Constructor(DerivedMetricsConfig.class, loaderOptions);
             Yaml yaml = new Yaml(constructor);
             DerivedMetricsConfig config = yaml.load(inputStream);
+            inputStream.close();
 
-            if (config.getDerivedMetrics() != null) {
-                // 清空现有配置
-                derivedMetrics.clear();
+            if (config.getDerivedMetrics() == null) {
+                return null;
+            }
 
-                for (Map.Entry<String, DerivedMetricConfig> entry : config.getDerivedMetrics().entrySet()) {
-                    String identifier = entry.getKey();
-                    DerivedMetricConfig metricConfig = entry.getValue();
-                    
-                    DerivedMetric metric = createDerivedMetric(identifier, metricConfig);
-                    derivedMetrics.put(identifier, metric);
-                }
+            Map<String, DerivedMetric> derivedMetrics = new LinkedHashMap<>();
+            for (Map.Entry<String, DerivedMetricConfig> entry : config.getDerivedMetrics().entrySet()) {
+                String identifier = entry.getKey();
+                DerivedMetricConfig metricConfig = entry.getValue();
+                
+                derivedMetrics.put(identifier, createDerivedMetric(identifier, metricConfig, basicMetrics, derivedMetrics));
             }
 
-            inputStream.close();
-            System.out.println("派生指标配置加载完成: " + derivedMetrics.size() + " 个指标");
+            log.info("派生指标配置加载完成: {} 个指标", derivedMetrics.size());
+            return derivedMetrics;
         } catch (Exception e) {
-            System.err.println("加载派生指标配置失败: " + e.getMessage());
+            log.error("加载派生指标配置失败: {}", e.getMessage());
+            return null;
         }
     }
 
@@ -132,8 +159,9 @@ public class ExternalMetricConfigService {
      */
     private void syncToCalculationService() {
         // 清理并重新注册
-        basicMetrics.forEach((id, m) -> metricCalculationService.addMetric(m));
-        derivedMetrics.forEach((id, m) -> metricCalculationService.addMetric(m));
+        MetricRegistrySnapshot snapshot = registry;
+        snapshot.getBasicMetrics().forEach((id, m) -> metricCalculationService.addMetric(m));
+        snapshot.getDerivedMetrics().forEach((id, m) -> metricCalculationService.addMetric(m));
     }
 
     /**
@@ -160,11 +188,16 @@ public class ExternalMetricConfigService {
     /**
      * 创建派生指标
      */
-    private DerivedMetric createDerivedMetric(String identifier, DerivedMetricConfig config) {
+    private DerivedMetric createDerivedMetric(String identifier, DerivedMetricConfig config,
+                                              Map<String, BasicMetric> basicMetrics,
+                                              Map<String, DerivedMetric> derivedMetrics) {
         List<Metric> dependencies = new ArrayList<>();
         if (config.getDependencies() != null) {
             for (String depId : config.getDependencies()) {
-                Metric dep = getMetric(depId);
+                Metric dep = basicMetrics.get(depId);
+                if (dep == null) {
+                    dep = derivedMetrics.get(depId);
+                }
                 if (dep != null) {
                     dependencies.add(dep);
                 }
@@ -183,10 +216,29 @@ public class ExternalMetricConfigService {
         
         metric.setIdentifier(identifier);
         metric.setUuid(config.getUuid());
+        metric.setUpdateStrategy(parseUpdateStrategy(identifier, config.getUpdateStrategy()));
+        if (config.getCalculationInterval() != null) {
+            metric.setCalculationInterval(config.getCalculationInterval());
+        }
         
         return metric;
     }
 
+    /**
+     * 解析派生指标更新策略，未配置或无法识别时使用依赖驱动
+     */
+    private DerivedMetricUpdateStrategy parseUpdateStrategy(String identifier, String updateStrategy) {
+        if (updateStrategy == null || updateStrategy.trim().isEmpty()) {
+            return DerivedMetricUpdateStrategy.DEPENDENCY_DRIVEN;
+        }
+        try {
+            return DerivedMetricUpdateStrategy.valueOf(updateStrategy.trim().toUpperCase());
+        } catch (IllegalArgumentException e) {
+            log.warn("派生指标更新策略无法识别: {}, 策略: {}, 使用DEPENDENCY_DRIVEN", identifier, updateStrategy);
+            return DerivedMetricUpdateStrategy.DEPENDENCY_DRIVEN;
+        }
+    }
+
     /**
      * 创建数据源
      */
@@ -251,122 +303,125 @@ public class ExternalMetricConfigService {
 
     // ========== 公共API方法 ==========
 
+    /**
+     * 获取当前注册表快照，同一快照内的多次查询结果一致
+     */
+    public MetricRegistrySnapshot getRegistrySnapshot() {
+        return registry;
+    }
+
+    /**
+     * 获取指标符号表
+     */
+    public MetricSymbolTable getSymbolTable() {
+        return symbols;
+    }
+
+    /**
+     * 所有基础指标（只读视图，不复制）
+     */
     public Map<String, BasicMetric> getAllBasicMetrics() {
-        return new HashMap<>(basicMetrics);
+        return registry.getBasicMetrics();
     }
 
+    /**
+     * 所有派生指标（只读视图，不复制）
+     */
     public Map<String, DerivedMetric> getAllDerivedMetrics() {
-        return new HashMap<>(derivedMetrics);
+        return registry.getDerivedMetrics();
     }
 
+    /**
+     * 所有指标（只读视图，不复制）
+     */
     public Map<String, Metric> getAllMetrics() {
-        Map<String, Metric> allMetrics = new HashMap<>();
-        allMetrics.putAll(basicMetrics);
-        allMetrics.putAll(derivedMetrics);
-        return allMetrics;
+        return registry.getAllMetrics();
     }
 
     public BasicMetric getBasicMetric(String identifier) {
-        return basicMetrics.get(identifier);
+        return registry.getBasicMetrics().get(identifier);
     }
 
     public DerivedMetric getDerivedMetric(String identifier) {
-        return derivedMetrics.get(identifier);
+        return registry.getDerivedMetrics().get(identifier);
     }
 
     public Metric getMetric(String identifier) {
-        Metric metric = basicMetrics.get(identifier);
-        if (metric == null) {
-            metric = derivedMetrics.get(identifier);
-        }
-        return metric;
+        return registry.getMetric(identifier);
     }
 
     public Metric getMetricByUuid(String uuid) {
-        // 先查找基础指标
-        for (BasicMetric metric : basicMetrics.values()) {
-            if (uuid.equals(metric.getUuid())) {
-                return metric;
-            }
-        }
-        // 再查找派生指标
-        for (DerivedMetric metric : derivedMetrics.values()) {
-            if (uuid.equals(metric.getUuid())) {
-                return metric;
-            }
-        }
-        return null;
+        return registry.getMetricByUuid(uuid);
     }
 
     public Map<String, Object> getMetricStats() {
+        MetricRegistrySnapshot snapshot = registry;
         Map<String, Object> stats = new HashMap<>();
-        stats.put("totalBasicMetrics", basicMetrics.size());
-        stats.put("totalDerivedMetrics", derivedMetrics.size());
-        stats.put("totalMetrics", basicMetrics.size() + derivedMetrics.size());
-        stats.put("totalDataSources", dataSources.size());
+        stats.put("totalBasicMetrics", snapshot.getBasicMetrics().size());
+        stats.put("totalDerivedMetrics", snapshot.getDerivedMetrics().size());
+        stats.put("totalMetrics", snapshot.getBasicMetrics().size() + snapshot.getDerivedMetrics().size());
+        stats.put("totalDataSources", snapshot.getDataSources().size());
+        stats.put("registryVersion", snapshot.getVersion());
         return stats;
     }
 
     // ========== 管理方法 ==========
     
     public void addBasicMetric(String identifier, BasicMetric metric) {
-        basicMetrics.put(identifier, metric);
-        if (metric.getDataSource() != null) {
-            dataSources.put(identifier, metric.getDataSource());
-        }
+        putBasicMetric(identifier, metric);
         // 同步到计算服务
         metricCalculationService.addMetric(metric);
     }
 
     public void addDerivedMetric(String identifier, DerivedMetric metric) {
-        derivedMetrics.put(identifier, metric);
+        putDerivedMetric(identifier, metric);
         // 同步到计算服务
         metricCalculationService.addMetric(metric);
     }
 
     public void updateBasicMetric(String identifier, BasicMetric metric) {
-        basicMetrics.put(identifier, metric);
-        if (metric.getDataSource() != null) {
-            dataSources.put(identifier, metric.getDataSource());
-        }
+        putBasicMetric(identifier, metric);
         // 同步到计算服务
         metricCalculationService.addMetric(metric);
     }
 
     public void updateDerivedMetric(String identifier, DerivedMetric metric) {
-        derivedMetrics.put(identifier, metric);
+        putDerivedMetric(identifier, metric);
         // 同步到计算服务
         metricCalculationService.addMetric(metric);
     }
 
-    public boolean removeMetric(String identifier) {
-        boolean removed = false;
-        if (basicMetrics.remove(identifier) != null) {
-            dataSources.remove(identifier);
-            removed = true;
-        }
-        if (derivedMetrics.remove(identifier) != null) {
-            removed = true;
+    private synchronized void putBasicMetric(String identifier, BasicMetric metric) {
+        Map<String, BasicMetric> basicMetrics = new LinkedHashMap<>(registry.getBasicMetrics());
+        basicMetrics.put(identifier, metric);
+        replaceRegistry(basicMetrics, registry.getDerivedMetrics());
+    }
+
+    private synchronized void putDerivedMetric(String identifier, DerivedMetric metric) {
+        Map<String, DerivedMetric> derivedMetrics = new LinkedHashMap<>(registry.getDerivedMetrics());
+        derivedMetrics.put(identifier, metric);
+        replaceRegistry(registry.getBasicMetrics(), derivedMetrics);
+    }
+
+    public synchronized boolean removeMetric(String identifier) {
+        MetricRegistrySnapshot current = registry;
+        if (!current.getBasicMetrics().containsKey(identifier) && !current.getDerivedMetrics().containsKey(identifier)) {
+            return false;
         }
-        return removed;
+        Map<String, BasicMetric> basicMetrics = new LinkedHashMap<>(current.getBasicMetrics());
+        Map<String, DerivedMetric> derivedMetrics = new LinkedHashMap<>(current.getDerivedMetrics());
+        basicMetrics.remove(identifier);
+        derivedMetrics.remove(identifier);
+        replaceRegistry(basicMetrics, derivedMetrics);
+        return true;
     }
 
     public BasicMetric getBasicMetricByUuid(String uuid) {
-        for (BasicMetric metric : basicMetrics.values()) {
-            if (uuid.equals(metric.getUuid())) {
-                return metric;
-            }
-        }
-        return null;
+        return registry.getBasicMetricByUuid(uuid);
     }
 
     public DerivedMetric getDerivedMetricByUuid(String uuid) {
-        for (DerivedMetric metric : derivedMetrics.values()) {
-            if (uuid.equals(metric.getUuid())) {
-                return metric;
-            }
-        }
-        return null;
+        return registry.getDerivedMetricByUuid(uuid);
     }
 
     // ========== 配置类定义 ==========
@@ -406,6 +461,8 @@ public class ExternalMetricConfigService {
         private String uuid;
         private String formula;
         private List<String> dependencies;
+        private String updateStrategy;
+        private Integer calculationInterval;
 
         // Getters and Setters
         public String getName() { return name; }
@@ -424,6 +481,10 @@ public class ExternalMetricConfigService {
         public void setFormula(String formula) { this.formula = formula; }
         public List<String> getDependencies() { return dependencies; }
         public void setDependencies(List<String> dependencies) { this.dependencies = dependencies; }
+        public String getUpdateStrategy() { return updateStrategy; }
+        public void setUpdateStrategy(String updateStrategy) { this.updateStrategy = updateStrategy; }
+        public Integer getCalculationInterval() { return calculationInterval; }
+        public void setCalculationInterval(Integer calculationInterval) { this.calculationInterval = calculationInterval; }
     }
 
     public static class DataSourceConfig {
@@ -0,0 +1,201 @@
+package com.gridinsight.service;
+
+import com.gridinsight.domain.model.BasicMetric;
+import com.gridinsight.domain.model.DataSource;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import io.micrometer.core.instrument.composite.CompositeMeterRegistry;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.ToDoubleFunction;
+
+/**
+ * 热路径度量（Micrometer）
+ * 所有计量器在启动时或配置变化时预先注册并缓存，热路径上只做一次查表和原子计数，不分配对象：
+ * - gridinsight.fetch.latency / gridinsight.fetch.errors：按数据源类型和主机的采集耗时与失败次数
+ * - gridinsight.formula.evaluation：派生指标计算耗时
+ * - gridinsight.store.latency：按存储后端的写入耗时
+ * - gridinsight.maptsdb.commit：MapTSDB提交耗时
+ * - gridinsight.events.pending：已发布未处理的指标更新事件数
+ * - gridinsight.scheduler.lag / gridinsight.scheduler.tick：到期指标的调度滞后、每轮调度耗时
+ * 异步执行器的饱和度由Spring Boot的executor.*指标提供
+ */
+@Component
+public class GridInsightMeters {
+
+    private static final Duration MIN_EXPECTED = Duration.ofNanos(100_000);
+    private static final Duration MAX_EXPECTED = Duration.ofSeconds(30);
+
+    private final MeterRegistry registry;
+    private final Timer formulaEvaluation;
+    private final Timer storeLatency;
+    private final Timer commitLatency;
+    private final Timer schedulerLag;
+    private final Timer schedulerTick;
+    private final AtomicLong pendingEvents = new AtomicLong();
+
+    // 数据源地址 → 采集计量器（同一主机的地址共享计量器）
+    private final Map<String, FetchMeters> fetchMetersByAddress = new ConcurrentHashMap<>();
+    // 数据源类型:主机 → 采集计量器
+    private final Map<String, FetchMeters> fetchMetersByHost = new ConcurrentHashMap<>();
+    // 已预注册的注册表快照版本
+    private volatile long registeredVersion = -1L;
+
+    public GridInsightMeters(MeterRegistry registry,
+                             @Value("${gridinsight.timeseries.type:json}") String storageType) {
+        this.registry = registry;
+        this.formulaEvaluation = timer("gridinsight.formula.evaluation", "派生指标计算耗时").register(registry);
+        this.storeLatency = timer("gridinsight.store.latency", "时序存储写入耗时")
+            .tag("backend", storageType.toLowerCase())
+            .register(registry);
+        this.commitLatency = timer("gridinsight.maptsdb.commit", "MapTSDB提交耗时").register(registry);
+        this.schedulerLag = timer("gridinsight.scheduler.lag", "到期指标开始采集相对计划时间的滞后").register(registry);
+        this.schedulerTick = timer("gridinsight.scheduler.tick", "每轮调度检查耗时").register(registry);
+        Gauge.builder("gridinsight.events.pending", pendingEvents, AtomicLong::get)
+            .description("已发布未处理的指标更新事件数")
+            .register(registry);
+    }
+
+    /**
+     * 不输出到任何地方的实例，供脱离Spring容器创建的服务使用
+     */
+    public static GridInsightMeters noop() {
+        return new GridInsightMeters(new CompositeMeterRegistry(), "none");
+    }
+
+    private static Timer.Builder timer(String name, String description) {
+        return Timer.builder(name)
+            .description(description)
+            .publishPercentileHistogram()
+            .minimumExpectedValue(MIN_EXPECTED)
+            .maximumExpectedValue(MAX_EXPECTED);
+    }
+
+    /**
+     * 注册表快照变化时预注册所有基础指标数据源的采集计量器
+     */
+    public void registerSources(MetricRegistrySnapshot snapshot) {
+        if (snapshot.getVersion() == registeredVersion) {
+            return;
+        }
+        for (BasicMetric metric : snapshot.getBasicMetricArray()) {
+            if (metric.getDataSource() != null) {
+                fetchMeters(metric.getDataSource());
+            }
+        }
+        registeredVersion = snapshot.getVersion();
+    }
+
+    /**
+     * 数据源对应的采集计量器；已预注册时只做一次查表
+     */
+    public FetchMeters fetchMeters(DataSource dataSource) {
+        String address = dataSource.getSourceAddress() != null ? dataSource.getSourceAddress() : "";
+        FetchMeters meters = fetchMetersByAddress.get(address);
+        if (meters == null) {
+            meters = fetchMetersByAddress.computeIfAbsent(address, key -> {
+                String sourceType = String.valueOf(dataSource.getSourceType());
+                String host = hostOf(key);
+                return fetchMetersByHost.computeIfAbsent(sourceType + ":" + host,
+                    ignored -> new FetchMeters(registry, sourceType, host));
+            });
+        }
+        return meters;
+    }
+
+    /**
+     * 从数据源地址（scheme://host[:port]/...）中提取主机名；没有主机部分时（本地文件、SQLite等）返回local
+     * 地址中可能含有${timestamp}等占位符，不使用URI解析
+     */
+    static String hostOf(String address) {
+        int start = address.indexOf("://");
+        if (start < 0) {
+            return "local";
+        }
+        start += 3;
+        int end = start;
+        while (end < address.length() && "/?#:".indexOf(address.charAt(end)) < 0) {
+            end++;
+        }
+        String host = address.substring(start, end);
+        int userInfo = host.lastIndexOf('@');
+        if (userInfo >= 0) {
+            host = host.substring(userInfo + 1);
+        }
+        return host.isEmpty() ? "local" : host;
+    }
+
+    public void recordFormulaEvaluation(long nanos) {
+        formulaEvaluation.record(nanos, TimeUnit.NANOSECONDS);
+    }
+
+    public void recordStore(long nanos) {
+        storeLatency.record(nanos, TimeUnit.NANOSECONDS);
+    }
+
+    public void recordCommit(long nanos) {
+        commitLatency.record(nanos, TimeUnit.NANOSECONDS);
+    }
+
+    public void recordSchedulerLag(long millis) {
+        schedulerLag.record(Math.max(0L, millis), TimeUnit.MILLISECONDS);
+    }
+
+    public void recordSchedulerTick(long nanos) {
+        schedulerTick.record(nanos, TimeUnit.NANOSECONDS);
+    }
+
+    public void eventPublished() {
+        pendingEvents.incrementAndGet();
+    }
+
+    public void eventHandled() {
+        pendingEvents.decrementAndGet();
+    }
+
+    /**
+     * 注册读取对象状态的仪表，如写后队列深度
+     */
+    public <T> void gauge(String name, String description, T target, ToDoubleFunction<T> value) {
+        Gauge.builder(name, target, value).description(description).register(registry);
+    }
+
+    /**
+     * 单个数据源类型/主机的采集计量器
+     */
+    public static final class FetchMeters {
+
+        private final Timer latency;
+        private final Counter errors;
+
+        FetchMeters(MeterRegistry registry, String sourceType, String host) {
+            this.latency = timer("gridinsight.fetch.latency", "数据源采集耗时")
+                .tag("sourceType", sourceType)
+                .tag("host", host)
+                .register(registry);
+            this.errors = Counter.builder("gridinsight.fetch.errors")
+                .description("数据源采集失败次数")
+                .tag("sourceType", sourceType)
+                .tag("host", host)
+                .register(registry);
+        }
+
+        /**
+         * 记录一次采集，失败时同时计入失败次数
+         */
+        public void record(long nanos, boolean success) {
+            latency.record(nanos, TimeUnit.NANOSECONDS);
+            if (!success) {
+                errors.increment();
+            }
+        }
+    }
+}
@@ -0,0 +1,197 @@
+package com.gridinsight.service;
+
+import com.gridinsight.domain.model.BasicMetric;
+import com.gridinsight.domain.model.DerivedMetric;
+import com.gridinsight.domain.model.DerivedMetricUpdateStrategy;
+import com.gridinsight.domain.model.Metric;
+import com.gridinsight.domain.model.MetricValue;
+import com.gridinsight.domain.service.LinearAccumulator;
+import com.gridinsight.domain.service.LinearForm;
+import com.gridinsight.domain.service.SharedFormulaGraph;
+import com.gridinsight.service.timeseries.TimeRanges;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 线性派生指标的增量计算
+ * 计算图证明为线性（求和、加权求和）的公式保存当前结果，某个输入的更新事件到达时按 coefficient * (new - old) 修正，
+ * 不再读取全部输入，重新计算代价与扇入无关；每累计一定次数或时间后全量重算一次，限制浮点误差累积。
+ * 只有推送模式下依赖驱动的派生指标才增量计算：其他策略的指标还会在查询时或定时全量计算，保存的输入值随之过期。
+ * 并且所有输入的变化都必须发布更新事件（基础指标、依赖驱动或定时计算的派生指标），
+ * 否则输入在查询时被重新计算后不会通知到这里。
+ * 更新事件在线程池中可能乱序处理，样本时间早于已应用样本的旧事件不再修正结果。
+ * 派生指标和输入都以注册表符号表ID标识，计算状态按ID保存在数组中
+ */
+@Service
+public class IncrementalFormulaService {
+
+    @Autowired
+    private CompiledFormulaService compiledFormulaService;
+
+    @Autowired
+    private ExternalMetricConfigService metricConfigService;
+
+    @Autowired
+    private TimeSeriesDataService timeSeriesDataService;
+
+    @Autowired
+    private DerivedMetricUpdatePolicy updatePolicy;
+
+    // 是否启用线性公式增量计算
+    @Value("${gridinsight.derived.incremental.enabled:true}")
+    private boolean enabled = true;
+
+    // 输入个数不少于该值的线性公式才增量计算，输入较少时全量计算同样廉价
+    @Value("${gridinsight.derived.incremental.min-inputs:4}")
+    private int minInputs = 4;
+
+    // 连续增量修正次数上限，达到后全量重算
+    @Value("${gridinsight.derived.incremental.full-recompute-updates:1000}")
+    private int fullRecomputeUpdates = 1000;
+
+    // 距上次全量计算的时间上限（毫秒），达到后全量重算
+    @Value("${gridinsight.derived.incremental.full-recompute-ms:300000}")
+    private long fullRecomputeMs = 300000L;
+
+    /**
+     * 某一版本计算图的增量计算状态（以派生指标ID为下标），计算图重建时整体替换
+     */
+    private static final class AccumulatorState {
+        final SharedFormulaGraph graph;
+        final MetricIdArray<LinearAccumulator> accumulators = new MetricIdArray<>(256);
+        // 1表示不适合增量计算
+        final MetricIdLongArray ineligible = new MetricIdLongArray(256);
+
+        AccumulatorState(SharedFormulaGraph graph) {
+            this.graph = graph;
+        }
+    }
+
+    private volatile AccumulatorState state = new AccumulatorState(null);
+
+    private final LongAdder deltaUpdates = new LongAdder();
+    private final LongAdder fullRecomputes = new LongAdder();
+    private final LongAdder inputReadsSaved = new LongAdder();
+    private final LongAdder staleInputChanges = new LongAdder();
+
+    /**
+     * 派生指标的某个输入已更新，按增量修正计算派生指标
+     * @param derivedId 派生指标ID
+     * @param changedInputId 触发更新的输入指标ID
+     * @param newValue 输入的新值（取自更新事件，不从存储读取）
+     * @param sampleTimeMillis 新值的样本时间（取自更新事件）
+     * @return 计算结果；未启用、公式非线性或不适合增量计算时返回null，由调用方全量计算
+     */
+    public MetricValue applyInputChange(DerivedMetric metric, int derivedId, int changedInputId, double newValue,
+                                        long sampleTimeMillis) {
+        if (!enabled || changedInputId < 0 || derivedId < 0
+            || metric.getUpdateStrategy() != DerivedMetricUpdateStrategy.DEPENDENCY_DRIVEN
+            || updatePolicy.isPullMode()) {
+            return null;
+        }
+        String identifier = metric.getIdentifier();
+        LinearAccumulator accumulator = accumulatorFor(derivedId);
+        if (accumulator == null) {
+            return null;
+        }
+
+        double value;
+        synchronized (accumulator) {
+            long now = TimeRanges.nowEpochMillis();
+            value = Double.NaN;
+            if (accumulator.isStale(changedInputId, sampleTimeMillis)) {
+                // 较新的样本已应用，保留当前结果
+                value = accumulator.getResult();
+                staleInputChanges.increment();
+            } else if (!accumulator.needsFullRecompute(now, fullRecomputeUpdates, fullRecomputeMs)) {
+                value = accumulator.applyDelta(changedInputId, newValue, sampleTimeMillis);
+                if (Double.isFinite(value)) {
+                    deltaUpdates.increment();
+                    inputReadsSaved.add(accumulator.getForm().size() - 1);
+                }
+            }
+            if (!Double.isFinite(value)) {
+                value = accumulator.recompute(timeSeriesDataService::getLatestValue, now);
+                fullRecomputes.increment();
+            }
+        }
+        if (!Double.isFinite(value)) {
+            return MetricValue.error(identifier, "公式计算失败: 依赖缺失或计算结果无效");
+        }
+        return MetricValue.good(identifier, value, metric.getUnit());
+    }
+
+    /**
+     * 获取派生指标的增量计算状态，不适合增量计算时返回null
+     */
+    private LinearAccumulator accumulatorFor(int derivedId) {
+        SharedFormulaGraph graph = compiledFormulaService.getGraph();
+        AccumulatorState current = state;
+        if (graph != current.graph) {
+            synchronized (this) {
+                current = state;
+                if (graph != current.graph) {
+                    current = new AccumulatorState(graph);
+                    state = current;
+                }
+            }
+        }
+        LinearAccumulator accumulator = current.accumulators.get(derivedId);
+        if (accumulator != null || current.ineligible.get(derivedId) != 0L) {
+            return accumulator;
+        }
+        LinearForm form = graph.linearFormOf(derivedId);
+        if (form == null || form.size() < minInputs || !inputsPublishUpdates(form)) {
+            current.ineligible.set(derivedId, 1L);
+            return null;
+        }
+        LinearAccumulator created = new LinearAccumulator(form);
+        LinearAccumulator existing = current.accumulators.putIfAbsent(derivedId, created);
+        return existing != null ? existing : created;
+    }
+
+    /**
+     * 所有输入的变化是否都会发布更新事件
+     */
+    private boolean inputsPublishUpdates(LinearForm form) {
+        MetricRegistrySnapshot registry = metricConfigService.getRegistrySnapshot();
+        for (int i = 0; i < form.size(); i++) {
+            Metric input = registry.getMetric(form.inputIdAt(i));
+            if (input instanceof BasicMetric) {
+                continue;
+            }
+            if (!(input instanceof DerivedMetric)) {
+                return false;
+            }
+            DerivedMetricUpdateStrategy strategy = ((DerivedMetric) input).getUpdateStrategy();
+            if (strategy != DerivedMetricUpdateStrategy.DEPENDENCY_DRIVEN
+                && strategy != DerivedMetricUpdateStrategy.SCHEDULED) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * 获取增量计算统计
+     * 线性公式数、正在增量计算的公式数、增量修正和全量重算次数、增量修正省去的输入读取次数，
+     * 以及被忽略的乱序旧事件数
+     */
+    public Map<String, Object> getStatistics() {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("enabled", enabled);
+        stats.put("linearFormulas", compiledFormulaService.getGraph().getLinearCount());
+        stats.put("incrementalFormulas", state.accumulators.size());
+        stats.put("minInputs", minInputs);
+        stats.put("deltaUpdates", deltaUpdates.sum());
+        stats.put("fullRecomputes", fullRecomputes.sum());
+        stats.put("inputReadsSaved", inputReadsSaved.sum());
+        stats.put("staleInputChanges", staleInputChanges.sum());
+        return stats;
+    }
+}
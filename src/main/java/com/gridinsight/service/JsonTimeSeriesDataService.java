@@ -5,6 +5,15 @@ import com.fasterxml.jackson.databind.ObjectMapper;
 import com.fasterxml.jackson.datatype.jsr310.JavaTimeModule;
 import com.gridinsight.domain.model.MetricValue;
 import com.gridinsight.domain.model.StoredMetricValue;
+import com.gridinsight.service.timeseries.DownsampleMethod;
+import com.gridinsight.service.timeseries.MetricRollupStore;
+import com.gridinsight.service.timeseries.RollupQueries;
+import com.gridinsight.service.timeseries.RollupTier;
+import com.gridinsight.service.timeseries.SeriesBuffer;
+import com.gridinsight.service.timeseries.StreamingStatistics;
+import com.gridinsight.service.timeseries.TimeRanges;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
@@ -28,9 +37,29 @@ import java.util.stream.Collectors;
  */
 public class JsonTimeSeriesDataService implements TimeSeriesDataService {
 
+    private static final Logger log = LoggerFactory.getLogger(JsonTimeSeriesDataService.class);
+
     @Value("${gridinsight.timeseries.data-path:data/timeseries}")
     private String dataPath;
 
+    // 汇总数据保留天数，小于等于0表示不过期
+    @Value("${gridinsight.timeseries.rollup.retention-days:365}")
+    private int rollupRetentionDays;
+
+    // 各汇总层级单独配置的保留天数，小于0时使用上面的统一配置
+    @Value("${gridinsight.timeseries.rollup.retention-days-1m:-1}")
+    private int rollupRetentionDays1m = -1;
+
+    @Value("${gridinsight.timeseries.rollup.retention-days-15m:-1}")
+    private int rollupRetentionDays15m = -1;
+
+    @Value("${gridinsight.timeseries.rollup.retention-days-1h:-1}")
+    private int rollupRetentionDays1h = -1;
+
+    // 批量最新值查询中需要读文件的指标的并行加载线程数
+    @Value("${gridinsight.timeseries.latest-read-threads:4}")
+    private int latestReadThreads;
+
     @Autowired
     private ExternalMetricConfigService metricConfigService;
 
@@ -40,12 +69,25 @@ public class JsonTimeSeriesDataService implements TimeSeriesDataService {
     // 每个指标的最新值缓存
     private final Map<String, MetricValue> latestValues = new ConcurrentHashMap<>();
     
+    // 每个指标的数据版本号（以符号表中的指标ID为下标）
+    private final MetricVersionTracker versions = new MetricVersionTracker();
+
+    // 指标符号表，与注册表快照共用；脱离Spring容器创建时使用独立的符号表
+    @Autowired(required = false)
+    private MetricSymbolTable symbols = new MetricSymbolTable();
+    
     // 数据根目录
     private Path dataRootPath;
     
     // JSON序列化器
     private final ObjectMapper objectMapper;
     
+    // 多分辨率汇总（内存），写入时增量更新，加载文件时重建
+    private MetricRollupStore rollupStore;
+    
+    // 批量最新值查询的文件并行加载
+    private LatestValueBulkLoader latestLoader;
+    
     // 读写锁
     private final ReadWriteLock lock = new ReentrantReadWriteLock();
 
@@ -61,9 +103,17 @@ public class JsonTimeSeriesDataService implements TimeSeriesDataService {
         try {
             Files.createDirectories(dataRootPath);
         } catch (IOException e) {
-            System.err.println("创建数据目录失败: " + e.getMessage());
+            log.error("创建数据目录失败: {}", e.getMessage());
         }
         
+        rollupStore = new MetricRollupStore(rollupRetentionDays);
+        rollupStore.setRetentionDays(RollupTier.ONE_MINUTE, rollupRetentionDays1m);
+        rollupStore.setRetentionDays(RollupTier.FIFTEEN_MINUTES, rollupRetentionDays15m);
+        rollupStore.setRetentionDays(RollupTier.ONE_HOUR, rollupRetentionDays1h);
+        rollupStore.open();
+        
+        latestLoader = new LatestValueBulkLoader("json-latest-reader", latestReadThreads);
+        
         // 加载现有数据
         loadExistingData();
     }
@@ -72,6 +122,12 @@ public class JsonTimeSeriesDataService implements TimeSeriesDataService {
     public void cleanup() {
         // 保存所有数据到文件
         saveAllData();
+        if (latestLoader != null) {
+            latestLoader.shutdown();
+        }
+        if (rollupStore != null) {
+            rollupStore.close();
+        }
     }
 
     /**
@@ -139,19 +195,56 @@ public class JsonTimeSeriesDataService implements TimeSeriesDataService {
             // 添加到内存历史数据（使用简化格式）
             metricHistory.computeIfAbsent(metricIdentifier, k -> new ArrayList<>()).add(storedValue);
             
+            // 增量更新汇总
+            if (timestamp != null) {
+                rollupStore.record(metricIdentifier, TimeRanges.toEpochMillis(timestamp), value.getValue());
+                rollupStore.commit();
+            }
+            
             // 更新最新值缓存（保持完整的MetricValue对象用于API返回）
             latestValues.put(metricIdentifier, value);
+            versions.bump(symbols.intern(metricIdentifier));
             
             // 异步保存到文件
             saveMetricData(metricIdentifier);
             
         } catch (Exception e) {
-            System.err.println("存储指标值失败: " + metricIdentifier + ", 错误: " + e.getMessage());
+            log.warn("存储指标值失败: {}, 错误: {}", metricIdentifier, e.getMessage());
         } finally {
             lock.writeLock().unlock();
         }
     }
 
+    /**
+     * 存储单个数据点
+     * JSON存储以MetricValue为单位持久化，在此转换
+     */
+    public void storeSample(String metricIdentifier, long timestampMillis, double value) {
+        LocalDateTime timestamp = TimeRanges.toLocalDateTime(timestampMillis);
+        storeMetricValue(metricIdentifier,
+                new MetricValue(metricIdentifier, value, "", timestamp, MetricValue.DataQuality.GOOD), timestamp);
+    }
+
+    @Override
+    public void storeSample(int metricId, long timestampMillis, double value) {
+        String metricIdentifier = symbols.nameOf(metricId);
+        if (metricIdentifier == null) {
+            throw new IllegalArgumentException("未注册的指标ID: " + metricId);
+        }
+        storeSample(metricIdentifier, timestampMillis, value);
+    }
+
+    @Override
+    public void storeSample(int metricId, long timestampMillis, double value, byte quality) {
+        String metricIdentifier = symbols.nameOf(metricId);
+        if (metricIdentifier == null) {
+            throw new IllegalArgumentException("未注册的指标ID: " + metricId);
+        }
+        LocalDateTime timestamp = TimeRanges.toLocalDateTime(timestampMillis);
+        storeMetricValue(metricIdentifier, new MetricValue(metricIdentifier, value, "", timestamp,
+                MetricValue.DataQuality.ofCode(quality)), timestamp);
+    }
+
     /**
      * 批量存储指标值
      */
@@ -161,6 +254,20 @@ public class JsonTimeSeriesDataService implements TimeSeriesDataService {
         }
     }
 
+    /**
+     * 查询最新数值，没有有效数据时返回Double.NaN
+     */
+    public double getLatestValue(String metricIdentifier) {
+        MetricValue latest = getLatestMetricValue(metricIdentifier);
+        return latest != null && latest.isValid() ? latest.getValue() : Double.NaN;
+    }
+
+    @Override
+    public double getLatestValue(int metricId) {
+        String metricIdentifier = symbols.nameOf(metricId);
+        return metricIdentifier != null ? getLatestValue(metricIdentifier) : Double.NaN;
+    }
+
     /**
      * 查询最新指标值
      */
@@ -237,66 +344,143 @@ public class JsonTimeSeriesDataService implements TimeSeriesDataService {
         }
     }
 
+    /**
+     * 降采样查询指标历史数据
+     */
+    public SeriesBuffer getDownsampledHistory(String metricIdentifier, long startMillis, long endMillis,
+                                              long stepMillis, int maxPoints, DownsampleMethod method) {
+        ensureMetricLoaded(metricIdentifier);
+        return RollupQueries.downsample(this, rollupStore, metricIdentifier, startMillis, endMillis,
+                stepMillis, maxPoints, method);
+    }
+
+    /**
+     * 确保指标数据已从文件加载（加载时同时重建汇总）
+     */
+    private void ensureMetricLoaded(String metricIdentifier) {
+        if (metricHistory.containsKey(metricIdentifier)) {
+            return;
+        }
+        try {
+            lock.readLock().lock();
+            if (!metricHistory.containsKey(metricIdentifier)) {
+                loadMetricData(metricIdentifier);
+            }
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    @Override
+    public long getMetricVersion(String metricIdentifier) {
+        return versions.get(symbols.idOf(metricIdentifier));
+    }
+
+    @Override
+    public long getMetricVersion(int metricId) {
+        return versions.get(metricId);
+    }
+
     /**
      * 批量查询最新指标值
      */
     public Map<String, MetricValue> getLatestMetricValues(List<String> metricIdentifiers) {
-        Map<String, MetricValue> results = new HashMap<>();
+        Map<String, MetricValue> results = new HashMap<>(metricIdentifiers.size() * 4 / 3 + 1);
+        List<String> fileMisses = new ArrayList<>();
         
+        // 单次遍历：缓存和内存历史命中直接返回，只有需要读文件的指标并行加载
         for (String identifier : metricIdentifiers) {
-            results.put(identifier, getLatestMetricValue(identifier));
+            if (results.containsKey(identifier)) {
+                continue;
+            }
+            MetricValue cached = latestValues.get(identifier);
+            if (cached != null) {
+                results.put(identifier, cached);
+            } else if (metricHistory.containsKey(identifier)) {
+                results.put(identifier, getLatestMetricValue(identifier));
+            } else {
+                fileMisses.add(identifier);
+            }
         }
         
+        latestLoader.loadInto(fileMisses, this::getLatestMetricValue, results);
+        
         return results;
     }
 
+    /**
+     * 按时间顺序遍历指标历史数据点
+     * 在读锁内把区间内的数据点复制到基本类型数组，释放锁后再回调，
+     * 回调方（如向客户端流式写出）阻塞时不会阻塞写入
+     */
+    public long scanMetricHistory(String metricIdentifier, long startMillis, long endMillis, MetricPointVisitor visitor) {
+        SeriesBuffer points = new SeriesBuffer();
+        try {
+            lock.readLock().lock();
+
+            List<StoredMetricValue> storedHistory = metricHistory.get(metricIdentifier);
+            if (storedHistory == null) {
+                // 尝试从文件加载
+                loadMetricData(metricIdentifier);
+                storedHistory = metricHistory.get(metricIdentifier);
+            }
+
+            if (storedHistory == null) {
+                return 0;
+            }
+
+            for (StoredMetricValue storedValue : storedHistory) {
+                LocalDateTime timestamp = storedValue.getTimestamp();
+                Double value = storedValue.getValue();
+                if (timestamp == null || value == null || storedValue.getQuality() == MetricValue.DataQuality.ERROR) {
+                    continue;
+                }
+                long timestampMillis = TimeRanges.toEpochMillis(timestamp);
+                if (timestampMillis < startMillis || timestampMillis > endMillis) {
+                    continue;
+                }
+                points.add(timestampMillis, value);
+            }
+
+        } finally {
+            lock.readLock().unlock();
+        }
+
+        long visited = 0;
+        for (int i = 0; i < points.size(); i++) {
+            visited++;
+            if (!visitor.visit(points.getTimestamp(i), points.getValue(i))) {
+                break;
+            }
+        }
+        return visited;
+    }
+
     /**
      * 获取指标统计信息
      */
     public Map<String, Object> getMetricStatistics(String metricIdentifier, String timeRange) {
-        Map<String, Object> stats = new HashMap<>();
+        Map<String, Object> stats;
         
         try {
             // 根据时间范围计算开始时间
-            LocalDateTime endTime = LocalDateTime.now();
-            LocalDateTime startTime = calculateStartTime(endTime, timeRange);
-            
-            List<MetricValue> history = getMetricHistory(metricIdentifier, startTime, endTime);
-            
-            if (history.isEmpty()) {
-                stats.put("count", 0);
-                stats.put("average", 0.0);
-                stats.put("max", 0.0);
-                stats.put("min", 0.0);
-                return stats;
-            }
+            long endMillis = TimeRanges.toEpochMillis(LocalDateTime.now());
+            long startMillis = endMillis - TimeRanges.parseDurationMillis(timeRange, TimeRanges.HOUR_MILLIS);
             
-            // 计算统计信息
-            double sum = 0.0;
-            double max = Double.MIN_VALUE;
-            double min = Double.MAX_VALUE;
-            int validCount = 0;
+            // 单次遍历计算统计信息，长区间的完整时间桶使用汇总数据
+            ensureMetricLoaded(metricIdentifier);
+            StreamingStatistics statistics = new StreamingStatistics();
+            String resolution = RollupQueries.collectStatistics(this, rollupStore, metricIdentifier, startMillis, endMillis, statistics);
             
-            for (MetricValue value : history) {
-                if (value.isValid() && value.getValue() != null) {
-                    double val = value.getValue();
-                    sum += val;
-                    max = Math.max(max, val);
-                    min = Math.min(min, val);
-                    validCount++;
-                }
-            }
-            
-            stats.put("count", validCount);
-            stats.put("average", validCount > 0 ? sum / validCount : 0.0);
-            stats.put("max", max == Double.MIN_VALUE ? 0.0 : max);
-            stats.put("min", min == Double.MAX_VALUE ? 0.0 : min);
+            stats = statistics.toMap();
+            stats.put("resolution", resolution);
             stats.put("timeRange", timeRange);
-            stats.put("startTime", startTime);
-            stats.put("endTime", endTime);
+            stats.put("startTime", TimeRanges.toLocalDateTime(startMillis));
+            stats.put("endTime", TimeRanges.toLocalDateTime(endMillis));
             
         } catch (Exception e) {
-            System.err.println("计算统计信息失败: " + metricIdentifier + ", 错误: " + e.getMessage());
+            log.warn("计算统计信息失败: {}, 错误: {}", metricIdentifier, e.getMessage());
+            stats = new StreamingStatistics().toMap();
             stats.put("error", e.getMessage());
         }
         
@@ -313,6 +497,8 @@ public class JsonTimeSeriesDataService implements TimeSeriesDataService {
             // 清空内存数据
             metricHistory.clear();
             latestValues.clear();
+            rollupStore.clear();
+            versions.reset();
             
             // 删除所有数据文件
             if (Files.exists(dataRootPath)) {
@@ -324,11 +510,11 @@ public class JsonTimeSeriesDataService implements TimeSeriesDataService {
                                 try {
                                     Files.delete(path);
                                 } catch (IOException e) {
-                                    System.err.println("删除文件失败: " + path + ", 错误: " + e.getMessage());
+                                    log.warn("删除文件失败: {}, 错误: {}", path, e.getMessage());
                                 }
                             });
                 } catch (IOException e) {
-                    System.err.println("遍历目录失败: " + e.getMessage());
+                    log.warn("遍历目录失败: {}", e.getMessage());
                 }
             }
             
@@ -348,7 +534,7 @@ public class JsonTimeSeriesDataService implements TimeSeriesDataService {
                 objectMapper.writerWithDefaultPrettyPrinter().writeValue(filePath.toFile(), history);
             }
         } catch (IOException e) {
-            System.err.println("保存指标数据失败: " + metricIdentifier + ", 错误: " + e.getMessage());
+            log.warn("保存指标数据失败: {}, 错误: {}", metricIdentifier, e.getMessage());
         }
     }
 
@@ -367,7 +553,10 @@ public class JsonTimeSeriesDataService implements TimeSeriesDataService {
                     );
                     
                     if (storedHistory != null && !storedHistory.isEmpty()) {
-                        metricHistory.put(metricIdentifier, storedHistory);
+                        // 并发加载时只有首次放入的线程重建汇总，避免重复计入
+                        if (metricHistory.putIfAbsent(metricIdentifier, storedHistory) == null) {
+                            rebuildRollups(metricIdentifier, storedHistory);
+                        }
                         // 从最后一个存储值重建MetricValue用于缓存
                         StoredMetricValue lastStored = storedHistory.get(storedHistory.size() - 1);
                         MetricValue lastValue = new MetricValue(
@@ -391,13 +580,28 @@ public class JsonTimeSeriesDataService implements TimeSeriesDataService {
                         List<StoredMetricValue> storedHistory = history.stream()
                             .map(mv -> new StoredMetricValue(mv.getValue(), mv.getTimestamp(), mv.getQuality()))
                             .collect(Collectors.toList());
-                        metricHistory.put(metricIdentifier, storedHistory);
+                        // 并发加载时只有首次放入的线程重建汇总，避免重复计入
+                        if (metricHistory.putIfAbsent(metricIdentifier, storedHistory) == null) {
+                            rebuildRollups(metricIdentifier, storedHistory);
+                        }
                         latestValues.put(metricIdentifier, history.get(history.size() - 1));
                     }
                 }
             }
         } catch (IOException e) {
-            System.err.println("加载指标数据失败: " + metricIdentifier + ", 错误: " + e.getMessage());
+            log.warn("加载指标数据失败: {}, 错误: {}", metricIdentifier, e.getMessage());
+        }
+    }
+
+    /**
+     * 根据加载的历史数据重建指标的汇总
+     */
+    private void rebuildRollups(String metricIdentifier, List<StoredMetricValue> storedHistory) {
+        for (StoredMetricValue storedValue : storedHistory) {
+            if (storedValue.getTimestamp() != null && storedValue.getValue() != null
+                    && storedValue.getQuality() != MetricValue.DataQuality.ERROR) {
+                rollupStore.record(metricIdentifier, TimeRanges.toEpochMillis(storedValue.getTimestamp()), storedValue.getValue());
+            }
         }
     }
 
@@ -417,7 +621,7 @@ public class JsonTimeSeriesDataService implements TimeSeriesDataService {
                         });
             }
         } catch (IOException e) {
-            System.err.println("加载现有数据失败: " + e.getMessage());
+            log.warn("加载现有数据失败: {}", e.getMessage());
         }
     }
 
@@ -437,34 +641,6 @@ public class JsonTimeSeriesDataService implements TimeSeriesDataService {
         }
     }
 
-    /**
-     * 根据时间范围字符串计算开始时间
-     */
-    private LocalDateTime calculateStartTime(LocalDateTime endTime, String timeRange) {
-        if (timeRange == null || timeRange.isEmpty()) {
-            return endTime.minusHours(1); // 默认1小时
-        }
-        
-        try {
-            if (timeRange.endsWith("m")) {
-                int minutes = Integer.parseInt(timeRange.substring(0, timeRange.length() - 1));
-                return endTime.minusMinutes(minutes);
-            } else if (timeRange.endsWith("h")) {
-                int hours = Integer.parseInt(timeRange.substring(0, timeRange.length() - 1));
-                return endTime.minusHours(hours);
-            } else if (timeRange.endsWith("d")) {
-                int days = Integer.parseInt(timeRange.substring(0, timeRange.length() - 1));
-                return endTime.minusDays(days);
-            } else {
-                // 尝试解析为数字（分钟）
-                int minutes = Integer.parseInt(timeRange);
-                return endTime.minusMinutes(minutes);
-            }
-        } catch (NumberFormatException e) {
-            return endTime.minusHours(1); // 默认1小时
-        }
-    }
-
     /**
      * 获取存储统计信息
      */
@@ -480,6 +656,7 @@ public class JsonTimeSeriesDataService implements TimeSeriesDataService {
             stats.put("cachedValues", latestValues.size());
             stats.put("dataPath", dataPath);
             stats.put("dataRootExists", Files.exists(dataRootPath));
+            stats.put("rollups", rollupStore.getStatistics());
             
             // 计算总存储大小
             long totalSize = 0;
@@ -0,0 +1,172 @@
+package com.gridinsight.service;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * HDR风格的对数-线性延迟直方图（微秒）
+ * 每个2的幂区间再线性划分为若干子桶，相对误差不超过 1/2^(significantBits-1)；
+ * 记录只做一次下标计算和一次原子自增，不加锁、不分配对象，可以在热路径上并发调用。
+ * 超过上限的值计入最后一个桶，最大值单独精确记录。
+ */
+public final class LatencyHistogram {
+
+    // 默认可记录的最大值：2^40微秒（约12.7天）
+    private static final int MAX_EXPONENT = 40;
+
+    private final int significantBits;
+    private final int subBucketCount;
+    private final int halfSubBucketCount;
+    private final AtomicLongArray counts;
+    private final LongAdder sum = new LongAdder();
+    private final AtomicLong max = new AtomicLong();
+
+    /**
+     * @param significantBits 每个2的幂区间的精度位数（2-10），如6表示相对误差约3%
+     */
+    public LatencyHistogram(int significantBits) {
+        this(significantBits, MAX_EXPONENT);
+    }
+
+    /**
+     * @param significantBits 每个2的幂区间的精度位数（2-10）
+     * @param maxExponent 可区分的最大值为2^maxExponent微秒，桶数随之减少；更大的值计入最后一个桶
+     */
+    public LatencyHistogram(int significantBits, int maxExponent) {
+        if (significantBits < 2 || significantBits > 10) {
+            throw new IllegalArgumentException("精度位数必须在2-10之间: " + significantBits);
+        }
+        if (maxExponent < significantBits || maxExponent > MAX_EXPONENT) {
+            throw new IllegalArgumentException("最大值指数必须在" + significantBits + "-" + MAX_EXPONENT + "之间: " + maxExponent);
+        }
+        this.significantBits = significantBits;
+        this.subBucketCount = 1 << significantBits;
+        this.halfSubBucketCount = subBucketCount >> 1;
+        this.counts = new AtomicLongArray(indexOf(1L << maxExponent) + 1);
+    }
+
+    /**
+     * 记录一个纳秒级延迟，负值按0处理
+     */
+    public void recordNanos(long nanos) {
+        recordMicros(nanos / 1000L);
+    }
+
+    /**
+     * 记录一个微秒级延迟，负值按0处理
+     */
+    public void recordMicros(long micros) {
+        long value = Math.max(0L, micros);
+        counts.incrementAndGet(Math.min(indexOf(value), counts.length() - 1));
+        sum.add(value);
+        long currentMax = max.get();
+        while (value > currentMax && !max.compareAndSet(currentMax, value)) {
+            currentMax = max.get();
+        }
+    }
+
+    /**
+     * 值所在的桶下标：小于subBucketCount的值每个值一个桶，其余按最高significantBits位分桶
+     */
+    private int indexOf(long value) {
+        if (value < subBucketCount) {
+            return (int) value;
+        }
+        int exponent = 63 - Long.numberOfLeadingZeros(value);
+        int shift = exponent - significantBits + 1;
+        int mantissa = (int) (value >>> shift);
+        return subBucketCount + (shift - 1) * halfSubBucketCount + (mantissa - halfSubBucketCount);
+    }
+
+    /**
+     * 桶的上界（该桶内的最大值）
+     */
+    private long highestValueOf(int index) {
+        if (index < subBucketCount) {
+            return index;
+        }
+        int offset = index - subBucketCount;
+        int shift = offset / halfSubBucketCount + 1;
+        long mantissa = offset % halfSubBucketCount + halfSubBucketCount;
+        return ((mantissa + 1) << shift) - 1;
+    }
+
+    /**
+     * 清空所有记录
+     */
+    public void reset() {
+        for (int i = 0; i < counts.length(); i++) {
+            counts.set(i, 0L);
+        }
+        sum.reset();
+        max.set(0L);
+    }
+
+    /**
+     * 生成统计摘要（毫秒）：count、mean、p50、p90、p99、p999、max
+     * 先复制计数再计算分位数，并发记录时摘要内部保持一致
+     */
+    public Map<String, Object> summary() {
+        long[] snapshot = new long[counts.length()];
+        long total = 0;
+        for (int i = 0; i < snapshot.length; i++) {
+            snapshot[i] = counts.get(i);
+            total += snapshot[i];
+        }
+        long maxMicros = max.get();
+
+        Map<String, Object> summary = new LinkedHashMap<>();
+        summary.put("count", total);
+        summary.put("meanMs", total == 0 ? 0.0 : toMillis(sum.sum() / (double) total));
+        summary.put("p50Ms", toMillis(percentile(snapshot, total, 0.50, maxMicros)));
+        summary.put("p90Ms", toMillis(percentile(snapshot, total, 0.90, maxMicros)));
+        summary.put("p99Ms", toMillis(percentile(snapshot, total, 0.99, maxMicros)));
+        summary.put("p999Ms", toMillis(percentile(snapshot, total, 0.999, maxMicros)));
+        summary.put("maxMs", toMillis(maxMicros));
+        return summary;
+    }
+
+    /**
+     * 指定分位数的值（微秒），没有记录时返回0
+     */
+    public long getValueAtPercentile(double quantile) {
+        long[] snapshot = new long[counts.length()];
+        long total = 0;
+        for (int i = 0; i < snapshot.length; i++) {
+            snapshot[i] = counts.get(i);
+            total += snapshot[i];
+        }
+        return percentile(snapshot, total, quantile, max.get());
+    }
+
+    public long getCount() {
+        long total = 0;
+        for (int i = 0; i < counts.length(); i++) {
+            total += counts.get(i);
+        }
+        return total;
+    }
+
+    private long percentile(long[] snapshot, long total, double quantile, long maxMicros) {
+        if (total == 0) {
+            return 0L;
+        }
+        long rank = Math.max(1L, (long) Math.ceil(quantile * total));
+        long seen = 0;
+        for (int i = 0; i < snapshot.length; i++) {
+            seen += snapshot[i];
+            if (seen >= rank) {
+                // 桶上界不超过实际最大值；最后一个桶包含所有超限值，直接取最大值
+                return i == snapshot.length - 1 ? maxMicros : Math.min(highestValueOf(i), maxMicros);
+            }
+        }
+        return maxMicros;
+    }
+
+    private static double toMillis(double micros) {
+        return Math.round(micros) / 1000.0;
+    }
+}
@@ -0,0 +1,86 @@
+package com.gridinsight.service;
+
+import com.gridinsight.domain.model.MetricValue;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
+
+/**
+ * 批量最新值查询中缓存未命中部分的并行加载
+ * 缓存命中由各存储实现在调用方单次遍历中直接返回，只有需要读文件或回溯扫描的指标交给加载线程池
+ */
+final class LatestValueBulkLoader {
+
+    private static final Logger log = LoggerFactory.getLogger(LatestValueBulkLoader.class);
+
+    private final ExecutorService executor;
+
+    LatestValueBulkLoader(String threadNamePrefix, int threads) {
+        AtomicInteger threadIndex = new AtomicInteger();
+        this.executor = Executors.newFixedThreadPool(Math.max(1, threads), runnable -> {
+            Thread thread = new Thread(runnable, threadNamePrefix + "-" + threadIndex.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    /**
+     * 并行加载指标最新值并放入结果
+     * 只有一个指标时直接在调用线程加载
+     * @param metricIdentifiers 缓存未命中的指标
+     * @param loader 单个指标的加载方法，返回null表示无数据
+     * @param result 结果映射（只在调用线程写入）
+     */
+    void loadInto(List<String> metricIdentifiers, Function<String, MetricValue> loader, Map<String, MetricValue> result) {
+        if (metricIdentifiers.isEmpty()) {
+            return;
+        }
+        if (metricIdentifiers.size() == 1) {
+            putIfPresent(result, metricIdentifiers.get(0), loader.apply(metricIdentifiers.get(0)));
+            return;
+        }
+
+        List<Future<MetricValue>> futures = new ArrayList<>(metricIdentifiers.size());
+        try {
+            for (String metricIdentifier : metricIdentifiers) {
+                futures.add(executor.submit(() -> loader.apply(metricIdentifier)));
+            }
+        } catch (RejectedExecutionException e) {
+            // 线程池已关闭（应用停止中），剩余指标在调用线程加载
+            for (int i = futures.size(); i < metricIdentifiers.size(); i++) {
+                putIfPresent(result, metricIdentifiers.get(i), loader.apply(metricIdentifiers.get(i)));
+            }
+        }
+
+        for (int i = 0; i < futures.size(); i++) {
+            try {
+                putIfPresent(result, metricIdentifiers.get(i), futures.get(i).get());
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            } catch (ExecutionException e) {
+                log.warn("加载最新值失败: {}, 错误: {}", metricIdentifiers.get(i), e.getCause().getMessage());
+            }
+        }
+    }
+
+    private static void putIfPresent(Map<String, MetricValue> result, String metricIdentifier, MetricValue value) {
+        if (value != null) {
+            result.put(metricIdentifier, value);
+        }
+    }
+
+    void shutdown() {
+        executor.shutdownNow();
+    }
+}
@@ -0,0 +1,144 @@
+package com.gridinsight.service;
+
+import org.mapdb.DB;
+import org.mapdb.DBMaker;
+import org.mapdb.HTreeMap;
+import org.mapdb.Serializer;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * MapTSDB最新值索引
+ * 以指标标识符为键持久化每个指标的最后一个数据点（时间戳+数值），
+ * 启动时整体预加载到内存，最新值查询为O(1)，与指标更新频率和数据年龄无关
+ */
+public class MapTsdbLatestValueIndex {
+
+    /**
+     * 最新数据点
+     */
+    public static final class LatestPoint {
+        private final long timestampMillis;
+        private final double value;
+
+        public LatestPoint(long timestampMillis, double value) {
+            this.timestampMillis = timestampMillis;
+            this.value = value;
+        }
+
+        public long getTimestampMillis() {
+            return timestampMillis;
+        }
+
+        public double getValue() {
+            return value;
+        }
+    }
+
+    private static final String MAP_NAME = "latest-values";
+
+    private final String filePath;
+
+    // 内存中的最新值（读路径）
+    private final Map<String, LatestPoint> latestPoints = new ConcurrentHashMap<>();
+
+    // 自上次提交以来发生变化的指标（写线程更新和提交，关闭时由销毁线程提交，均在this上同步）
+    private final Set<String> dirtyMetrics = new HashSet<>();
+
+    private DB db;
+    private HTreeMap<String, long[]> persistedPoints;
+
+    public MapTsdbLatestValueIndex(String filePath) {
+        this.filePath = filePath;
+    }
+
+    /**
+     * 打开索引文件并预加载所有指标的最新值
+     */
+    public void open() {
+        Path parent = Paths.get(filePath).toAbsolutePath().getParent();
+        try {
+            if (parent != null) {
+                Files.createDirectories(parent);
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException("创建最新值索引目录失败: " + parent, e);
+        }
+        db = DBMaker.fileDB(filePath)
+                .fileMmapEnableIfSupported()
+                .transactionEnable()
+                .make();
+        persistedPoints = db.hashMap(MAP_NAME, Serializer.STRING, Serializer.LONG_ARRAY).createOrOpen();
+
+        for (Map.Entry<String, long[]> entry : persistedPoints.entrySet()) {
+            long[] encoded = entry.getValue();
+            latestPoints.put(entry.getKey(), new LatestPoint(encoded[0], Double.longBitsToDouble(encoded[1])));
+        }
+    }
+
+    /**
+     * 查询指标的最新数据点
+     * @param metricIdentifier 指标标识符
+     * @return 最新数据点，不存在时返回null
+     */
+    public LatestPoint get(String metricIdentifier) {
+        return latestPoints.get(metricIdentifier);
+    }
+
+    /**
+     * 更新指标的最新数据点，早于已有时间戳的数据点被忽略
+     * 应在写线程中调用，持久化在下一次commit时完成
+     */
+    public synchronized void update(String metricIdentifier, long timestampMillis, double value) {
+        LatestPoint current = latestPoints.get(metricIdentifier);
+        if (current != null && current.timestampMillis > timestampMillis) {
+            return;
+        }
+        latestPoints.put(metricIdentifier, new LatestPoint(timestampMillis, value));
+        dirtyMetrics.add(metricIdentifier);
+    }
+
+    /**
+     * 将变化的最新值写入索引文件并提交
+     * 每个指标每次提交只写一次，与期间的写入次数无关
+     */
+    public synchronized void commit() {
+        if (dirtyMetrics.isEmpty()) {
+            return;
+        }
+        for (String metricIdentifier : dirtyMetrics) {
+            LatestPoint point = latestPoints.get(metricIdentifier);
+            if (point != null) {
+                persistedPoints.put(metricIdentifier,
+                        new long[] {point.timestampMillis, Double.doubleToRawLongBits(point.value)});
+            }
+        }
+        db.commit();
+        dirtyMetrics.clear();
+    }
+
+    /**
+     * 已索引的指标数量
+     */
+    public int size() {
+        return latestPoints.size();
+    }
+
+    /**
+     * 关闭索引文件
+     */
+    public synchronized void close() {
+        if (db != null && !db.isClosed()) {
+            commit();
+            db.close();
+        }
+    }
+}
@@ -1,10 +1,20 @@
 package com.gridinsight.service;
 
 import com.gridinsight.domain.model.MetricValue;
+import com.gridinsight.service.timeseries.DownsampleMethod;
+import com.gridinsight.service.timeseries.MetricRollupStore;
+import com.gridinsight.service.timeseries.RollupQueries;
+import com.gridinsight.service.timeseries.RollupTier;
+import com.gridinsight.service.timeseries.SeriesBuffer;
+import com.gridinsight.service.timeseries.StreamingStatistics;
+import com.gridinsight.service.timeseries.TimeRanges;
 import com.maptsdb.TimeSeriesDatabase;
 import com.maptsdb.TimeSeriesDatabaseBuilder;
 import com.maptsdb.DataPoint;
 import com.maptsdb.DataSourceConfig;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
 
@@ -13,7 +23,7 @@ import javax.annotation.PreDestroy;
 import java.time.LocalDateTime;
 import java.time.ZoneOffset;
 import java.util.*;
-import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
 
 /**
  * 基于MapTSDB的时序数据存储服务实现
@@ -22,6 +32,12 @@ import java.util.concurrent.ConcurrentHashMap;
  */
 public class MapTsdbTimeSeriesDataService implements TimeSeriesDataService {
 
+    private static final Logger log = LoggerFactory.getLogger(MapTsdbTimeSeriesDataService.class);
+
+    // 写入时未提供单位的默认单位，以及基本类型写入路径的默认数据质量
+    private static final String DEFAULT_UNIT = "个";
+    private static final byte GOOD = MetricValue.DataQuality.GOOD.code();
+
     @Value("${gridinsight.timeseries.data-path:data/timeseries}")
     private String dataPath;
 
@@ -31,14 +47,73 @@ public class MapTsdbTimeSeriesDataService implements TimeSeriesDataService {
     // MapTSDB数据库实例
     private TimeSeriesDatabase tsdb;
     
-    // 最新值缓存（可选）
-    private final Map<String, MetricValue> latestValueCache = new ConcurrentHashMap<>();
+    // 指标符号表，与注册表快照共用；脱离Spring容器创建时使用独立的符号表
+    @Autowired(required = false)
+    private MetricSymbolTable symbols = new MetricSymbolTable();
+    
+    // 最新值缓存（以指标ID为下标的基本类型样本）：写入时同步更新，写入后立即可读，写入和读取数值都不分配对象；
+    // 未启用缓存时只暂存尚未写入最新值索引的值，写线程更新索引后移除
+    private final MetricLatestSamples latestSamples = new MetricLatestSamples(256);
+    
+    // 通过storeMetricValue写入的非默认单位（以指标ID为下标），构造MetricValue时使用
+    private final MetricIdArray<String> units = new MetricIdArray<>(256);
+    
+    // 每个指标的数据版本号
+    private final MetricVersionTracker versions = new MetricVersionTracker();
+    
+    // 已注册的数据源登记表（以指标ID为下标，1表示已注册），避免每次写入都调用getDataSourceIds()物化完整的数据源集合
+    private final MetricIdLongArray knownSources = new MetricIdLongArray(256);
+    private final AtomicInteger knownSourceCount = new AtomicInteger();
+    
+    // 写后队列：单一写线程按数量/时间阈值统一提交
+    private MapTsdbWriteBehindQueue writeQueue;
+    
+    // 度量；脱离Spring容器创建时不输出
+    @Autowired(required = false)
+    private GridInsightMeters meters = GridInsightMeters.noop();
+    
+    // 持久化的最新值索引，缓存未命中时O(1)查询
+    private MapTsdbLatestValueIndex latestValueIndex;
+    
+    // 多分辨率汇总（1m/15m/1h），在写线程中增量更新
+    private MetricRollupStore rollupStore;
+    
+    // 原始数据保留天数（仅对新建数据库生效）
+    @Value("${gridinsight.maptsdb.retention-days:30}")
+    private int retentionDays;
+    
+    // 汇总数据保留天数，独立于原始数据
+    @Value("${gridinsight.timeseries.rollup.retention-days:365}")
+    private int rollupRetentionDays;
+    
+    // 各汇总层级单独配置的保留天数，小于0时使用上面的统一配置
+    @Value("${gridinsight.timeseries.rollup.retention-days-1m:-1}")
+    private int rollupRetentionDays1m = -1;
     
-    // 批量写入计数器
-    private final Map<String, Integer> batchCounters = new ConcurrentHashMap<>();
+    @Value("${gridinsight.timeseries.rollup.retention-days-15m:-1}")
+    private int rollupRetentionDays15m = -1;
     
-    @Value("${gridinsight.maptsdb.batch-size:10}")
-    private int batchSize;
+    @Value("${gridinsight.timeseries.rollup.retention-days-1h:-1}")
+    private int rollupRetentionDays1h = -1;
+    
+    @Value("${gridinsight.maptsdb.commit-batch-size:5000}")
+    private int commitBatchSize;
+    
+    @Value("${gridinsight.maptsdb.commit-interval-ms:200}")
+    private long commitIntervalMs;
+    
+    @Value("${gridinsight.maptsdb.write-queue-capacity:100000}")
+    private int writeQueueCapacity;
+    
+    // 按时间顺序遍历历史数据时每次范围查询的时间窗口（毫秒），长区间分页读取，不一次性载入整个区间
+    @Value("${gridinsight.maptsdb.scan-window-ms:3600000}")
+    private long scanWindowMs = TimeRanges.HOUR_MILLIS;
+    
+    // 批量最新值查询中需要回溯扫描的指标的并行加载线程数
+    @Value("${gridinsight.timeseries.latest-read-threads:4}")
+    private int latestReadThreads;
+    
+    private LatestValueBulkLoader latestLoader;
 
     @PostConstruct
     public void init() {
@@ -48,24 +123,50 @@ public class MapTsdbTimeSeriesDataService implements TimeSeriesDataService {
             
             if (dbFile.exists()) {
                 // 数据库文件已存在，打开现有数据库
-                System.out.println("发现现有MapTSDB数据库文件，正在打开: " + dbFilePath);
+                log.info("发现现有MapTSDB数据库文件，正在打开: {}", dbFilePath);
                 tsdb = TimeSeriesDatabaseBuilder.openExistingWithDynamicSources(dbFilePath);
-                System.out.println("MapTSDB现有数据库打开成功，数据路径: " + dataPath);
+                log.info("MapTSDB现有数据库打开成功，数据路径: {}", dataPath);
             } else {
                 // 数据库文件不存在，创建新数据库
-                System.out.println("创建新的MapTSDB数据库: " + dbFilePath);
+                log.info("创建新的MapTSDB数据库: {}", dbFilePath);
                 tsdb = TimeSeriesDatabaseBuilder.builder()
                         .path(dbFilePath)  // 设置数据库文件路径
                         .addDoubleSource("metrics", "指标数据")  // 添加指标数据源
-                        .withRetentionDays(30)  // 数据保留30天
+                        .withRetentionDays(retentionDays)  // 原始数据保留天数
                         .enableMemoryMapping()  // 启用内存映射
                         .enableTransactions()  // 启用事务
                         .buildWithDynamicSources();  // 构建支持动态数据源的数据库
-                System.out.println("MapTSDB新数据库创建成功，数据路径: " + dataPath);
+                log.info("MapTSDB新数据库创建成功，数据路径: {}", dataPath);
             }
             
+            // 预加载已存在的数据源
+            for (String sourceId : tsdb.getDataSourceIds()) {
+                knownSources.set(symbols.intern(sourceId), 1L);
+                knownSourceCount.incrementAndGet();
+            }
+            
+            // 打开最新值索引并预加载
+            latestValueIndex = new MapTsdbLatestValueIndex(dataPath + "/latest-index.db");
+            latestValueIndex.open();
+            log.info("MapTSDB最新值索引加载完成，指标数: {}", latestValueIndex.size());
+            
+            // 打开汇总存储
+            rollupStore = new MetricRollupStore(dataPath + "/rollups.db", rollupRetentionDays);
+            rollupStore.setRetentionDays(RollupTier.ONE_MINUTE, rollupRetentionDays1m);
+            rollupStore.setRetentionDays(RollupTier.FIFTEEN_MINUTES, rollupRetentionDays15m);
+            rollupStore.setRetentionDays(RollupTier.ONE_HOUR, rollupRetentionDays1h);
+            rollupStore.open();
+            
+            // 启动写后队列
+            writeQueue = new MapTsdbWriteBehindQueue(new TsdbWriteHandler(), writeQueueCapacity, commitBatchSize, commitIntervalMs);
+            writeQueue.start();
+            meters.gauge("gridinsight.maptsdb.write.queue", "写后队列中待写入的数据点数",
+                         writeQueue, MapTsdbWriteBehindQueue::getQueueDepth);
+            
+            latestLoader = new LatestValueBulkLoader("maptsdb-latest-reader", latestReadThreads);
+            
         } catch (Exception e) {
-            System.err.println("MapTSDB初始化失败: " + e.getMessage());
+            log.error("MapTSDB初始化失败: {}", e.getMessage());
             throw new RuntimeException("MapTSDB初始化失败", e);
         }
     }
@@ -73,30 +174,49 @@ public class MapTsdbTimeSeriesDataService implements TimeSeriesDataService {
     @PreDestroy
     public void destroy() {
         try {
+            if (latestLoader != null) {
+                latestLoader.shutdown();
+            }
+            if (writeQueue != null) {
+                // 关闭前排空写后队列，队列中的数据会被写入并提交
+                if (!writeQueue.shutdown(10_000)) {
+                    // 写线程仍在写入，此时关闭索引和数据库会与写线程并发访问，保留给进程退出处理
+                    log.error("MapTSDB写线程未在超时内结束，跳过关闭最新值索引、汇总存储和数据库");
+                    return;
+                }
+            }
+            if (latestValueIndex != null) {
+                latestValueIndex.close();
+            }
+            if (rollupStore != null) {
+                rollupStore.close();
+            }
             if (tsdb != null) {
-                // 关闭前确保所有数据都被提交
                 tsdb.commit();
                 tsdb.close();
-                System.out.println("MapTSDB数据库已关闭");
+                log.info("MapTSDB数据库已关闭");
             }
         } catch (Exception e) {
-            System.err.println("关闭MapTSDB时发生错误: " + e.getMessage());
+            log.error("关闭MapTSDB时发生错误: {}", e.getMessage());
         }
     }
     
     /**
-     * 手动提交所有待提交的数据
+     * 手动提交所有待提交的数据（刷新屏障）
+     * 等待调用前入队的所有数据点写入并提交
      */
     public void commitAll() {
         try {
-            if (tsdb != null) {
-                tsdb.commit();
-                // 重置所有计数器
-                batchCounters.clear();
-                System.out.println("所有数据已提交到MapTSDB");
+            if (writeQueue == null) {
+                return;
+            }
+            if (writeQueue.flush(30_000)) {
+                log.debug("所有数据已提交到MapTSDB");
+            } else {
+                log.warn("等待MapTSDB提交超时");
             }
         } catch (Exception e) {
-            System.err.println("提交数据时发生错误: " + e.getMessage());
+            log.error("提交数据时发生错误: {}", e.getMessage());
         }
     }
     
@@ -111,7 +231,7 @@ public class MapTsdbTimeSeriesDataService implements TimeSeriesDataService {
                 return tsdb.getDataSourceInfo(metricIdentifier);
             }
         } catch (Exception e) {
-            System.err.println("获取数据源信息时发生错误: " + e.getMessage());
+            log.warn("获取数据源信息时发生错误: {}", e.getMessage());
         }
         return null;
     }
@@ -138,11 +258,53 @@ public class MapTsdbTimeSeriesDataService implements TimeSeriesDataService {
                 }
             }
         } catch (Exception e) {
-            System.err.println("获取指定时间戳的指标值时发生错误: " + e.getMessage());
+            log.warn("获取指定时间戳的指标值时发生错误: {}", e.getMessage());
         }
         return null;
     }
 
+    /**
+     * 确保指标对应的数据源已注册
+     * 已知数据源直接按ID命中登记表；新数据源加锁后复查，保证只向MapTSDB注册一次
+     * @param metricId 指标ID
+     */
+    private void ensureDataSource(int metricId) {
+        if (knownSources.get(metricId) != 0L) {
+            return;
+        }
+        synchronized (knownSources) {
+            if (knownSources.get(metricId) == 0L) {
+                String metricIdentifier = symbols.nameOf(metricId);
+                log.debug("为指标添加数据源: {}", metricIdentifier);
+                tsdb.addDoubleSource(metricIdentifier, "指标数据");
+                knownSources.set(metricId, 1L);
+                knownSourceCount.incrementAndGet();
+            }
+        }
+    }
+
+    private boolean isKnownSource(int metricId) {
+        return knownSources.get(metricId) != 0L;
+    }
+
+    /**
+     * 写入路径的指标ID：未注册的标识符分配新ID
+     */
+    private int idForWrite(String metricIdentifier) {
+        return symbols.intern(metricIdentifier);
+    }
+
+    /**
+     * 校验写入的指标ID并返回对应的标识符（MapTSDB以标识符为数据源名）
+     */
+    private String nameForWrite(int metricId) {
+        String metricIdentifier = symbols.nameOf(metricId);
+        if (metricIdentifier == null) {
+            throw new IllegalArgumentException("未注册的指标ID: " + metricId);
+        }
+        return metricIdentifier;
+    }
+
     @Override
     public void storeMetricValue(String metricIdentifier, MetricValue value, LocalDateTime timestamp) {
         if (metricIdentifier == null || value == null || timestamp == null) {
@@ -151,10 +313,8 @@ public class MapTsdbTimeSeriesDataService implements TimeSeriesDataService {
 
         try {
             // 确保数据源存在，如果不存在则添加
-            if (!tsdb.getDataSourceIds().contains(metricIdentifier)) {
-                System.out.println("为指标添加数据源: " + metricIdentifier);
-                tsdb.addDoubleSource(metricIdentifier, "指标数据");
-            }
+            int metricId = idForWrite(metricIdentifier);
+            ensureDataSource(metricId);
             
             // 将LocalDateTime转换为时间戳（毫秒）
             long timestampMillis = timestamp.toInstant(ZoneOffset.UTC).toEpochMilli();
@@ -162,20 +322,11 @@ public class MapTsdbTimeSeriesDataService implements TimeSeriesDataService {
             // 所有指标值都转换为float类型存储到MapTSDB
             Double metricValue = value.getValue();
             if (metricValue != null) {
-                // 使用putDouble方法存储float值
-                tsdb.putDouble(metricIdentifier, timestampMillis, metricValue);
+                // 写入写后队列，由写线程统一写入并提交
+                writeQueue.enqueue(metricId, metricIdentifier, timestampMillis, metricValue, !enableCache);
                 
-                // 批量提交策略：每batchSize次写入后commit一次
-                int currentCount = batchCounters.compute(metricIdentifier, (k, v) -> (v == null ? 1 : v + 1));
-                if (currentCount >= batchSize) {
-                    tsdb.commit();
-                    batchCounters.put(metricIdentifier, 0); // 重置计数器
-                }
-                
-                // 更新缓存
-                if (enableCache) {
-                    latestValueCache.put(metricIdentifier, value);
-                }
+                // 同步更新缓存和版本号
+                publishLatest(metricId, timestampMillis, metricValue, value);
             }
             
         } catch (Exception e) {
@@ -183,6 +334,40 @@ public class MapTsdbTimeSeriesDataService implements TimeSeriesDataService {
         }
     }
 
+    /**
+     * 存储单个数据点
+     * 持久化写入、最新值索引和汇总在写线程中完成；最新值缓存和版本号在返回前同步更新，
+     * 调用方（发布更新事件、计算下游派生指标）随后读取到的就是本次写入的值
+     */
+    @Override
+    public void storeSample(String metricIdentifier, long timestampMillis, double value) {
+        if (metricIdentifier == null) {
+            throw new IllegalArgumentException("参数不能为空");
+        }
+        storeSample(idForWrite(metricIdentifier), timestampMillis, value);
+    }
+
+    @Override
+    public void storeSample(int metricId, long timestampMillis, double value) {
+        storeSample(metricId, timestampMillis, value, GOOD);
+    }
+
+    /**
+     * 按指标ID存储单个数据点，全程以基本类型传递，不分配对象
+     */
+    @Override
+    public void storeSample(int metricId, long timestampMillis, double value, byte quality) {
+        String metricIdentifier = nameForWrite(metricId);
+        try {
+            ensureDataSource(metricId);
+            writeQueue.enqueue(metricId, metricIdentifier, timestampMillis, value, !enableCache);
+            latestSamples.put(metricId, timestampMillis, value, quality);
+            versions.bump(metricId);
+        } catch (Exception e) {
+            throw new RuntimeException("存储指标值时发生错误: " + e.getMessage(), e);
+        }
+    }
+
     @Override
     public void storeMetricValues(Map<String, MetricValue> values, LocalDateTime timestamp) {
         if (values == null || timestamp == null) {
@@ -200,73 +385,152 @@ public class MapTsdbTimeSeriesDataService implements TimeSeriesDataService {
                 
                 if (value != null && value.getValue() != null) {
                     // 确保数据源存在，如果不存在则添加
-                    if (!tsdb.getDataSourceIds().contains(metricIdentifier)) {
-                        System.out.println("为指标添加数据源: " + metricIdentifier);
-                        tsdb.addDoubleSource(metricIdentifier, "指标数据");
-                    }
+                    int metricId = idForWrite(metricIdentifier);
+                    ensureDataSource(metricId);
                     
-                    // 使用putDouble方法存储float值
-                    tsdb.putDouble(metricIdentifier, timestampMillis, value.getValue());
+                    // 写入写后队列，由写线程统一写入并提交
+                    writeQueue.enqueue(metricId, metricIdentifier, timestampMillis, value.getValue(), !enableCache);
                     
-                    // 更新缓存
-                    if (enableCache) {
-                        latestValueCache.put(metricIdentifier, value);
-                    }
+                    // 同步更新缓存和版本号
+                    publishLatest(metricId, timestampMillis, value.getValue(), value);
                 }
             }
             
-            // 批量提交
-            tsdb.commit();
-            
         } catch (Exception e) {
             throw new RuntimeException("批量存储指标值时发生错误: " + e.getMessage(), e);
         }
     }
 
+    /**
+     * 写入后立即发布最新值：放入缓存并推进版本号，记录非默认单位
+     */
+    private void publishLatest(int metricId, long timestampMillis, double value, MetricValue source) {
+        String unit = source.getUnit();
+        if (unit != null && !DEFAULT_UNIT.equals(unit) && !unit.equals(units.get(metricId))) {
+            units.set(metricId, unit);
+        }
+        latestSamples.put(metricId, timestampMillis, value, source.getQualityCode());
+        versions.bump(metricId);
+    }
+
+    private String unitOf(int metricId) {
+        String unit = units.get(metricId);
+        return unit != null ? unit : DEFAULT_UNIT;
+    }
+
     @Override
     public MetricValue getLatestMetricValue(String metricIdentifier) {
         if (metricIdentifier == null) {
             return null;
         }
+        int metricId = symbols.idOf(metricIdentifier);
+        if (metricId != MetricSymbolTable.UNKNOWN) {
+            return getLatestMetricValue(metricId);
+        }
 
+        // 本进程尚未读写过的指标：只可能存在于最新值索引中（已有数据源启动时均已登记ID）
         try {
-            // 先从缓存获取
-            if (enableCache && latestValueCache.containsKey(metricIdentifier)) {
-                return latestValueCache.get(metricIdentifier);
+            MapTsdbLatestValueIndex.LatestPoint latestPoint = latestValueIndex.get(metricIdentifier);
+            if (latestPoint != null) {
+                return cacheLatestValue(symbols.intern(metricIdentifier), latestPoint.getTimestampMillis(),
+                    latestPoint.getValue());
             }
+        } catch (Exception e) {
+            log.warn("获取最新指标值时发生错误: {}", e.getMessage());
+        }
+        return null;
+    }
 
-            // 从数据库获取最新值
-            // 使用时间范围查询获取最近的数据
-            long currentTime = System.currentTimeMillis();
-            long startTime = currentTime - 24 * 60 * 60 * 1000; // 查询最近24小时的数据
-            
-            java.util.NavigableMap<Long, Double> data = tsdb.queryRangeDouble(metricIdentifier, startTime, currentTime);
-            if (!data.isEmpty()) {
-                java.util.Map.Entry<Long, Double> latestEntry = data.lastEntry();
-                Double value = latestEntry.getValue();
-                LocalDateTime timestamp = LocalDateTime.ofInstant(
-                    java.time.Instant.ofEpochMilli(latestEntry.getKey()), 
-                    ZoneOffset.UTC
-                );
-                
-                MetricValue metricValue = new MetricValue(metricIdentifier, value, "个", timestamp, MetricValue.DataQuality.GOOD);
-                
-                // 更新缓存
-                if (enableCache) {
-                    latestValueCache.put(metricIdentifier, metricValue);
-                }
-                
-                return metricValue;
+    private MetricValue getLatestMetricValue(int metricId) {
+        try {
+            // 先从缓存获取（未启用缓存时为尚未写入索引的值），只在此处构造MetricValue
+            MetricValue cached = latestSamples.toMetricValue(metricId, symbols.nameOf(metricId), unitOf(metricId));
+            if (cached != null) {
+                return cached;
             }
-            
-            return null;
+
+            // 从最新值索引获取（O(1)，与数据年龄无关）
+            MapTsdbLatestValueIndex.LatestPoint latestPoint = latestValueIndex.get(symbols.nameOf(metricId));
+            if (latestPoint != null) {
+                return cacheLatestValue(metricId, latestPoint.getTimestampMillis(), latestPoint.getValue());
+            }
+
+            // 索引建立之前写入的历史数据：在保留期内回溯一次
+            if (!isKnownSource(metricId)) {
+                return null;
+            }
+            return scanLatestValue(metricId);
             
         } catch (Exception e) {
-            System.err.println("获取最新指标值时发生错误: " + e.getMessage());
+            log.warn("获取最新指标值时发生错误: {}", e.getMessage());
             return null;
         }
     }
 
+    @Override
+    public double getLatestValue(String metricIdentifier) {
+        if (metricIdentifier == null) {
+            return Double.NaN;
+        }
+        int metricId = symbols.idOf(metricIdentifier);
+        if (metricId != MetricSymbolTable.UNKNOWN) {
+            return getLatestValue(metricId);
+        }
+        MetricValue latest = getLatestMetricValue(metricIdentifier);
+        return latest != null && latest.isValid() ? latest.getValue() : Double.NaN;
+    }
+
+    @Override
+    public double getLatestValue(int metricId) {
+        if (latestSamples.contains(metricId)) {
+            return latestSamples.validValue(metricId);
+        }
+        String metricIdentifier = symbols.nameOf(metricId);
+        if (metricIdentifier == null) {
+            return Double.NaN;
+        }
+
+        // 直接读取最新值索引中的基本类型数值
+        MapTsdbLatestValueIndex.LatestPoint latestPoint = latestValueIndex.get(metricIdentifier);
+        if (latestPoint != null) {
+            return latestPoint.getValue();
+        }
+
+        MetricValue latest = getLatestMetricValue(metricId);
+        return latest != null && latest.isValid() ? latest.getValue() : Double.NaN;
+    }
+
+    /**
+     * 在保留期内回溯查找最新值（用于最新值索引建立之前写入的指标）
+     */
+    private MetricValue scanLatestValue(int metricId) {
+        long currentTime = System.currentTimeMillis();
+        long startTime = currentTime - retentionDays * TimeRanges.DAY_MILLIS;
+        
+        java.util.NavigableMap<Long, Double> data = tsdb.queryRangeDouble(symbols.nameOf(metricId), startTime, currentTime);
+        if (data != null && !data.isEmpty()) {
+            java.util.Map.Entry<Long, Double> latestEntry = data.lastEntry();
+            return cacheLatestValue(metricId, latestEntry.getKey(), latestEntry.getValue());
+        }
+        return null;
+    }
+
+    /**
+     * 把从索引或回溯扫描读到的最新值放入缓存并构造返回值
+     * 读取期间并发写入可能已缓存更新的值，此时不覆盖，返回缓存中的值
+     */
+    private MetricValue cacheLatestValue(int metricId, long timestampMillis, double value) {
+        String metricIdentifier = symbols.nameOf(metricId);
+        if (enableCache && !latestSamples.putIfAbsent(metricId, timestampMillis, value, GOOD)) {
+            MetricValue cached = latestSamples.toMetricValue(metricId, metricIdentifier, unitOf(metricId));
+            if (cached != null) {
+                return cached;
+            }
+        }
+        return new MetricValue(metricIdentifier, value, unitOf(metricId), TimeRanges.toLocalDateTime(timestampMillis),
+            MetricValue.DataQuality.GOOD);
+    }
+
     @Override
     public List<MetricValue> getMetricHistory(String metricIdentifier, LocalDateTime startTime, LocalDateTime endTime) {
         if (metricIdentifier == null || startTime == null || endTime == null) {
@@ -295,45 +559,146 @@ public class MapTsdbTimeSeriesDataService implements TimeSeriesDataService {
             return result;
             
         } catch (Exception e) {
-            System.err.println("获取指标历史数据时发生错误: " + e.getMessage());
+            log.warn("获取指标历史数据时发生错误: {}", e.getMessage());
             return Collections.emptyList();
         }
     }
 
+    @Override
+    public SeriesBuffer getDownsampledHistory(String metricIdentifier, long startMillis, long endMillis,
+                                              long stepMillis, int maxPoints, DownsampleMethod method) {
+        if (metricIdentifier == null) {
+            return new SeriesBuffer();
+        }
+
+        try {
+            return RollupQueries.downsample(this, rollupStore, metricIdentifier, startMillis, endMillis,
+                    stepMillis, maxPoints, method);
+            
+        } catch (Exception e) {
+            log.warn("降采样查询指标历史数据时发生错误: {}", e.getMessage());
+            return new SeriesBuffer();
+        }
+    }
+
+    @Override
+    public long getMetricVersion(String metricIdentifier) {
+        return versions.get(symbols.idOf(metricIdentifier));
+    }
+
+    @Override
+    public long getMetricVersion(int metricId) {
+        return versions.get(metricId);
+    }
+
     @Override
     public Map<String, MetricValue> getLatestMetricValues(List<String> metricIdentifiers) {
-        Map<String, MetricValue> result = new HashMap<>();
+        Map<String, MetricValue> result = new HashMap<>(metricIdentifiers.size() * 4 / 3 + 1);
+        List<String> scanMisses = new ArrayList<>();
         
+        // 单次遍历：缓存命中直接返回，未命中的查最新值索引，仍未命中的才需要回溯扫描
         for (String identifier : metricIdentifiers) {
-            MetricValue value = getLatestMetricValue(identifier);
-            if (value != null) {
-                result.put(identifier, value);
+            if (identifier == null || result.containsKey(identifier)) {
+                continue;
+            }
+            int metricId = symbols.idOf(identifier);
+            MetricValue cached = latestSamples.toMetricValue(metricId, identifier, unitOf(metricId));
+            if (cached != null) {
+                result.put(identifier, cached);
+                continue;
+            }
+            try {
+                MapTsdbLatestValueIndex.LatestPoint latestPoint = latestValueIndex.get(identifier);
+                if (latestPoint != null) {
+                    int cachedId = metricId != MetricSymbolTable.UNKNOWN ? metricId : symbols.intern(identifier);
+                    result.put(identifier, cacheLatestValue(cachedId, latestPoint.getTimestampMillis(), latestPoint.getValue()));
+                } else if (isKnownSource(metricId)) {
+                    scanMisses.add(identifier);
+                }
+            } catch (Exception e) {
+                log.warn("获取最新指标值时发生错误: {}", e.getMessage());
             }
         }
         
+        // 回溯扫描并行执行
+        latestLoader.loadInto(scanMisses, identifier -> {
+            try {
+                return scanLatestValue(symbols.idOf(identifier));
+            } catch (Exception e) {
+                log.warn("获取最新指标值时发生错误: {}", e.getMessage());
+                return null;
+            }
+        }, result);
+        
         return result;
     }
 
+    /**
+     * 按时间顺序遍历历史数据点
+     * 按固定时间窗口分页查询，内存占用与单个窗口内的数据点数相关，与查询区间长度无关；
+     * 保留期之前的数据已清理、样本时间不会晚于当前时间一天以上，区间先裁剪到该范围，避免遍历大量空窗口
+     */
+    @Override
+    public long scanMetricHistory(String metricIdentifier, long startMillis, long endMillis, MetricPointVisitor visitor) {
+        if (metricIdentifier == null || visitor == null || !isKnownSource(symbols.idOf(metricIdentifier))) {
+            return 0;
+        }
+
+        long currentTime = System.currentTimeMillis();
+        long from = retentionDays > 0
+            ? Math.max(startMillis, currentTime - (retentionDays + 1L) * TimeRanges.DAY_MILLIS) : startMillis;
+        long to = Math.min(endMillis, currentTime + TimeRanges.DAY_MILLIS);
+        long window = Math.max(1L, scanWindowMs);
+
+        long visited = 0;
+        while (from <= to) {
+            long windowEnd = to - from < window ? to : from + window - 1;
+            java.util.NavigableMap<Long, Double> data = tsdb.queryRangeDouble(metricIdentifier, from, windowEnd);
+            if (data != null) {
+                for (java.util.Map.Entry<Long, Double> entry : data.entrySet()) {
+                    Double value = entry.getValue();
+                    if (value == null) {
+                        continue;
+                    }
+                    visited++;
+                    if (!visitor.visit(entry.getKey(), value)) {
+                        return visited;
+                    }
+                }
+            }
+            if (windowEnd == to) {
+                break;
+            }
+            from = windowEnd + 1;
+        }
+        return visited;
+    }
+
     @Override
     public Map<String, Object> getMetricStatistics(String metricIdentifier, String timeRange) {
-        // 实现统计功能
-        Map<String, Object> stats = new HashMap<>();
-        
+        Map<String, Object> stats;
+
         try {
-            // 这里可以根据timeRange计算统计数据
-            // 例如：平均值、最大值、最小值、数据点数等
-            
+            long endMillis = TimeRanges.toEpochMillis(LocalDateTime.now());
+            long startMillis = endMillis - TimeRanges.parseDurationMillis(timeRange, TimeRanges.HOUR_MILLIS);
+
+            // 单次遍历计算统计数据，长区间的完整时间桶使用汇总数据
+            StreamingStatistics statistics = new StreamingStatistics();
+            String resolution = RollupQueries.collectStatistics(this, rollupStore, metricIdentifier, startMillis, endMillis, statistics);
+
+            stats = statistics.toMap();
+            stats.put("resolution", resolution);
             stats.put("metric", metricIdentifier);
-            stats.put("range", timeRange);
-            stats.put("count", 0);
-            stats.put("average", 0.0);
-            stats.put("max", 0.0);
-            stats.put("min", 0.0);
-            
+            stats.put("timeRange", timeRange);
+            stats.put("startTime", TimeRanges.toLocalDateTime(startMillis));
+            stats.put("endTime", TimeRanges.toLocalDateTime(endMillis));
+
         } catch (Exception e) {
-            System.err.println("获取指标统计信息时发生错误: " + e.getMessage());
+            log.warn("获取指标统计信息时发生错误: {}", e.getMessage());
+            stats = new StreamingStatistics().toMap();
+            stats.put("error", e.getMessage());
         }
-        
+
         return stats;
     }
 
@@ -347,12 +712,22 @@ public class MapTsdbTimeSeriesDataService implements TimeSeriesDataService {
             stats.put("implementation", "MapTsdbTimeSeriesDataService");
             stats.put("dataPath", dataPath);
             stats.put("cacheEnabled", enableCache);
-            stats.put("cacheSize", latestValueCache.size());
+            stats.put("cacheSize", latestSamples.size());
+            stats.put("dataSourceCount", knownSourceCount.get());
+            if (latestValueIndex != null) {
+                stats.put("latestIndexSize", latestValueIndex.size());
+            }
+            if (writeQueue != null) {
+                stats.put("writeQueue", writeQueue.getStatistics());
+            }
+            if (rollupStore != null) {
+                stats.put("rollups", rollupStore.getStatistics());
+            }
             
             // 这里可以添加更多MapTSDB特定的统计信息
             
         } catch (Exception e) {
-            System.err.println("获取存储统计信息时发生错误: " + e.getMessage());
+            log.warn("获取存储统计信息时发生错误: {}", e.getMessage());
         }
         
         return stats;
@@ -366,14 +741,41 @@ public class MapTsdbTimeSeriesDataService implements TimeSeriesDataService {
             // tsdb.clearAll();
             
             // 清空缓存
-            if (enableCache) {
-                latestValueCache.clear();
-            }
+            latestSamples.clear();
+            units.clear();
+            versions.reset();
             
-            System.out.println("所有时序数据已清空");
+            log.info("所有时序数据已清空");
             
         } catch (Exception e) {
             throw new RuntimeException("清空数据时发生错误: " + e.getMessage(), e);
         }
     }
+
+    /**
+     * 写线程回调：写入MapTSDB并统一提交
+     */
+    private class TsdbWriteHandler implements MapTsdbWriteBehindQueue.WriteHandler {
+
+        @Override
+        public void write(int metricId, String metricIdentifier, long timestampMillis, double value, boolean publish) {
+            tsdb.putDouble(metricIdentifier, timestampMillis, value);
+            latestValueIndex.update(metricIdentifier, timestampMillis, value);
+            rollupStore.record(metricIdentifier, timestampMillis, value);
+            if (publish) {
+                // 未启用缓存：索引已包含该值，移除入队方暂存的值（之后又写入的更新值保留）
+                latestSamples.removeIfNotAfter(metricId >= 0 ? metricId : symbols.idOf(metricIdentifier),
+                    timestampMillis);
+            }
+        }
+
+        @Override
+        public void commit() {
+            long start = System.nanoTime();
+            tsdb.commit();
+            latestValueIndex.commit();
+            rollupStore.commit();
+            meters.recordCommit(System.nanoTime() - start);
+        }
+    }
 }
@@ -0,0 +1,423 @@
+package com.gridinsight.service;
+
+import com.gridinsight.service.jfr.TsdbCommitEvent;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * MapTSDB写后队列（Group Commit）
+ * 所有写入先进入单一有界队列，由专用写线程串行写入MapTSDB，
+ * 并按数量阈值或时间阈值统一提交，未提交数据的持久化窗口有上界。
+ * 队列是由并行基本类型数组构成的环形缓冲区，入队和写入都不为单个数据点分配对象
+ */
+public class MapTsdbWriteBehindQueue {
+
+    private static final Logger log = LoggerFactory.getLogger(MapTsdbWriteBehindQueue.class);
+
+    /**
+     * 写入处理器，所有方法只会在写线程中被串行调用
+     */
+    public interface WriteHandler {
+
+        /**
+         * 写入单个数据点（尚未提交）
+         * @param metricId 入队方提供的指标ID，未提供时为-1
+         * @param publish 是否在写入最新值索引后释放入队方暂存的最新值（未启用最新值缓存时）
+         */
+        void write(int metricId, String metricIdentifier, long timestampMillis, double value, boolean publish);
+
+        /**
+         * 提交所有已写入的数据点
+         */
+        void commit();
+    }
+
+    private final WriteHandler handler;
+    private final int capacity;
+    private final int commitBatchSize;
+    private final long commitIntervalMillis;
+    private final Thread writerThread;
+
+    // 环形缓冲区，下标为 序号 % capacity
+    private final int[] metricIds;
+    private final String[] metricIdentifiers;
+    private final long[] timestamps;
+    private final double[] values;
+    private final boolean[] publishFlags;
+
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Condition notEmpty = lock.newCondition();
+    private final Condition notFull = lock.newCondition();
+    private final Condition flushed = lock.newCondition();
+
+    // 序号均只增不减：head为下一个待取出的序号，tail为下一个入队的序号（受lock保护）
+    private long head;
+    private long tail;
+    // 已提交（或写入失败而跳过）的数据点序号上界，以及刷新屏障等待的序号
+    private long committedSeq;
+    private long flushTarget;
+
+    private volatile boolean running;
+    // 已调用shutdown，不再接受入队
+    private volatile boolean stopped;
+
+    // 写线程私有状态
+    private final int[] batchMetricIds;
+    private final String[] batchIdentifiers;
+    private final long[] batchTimestamps;
+    private final double[] batchValues;
+    private final boolean[] batchPublishFlags;
+    private long processedSeq;
+    private int uncommittedPoints;
+    private long firstUncommittedAtMillis;
+    // 提交失败后下次重试的时间，期间不再提交（0表示无需等待）
+    private long commitRetryAtMillis;
+
+    // 统计信息
+    private final AtomicLong enqueuedPoints = new AtomicLong();
+    private final AtomicLong committedPoints = new AtomicLong();
+    private final AtomicLong failedWrites = new AtomicLong();
+    private final AtomicLong commitCount = new AtomicLong();
+    private final AtomicLong failedCommits = new AtomicLong();
+    private final AtomicLong totalCommitNanos = new AtomicLong();
+    private final AtomicLong maxCommitNanos = new AtomicLong();
+    private volatile long lastCommitNanos;
+    private volatile long lastCommitBatchSize;
+
+    /**
+     * 构造函数
+     * @param handler 写入处理器
+     * @param capacity 队列容量，队列满时写入方阻塞（背压）
+     * @param commitBatchSize 累计多少个数据点后提交
+     * @param commitIntervalMillis 最早未提交数据点的最长等待时间（毫秒）
+     */
+    public MapTsdbWriteBehindQueue(WriteHandler handler, int capacity,
+                                   int commitBatchSize, long commitIntervalMillis) {
+        if (capacity <= 0 || commitBatchSize <= 0 || commitIntervalMillis <= 0) {
+            throw new IllegalArgumentException("写后队列参数必须为正数");
+        }
+        this.handler = handler;
+        this.capacity = capacity;
+        this.commitBatchSize = commitBatchSize;
+        this.commitIntervalMillis = commitIntervalMillis;
+        this.metricIds = new int[capacity];
+        this.metricIdentifiers = new String[capacity];
+        this.timestamps = new long[capacity];
+        this.values = new double[capacity];
+        this.publishFlags = new boolean[capacity];
+        int batchCapacity = Math.min(capacity, commitBatchSize);
+        this.batchMetricIds = new int[batchCapacity];
+        this.batchIdentifiers = new String[batchCapacity];
+        this.batchTimestamps = new long[batchCapacity];
+        this.batchValues = new double[batchCapacity];
+        this.batchPublishFlags = new boolean[batchCapacity];
+        this.writerThread = new Thread(this::runWriter, "maptsdb-writer");
+        this.writerThread.setDaemon(true);
+    }
+
+    /**
+     * 启动写线程
+     */
+    public void start() {
+        running = true;
+        writerThread.start();
+    }
+
+    /**
+     * 数据点入队，队列满时阻塞直到有空位
+     */
+    public void enqueue(String metricIdentifier, long timestampMillis, double value) {
+        enqueue(metricIdentifier, timestampMillis, value, false);
+    }
+
+    /**
+     * 数据点入队，队列满时阻塞直到有空位
+     * @param publish 是否在写入最新值索引后释放入队方暂存的最新值
+     * @throws IllegalStateException 队列已停止（包括阻塞等待期间被停止）
+     */
+    public void enqueue(String metricIdentifier, long timestampMillis, double value, boolean publish) {
+        enqueue(-1, metricIdentifier, timestampMillis, value, publish);
+    }
+
+    /**
+     * 数据点入队（携带指标ID，写线程回调时原样传回，无需再按标识符查找）
+     * @param metricId 指标ID，未知时为-1
+     * @param publish 是否在写入最新值索引后释放入队方暂存的最新值
+     * @throws IllegalStateException 队列已停止（包括阻塞等待期间被停止）
+     */
+    public void enqueue(int metricId, String metricIdentifier, long timestampMillis, double value, boolean publish) {
+        lock.lock();
+        try {
+            while (tail - head == capacity && !stopped) {
+                notFull.await();
+            }
+            if (stopped) {
+                throw new IllegalStateException("写后队列已停止，无法写入: " + metricIdentifier);
+            }
+            int slot = (int) (tail % capacity);
+            metricIds[slot] = metricId;
+            metricIdentifiers[slot] = metricIdentifier;
+            timestamps[slot] = timestampMillis;
+            values[slot] = value;
+            publishFlags[slot] = publish;
+            tail++;
+            notEmpty.signal();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("写入队列时被中断: " + metricIdentifier, e);
+        } finally {
+            lock.unlock();
+        }
+        enqueuedPoints.incrementAndGet();
+    }
+
+    /**
+     * 刷新屏障：等待调用之前入队的所有数据点写入并提交
+     * @param timeoutMillis 最长等待时间（毫秒）
+     * @return true 如果在超时前完成提交
+     */
+    public boolean flush(long timeoutMillis) {
+        lock.lock();
+        try {
+            if (!running) {
+                return head == tail;
+            }
+            long target = tail;
+            if (committedSeq >= target) {
+                return true;
+            }
+            flushTarget = Math.max(flushTarget, target);
+            notEmpty.signal();
+            long remainingNanos = TimeUnit.MILLISECONDS.toNanos(timeoutMillis);
+            while (committedSeq < target) {
+                if (remainingNanos <= 0) {
+                    return false;
+                }
+                remainingNanos = flushed.awaitNanos(remainingNanos);
+            }
+            return true;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return false;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * 停止写线程，队列中剩余的数据点会被写入并提交；之后的入队抛出IllegalStateException
+     * @param timeoutMillis 最长等待时间（毫秒）
+     * @return true 如果写线程已结束；false 表示超时或被中断，写线程仍可能在写入
+     */
+    public boolean shutdown(long timeoutMillis) {
+        lock.lock();
+        try {
+            stopped = true;
+            running = false;
+            notEmpty.signal();
+            // 唤醒因队列满而阻塞的入队方
+            notFull.signalAll();
+        } finally {
+            lock.unlock();
+        }
+        try {
+            writerThread.join(timeoutMillis);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        return !writerThread.isAlive();
+    }
+
+    /**
+     * 写线程主循环
+     */
+    private void runWriter() {
+        while (true) {
+            int count;
+            boolean flushRequested;
+            lock.lock();
+            try {
+                if (head == tail && (flushTarget <= committedSeq || inCommitBackoff())) {
+                    if (!running) {
+                        break;
+                    }
+                    notEmpty.await(pollTimeoutMillis(), TimeUnit.MILLISECONDS);
+                }
+                // 持锁期间只把数据点复制到写线程私有的批次数组，写入MapTSDB在锁外进行
+                count = (int) Math.min(tail - head, batchIdentifiers.length);
+                for (int i = 0; i < count; i++) {
+                    int slot = (int) (head % capacity);
+                    batchMetricIds[i] = metricIds[slot];
+                    batchIdentifiers[i] = metricIdentifiers[slot];
+                    batchTimestamps[i] = timestamps[slot];
+                    batchValues[i] = values[slot];
+                    batchPublishFlags[i] = publishFlags[slot];
+                    metricIdentifiers[slot] = null;
+                    head++;
+                }
+                if (count > 0) {
+                    notFull.signalAll();
+                }
+                // 只有批次覆盖到刷新目标时才提交剩余数据点，批次数组满时之前的数据仍按数量阈值提交
+                flushRequested = flushTarget > committedSeq && head >= flushTarget;
+            } catch (InterruptedException e) {
+                // 关闭流程中被中断，继续排空队列
+                continue;
+            } finally {
+                lock.unlock();
+            }
+
+            try {
+                for (int i = 0; i < count; i++) {
+                    process(i);
+                }
+                processedSeq += count;
+                long now = System.currentTimeMillis();
+                if (uncommittedPoints > 0 && now >= commitRetryAtMillis
+                        && (flushRequested || now - firstUncommittedAtMillis >= commitIntervalMillis)) {
+                    commit();
+                } else if (uncommittedPoints == 0) {
+                    publishCommitted();
+                }
+            } catch (Exception e) {
+                log.error("MapTSDB写线程处理失败: {}", e.getMessage());
+            }
+        }
+        if (uncommittedPoints > 0) {
+            commit();
+        }
+    }
+
+    /**
+     * 写入批次中的单个数据点
+     */
+    private void process(int index) {
+        String metricIdentifier = batchIdentifiers[index];
+        batchIdentifiers[index] = null;
+        try {
+            handler.write(batchMetricIds[index], metricIdentifier, batchTimestamps[index], batchValues[index], batchPublishFlags[index]);
+        } catch (Exception e) {
+            failedWrites.incrementAndGet();
+            log.error("写入MapTSDB失败: {}, 错误: {}", metricIdentifier, e.getMessage());
+            return;
+        }
+        if (uncommittedPoints == 0) {
+            firstUncommittedAtMillis = System.currentTimeMillis();
+        }
+        uncommittedPoints++;
+        if (uncommittedPoints >= commitBatchSize && !inCommitBackoff()) {
+            commit();
+        }
+    }
+
+    /**
+     * 提交并记录提交耗时
+     * 提交失败时数据点仍视为未提交，已提交序号不推进（刷新屏障继续等待），
+     * 间隔一个提交周期后重试
+     */
+    private void commit() {
+        TsdbCommitEvent commitEvent = new TsdbCommitEvent();
+        commitEvent.begin();
+        long start = System.nanoTime();
+        boolean success = true;
+        try {
+            handler.commit();
+        } catch (Exception e) {
+            success = false;
+            log.error("MapTSDB提交失败，{}个数据点将在{}ms后重试: {}", uncommittedPoints, commitIntervalMillis, e.getMessage());
+        }
+        commitEvent.complete(uncommittedPoints, success);
+        long elapsed = System.nanoTime() - start;
+        if (!success) {
+            failedCommits.incrementAndGet();
+            commitRetryAtMillis = System.currentTimeMillis() + commitIntervalMillis;
+            return;
+        }
+        commitRetryAtMillis = 0L;
+        committedPoints.addAndGet(uncommittedPoints);
+        commitCount.incrementAndGet();
+        totalCommitNanos.addAndGet(elapsed);
+        maxCommitNanos.accumulateAndGet(elapsed, Math::max);
+        lastCommitNanos = elapsed;
+        lastCommitBatchSize = uncommittedPoints;
+        uncommittedPoints = 0;
+        publishCommitted();
+    }
+
+    /**
+     * 推进已提交序号并唤醒等待刷新的线程
+     * 批次中途的提交只覆盖到上一个完整批次，序号按保守值推进
+     */
+    private void publishCommitted() {
+        lock.lock();
+        try {
+            if (processedSeq > committedSeq) {
+                committedSeq = processedSeq;
+                flushed.signalAll();
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * 上次提交失败且未到重试时间
+     */
+    private boolean inCommitBackoff() {
+        return uncommittedPoints > 0 && System.currentTimeMillis() < commitRetryAtMillis;
+    }
+
+    /**
+     * 计算下一次等待的时间：有未提交数据时等待到提交期限（提交失败时为重试时间），否则空闲等待一个提交周期
+     */
+    private long pollTimeoutMillis() {
+        if (uncommittedPoints == 0) {
+            return commitIntervalMillis;
+        }
+        long deadline = Math.max(firstUncommittedAtMillis + commitIntervalMillis, commitRetryAtMillis);
+        return Math.max(0L, deadline - System.currentTimeMillis());
+    }
+
+    /**
+     * 当前队列深度
+     */
+    public int getQueueDepth() {
+        lock.lock();
+        try {
+            return (int) (tail - head);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * 获取写后队列统计信息
+     */
+    public Map<String, Object> getStatistics() {
+        Map<String, Object> stats = new HashMap<>();
+        long commits = commitCount.get();
+        int depth = getQueueDepth();
+        stats.put("queueDepth", depth);
+        stats.put("queueRemainingCapacity", capacity - depth);
+        stats.put("commitBatchSize", commitBatchSize);
+        stats.put("commitIntervalMs", commitIntervalMillis);
+        stats.put("enqueuedPoints", enqueuedPoints.get());
+        stats.put("committedPoints", committedPoints.get());
+        stats.put("failedWrites", failedWrites.get());
+        stats.put("commitCount", commits);
+        stats.put("failedCommits", failedCommits.get());
+        stats.put("lastCommitBatchSize", lastCommitBatchSize);
+        stats.put("lastCommitLatencyMs", lastCommitNanos / 1_000_000.0);
+        stats.put("avgCommitLatencyMs", commits > 0 ? totalCommitNanos.get() / 1_000_000.0 / commits : 0.0);
+        stats.put("maxCommitLatencyMs", maxCommitNanos.get() / 1_000_000.0);
+        stats.put("writerAlive", writerThread.isAlive());
+        return stats;
+    }
+}
@@ -1,6 +1,8 @@
 package com.gridinsight.service;
 
 import com.gridinsight.domain.event.MetricValueChangedEvent;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.context.ApplicationEventPublisher;
 import org.springframework.stereotype.Service;
@@ -12,16 +14,23 @@ import org.springframework.stereotype.Service;
 @Service
 public class MetricEventPublisher {
     
+    private static final Logger log = LoggerFactory.getLogger(MetricEventPublisher.class);
+    
     @Autowired
     private ApplicationEventPublisher eventPublisher;
     
+    @Autowired
+    private UpdateTraceSampler traceSampler;
+    
     /**
      * 发布指标值变化事件
      * @param event 指标值变化事件
      */
     public void publishMetricValueChanged(MetricValueChangedEvent event) {
         eventPublisher.publishEvent(event);
-        System.out.println("发布指标值变化事件: " + event);
+        if (traceSampler.shouldTrace(log)) {
+            log.debug("发布指标值变化事件: {}", event);
+        }
     }
     
     /**
@@ -0,0 +1,110 @@
+package com.gridinsight.service;
+
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * 以指标ID为下标的引用数组，随符号表增长自动扩容
+ * 与MetricIdLongArray相同按页扩容，扩容期间的并发写入不会丢失；元素读写和比较交换是原子的
+ * @param <T> 元素类型
+ */
+public final class MetricIdArray<T> {
+
+    private static final int PAGE_BITS = 10;
+    private static final int PAGE_SIZE = 1 << PAGE_BITS;
+    private static final int PAGE_MASK = PAGE_SIZE - 1;
+
+    private volatile AtomicReferenceArray<T>[] pages;
+
+    public MetricIdArray(int initialCapacity) {
+        this.pages = newPages(Math.max(1, (initialCapacity + PAGE_SIZE - 1) >>> PAGE_BITS), null);
+    }
+
+    /**
+     * 读取元素，超出当前容量或ID无效时返回null
+     */
+    public T get(int id) {
+        AtomicReferenceArray<T>[] current = pages;
+        int page = id >>> PAGE_BITS;
+        return id >= 0 && page < current.length ? current[page].get(id & PAGE_MASK) : null;
+    }
+
+    public void set(int id, T value) {
+        page(id).set(id & PAGE_MASK, value);
+    }
+
+    /**
+     * 元素为null时设置为value
+     * @return 已有的元素，设置成功时返回null
+     */
+    public T putIfAbsent(int id, T value) {
+        AtomicReferenceArray<T> page = page(id);
+        int index = id & PAGE_MASK;
+        while (true) {
+            T current = page.get(index);
+            if (current != null) {
+                return current;
+            }
+            if (page.compareAndSet(index, null, value)) {
+                return null;
+            }
+        }
+    }
+
+    public boolean compareAndSet(int id, T expected, T value) {
+        return page(id).compareAndSet(id & PAGE_MASK, expected, value);
+    }
+
+    /**
+     * 非null元素的个数（遍历所有页，只用于统计）
+     */
+    public int size() {
+        int count = 0;
+        for (AtomicReferenceArray<T> page : pages) {
+            for (int i = 0; i < PAGE_SIZE; i++) {
+                if (page.get(i) != null) {
+                    count++;
+                }
+            }
+        }
+        return count;
+    }
+
+    /**
+     * 清空所有元素
+     */
+    public synchronized void clear() {
+        pages = newPages(pages.length, null);
+    }
+
+    private AtomicReferenceArray<T> page(int id) {
+        if (id < 0) {
+            throw new IllegalArgumentException("无效的指标ID: " + id);
+        }
+        int page = id >>> PAGE_BITS;
+        AtomicReferenceArray<T>[] current = pages;
+        if (page < current.length) {
+            return current[page];
+        }
+        synchronized (this) {
+            current = pages;
+            if (page >= current.length) {
+                current = newPages(Math.max(page + 1, current.length * 2), current);
+                pages = current;
+            }
+            return current[page];
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private static <T> AtomicReferenceArray<T>[] newPages(int count, AtomicReferenceArray<T>[] existing) {
+        AtomicReferenceArray<T>[] result = new AtomicReferenceArray[count];
+        int kept = existing != null ? existing.length : 0;
+        if (kept > 0) {
+            System.arraycopy(existing, 0, result, 0, kept);
+        }
+        for (int i = kept; i < count; i++) {
+            result[i] = new AtomicReferenceArray<>(PAGE_SIZE);
+        }
+        return result;
+    }
+}
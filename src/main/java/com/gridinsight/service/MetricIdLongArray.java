@@ -0,0 +1,91 @@
+package com.gridinsight.service;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * 以指标ID为下标的long数组，随符号表增长自动扩容
+ * 按固定大小分页，扩容只追加新页并复制页引用，已有页继续使用，
+ * 单个元素的读写是原子的，扩容期间的并发写入不会丢失
+ */
+final class MetricIdLongArray {
+
+    private static final int PAGE_BITS = 10;
+    private static final int PAGE_SIZE = 1 << PAGE_BITS;
+    private static final int PAGE_MASK = PAGE_SIZE - 1;
+
+    private volatile AtomicLongArray[] pages;
+
+    MetricIdLongArray(int initialCapacity) {
+        this.pages = newPages(Math.max(1, (initialCapacity + PAGE_SIZE - 1) >>> PAGE_BITS), null);
+    }
+
+    /**
+     * 读取元素，超出当前容量时返回0
+     */
+    long get(int id) {
+        AtomicLongArray[] current = pages;
+        int page = id >>> PAGE_BITS;
+        return id >= 0 && page < current.length ? current[page].get(id & PAGE_MASK) : 0L;
+    }
+
+    void set(int id, long value) {
+        page(id).set(id & PAGE_MASK, value);
+    }
+
+    boolean compareAndSet(int id, long expected, long value) {
+        return page(id).compareAndSet(id & PAGE_MASK, expected, value);
+    }
+
+    long incrementAndGet(int id) {
+        return page(id).incrementAndGet(id & PAGE_MASK);
+    }
+
+    /**
+     * 元素更新为当前值与value中的较大者
+     */
+    long accumulateMax(int id, long value) {
+        return page(id).accumulateAndGet(id & PAGE_MASK, value, Math::max);
+    }
+
+    /**
+     * 当前容量
+     */
+    int length() {
+        return pages.length << PAGE_BITS;
+    }
+
+    /**
+     * 清零所有元素
+     */
+    synchronized void clear() {
+        pages = newPages(pages.length, null);
+    }
+
+    private AtomicLongArray page(int id) {
+        int page = id >>> PAGE_BITS;
+        AtomicLongArray[] current = pages;
+        if (page < current.length) {
+            return current[page];
+        }
+        synchronized (this) {
+            current = pages;
+            if (page >= current.length) {
+                current = newPages(Math.max(page + 1, current.length * 2), current);
+                pages = current;
+            }
+            return current[page];
+        }
+    }
+
+    private static AtomicLongArray[] newPages(int count, AtomicLongArray[] existing) {
+        AtomicLongArray[] result = new AtomicLongArray[count];
+        int kept = existing != null ? existing.length : 0;
+        if (kept > 0) {
+            System.arraycopy(existing, 0, result, 0, kept);
+        }
+        for (int i = kept; i < count; i++) {
+            result[i] = new AtomicLongArray(PAGE_SIZE);
+        }
+        return result;
+    }
+}
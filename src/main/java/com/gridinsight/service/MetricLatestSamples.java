@@ -0,0 +1,153 @@
+package com.gridinsight.service;
+
+import com.gridinsight.domain.model.MetricValue;
+import com.gridinsight.service.timeseries.TimeRanges;
+
+/**
+ * 以指标ID为下标的最新样本（时间戳、数值、数据质量）
+ * 以基本类型数组保存，写入和读取数值都不分配对象，MetricValue只在需要返回给接口时构造。
+ * 同一指标的三个字段通过序号锁（seqlock）保持一致：写入方把序号改为奇数后写字段，写完再改为偶数；
+ * 读取方在序号为偶数且读取前后不变时采用读到的值，否则重读
+ */
+final class MetricLatestSamples {
+
+    // 质量字段：0表示没有样本，其余为 DataQuality编码 + 1
+    private static final long ABSENT = 0L;
+
+    private final MetricIdLongArray sequences;
+    private final MetricIdLongArray timestamps;
+    private final MetricIdLongArray valueBits;
+    private final MetricIdLongArray qualities;
+
+    MetricLatestSamples(int initialCapacity) {
+        this.sequences = new MetricIdLongArray(initialCapacity);
+        this.timestamps = new MetricIdLongArray(initialCapacity);
+        this.valueBits = new MetricIdLongArray(initialCapacity);
+        this.qualities = new MetricIdLongArray(initialCapacity);
+    }
+
+    /**
+     * 写入最新样本
+     */
+    void put(int id, long timestampMillis, double value, byte quality) {
+        long sequence = lock(id);
+        write(id, timestampMillis, value, quality);
+        sequences.set(id, sequence + 2);
+    }
+
+    /**
+     * 没有样本时写入
+     * @return true 如果写入了样本
+     */
+    boolean putIfAbsent(int id, long timestampMillis, double value, byte quality) {
+        long sequence = lock(id);
+        boolean absent = qualities.get(id) == ABSENT;
+        if (absent) {
+            write(id, timestampMillis, value, quality);
+        }
+        sequences.set(id, sequence + 2);
+        return absent;
+    }
+
+    /**
+     * 样本时间不晚于timestampMillis时移除样本（之后写入的更新样本保留）
+     */
+    void removeIfNotAfter(int id, long timestampMillis) {
+        if (id < 0 || qualities.get(id) == ABSENT) {
+            return;
+        }
+        long sequence = lock(id);
+        if (qualities.get(id) != ABSENT && timestamps.get(id) <= timestampMillis) {
+            qualities.set(id, ABSENT);
+        }
+        sequences.set(id, sequence + 2);
+    }
+
+    boolean contains(int id) {
+        return qualities.get(id) != ABSENT;
+    }
+
+    /**
+     * 最新的有效数值
+     * @return 数值；没有样本、数值无效或质量为ERROR时返回NaN
+     */
+    double validValue(int id) {
+        if (id < 0) {
+            return Double.NaN;
+        }
+        while (true) {
+            long sequence = sequences.get(id);
+            if ((sequence & 1L) == 0L) {
+                long quality = qualities.get(id);
+                double value = Double.longBitsToDouble(valueBits.get(id));
+                if (sequences.get(id) == sequence) {
+                    return quality == ABSENT || quality - 1 == MetricValue.DataQuality.ERROR.code()
+                        ? Double.NaN : value;
+                }
+            }
+            Thread.onSpinWait();
+        }
+    }
+
+    /**
+     * 构造最新样本的MetricValue（只在接口返回时调用）
+     * @return 没有样本时返回null
+     */
+    MetricValue toMetricValue(int id, String metricIdentifier, String unit) {
+        if (id < 0) {
+            return null;
+        }
+        while (true) {
+            long sequence = sequences.get(id);
+            if ((sequence & 1L) == 0L) {
+                long quality = qualities.get(id);
+                long timestampMillis = timestamps.get(id);
+                double value = Double.longBitsToDouble(valueBits.get(id));
+                if (sequences.get(id) == sequence) {
+                    if (quality == ABSENT) {
+                        return null;
+                    }
+                    return new MetricValue(metricIdentifier, value, unit, TimeRanges.toLocalDateTime(timestampMillis),
+                        MetricValue.DataQuality.ofCode((byte) (quality - 1)));
+                }
+            }
+            Thread.onSpinWait();
+        }
+    }
+
+    /**
+     * 有样本的指标个数（遍历，只用于统计）
+     */
+    int size() {
+        int count = 0;
+        for (int id = 0; id < qualities.length(); id++) {
+            if (qualities.get(id) != ABSENT) {
+                count++;
+            }
+        }
+        return count;
+    }
+
+    synchronized void clear() {
+        qualities.clear();
+    }
+
+    /**
+     * 获取写入权：序号由偶数改为奇数，返回改之前的序号
+     */
+    private long lock(int id) {
+        while (true) {
+            long sequence = sequences.get(id);
+            if ((sequence & 1L) == 0L && sequences.compareAndSet(id, sequence, sequence + 1)) {
+                return sequence;
+            }
+            Thread.onSpinWait();
+        }
+    }
+
+    private void write(int id, long timestampMillis, double value, byte quality) {
+        timestamps.set(id, timestampMillis);
+        valueBits.set(id, Double.doubleToRawLongBits(value));
+        qualities.set(id, quality + 1L);
+    }
+}
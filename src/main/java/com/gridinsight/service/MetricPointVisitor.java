@@ -0,0 +1,17 @@
+package com.gridinsight.service;
+
+/**
+ * 时序数据点访问器
+ * 按时间顺序逐点回调原始时间戳和数值，不为每个数据点构造MetricValue对象
+ */
+@FunctionalInterface
+public interface MetricPointVisitor {
+
+    /**
+     * 访问一个数据点
+     * @param timestampMillis 时间戳（UTC毫秒）
+     * @param value 数值
+     * @return true 继续遍历；false 提前结束遍历
+     */
+    boolean visit(long timestampMillis, double value);
+}
@@ -0,0 +1,212 @@
+package com.gridinsight.service;
+
+import com.gridinsight.domain.model.BasicMetric;
+import com.gridinsight.domain.model.DataSource;
+import com.gridinsight.domain.model.DerivedMetric;
+import com.gridinsight.domain.model.Metric;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * 指标注册表的不可变快照
+ * 构造时一次性建立标识符和UUID索引，之后只读；配置变化时整体替换为新快照，
+ * 读取方无需加锁也无需复制。
+ * 同时按符号表ID建立数组索引（指标、基础指标列表、依赖和反向依赖），供调度和依赖传播直接按下标访问
+ */
+public final class MetricRegistrySnapshot {
+
+    private static final int[] NO_IDS = new int[0];
+
+    private final long version;
+    private final MetricSymbolTable symbols;
+    private final Map<String, BasicMetric> basicMetrics;
+    private final Map<String, DerivedMetric> derivedMetrics;
+    private final Map<String, Metric> allMetrics;
+    private final Map<String, DataSource> dataSources;
+    private final Map<String, BasicMetric> basicMetricsByUuid;
+    private final Map<String, DerivedMetric> derivedMetricsByUuid;
+
+    // 按ID索引的数组
+    private final Metric[] metricsById;
+    private final int[] basicMetricIds;
+    private final BasicMetric[] basicMetricArray;
+    private final int[][] dependentIds;
+    private final int[][] dependencyIds;
+
+    /**
+     * @param version 快照版本号
+     * @param symbols 符号表，快照中的所有指标及其依赖在此注册ID
+     * @param basicMetrics 基础指标（复制，调用方之后的修改不影响快照）
+     * @param derivedMetrics 派生指标（复制）
+     */
+    MetricRegistrySnapshot(long version, MetricSymbolTable symbols, Map<String, BasicMetric> basicMetrics,
+                           Map<String, DerivedMetric> derivedMetrics) {
+        this.version = version;
+        this.symbols = symbols;
+        this.basicMetrics = Collections.unmodifiableMap(new LinkedHashMap<>(basicMetrics));
+        this.derivedMetrics = Collections.unmodifiableMap(new LinkedHashMap<>(derivedMetrics));
+
+        Map<String, Metric> all = new LinkedHashMap<>(basicMetrics);
+        all.putAll(derivedMetrics);
+        this.allMetrics = Collections.unmodifiableMap(all);
+
+        Map<String, DataSource> sources = new HashMap<>();
+        Map<String, BasicMetric> basicByUuid = new HashMap<>();
+        for (Map.Entry<String, BasicMetric> entry : basicMetrics.entrySet()) {
+            BasicMetric metric = entry.getValue();
+            if (metric.getDataSource() != null) {
+                sources.put(entry.getKey(), metric.getDataSource());
+            }
+            if (metric.getUuid() != null) {
+                basicByUuid.putIfAbsent(metric.getUuid(), metric);
+            }
+        }
+        Map<String, DerivedMetric> derivedByUuid = new HashMap<>();
+        for (DerivedMetric metric : derivedMetrics.values()) {
+            if (metric.getUuid() != null) {
+                derivedByUuid.putIfAbsent(metric.getUuid(), metric);
+            }
+        }
+        this.dataSources = Collections.unmodifiableMap(sources);
+        this.basicMetricsByUuid = basicByUuid;
+        this.derivedMetricsByUuid = derivedByUuid;
+
+        // 分配ID并建立数组索引
+        this.basicMetricIds = new int[this.basicMetrics.size()];
+        this.basicMetricArray = new BasicMetric[this.basicMetrics.size()];
+        int index = 0;
+        for (Map.Entry<String, BasicMetric> entry : this.basicMetrics.entrySet()) {
+            basicMetricIds[index] = symbols.intern(entry.getKey());
+            basicMetricArray[index] = entry.getValue();
+            index++;
+        }
+        Map<Integer, Set<Integer>> dependents = new HashMap<>();
+        Map<Integer, Set<Integer>> dependencies = new HashMap<>();
+        for (Map.Entry<String, DerivedMetric> entry : this.derivedMetrics.entrySet()) {
+            int derivedId = symbols.intern(entry.getKey());
+            if (entry.getValue().getDependencies() == null) {
+                continue;
+            }
+            for (Metric dependency : entry.getValue().getDependencies()) {
+                int dependencyId = symbols.intern(dependency.getIdentifier());
+                dependents.computeIfAbsent(dependencyId, k -> new LinkedHashSet<>()).add(derivedId);
+                dependencies.computeIfAbsent(derivedId, k -> new LinkedHashSet<>()).add(dependencyId);
+            }
+        }
+
+        int idCount = symbols.size();
+        this.metricsById = new Metric[idCount];
+        for (Map.Entry<String, Metric> entry : all.entrySet()) {
+            metricsById[symbols.idOf(entry.getKey())] = getMetric(entry.getKey());
+        }
+        this.dependentIds = new int[idCount][];
+        for (Map.Entry<Integer, Set<Integer>> entry : dependents.entrySet()) {
+            dependentIds[entry.getKey()] = entry.getValue().stream().mapToInt(Integer::intValue).toArray();
+        }
+        this.dependencyIds = new int[idCount][];
+        for (Map.Entry<Integer, Set<Integer>> entry : dependencies.entrySet()) {
+            dependencyIds[entry.getKey()] = entry.getValue().stream().mapToInt(Integer::intValue).toArray();
+        }
+    }
+
+    public long getVersion() {
+        return version;
+    }
+
+    public MetricSymbolTable getSymbols() {
+        return symbols;
+    }
+
+    /**
+     * 获取指标ID，未注册时返回MetricSymbolTable.UNKNOWN
+     */
+    public int idOf(String identifier) {
+        return symbols.idOf(identifier);
+    }
+
+    /**
+     * 按ID获取指标，不在本快照中时返回null
+     */
+    public Metric getMetric(int id) {
+        return id >= 0 && id < metricsById.length ? metricsById[id] : null;
+    }
+
+    /**
+     * 基础指标ID（与getBasicMetricArray一一对应，调用方不得修改）
+     */
+    public int[] getBasicMetricIds() {
+        return basicMetricIds;
+    }
+
+    /**
+     * 基础指标（与getBasicMetricIds一一对应，调用方不得修改）
+     */
+    public BasicMetric[] getBasicMetricArray() {
+        return basicMetricArray;
+    }
+
+    /**
+     * 直接依赖指定指标的派生指标ID（调用方不得修改）
+     */
+    public int[] getDependentIds(int id) {
+        if (id < 0 || id >= dependentIds.length || dependentIds[id] == null) {
+            return NO_IDS;
+        }
+        return dependentIds[id];
+    }
+
+    /**
+     * 派生指标直接依赖的指标ID（调用方不得修改）
+     */
+    public int[] getDependencyIds(int id) {
+        if (id < 0 || id >= dependencyIds.length || dependencyIds[id] == null) {
+            return NO_IDS;
+        }
+        return dependencyIds[id];
+    }
+
+    public Map<String, BasicMetric> getBasicMetrics() {
+        return basicMetrics;
+    }
+
+    public Map<String, DerivedMetric> getDerivedMetrics() {
+        return derivedMetrics;
+    }
+
+    public Map<String, Metric> getAllMetrics() {
+        return allMetrics;
+    }
+
+    public Map<String, DataSource> getDataSources() {
+        return dataSources;
+    }
+
+    /**
+     * 按标识符查找指标，基础指标优先
+     */
+    public Metric getMetric(String identifier) {
+        Metric metric = basicMetrics.get(identifier);
+        return metric != null ? metric : derivedMetrics.get(identifier);
+    }
+
+    public BasicMetric getBasicMetricByUuid(String uuid) {
+        return basicMetricsByUuid.get(uuid);
+    }
+
+    public DerivedMetric getDerivedMetricByUuid(String uuid) {
+        return derivedMetricsByUuid.get(uuid);
+    }
+
+    /**
+     * 按UUID查找指标，基础指标优先
+     */
+    public Metric getMetricByUuid(String uuid) {
+        Metric metric = basicMetricsByUuid.get(uuid);
+        return metric != null ? metric : derivedMetricsByUuid.get(uuid);
+    }
+}
@@ -0,0 +1,140 @@
+package com.gridinsight.service;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.CacheControl;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.stereotype.Service;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+
+/**
+ * 按指标版本号缓存的单指标查询响应
+ * ETag由指标数据版本号生成，If-None-Match匹配时返回304；
+ * 版本号未变化时直接返回已序列化的响应字节，不再查询和序列化
+ */
+@Service
+public class MetricResponseCache {
+
+    /**
+     * 已序列化的响应
+     */
+    private static final class CachedResponse {
+        final long version;
+        final byte[] body;
+
+        CachedResponse(long version, byte[] body) {
+            this.version = version;
+            this.body = body;
+        }
+    }
+
+    @Autowired
+    private TimeSeriesDataService timeSeriesDataService;
+
+    @Autowired
+    private ObjectMapper objectMapper;
+
+    @Value("${gridinsight.http.response-cache.max-entries:10000}")
+    private int maxEntries = 10000;
+
+    // 接口名 + '\0' + 指标标识符 → 响应
+    private final Map<String, CachedResponse> responses = new ConcurrentHashMap<>();
+
+    // 统计信息
+    private final AtomicLong notModified = new AtomicLong();
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+
+    /**
+     * 生成单指标查询的响应
+     * @param endpoint 接口名（同一指标在不同接口的响应分别缓存）
+     * @param metricIdentifier 指标标识符
+     * @param ifNoneMatch If-None-Match请求头
+     * @param bodySupplier 版本变化时构造响应体（异常不缓存，直接抛出）
+     */
+    public ResponseEntity<byte[]> respond(String endpoint, String metricIdentifier, String ifNoneMatch,
+                                          Supplier<Object> bodySupplier) {
+        // 先读版本号再构造响应体：并发写入时响应体可能比版本号新，但不会比版本号旧
+        long version = timeSeriesDataService.getMetricVersion(metricIdentifier);
+        String etag = "\"" + Long.toString(version, 36) + "\"";
+
+        if (matches(ifNoneMatch, etag)) {
+            notModified.incrementAndGet();
+            return ResponseEntity.status(HttpStatus.NOT_MODIFIED)
+                    .eTag(etag)
+                    .cacheControl(CacheControl.noCache())
+                    .build();
+        }
+
+        String key = endpoint + '\0' + metricIdentifier;
+        CachedResponse cached = responses.get(key);
+        byte[] body;
+        if (cached != null && cached.version == version) {
+            hits.incrementAndGet();
+            body = cached.body;
+        } else {
+            misses.incrementAndGet();
+            try {
+                body = objectMapper.writeValueAsBytes(bodySupplier.get());
+            } catch (JsonProcessingException e) {
+                throw new IllegalStateException("序列化响应失败: " + e.getMessage(), e);
+            }
+            if (cached != null || responses.size() < maxEntries) {
+                responses.put(key, new CachedResponse(version, body));
+            }
+        }
+
+        return ResponseEntity.ok()
+                .eTag(etag)
+                .cacheControl(CacheControl.noCache())
+                .contentType(MediaType.APPLICATION_JSON)
+                .body(body);
+    }
+
+    /**
+     * If-None-Match是否包含当前ETag（支持多个值、弱校验前缀和*）
+     */
+    static boolean matches(String ifNoneMatch, String etag) {
+        if (ifNoneMatch == null || ifNoneMatch.isEmpty()) {
+            return false;
+        }
+        for (String candidate : ifNoneMatch.split(",")) {
+            String tag = candidate.trim();
+            if (tag.startsWith("W/")) {
+                tag = tag.substring(2);
+            }
+            if (tag.equals("*") || tag.equals(etag)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * 清空缓存的响应
+     */
+    public void clear() {
+        responses.clear();
+    }
+
+    /**
+     * 获取缓存统计信息
+     */
+    public Map<String, Object> getStatistics() {
+        Map<String, Object> stats = new HashMap<>();
+        stats.put("entries", responses.size());
+        stats.put("notModified", notModified.get());
+        stats.put("hits", hits.get());
+        stats.put("misses", misses.get());
+        return stats;
+    }
+}
@@ -1,24 +1,30 @@
 package com.gridinsight.service;
 
 import com.gridinsight.domain.model.*;
+import com.gridinsight.service.jfr.MetricFetchEvent;
+import com.gridinsight.service.timeseries.TimeRanges;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.scheduling.annotation.Async;
 import org.springframework.scheduling.annotation.Scheduled;
 import org.springframework.stereotype.Service;
 
+import java.time.Instant;
 import java.time.LocalDateTime;
+import java.time.ZoneId;
 import java.util.*;
-import java.util.concurrent.ConcurrentHashMap;
-import java.util.concurrent.atomic.AtomicLong;
 
 /**
  * 基础指标调度服务
  * 根据refreshInterval/samplingInterval定期更新基础指标值并存储到时序数据库
- * 派生指标通过事件驱动机制自动更新，不需要定时调度
+ * 派生指标默认通过事件驱动机制自动更新；SCHEDULED策略的派生指标按calculationInterval定时计算
  */
 @Service
 public class MetricSchedulerService {
 
+    private static final Logger log = LoggerFactory.getLogger(MetricSchedulerService.class);
+
     @Autowired
     private ExternalMetricConfigService metricConfigService;
     
@@ -34,166 +40,250 @@ public class MetricSchedulerService {
     @Autowired
     private MetricEventPublisher metricEventPublisher;
     
+    @Autowired
+    private PropagationLatencyTracker latencyTracker;
+    
+    @Autowired
+    private GridInsightMeters meters;
+    
+    @Autowired
+    private UpdateTraceSampler traceSampler;
+    
+    @Autowired
+    private DerivedMetricUpdatePolicy derivedUpdatePolicy;
+    
 
-    // 指标最后更新时间记录
-    private final Map<String, LocalDateTime> lastUpdateTimes = new ConcurrentHashMap<>();
+    // 指标最后更新时间（epoch毫秒，0表示尚未更新），以指标ID为下标
+    private final MetricIdLongArray lastUpdateMillis = new MetricIdLongArray(256);
     
-    // 指标更新计数器
-    private final Map<String, AtomicLong> updateCounters = new ConcurrentHashMap<>();
+    // 指标更新计数器，以指标ID为下标
+    private final MetricIdLongArray updateCounters = new MetricIdLongArray(256);
 
     /**
      * 定时任务：每1秒检查需要更新的基础指标
      */
     @Scheduled(fixedRate = 1000) // 每1秒执行一次
     public void scheduleMetricUpdates() {
-        LocalDateTime now = LocalDateTime.now();
-        
-        // 获取所有基础指标
-        Map<String, BasicMetric> basicMetrics = metricConfigService.getAllBasicMetrics();
+        long tickStart = System.nanoTime();
+        long now = System.currentTimeMillis();
         
+        // 按快照中的ID数组遍历所有基础指标，不做字符串查找
+        MetricRegistrySnapshot registry = metricConfigService.getRegistrySnapshot();
+        int[] ids = registry.getBasicMetricIds();
+        BasicMetric[] metrics = registry.getBasicMetricArray();
+        meters.registerSources(registry);
         
-        for (Map.Entry<String, BasicMetric> entry : basicMetrics.entrySet()) {
-            String identifier = entry.getKey();
-            BasicMetric metric = entry.getValue();
+        for (int i = 0; i < ids.length; i++) {
+            BasicMetric metric = metrics[i];
             DataSource dataSource = metric.getDataSource();
             
             if (dataSource != null && dataSource.getEnabled()) {
                 // 根据数据源类型决定更新策略
                 if (dataSource.isActiveDataSource()) {
                     // 主动获取类数据源：检查刷新间隔
-                    if (shouldUpdateMetric(identifier, dataSource.getRefreshInterval(), now)) {
-                        updateActiveDataSourceMetric(identifier, metric);
+                    if (shouldUpdateMetric(ids[i], dataSource.getRefreshInterval(), now)) {
+                        recordSchedulerLag(ids[i], dataSource.getRefreshInterval(), now);
+                        updateActiveDataSourceMetric(ids[i], metric.getIdentifier(), metric);
                     }
                 } else if (dataSource.isPassiveDataSource()) {
                     // 被动订阅类数据源：检查采样间隔
-                    if (shouldUpdateMetric(identifier, dataSource.getSamplingInterval(), now)) {
-                        updatePassiveDataSourceMetric(identifier, metric);
+                    if (shouldUpdateMetric(ids[i], dataSource.getSamplingInterval(), now)) {
+                        recordSchedulerLag(ids[i], dataSource.getSamplingInterval(), now);
+                        updatePassiveDataSourceMetric(ids[i], metric.getIdentifier(), metric);
                     }
                 }
             }
         }
         
-        // 派生指标现在都使用事件驱动机制，不再需要定时调度
-        // 所有派生指标都会在依赖的基础指标值变化时自动重新计算
+        // SCHEDULED策略的派生指标：到期且依赖已变化时重新计算，其余派生指标由事件驱动
+        scheduleDerivedMetricUpdates(registry, now);
+        meters.recordSchedulerTick(System.nanoTime() - tickStart);
+    }
+
+    /**
+     * 提交到期的定时计算派生指标
+     */
+    private void scheduleDerivedMetricUpdates(MetricRegistrySnapshot registry, long now) {
+        for (int id : derivedUpdatePolicy.dueScheduledIds(registry, now)) {
+            String identifier = registry.getSymbols().nameOf(id);
+            try {
+                eventDrivenUpdateService.recomputeScheduled(identifier);
+            } catch (RuntimeException e) {
+                log.warn("定时计算派生指标提交失败: {}, 错误: {}", identifier, e.getMessage());
+            }
+        }
     }
 
     /**
      * 检查指标是否需要更新
      */
-    private boolean shouldUpdateMetric(String identifier, Integer refreshInterval, LocalDateTime now) {
-        LocalDateTime lastUpdate = lastUpdateTimes.get(identifier);
+    private boolean shouldUpdateMetric(int id, Integer refreshInterval, long now) {
+        long lastUpdate = lastUpdateMillis.get(id);
         
-        if (lastUpdate == null) {
+        if (lastUpdate == 0L) {
             return true; // 首次更新
         }
         
         // 检查是否超过了刷新间隔
-        return lastUpdate.plusSeconds(refreshInterval).isBefore(now);
+        return lastUpdate + refreshInterval * 1000L < now;
+    }
+
+    /**
+     * 记录到期指标相对计划更新时间的滞后（首次更新不记录）
+     */
+    private void recordSchedulerLag(int id, Integer interval, long now) {
+        long lastUpdate = lastUpdateMillis.get(id);
+        if (lastUpdate != 0L) {
+            meters.recordSchedulerLag(now - (lastUpdate + interval * 1000L));
+        }
+    }
+
+    /**
+     * 记录指标完成一次更新
+     * @param id 调度循环中取得的指标ID，不再按标识符查找
+     */
+    private void recordUpdate(int id) {
+        lastUpdateMillis.set(id, System.currentTimeMillis());
+        updateCounters.incrementAndGet(id);
     }
 
 
     /**
      * 更新主动获取类数据源指标
+     * @param id 注册表快照中的指标ID
      */
     @Async
-    public void updateActiveDataSourceMetric(String identifier, BasicMetric metric) {
+    public void updateActiveDataSourceMetric(int id, String identifier, BasicMetric metric) {
         try {
-            System.out.println("开始更新主动获取类指标: " + identifier);
+            // 逐次更新的调试日志按采样率输出
+            boolean trace = traceSampler.shouldTrace(log);
+            if (trace) {
+                log.debug("开始更新主动获取类指标: {}", identifier);
+            }
             
             // 直接从数据源获取数据
-            MetricValue value = dataSourceService.fetchData(metric.getDataSource());
+            DataSource dataSource = metric.getDataSource();
+            MetricFetchEvent fetchEvent = new MetricFetchEvent();
+            fetchEvent.begin();
+            long fetchStart = System.nanoTime();
+            MetricValue value = dataSourceService.fetchData(dataSource);
+            // 采集完成时间，作为传播延迟的起点
+            long fetchedNanos = System.nanoTime();
+            meters.fetchMeters(dataSource).record(fetchedNanos - fetchStart, value.isValid());
+            fetchEvent.complete(identifier, String.valueOf(dataSource.getSourceType()),
+                                dataSource.getSourceAddress(), value.isValid());
             
             if (value.isValid()) {
                 // 设置正确的标识符
                 value.setMetricIdentifier(identifier);
                 
-                // 获取旧值用于比较
-                MetricValue oldValue = timeSeriesDataService.getLatestMetricValue(identifier);
-                Double oldValueDouble = (oldValue != null && oldValue.isValid()) ? oldValue.getValue() : null;
-                Double newValueDouble = value.getValue();
+                // 获取旧值用于比较（基本类型，NaN表示没有旧值）
+                double oldValue = timeSeriesDataService.getLatestValue(id);
+                double newValue = value.getValue();
                 
                 // 直接存储到时序数据库
-                timeSeriesDataService.storeMetricValue(identifier, value, LocalDateTime.now());
-                
-                // 更新最后更新时间
-                lastUpdateTimes.put(identifier, LocalDateTime.now());
+                long sampleTime = TimeRanges.nowEpochMillis();
+                long storeStart = System.nanoTime();
+                timeSeriesDataService.storeSample(id, sampleTime, newValue, value.getQualityCode());
+                meters.recordStore(System.nanoTime() - storeStart);
+                latencyTracker.recordStore(id, 0, fetchedNanos);
                 
-                // 更新计数器
-                updateCounters.computeIfAbsent(identifier, k -> new AtomicLong(0)).incrementAndGet();
+                // 更新最后更新时间和计数器
+                recordUpdate(id);
                 
                 // 检查值是否发生变化，如果变化则发布事件
-                if (oldValueDouble == null) {
+                if (Double.isNaN(oldValue)) {
                     // 首次设置值
-                    metricEventPublisher.publishFirstValue(identifier, metric.getUuid(), newValueDouble);
-                } else if (!oldValueDouble.equals(newValueDouble)) {
+                    metricEventPublisher.publishFirstValue(identifier, metric.getUuid(), newValue);
+                } else if (Double.compare(oldValue, newValue) != 0) {
                     // 值发生变化
                     metricEventPublisher.publishValueChanged(identifier, metric.getUuid(), 
-                                                           oldValueDouble, newValueDouble);
+                                                           oldValue, newValue);
                 }
                 
-                // 发布指标更新事件，触发依赖的派生指标更新（保持向后兼容）
-                eventDrivenUpdateService.publishMetricUpdateEvent(identifier, value.getValue(), "BASIC_METRIC_UPDATE");
+                // 发布指标更新事件，由事件驱动更新服务统一触发依赖的派生指标更新
+                eventDrivenUpdateService.publishMetricUpdateEvent(id, newValue, "BASIC_METRIC_UPDATE",
+                                                           sampleTime, fetchedNanos, 0);
                 
-                System.out.println("主动获取类指标更新成功: " + identifier + ", 值: " + value.getValue());
+                if (trace) {
+                    log.debug("主动获取类指标更新成功: {}, 值: {}", identifier, newValue);
+                }
             } else {
-                System.out.println("主动获取类指标更新失败: " + identifier + ", 错误: " + value.getQuality());
+                log.warn("主动获取类指标更新失败: {}, 错误: {}", identifier, value.getQuality());
             }
             
         } catch (Exception e) {
-            System.out.println("主动获取类指标更新异常: " + identifier + ", 错误: " + e.getMessage());
+            log.warn("主动获取类指标更新异常: {}, 错误: {}", identifier, e.getMessage());
         }
     }
     
     /**
      * 更新被动订阅类数据源指标
+     * @param id 注册表快照中的指标ID
      */
     @Async
-    public void updatePassiveDataSourceMetric(String identifier, BasicMetric metric) {
+    public void updatePassiveDataSourceMetric(int id, String identifier, BasicMetric metric) {
         try {
-            System.out.println("开始更新被动订阅类指标: " + identifier);
+            // 逐次更新的调试日志按采样率输出
+            boolean trace = traceSampler.shouldTrace(log);
+            if (trace) {
+                log.debug("开始更新被动订阅类指标: {}", identifier);
+            }
             
             // 对于MQTT等被动订阅类数据源，这里应该从订阅的数据流中采样
             // 目前先模拟从数据源获取数据（实际应该从MQTT订阅缓存中获取）
-            MetricValue value = dataSourceService.fetchData(metric.getDataSource());
+            DataSource dataSource = metric.getDataSource();
+            MetricFetchEvent fetchEvent = new MetricFetchEvent();
+            fetchEvent.begin();
+            long fetchStart = System.nanoTime();
+            MetricValue value = dataSourceService.fetchData(dataSource);
+            // 采集完成时间，作为传播延迟的起点
+            long fetchedNanos = System.nanoTime();
+            meters.fetchMeters(dataSource).record(fetchedNanos - fetchStart, value.isValid());
+            fetchEvent.complete(identifier, String.valueOf(dataSource.getSourceType()),
+                                dataSource.getSourceAddress(), value.isValid());
             
             if (value.isValid()) {
                 // 设置正确的标识符
                 value.setMetricIdentifier(identifier);
                 
-                // 获取旧值用于比较
-                MetricValue oldValue = timeSeriesDataService.getLatestMetricValue(identifier);
-                Double oldValueDouble = (oldValue != null && oldValue.isValid()) ? oldValue.getValue() : null;
-                Double newValueDouble = value.getValue();
+                // 获取旧值用于比较（基本类型，NaN表示没有旧值）
+                double oldValue = timeSeriesDataService.getLatestValue(id);
+                double newValue = value.getValue();
                 
                 // 直接存储到时序数据库
-                timeSeriesDataService.storeMetricValue(identifier, value, LocalDateTime.now());
+                long sampleTime = TimeRanges.nowEpochMillis();
+                long storeStart = System.nanoTime();
+                timeSeriesDataService.storeSample(id, sampleTime, newValue, value.getQualityCode());
+                meters.recordStore(System.nanoTime() - storeStart);
+                latencyTracker.recordStore(id, 0, fetchedNanos);
                 
-                // 更新最后更新时间
-                lastUpdateTimes.put(identifier, LocalDateTime.now());
-                
-                // 更新计数器
-                updateCounters.computeIfAbsent(identifier, k -> new AtomicLong(0)).incrementAndGet();
+                // 更新最后更新时间和计数器
+                recordUpdate(id);
                 
                 // 检查值是否发生变化，如果变化则发布事件
-                if (oldValueDouble == null) {
+                if (Double.isNaN(oldValue)) {
                     // 首次设置值
-                    metricEventPublisher.publishFirstValue(identifier, metric.getUuid(), newValueDouble);
-                } else if (!oldValueDouble.equals(newValueDouble)) {
+                    metricEventPublisher.publishFirstValue(identifier, metric.getUuid(), newValue);
+                } else if (Double.compare(oldValue, newValue) != 0) {
                     // 值发生变化
                     metricEventPublisher.publishValueChanged(identifier, metric.getUuid(), 
-                                                           oldValueDouble, newValueDouble);
+                                                           oldValue, newValue);
                 }
                 
-                // 发布指标更新事件，触发依赖的派生指标更新（保持向后兼容）
-                eventDrivenUpdateService.publishMetricUpdateEvent(identifier, value.getValue(), "BASIC_METRIC_UPDATE");
+                // 发布指标更新事件，由事件驱动更新服务统一触发依赖的派生指标更新
+                eventDrivenUpdateService.publishMetricUpdateEvent(id, newValue, "BASIC_METRIC_UPDATE",
+                                                           sampleTime, fetchedNanos, 0);
                 
-                System.out.println("被动订阅类指标更新成功: " + identifier + ", 值: " + value.getValue());
+                if (trace) {
+                    log.debug("被动订阅类指标更新成功: {}, 值: {}", identifier, newValue);
+                }
             } else {
-                System.out.println("被动订阅类指标更新失败: " + identifier + ", 错误: " + value.getQuality());
+                log.warn("被动订阅类指标更新失败: {}, 错误: {}", identifier, value.getQuality());
             }
             
         } catch (Exception e) {
-            System.out.println("被动订阅类指标更新异常: " + identifier + ", 错误: " + e.getMessage());
+            log.warn("被动订阅类指标更新异常: {}, 错误: {}", identifier, e.getMessage());
         }
     }
 
@@ -202,15 +292,17 @@ public class MetricSchedulerService {
      * 手动触发基础指标更新
      */
     public void triggerMetricUpdate(String identifier) {
-        Metric metric = metricConfigService.getMetric(identifier);
+        MetricRegistrySnapshot registry = metricConfigService.getRegistrySnapshot();
+        int id = registry.idOf(identifier);
+        Metric metric = registry.getMetric(id);
         if (metric instanceof BasicMetric) {
             BasicMetric basicMetric = (BasicMetric) metric;
             DataSource dataSource = basicMetric.getDataSource();
             if (dataSource != null && dataSource.getEnabled()) {
                 if (dataSource.isActiveDataSource()) {
-                    updateActiveDataSourceMetric(identifier, basicMetric);
+                    updateActiveDataSourceMetric(id, identifier, basicMetric);
                 } else if (dataSource.isPassiveDataSource()) {
-                    updatePassiveDataSourceMetric(identifier, basicMetric);
+                    updatePassiveDataSourceMetric(id, identifier, basicMetric);
                 }
             }
         }
@@ -230,17 +322,31 @@ public class MetricSchedulerService {
      * 获取指标更新统计信息
      */
     public Map<String, Object> getUpdateStatistics() {
+        MetricSymbolTable symbols = metricConfigService.getSymbolTable();
+        Map<String, LocalDateTime> lastUpdateTimes = new HashMap<>();
+        Map<String, Long> counters = new HashMap<>();
+        long recentThreshold = System.currentTimeMillis() - 5 * 60 * 1000L;
+        long recentlyUpdated = 0;
+        
+        // 只在统计接口处把ID转换回标识符
+        for (int id = 0; id < symbols.size(); id++) {
+            long lastUpdate = lastUpdateMillis.get(id);
+            if (lastUpdate == 0L) {
+                continue;
+            }
+            String identifier = symbols.nameOf(id);
+            lastUpdateTimes.put(identifier,
+                LocalDateTime.ofInstant(Instant.ofEpochMilli(lastUpdate), ZoneId.systemDefault()));
+            counters.put(identifier, updateCounters.get(id));
+            if (lastUpdate > recentThreshold) {
+                recentlyUpdated++;
+            }
+        }
+        
         Map<String, Object> stats = new HashMap<>();
         stats.put("totalMetrics", lastUpdateTimes.size());
-        stats.put("lastUpdateTimes", new HashMap<>(lastUpdateTimes));
-        stats.put("updateCounters", updateCounters.entrySet().stream()
-            .collect(HashMap::new, (map, entry) -> map.put(entry.getKey(), entry.getValue().get()), HashMap::putAll));
-        
-        // 计算最近更新的指标
-        LocalDateTime now = LocalDateTime.now();
-        long recentlyUpdated = lastUpdateTimes.values().stream()
-            .mapToLong(lastUpdate -> lastUpdate.plusMinutes(5).isAfter(now) ? 1 : 0)
-            .sum();
+        stats.put("lastUpdateTimes", lastUpdateTimes);
+        stats.put("updateCounters", counters);
         stats.put("recentlyUpdated", recentlyUpdated);
         
         return stats;
@@ -251,17 +357,17 @@ public class MetricSchedulerService {
      */
     public List<String> getPendingUpdates() {
         List<String> pending = new ArrayList<>();
-        LocalDateTime now = LocalDateTime.now();
+        long now = System.currentTimeMillis();
         
-        Map<String, BasicMetric> basicMetrics = metricConfigService.getAllBasicMetrics();
-        for (Map.Entry<String, BasicMetric> entry : basicMetrics.entrySet()) {
-            String identifier = entry.getKey();
-            BasicMetric metric = entry.getValue();
-            DataSource dataSource = metric.getDataSource();
+        MetricRegistrySnapshot registry = metricConfigService.getRegistrySnapshot();
+        int[] ids = registry.getBasicMetricIds();
+        BasicMetric[] metrics = registry.getBasicMetricArray();
+        for (int i = 0; i < ids.length; i++) {
+            DataSource dataSource = metrics[i].getDataSource();
             
             if (dataSource != null && dataSource.getEnabled()) {
-                if (shouldUpdateMetric(identifier, dataSource.getRefreshInterval(), now)) {
-                    pending.add(identifier);
+                if (shouldUpdateMetric(ids[i], dataSource.getRefreshInterval(), now)) {
+                    pending.add(metrics[i].getIdentifier());
                 }
             }
         }
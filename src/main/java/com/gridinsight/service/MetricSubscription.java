@@ -0,0 +1,192 @@
+package com.gridinsight.service;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 指标推送订阅（一个SSE连接）
+ * 按指标标识符或分类前缀匹配更新；同一指标在一个批次内的多次更新只保留最后一次（合并），
+ * 与上次推送值相同的更新不再推送
+ */
+public class MetricSubscription {
+
+    /**
+     * 推送给客户端的指标更新
+     */
+    public static final class Update {
+        private final String metric;
+        private final Double value;
+        private final LocalDateTime timestamp;
+
+        public Update(String metric, Double value, LocalDateTime timestamp) {
+            this.metric = metric;
+            this.value = value;
+            this.timestamp = timestamp;
+        }
+
+        public String getMetric() {
+            return metric;
+        }
+
+        public Double getValue() {
+            return value;
+        }
+
+        public LocalDateTime getTimestamp() {
+            return timestamp;
+        }
+    }
+
+    private final String id;
+    private final Set<String> identifiers;
+    private final List<String> prefixes;
+    private final SseConnection connection;
+    private final long createdAt = System.currentTimeMillis();
+
+    // 待推送的更新（按指标合并）
+    private final Map<String, Update> pending = new ConcurrentHashMap<>();
+
+    // 每个指标最近一次推送的值（仅发送线程访问）
+    private final Map<String, Double> lastSentValues = new HashMap<>();
+
+    // 是否有发送任务正在进行，以及开始时间
+    private final AtomicBoolean sending = new AtomicBoolean(false);
+    private volatile long sendStartedAt;
+    private volatile long lastSendAt = System.currentTimeMillis();
+
+    private final AtomicLong receivedUpdates = new AtomicLong();
+    private final AtomicLong conflatedUpdates = new AtomicLong();
+    private final AtomicLong sentUpdates = new AtomicLong();
+    private final AtomicLong sentBatches = new AtomicLong();
+
+    public MetricSubscription(String id, Set<String> identifiers, List<String> prefixes, SseConnection connection) {
+        this.id = id;
+        this.identifiers = identifiers;
+        this.prefixes = prefixes;
+        this.connection = connection;
+    }
+
+    /**
+     * 判断指标是否在订阅范围内
+     */
+    public boolean matches(String metricIdentifier) {
+        if (identifiers.contains(metricIdentifier)) {
+            return true;
+        }
+        for (String prefix : prefixes) {
+            if (metricIdentifier.startsWith(prefix)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * 放入一个待推送的更新，同一指标未推送的旧更新被覆盖
+     */
+    public void offer(Update update) {
+        receivedUpdates.incrementAndGet();
+        if (pending.put(update.getMetric(), update) != null) {
+            conflatedUpdates.incrementAndGet();
+        }
+    }
+
+    /**
+     * 取出待推送的更新，过滤掉与上次推送值相同的指标
+     * 仅在持有发送权时调用
+     */
+    List<Update> drainChanged() {
+        List<Update> batch = new ArrayList<>(pending.size());
+        for (String metric : new ArrayList<>(pending.keySet())) {
+            Update update = pending.remove(metric);
+            if (update == null) {
+                continue;
+            }
+            if (lastSentValues.containsKey(metric) && Objects.equals(lastSentValues.get(metric), update.getValue())) {
+                continue;
+            }
+            lastSentValues.put(metric, update.getValue());
+            batch.add(update);
+        }
+        return batch;
+    }
+
+    /**
+     * 尝试获取发送权
+     */
+    boolean tryStartSending(long now) {
+        if (sending.compareAndSet(false, true)) {
+            sendStartedAt = now;
+            return true;
+        }
+        return false;
+    }
+
+    void finishSending(long now, int updateCount) {
+        if (updateCount > 0) {
+            sentUpdates.addAndGet(updateCount);
+            sentBatches.incrementAndGet();
+        }
+        lastSendAt = now;
+        sending.set(false);
+    }
+
+    boolean isSending() {
+        return sending.get();
+    }
+
+    long getSendStartedAt() {
+        return sendStartedAt;
+    }
+
+    long getLastSendAt() {
+        return lastSendAt;
+    }
+
+    boolean hasPending() {
+        return !pending.isEmpty();
+    }
+
+    public String getId() {
+        return id;
+    }
+
+    public SseConnection getConnection() {
+        return connection;
+    }
+
+    Set<String> getIdentifiers() {
+        return identifiers;
+    }
+
+    List<String> getPrefixes() {
+        return prefixes;
+    }
+
+    /**
+     * 获取订阅统计信息
+     */
+    public Map<String, Object> getStatistics() {
+        Map<String, Object> stats = new HashMap<>();
+        stats.put("id", id);
+        stats.put("identifiers", identifiers.size());
+        stats.put("prefixes", prefixes);
+        stats.put("connectedMs", System.currentTimeMillis() - createdAt);
+        stats.put("pending", pending.size());
+        stats.put("receivedUpdates", receivedUpdates.get());
+        stats.put("conflatedUpdates", conflatedUpdates.get());
+        stats.put("sentUpdates", sentUpdates.get());
+        stats.put("sentBatches", sentBatches.get());
+        stats.put("sending", sending.get());
+        stats.put("bufferedBytes", connection.getQueuedBytes());
+        return stats;
+    }
+}
@@ -0,0 +1,107 @@
+package com.gridinsight.service;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Consumer;
+
+/**
+ * 订阅匹配索引（不可变快照）
+ * 指标标识符精确订阅按标识符索引，分类前缀订阅放入按字符展开的前缀树，
+ * 分发一次更新只需一次哈希查找加上沿标识符逐字符遍历前缀树，与连接数无关；
+ * 订阅增删时整体重建，分发线程无锁读取
+ */
+final class MetricSubscriptionIndex {
+
+    static final MetricSubscriptionIndex EMPTY = new MetricSubscriptionIndex(new HashMap<>(), new PrefixNode());
+
+    private static final MetricSubscription[] NONE = new MetricSubscription[0];
+
+    /**
+     * 前缀树节点，subscriptions为以该节点路径为前缀订阅的连接
+     */
+    private static final class PrefixNode {
+        private final Map<Character, PrefixNode> children = new HashMap<>();
+        private MetricSubscription[] subscriptions = NONE;
+    }
+
+    private final Map<String, MetricSubscription[]> byIdentifier;
+    private final PrefixNode prefixRoot;
+
+    private MetricSubscriptionIndex(Map<String, MetricSubscription[]> byIdentifier, PrefixNode prefixRoot) {
+        this.byIdentifier = byIdentifier;
+        this.prefixRoot = prefixRoot;
+    }
+
+    /**
+     * 按当前订阅构建索引
+     */
+    static MetricSubscriptionIndex build(Collection<MetricSubscription> subscriptions) {
+        Map<String, List<MetricSubscription>> identifiers = new HashMap<>();
+        Map<String, List<MetricSubscription>> prefixes = new HashMap<>();
+        for (MetricSubscription subscription : subscriptions) {
+            for (String identifier : subscription.getIdentifiers()) {
+                identifiers.computeIfAbsent(identifier, key -> new ArrayList<>()).add(subscription);
+            }
+            for (String prefix : subscription.getPrefixes()) {
+                // 同一连接的前缀互相包含时只保留最短的，避免同一更新重复放入
+                if (!coveredByShorterPrefix(prefix, subscription.getPrefixes())) {
+                    prefixes.computeIfAbsent(prefix, key -> new ArrayList<>()).add(subscription);
+                }
+            }
+        }
+
+        Map<String, MetricSubscription[]> byIdentifier = new HashMap<>();
+        for (Map.Entry<String, List<MetricSubscription>> entry : identifiers.entrySet()) {
+            byIdentifier.put(entry.getKey(), entry.getValue().toArray(NONE));
+        }
+        PrefixNode root = new PrefixNode();
+        for (Map.Entry<String, List<MetricSubscription>> entry : prefixes.entrySet()) {
+            PrefixNode node = root;
+            String prefix = entry.getKey();
+            for (int i = 0; i < prefix.length(); i++) {
+                node = node.children.computeIfAbsent(prefix.charAt(i), key -> new PrefixNode());
+            }
+            node.subscriptions = entry.getValue().toArray(NONE);
+        }
+        return new MetricSubscriptionIndex(byIdentifier, root);
+    }
+
+    private static boolean coveredByShorterPrefix(String prefix, List<String> prefixes) {
+        for (String other : prefixes) {
+            if (other.length() < prefix.length() && prefix.startsWith(other)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * 对匹配指标的每个订阅调用一次visitor
+     */
+    void forEachMatch(String metricIdentifier, Consumer<MetricSubscription> visitor) {
+        MetricSubscription[] exact = byIdentifier.getOrDefault(metricIdentifier, NONE);
+        for (MetricSubscription subscription : exact) {
+            visitor.accept(subscription);
+        }
+        PrefixNode node = prefixRoot;
+        for (int i = 0; i < metricIdentifier.length() && !node.children.isEmpty(); i++) {
+            node = node.children.get(metricIdentifier.charAt(i));
+            if (node == null) {
+                return;
+            }
+            for (MetricSubscription subscription : node.subscriptions) {
+                // 同时按标识符订阅的连接已在上面放入
+                if (exact.length == 0 || !subscription.getIdentifiers().contains(metricIdentifier)) {
+                    visitor.accept(subscription);
+                }
+            }
+        }
+    }
+
+    boolean isEmpty() {
+        return byIdentifier.isEmpty() && prefixRoot.children.isEmpty();
+    }
+}
@@ -0,0 +1,343 @@
+package com.gridinsight.service;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.gridinsight.domain.event.MetricUpdateEvent;
+import com.gridinsight.domain.event.MetricValueChangedEvent;
+import com.gridinsight.domain.model.Metric;
+import com.gridinsight.domain.model.MetricValue;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.event.EventListener;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import java.io.IOException;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 指标实时推送服务（Server-Sent Events）
+ * 客户端按指标标识符、UUID或分类前缀订阅，只接收值发生变化的指标；
+ * 更新先按连接合并，由定时任务按批次推送，发送在独立线程池中进行；
+ * 连接使用非阻塞写，输出流长时间不可写或写缓冲超过上限的慢消费者连接被直接断开，
+ * 不占用发送线程，不影响其他连接和指标计算
+ */
+@Service
+public class MetricSubscriptionService {
+
+    private static final Logger log = LoggerFactory.getLogger(MetricSubscriptionService.class);
+
+    @Autowired
+    private TimeSeriesDataService timeSeriesDataService;
+
+    @Autowired
+    private ExternalMetricConfigService metricConfigService;
+
+    @Autowired
+    private ObjectMapper objectMapper;
+
+    @Value("${gridinsight.push.heartbeat-interval-ms:15000}")
+    private long heartbeatIntervalMs = 15000L;
+
+    @Value("${gridinsight.push.slow-consumer-timeout-ms:10000}")
+    private long slowConsumerTimeoutMs = 10000L;
+
+    @Value("${gridinsight.push.max-buffered-bytes:1048576}")
+    private long maxBufferedBytes = 1048576L;
+
+    @Value("${gridinsight.push.max-connections:500}")
+    private int maxConnections = 500;
+
+    @Value("${gridinsight.push.sender-threads:4}")
+    private int senderThreads = 4;
+
+    private final Map<String, MetricSubscription> subscriptions = new ConcurrentHashMap<>();
+
+    // 按标识符和前缀匹配订阅的索引，订阅增删时重建
+    private volatile MetricSubscriptionIndex index = MetricSubscriptionIndex.EMPTY;
+
+    private ExecutorService sender;
+
+    // 统计信息
+    private final AtomicLong totalConnections = new AtomicLong();
+    private final AtomicLong evictedConnections = new AtomicLong();
+    private final AtomicLong failedConnections = new AtomicLong();
+    private final AtomicLong sentBatches = new AtomicLong();
+
+    @PostConstruct
+    public void init() {
+        AtomicInteger threadIndex = new AtomicInteger();
+        sender = Executors.newFixedThreadPool(Math.max(1, senderThreads), runnable -> {
+            Thread thread = new Thread(runnable, "metric-push-sender-" + threadIndex.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    @PreDestroy
+    public void destroy() {
+        for (MetricSubscription subscription : new ArrayList<>(subscriptions.values())) {
+            remove(subscription);
+            subscription.getConnection().close();
+        }
+        if (sender != null) {
+            sender.shutdown();
+            try {
+                sender.awaitTermination(2, TimeUnit.SECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    /**
+     * 创建订阅
+     * @param identifiers 指标标识符
+     * @param uuids 指标UUID
+     * @param prefixes 分类前缀（如"生产指标."）
+     * @param request 请求，校验通过后转为异步请求，事件名为"metrics"，数据为更新数组
+     * @param response 响应
+     */
+    public void subscribe(List<String> identifiers, List<String> uuids, List<String> prefixes,
+                          HttpServletRequest request, HttpServletResponse response) throws IOException {
+        Set<String> metricIdentifiers = new LinkedHashSet<>();
+        if (identifiers != null) {
+            for (String identifier : identifiers) {
+                if (identifier != null && !identifier.trim().isEmpty()) {
+                    metricIdentifiers.add(identifier.trim());
+                }
+            }
+        }
+        if (uuids != null) {
+            for (String uuid : uuids) {
+                Metric metric = metricConfigService.getMetricByUuid(uuid.trim());
+                if (metric == null) {
+                    throw new IllegalArgumentException("指标不存在: " + uuid);
+                }
+                metricIdentifiers.add(metric.getIdentifier());
+            }
+        }
+        List<String> metricPrefixes = new ArrayList<>();
+        if (prefixes != null) {
+            for (String prefix : prefixes) {
+                if (prefix != null && !prefix.trim().isEmpty()) {
+                    metricPrefixes.add(prefix.trim());
+                }
+            }
+        }
+        if (metricIdentifiers.isEmpty() && metricPrefixes.isEmpty()) {
+            throw new IllegalArgumentException("必须指定identifiers、uuids或prefixes");
+        }
+        if (subscriptions.size() >= maxConnections) {
+            throw new IllegalStateException("订阅连接数已达上限: " + maxConnections);
+        }
+
+        SseConnection connection = SseConnection.open(request, response);
+        MetricSubscription subscription = register(metricIdentifiers, metricPrefixes, connection);
+        offerSnapshot(subscription, metricIdentifiers, metricPrefixes);
+    }
+
+    /**
+     * 注册订阅连接
+     */
+    MetricSubscription register(Set<String> identifiers, List<String> prefixes, SseConnection connection) {
+        MetricSubscription subscription = new MetricSubscription(
+                UUID.randomUUID().toString(), identifiers, prefixes, connection);
+        synchronized (subscriptions) {
+            subscriptions.put(subscription.getId(), subscription);
+            index = MetricSubscriptionIndex.build(subscriptions.values());
+        }
+        totalConnections.incrementAndGet();
+
+        connection.onClose(() -> remove(subscription));
+        return subscription;
+    }
+
+    /**
+     * 订阅建立后先推送当前最新值
+     */
+    private void offerSnapshot(MetricSubscription subscription, Set<String> identifiers, List<String> prefixes) {
+        List<String> snapshotMetrics = new ArrayList<>(identifiers);
+        if (!prefixes.isEmpty()) {
+            for (String identifier : metricConfigService.getAllMetrics().keySet()) {
+                if (!identifiers.contains(identifier) && subscription.matches(identifier)) {
+                    snapshotMetrics.add(identifier);
+                }
+            }
+        }
+        if (snapshotMetrics.isEmpty()) {
+            return;
+        }
+        try {
+            Map<String, MetricValue> latest = timeSeriesDataService.getLatestMetricValues(snapshotMetrics);
+            for (Map.Entry<String, MetricValue> entry : latest.entrySet()) {
+                MetricValue value = entry.getValue();
+                if (value != null && value.getValue() != null) {
+                    subscription.offer(new MetricSubscription.Update(
+                            entry.getKey(), value.getValue(), value.getTimestamp()));
+                }
+            }
+        } catch (Exception e) {
+            log.warn("查询订阅初始值失败: {}", e.getMessage());
+        }
+    }
+
+    /**
+     * 基础指标值变化，以及查询时重新计算的派生指标值变化（只在值变化时发布）
+     */
+    @EventListener
+    public void onMetricValueChanged(MetricValueChangedEvent event) {
+        if (event.getChangeType() == MetricValueChangedEvent.ChangeType.ERROR_OCCURRED
+                || event.getNewValue() == null) {
+            return;
+        }
+        dispatch(event.getMetricIdentifier(), event.getNewValue(), event.getChangeTime());
+    }
+
+    /**
+     * 衍生指标重新计算结果
+     */
+    @EventListener
+    public void onMetricUpdate(MetricUpdateEvent event) {
+        // 没有订阅时不构造更新时间和推送对象
+        if (!"DERIVED".equals(event.getMetricType()) || !event.hasNumericValue() || index.isEmpty()) {
+            return;
+        }
+        dispatch(event.getMetricIdentifier(), event.getNumericValue(), event.getUpdateTime());
+    }
+
+    /**
+     * 按索引将更新放入匹配的订阅，只做内存操作，不阻塞发布线程
+     */
+    void dispatch(String metricIdentifier, Double value, LocalDateTime timestamp) {
+        MetricSubscriptionIndex current = index;
+        if (current.isEmpty() || metricIdentifier == null) {
+            return;
+        }
+        MetricSubscription.Update update = new MetricSubscription.Update(metricIdentifier, value,
+                timestamp != null ? timestamp : LocalDateTime.now());
+        current.forEachMatch(metricIdentifier, subscription -> subscription.offer(update));
+    }
+
+    /**
+     * 按批次推送合并后的更新，并断开慢消费者
+     */
+    @Scheduled(fixedDelayString = "${gridinsight.push.batch-interval-ms:250}")
+    public void flush() {
+        long now = System.currentTimeMillis();
+        for (MetricSubscription subscription : subscriptions.values()) {
+            if (subscription.getConnection().isStalled(now, slowConsumerTimeoutMs)) {
+                evict(subscription);
+                continue;
+            }
+            if (subscription.isSending()) {
+                continue;
+            }
+
+            boolean heartbeatDue = now - subscription.getLastSendAt() >= heartbeatIntervalMs;
+            if (!subscription.hasPending() && !heartbeatDue) {
+                continue;
+            }
+            if (!subscription.tryStartSending(now)) {
+                continue;
+            }
+            try {
+                sender.execute(() -> send(subscription));
+            } catch (RejectedExecutionException e) {
+                subscription.finishSending(now, 0);
+            }
+        }
+    }
+
+    /**
+     * 在发送线程中推送一个批次（持有该订阅的发送权）
+     * 写入连接的非阻塞写缓冲区后立即返回，不等待客户端接收
+     */
+    void send(MetricSubscription subscription) {
+        int sent = 0;
+        SseConnection connection = subscription.getConnection();
+        try {
+            boolean accepted;
+            List<MetricSubscription.Update> batch = subscription.drainChanged();
+            if (!batch.isEmpty()) {
+                accepted = connection.sendEvent("metrics", objectMapper.writeValueAsString(batch), maxBufferedBytes);
+                sent = batch.size();
+                sentBatches.incrementAndGet();
+            } else if (System.currentTimeMillis() - subscription.getLastSendAt() >= heartbeatIntervalMs) {
+                accepted = connection.sendComment("heartbeat", maxBufferedBytes);
+            } else {
+                subscription.finishSending(subscription.getLastSendAt(), 0);
+                return;
+            }
+            if (!accepted) {
+                // 写缓冲超过上限
+                evict(subscription);
+            }
+        } catch (IOException e) {
+            // 客户端已断开
+            failedConnections.incrementAndGet();
+            remove(subscription);
+            connection.close();
+        }
+        subscription.finishSending(System.currentTimeMillis(), sent);
+    }
+
+    /**
+     * 断开客户端接收过慢的连接：直接结束异步请求，不等待未写出的数据
+     */
+    private void evict(MetricSubscription subscription) {
+        if (!remove(subscription)) {
+            return;
+        }
+        evictedConnections.incrementAndGet();
+        log.warn("断开慢消费者订阅: {}", subscription.getId());
+        subscription.getConnection().close();
+    }
+
+    private boolean remove(MetricSubscription subscription) {
+        synchronized (subscriptions) {
+            if (subscriptions.remove(subscription.getId()) == null) {
+                return false;
+            }
+            index = MetricSubscriptionIndex.build(subscriptions.values());
+            return true;
+        }
+    }
+
+    /**
+     * 获取订阅统计信息
+     */
+    public Map<String, Object> getStatistics() {
+        Map<String, Object> stats = new HashMap<>();
+        stats.put("activeConnections", subscriptions.size());
+        stats.put("totalConnections", totalConnections.get());
+        stats.put("evictedConnections", evictedConnections.get());
+        stats.put("failedConnections", failedConnections.get());
+        stats.put("sentBatches", sentBatches.get());
+        List<Map<String, Object>> connections = new ArrayList<>();
+        for (MetricSubscription subscription : subscriptions.values()) {
+            connections.add(subscription.getStatistics());
+        }
+        stats.put("connections", connections);
+        return stats;
+    }
+}
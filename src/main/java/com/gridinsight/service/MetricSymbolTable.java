@@ -0,0 +1,77 @@
+package com.gridinsight.service;
+
+import org.springframework.stereotype.Component;
+
+import java.util.Arrays;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * 指标符号表
+ * 为每个指标标识符分配从0开始的连续整数ID，ID在进程内不回收、不改变；
+ * 调度、依赖传播、时序存储等内部结构以ID为下标使用数组，字符串只在接口边界转换一次。
+ * 进程内只有一个实例，注册表快照和时序存储共用同一套ID
+ */
+@Component
+public final class MetricSymbolTable {
+
+    /**
+     * 未注册的指标
+     */
+    public static final int UNKNOWN = -1;
+
+    private final Map<String, Integer> ids = new ConcurrentHashMap<>();
+    private volatile String[] names = new String[64];
+    private volatile int size;
+
+    /**
+     * 获取指标ID，未注册时分配新ID
+     */
+    public int intern(String identifier) {
+        Integer id = ids.get(identifier);
+        if (id != null) {
+            return id;
+        }
+        synchronized (this) {
+            id = ids.get(identifier);
+            if (id != null) {
+                return id;
+            }
+            int newId = size;
+            if (newId == names.length) {
+                names = Arrays.copyOf(names, newId * 2);
+            }
+            names[newId] = identifier;
+            // 先写入名称再发布ID，读取方拿到ID时名称一定可见
+            size = newId + 1;
+            ids.put(identifier, newId);
+            return newId;
+        }
+    }
+
+    /**
+     * 获取指标ID
+     * @return 指标ID，未注册时返回UNKNOWN
+     */
+    public int idOf(String identifier) {
+        if (identifier == null) {
+            return UNKNOWN;
+        }
+        Integer id = ids.get(identifier);
+        return id != null ? id : UNKNOWN;
+    }
+
+    /**
+     * 获取ID对应的指标标识符
+     */
+    public String nameOf(int id) {
+        return id >= 0 && id < size ? names[id] : null;
+    }
+
+    /**
+     * 已分配的ID数量（所有ID都小于此值）
+     */
+    public int size() {
+        return size;
+    }
+}
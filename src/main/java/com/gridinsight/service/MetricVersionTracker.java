@@ -0,0 +1,41 @@
+package com.gridinsight.service;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 指标数据版本号
+ * 每次写入时从全局序列取新版本号，同一指标的版本号单调递增；
+ * 序列以启动时间（微秒）为初值，重启后的版本号仍大于重启前发出的版本号。
+ * 版本号以符号表ID为下标保存
+ */
+public class MetricVersionTracker {
+
+    private final AtomicLong sequence = new AtomicLong(System.currentTimeMillis() * 1000L);
+    private final MetricIdLongArray versions = new MetricIdLongArray(256);
+
+    // 尚未写入过的指标的版本号，清空数据时推进（大于此前发出的所有版本号）
+    private volatile long baseline = sequence.get();
+
+    /**
+     * 指标数据已变化，分配新版本号
+     */
+    public long bump(int metricId) {
+        long version = sequence.incrementAndGet();
+        versions.accumulateMax(metricId, version);
+        return version;
+    }
+
+    /**
+     * 获取指标当前版本号，未注册的指标（MetricSymbolTable.UNKNOWN）返回基线版本号
+     */
+    public long get(int metricId) {
+        return Math.max(versions.get(metricId), baseline);
+    }
+
+    /**
+     * 所有数据已清空，使所有指标的版本号前进
+     */
+    public void reset() {
+        baseline = sequence.incrementAndGet();
+    }
+}
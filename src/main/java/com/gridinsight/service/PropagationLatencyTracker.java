@@ -0,0 +1,199 @@
+package com.gridinsight.service;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * 端到端传播延迟统计
+ * 源头到存储延迟：基础指标采集完成 → 该指标（或由它触发重新计算的派生指标）写入时序存储；
+ * 事件排队延迟：指标更新事件发布 → 异步处理开始。
+ * 分别按依赖深度和按指标记录到LatencyHistogram中，记录过程无锁。
+ * 按指标的直方图只为派生指标创建：基础指标的源头到存储延迟只是一次写入调用，已计入深度0的统计
+ */
+@Service
+public class PropagationLatencyTracker {
+
+    // 超过该深度的记录计入最后一层
+    static final int MAX_DEPTH = 32;
+
+    // 全局和按深度统计使用较高精度（约3%），按指标统计使用较低精度（约25%）以控制内存
+    private static final int AGGREGATE_PRECISION_BITS = 6;
+    private static final int PER_METRIC_PRECISION_BITS = 3;
+    // 按指标统计的上限2^27微秒（约134秒），更慢的传播计入最后一个桶，最大值仍精确记录
+    private static final int PER_METRIC_MAX_EXPONENT = 27;
+
+    @Autowired
+    private ExternalMetricConfigService metricConfigService;
+
+    @Value("${gridinsight.latency.per-metric-enabled:true}")
+    private boolean perMetricEnabled = true;
+
+    private final LatencyHistogram sourceToStore = new LatencyHistogram(AGGREGATE_PRECISION_BITS);
+    private final LatencyHistogram queueWait = new LatencyHistogram(AGGREGATE_PRECISION_BITS);
+    private final LatencyHistogram[] sourceToStoreByDepth = newHistograms(MAX_DEPTH + 1);
+    private final LatencyHistogram[] queueWaitByDepth = newHistograms(MAX_DEPTH + 1);
+
+    // 按指标ID的直方图，首次记录时创建
+    private volatile AtomicReferenceArray<LatencyHistogram> metricHistograms = new AtomicReferenceArray<>(256);
+    // 按指标ID记录最近一次的依赖深度
+    private final MetricIdLongArray metricDepths = new MetricIdLongArray(256);
+
+    private static LatencyHistogram[] newHistograms(int count) {
+        LatencyHistogram[] histograms = new LatencyHistogram[count];
+        for (int i = 0; i < count; i++) {
+            histograms[i] = new LatencyHistogram(AGGREGATE_PRECISION_BITS);
+        }
+        return histograms;
+    }
+
+    /**
+     * 记录指标写入存储时的源头到存储延迟
+     * @param identifier 写入的指标
+     * @param depth 依赖深度（基础指标为0）
+     * @param sourceTimeNanos 源头基础指标采集完成时间（System.nanoTime）
+     */
+    public void recordStore(String identifier, int depth, long sourceTimeNanos) {
+        recordStore(perMetricEnabled && depth > 0 ? metricConfigService.getSymbolTable().intern(identifier)
+                        : MetricSymbolTable.UNKNOWN, depth, sourceTimeNanos);
+    }
+
+    /**
+     * 按指标ID记录源头到存储延迟（传播路径使用，不做标识符查找）
+     * @param metricId 写入的指标ID
+     */
+    public void recordStore(int metricId, int depth, long sourceTimeNanos) {
+        long latency = System.nanoTime() - sourceTimeNanos;
+        int level = Math.min(Math.max(depth, 0), MAX_DEPTH);
+        sourceToStore.recordNanos(latency);
+        sourceToStoreByDepth[level].recordNanos(latency);
+
+        if (perMetricEnabled && depth > 0 && metricId >= 0) {
+            metricHistogram(metricId).recordNanos(latency);
+            metricDepths.set(metricId, level);
+        }
+    }
+
+    /**
+     * 记录事件从发布到开始处理的排队时间
+     * @param depth 被处理事件的依赖深度
+     * @param publishTimeNanos 事件发布时间（System.nanoTime）
+     */
+    public void recordQueueWait(int depth, long publishTimeNanos) {
+        long wait = System.nanoTime() - publishTimeNanos;
+        queueWait.recordNanos(wait);
+        queueWaitByDepth[Math.min(Math.max(depth, 0), MAX_DEPTH)].recordNanos(wait);
+    }
+
+    private LatencyHistogram metricHistogram(int id) {
+        AtomicReferenceArray<LatencyHistogram> histograms = metricHistograms;
+        if (id >= histograms.length()) {
+            histograms = grow(id + 1);
+        }
+        LatencyHistogram histogram = histograms.get(id);
+        if (histogram == null) {
+            histogram = new LatencyHistogram(PER_METRIC_PRECISION_BITS, PER_METRIC_MAX_EXPONENT);
+            if (!histograms.compareAndSet(id, null, histogram)) {
+                histogram = histograms.get(id);
+            }
+        }
+        return histogram;
+    }
+
+    private synchronized AtomicReferenceArray<LatencyHistogram> grow(int capacity) {
+        AtomicReferenceArray<LatencyHistogram> current = metricHistograms;
+        if (capacity <= current.length()) {
+            return current;
+        }
+        AtomicReferenceArray<LatencyHistogram> grown =
+            new AtomicReferenceArray<>(Math.max(capacity, current.length() * 2));
+        for (int i = 0; i < current.length(); i++) {
+            grown.set(i, current.get(i));
+        }
+        metricHistograms = grown;
+        return grown;
+    }
+
+    /**
+     * 获取延迟统计
+     * @param identifier 只返回该指标的统计；为空时返回p99最高的limit个指标
+     * @param limit 返回的指标数量上限
+     */
+    public Map<String, Object> getStatistics(String identifier, int limit) {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("sourceToStore", sourceToStore.summary());
+        stats.put("queueWait", queueWait.summary());
+
+        List<Map<String, Object>> byDepth = new ArrayList<>();
+        for (int depth = 0; depth <= MAX_DEPTH; depth++) {
+            if (sourceToStoreByDepth[depth].getCount() == 0 && queueWaitByDepth[depth].getCount() == 0) {
+                continue;
+            }
+            Map<String, Object> level = new LinkedHashMap<>();
+            level.put("depth", depth);
+            level.put("sourceToStore", sourceToStoreByDepth[depth].summary());
+            level.put("queueWait", queueWaitByDepth[depth].summary());
+            byDepth.add(level);
+        }
+        stats.put("byDepth", byDepth);
+        stats.put("metrics", metricStatistics(identifier, limit));
+        return stats;
+    }
+
+    private Map<String, Object> metricStatistics(String identifier, int limit) {
+        MetricSymbolTable symbols = metricConfigService.getSymbolTable();
+        AtomicReferenceArray<LatencyHistogram> histograms = metricHistograms;
+        List<Integer> ids = new ArrayList<>();
+        if (identifier != null && !identifier.isEmpty()) {
+            int id = symbols.idOf(identifier);
+            if (id != MetricSymbolTable.UNKNOWN && id < histograms.length() && histograms.get(id) != null) {
+                ids.add(id);
+            }
+        } else {
+            long[] p99 = new long[histograms.length()];
+            for (int id = 0; id < histograms.length(); id++) {
+                LatencyHistogram histogram = histograms.get(id);
+                if (histogram != null) {
+                    p99[id] = histogram.getValueAtPercentile(0.99);
+                    ids.add(id);
+                }
+            }
+            ids.sort(Comparator.comparingLong((Integer id) -> p99[id]).reversed());
+            if (ids.size() > limit) {
+                ids = ids.subList(0, Math.max(limit, 0));
+            }
+        }
+
+        Map<String, Object> metrics = new LinkedHashMap<>();
+        for (int id : ids) {
+            Map<String, Object> metric = new LinkedHashMap<>();
+            metric.put("depth", metricDepths.get(id));
+            metric.put("sourceToStore", histograms.get(id).summary());
+            metrics.put(symbols.nameOf(id), metric);
+        }
+        return metrics;
+    }
+
+    /**
+     * 清空所有统计
+     */
+    public void reset() {
+        sourceToStore.reset();
+        queueWait.reset();
+        for (int depth = 0; depth <= MAX_DEPTH; depth++) {
+            sourceToStoreByDepth[depth].reset();
+            queueWaitByDepth[depth].reset();
+        }
+        synchronized (this) {
+            metricHistograms = new AtomicReferenceArray<>(metricHistograms.length());
+        }
+        metricDepths.clear();
+    }
+}
@@ -0,0 +1,217 @@
+package com.gridinsight.service;
+
+import javax.servlet.AsyncContext;
+import javax.servlet.AsyncEvent;
+import javax.servlet.AsyncListener;
+import javax.servlet.ServletOutputStream;
+import javax.servlet.WriteListener;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * SSE连接（Servlet异步请求 + 非阻塞写）
+ * 推送帧先放入连接的写缓冲区，只在输出流可写时写出，发送线程不会因客户端接收慢而阻塞；
+ * 输出流长时间不可写或写缓冲超过上限时，由推送服务直接结束异步请求断开连接
+ */
+public class SseConnection implements WriteListener, AsyncListener {
+
+    private static final byte[] OPEN_FRAME = ": connected\n\n".getBytes(StandardCharsets.UTF_8);
+
+    private final ServletOutputStream out;
+    private final Runnable completer;
+
+    // 待写出的帧（仅在持有连接锁时访问）
+    private final Deque<byte[]> queue = new ArrayDeque<>();
+    private long queuedBytes;
+    private boolean unflushed;
+    private boolean opened;
+
+    // 输出流开始不可写的时间，0表示可写
+    private volatile long blockedSince;
+
+    private final AtomicBoolean closed = new AtomicBoolean(false);
+    private volatile Runnable closeHandler;
+
+    SseConnection(ServletOutputStream out, Runnable completer) {
+        this.out = out;
+        this.completer = completer;
+    }
+
+    /**
+     * 开启异步请求并注册非阻塞写
+     */
+    public static SseConnection open(HttpServletRequest request, HttpServletResponse response) throws IOException {
+        response.setContentType("text/event-stream");
+        response.setCharacterEncoding("UTF-8");
+        response.setHeader("Cache-Control", "no-cache");
+        AsyncContext asyncContext = request.startAsync(request, response);
+        // 不设超时，断开的连接通过写出失败或长时间不可写检测
+        asyncContext.setTimeout(0);
+        SseConnection connection = new SseConnection(response.getOutputStream(), asyncContext::complete);
+        asyncContext.addListener(connection);
+        connection.out.setWriteListener(connection);
+        return connection;
+    }
+
+    /**
+     * 连接关闭（客户端断开、写出失败或被服务端断开）时的回调
+     */
+    void onClose(Runnable handler) {
+        this.closeHandler = handler;
+        if (closed.get()) {
+            handler.run();
+        }
+    }
+
+    /**
+     * 推送一个事件
+     */
+    public boolean sendEvent(String name, String data, long maxBufferedBytes) throws IOException {
+        StringBuilder frame = new StringBuilder(data.length() + name.length() + 16);
+        frame.append("event: ").append(name).append('\n');
+        for (String line : data.split("\n", -1)) {
+            frame.append("data: ").append(line).append('\n');
+        }
+        frame.append('\n');
+        return send(frame.toString().getBytes(StandardCharsets.UTF_8), maxBufferedBytes);
+    }
+
+    /**
+     * 推送一条注释（心跳）
+     */
+    public boolean sendComment(String comment, long maxBufferedBytes) throws IOException {
+        return send((": " + comment + "\n\n").getBytes(StandardCharsets.UTF_8), maxBufferedBytes);
+    }
+
+    /**
+     * 放入一帧待写数据并写出当前可写的部分，不阻塞
+     * @return false表示写缓冲超过上限（客户端接收过慢）
+     * @throws IOException 连接已关闭或写出失败
+     */
+    synchronized boolean send(byte[] frame, long maxBufferedBytes) throws IOException {
+        if (closed.get()) {
+            throw new IOException("连接已关闭");
+        }
+        if (!queue.isEmpty() && queuedBytes + frame.length > maxBufferedBytes) {
+            return false;
+        }
+        queue.add(frame);
+        queuedBytes += frame.length;
+        drain();
+        return true;
+    }
+
+    /**
+     * 在输出流可写期间写出缓冲的帧，写完后刷新；输出流不可写时记录开始时间，
+     * 由容器在可写时回调onWritePossible继续写出
+     */
+    private void drain() throws IOException {
+        try {
+            while (out.isReady()) {
+                byte[] frame = queue.poll();
+                if (frame == null) {
+                    if (unflushed) {
+                        unflushed = false;
+                        out.flush();
+                        continue;
+                    }
+                    blockedSince = 0L;
+                    return;
+                }
+                queuedBytes -= frame.length;
+                out.write(frame);
+                unflushed = true;
+            }
+            if (blockedSince == 0L) {
+                blockedSince = System.currentTimeMillis();
+            }
+        } catch (IOException | IllegalStateException e) {
+            close();
+            throw e instanceof IOException ? (IOException) e : new IOException(e);
+        }
+    }
+
+    /**
+     * 输出流不可写的时间是否超过阈值
+     */
+    boolean isStalled(long now, long timeoutMs) {
+        long since = blockedSince;
+        return since != 0L && now - since > timeoutMs;
+    }
+
+    long getQueuedBytes() {
+        synchronized (this) {
+            return queuedBytes;
+        }
+    }
+
+    boolean isClosed() {
+        return closed.get();
+    }
+
+    /**
+     * 结束异步请求，丢弃未写出的数据；不等待写出，可在任意线程调用
+     */
+    public void close() {
+        if (!closed.compareAndSet(false, true)) {
+            return;
+        }
+        try {
+            completer.run();
+        } catch (RuntimeException e) {
+            // 连接可能已不可用，忽略
+        }
+        fireClosed();
+    }
+
+    private void fireClosed() {
+        Runnable handler = closeHandler;
+        if (handler != null) {
+            handler.run();
+        }
+    }
+
+    @Override
+    public synchronized void onWritePossible() throws IOException {
+        if (!closed.get()) {
+            if (!opened) {
+                // 首次可写，先提交响应头
+                opened = true;
+                queue.add(OPEN_FRAME);
+                queuedBytes += OPEN_FRAME.length;
+            }
+            drain();
+        }
+    }
+
+    @Override
+    public void onError(Throwable t) {
+        close();
+    }
+
+    @Override
+    public void onComplete(AsyncEvent event) {
+        if (closed.compareAndSet(false, true)) {
+            fireClosed();
+        }
+    }
+
+    @Override
+    public void onTimeout(AsyncEvent event) {
+        close();
+    }
+
+    @Override
+    public void onError(AsyncEvent event) {
+        close();
+    }
+
+    @Override
+    public void onStartAsync(AsyncEvent event) {
+    }
+}
@@ -1,6 +1,8 @@
 package com.gridinsight.service;
 
 import com.gridinsight.domain.model.MetricValue;
+import com.gridinsight.service.timeseries.DownsampleMethod;
+import com.gridinsight.service.timeseries.SeriesBuffer;
 
 import java.time.LocalDateTime;
 import java.util.List;
@@ -10,6 +12,8 @@ import java.util.Map;
  * 时序数据服务接口
  * 定义指标的时序数据存储和查询规范
  * 支持多种实现：JSON文件、MapTSDB等
+ * 以标识符为参数的方法供接口边界（控制器、配置管理）使用；采集、计算和依赖传播使用以指标ID为参数的重载，
+ * 指标ID由MetricSymbolTable分配，与注册表快照共用同一个符号表
  */
 public interface TimeSeriesDataService {
 
@@ -21,6 +25,31 @@ public interface TimeSeriesDataService {
      */
     void storeMetricValue(String metricIdentifier, MetricValue value, LocalDateTime timestamp);
 
+    /**
+     * 存储单个数据点（内部采集和计算路径使用，不需要构造MetricValue）
+     * @param metricIdentifier 指标标识符
+     * @param timestampMillis 毫秒时间戳（与TimeRanges.toEpochMillis的约定一致）
+     * @param value 指标数值
+     */
+    void storeSample(String metricIdentifier, long timestampMillis, double value);
+
+    /**
+     * 按指标ID存储单个数据点
+     * @param metricId 指标ID（MetricSymbolTable分配）
+     * @param timestampMillis 毫秒时间戳
+     * @param value 指标数值
+     */
+    void storeSample(int metricId, long timestampMillis, double value);
+
+    /**
+     * 按指标ID存储单个数据点并携带数据质量（采集到存储到传播全程使用基本类型）
+     * @param metricId 指标ID（MetricSymbolTable分配）
+     * @param timestampMillis 数据点时间（毫秒）
+     * @param value 指标数值
+     * @param quality 数据质量编码（MetricValue.DataQuality#code）
+     */
+    void storeSample(int metricId, long timestampMillis, double value, byte quality);
+
     /**
      * 清空所有时序数据 (仅用于测试)
      */
@@ -40,6 +69,35 @@ public interface TimeSeriesDataService {
      */
     MetricValue getLatestMetricValue(String metricIdentifier);
 
+    /**
+     * 查询最新数值（不构造MetricValue）
+     * @param metricIdentifier 指标标识符
+     * @return 最新数值，没有有效数据时返回Double.NaN
+     */
+    double getLatestValue(String metricIdentifier);
+
+    /**
+     * 按指标ID查询最新数值
+     * @param metricId 指标ID（MetricSymbolTable分配）
+     * @return 最新数值，没有有效数据时返回Double.NaN
+     */
+    double getLatestValue(int metricId);
+
+    /**
+     * 查询指标数据版本号
+     * 每次写入该指标时单调递增，用于HTTP条件请求（ETag）和响应缓存
+     * @param metricIdentifier 指标标识符
+     * @return 版本号
+     */
+    long getMetricVersion(String metricIdentifier);
+
+    /**
+     * 按指标ID查询指标数据版本号
+     * @param metricId 指标ID（MetricSymbolTable分配）
+     * @return 版本号
+     */
+    long getMetricVersion(int metricId);
+
     /**
      * 查询指标历史数据
      * @param metricIdentifier 指标标识符
@@ -49,6 +107,32 @@ public interface TimeSeriesDataService {
      */
     List<MetricValue> getMetricHistory(String metricIdentifier, LocalDateTime startTime, LocalDateTime endTime);
 
+    /**
+     * 降采样查询指标历史数据
+     * AVG：自动选择满足步长或最大点数要求的最粗汇总层级，返回每个时间桶的平均值；
+     * LTTB/M4：单次遍历原始数据，返回不超过maxPoints个保留曲线形状/峰值的数据点
+     * @param metricIdentifier 指标标识符
+     * @param startMillis 开始时间（UTC毫秒）
+     * @param endMillis 结束时间（UTC毫秒）
+     * @param stepMillis 步长（毫秒），小于等于0表示不指定
+     * @param maxPoints 最大返回点数，小于等于0表示不限制
+     * @param method 降采样方法
+     * @return 时间戳和数值列，步长和最大点数都未指定时返回原始数据
+     */
+    SeriesBuffer getDownsampledHistory(String metricIdentifier, long startMillis, long endMillis,
+                                       long stepMillis, int maxPoints, DownsampleMethod method);
+
+    /**
+     * 按时间顺序遍历指标历史数据点，不构造MetricValue列表
+     * 用于统计、降采样、流式导出等只需单次遍历的场景
+     * @param metricIdentifier 指标标识符
+     * @param startMillis 开始时间（UTC毫秒，包含）
+     * @param endMillis 结束时间（UTC毫秒，包含）
+     * @param visitor 数据点访问器，返回false时提前结束
+     * @return 已访问的数据点数
+     */
+    long scanMetricHistory(String metricIdentifier, long startMillis, long endMillis, MetricPointVisitor visitor);
+
     /**
      * 批量查询最新指标值
      * @param metricIdentifiers 指标标识符列表
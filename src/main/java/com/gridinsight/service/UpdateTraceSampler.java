@@ -0,0 +1,30 @@
+package com.gridinsight.service;
+
+import org.slf4j.Logger;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * 逐次更新调试日志的采样器
+ * 每次基础指标采集、事件发布、派生指标计算都会产生调试日志，高频更新时全部输出会压垮日志管道，
+ * 因此先检查日志级别，再按 1/sampleRate 的概率决定是否输出；采样判断不加锁、不分配对象
+ */
+@Component
+public class UpdateTraceSampler {
+
+    // 每sampleRate次更新输出一次调试日志，1表示全部输出
+    @Value("${gridinsight.logging.update-trace-sample-rate:100}")
+    private int sampleRate = 100;
+
+    /**
+     * 是否输出本次更新的调试日志
+     */
+    public boolean shouldTrace(Logger log) {
+        if (!log.isDebugEnabled()) {
+            return false;
+        }
+        return sampleRate <= 1 || ThreadLocalRandom.current().nextInt(sampleRate) == 0;
+    }
+}
@@ -0,0 +1,44 @@
+package com.gridinsight.service.jfr;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Enabled;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/**
+ * JFR事件：一次派生指标计算（读取依赖值并计算公式）
+ */
+@Name("com.gridinsight.FormulaEvaluate")
+@Label("Formula Evaluate")
+@Category({"GridInsight", "Propagation"})
+@Description("派生指标读取依赖值并计算公式")
+@Enabled(false)
+@StackTrace(false)
+public class FormulaEvaluateEvent extends Event {
+
+    @Label("Metric")
+    public String metricIdentifier;
+
+    @Label("Depth")
+    @Description("依赖深度，基础指标为0")
+    public int depth;
+
+    @Label("Success")
+    public boolean success;
+
+    /**
+     * 结束计时，开启记录且超过阈值时填充字段并提交
+     */
+    public void complete(String metricIdentifier, int depth, boolean success) {
+        end();
+        if (shouldCommit()) {
+            this.metricIdentifier = metricIdentifier;
+            this.depth = depth;
+            this.success = success;
+            commit();
+        }
+    }
+}
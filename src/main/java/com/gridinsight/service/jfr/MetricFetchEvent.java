@@ -0,0 +1,48 @@
+package com.gridinsight.service.jfr;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Enabled;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/**
+ * JFR事件：一次基础指标数据源采集
+ * 默认关闭，未开启记录时begin/end/shouldCommit只做一次开关检查
+ */
+@Name("com.gridinsight.MetricFetch")
+@Label("Metric Fetch")
+@Category({"GridInsight", "Scheduler"})
+@Description("基础指标从数据源采集一次数据")
+@Enabled(false)
+@StackTrace(false)
+public class MetricFetchEvent extends Event {
+
+    @Label("Metric")
+    public String metricIdentifier;
+
+    @Label("Source Type")
+    public String sourceType;
+
+    @Label("Source Address")
+    public String sourceAddress;
+
+    @Label("Success")
+    public boolean success;
+
+    /**
+     * 结束计时，开启记录且超过阈值时填充字段并提交
+     */
+    public void complete(String metricIdentifier, String sourceType, String sourceAddress, boolean success) {
+        end();
+        if (shouldCommit()) {
+            this.metricIdentifier = metricIdentifier;
+            this.sourceType = sourceType;
+            this.sourceAddress = sourceAddress;
+            this.success = success;
+            commit();
+        }
+    }
+}
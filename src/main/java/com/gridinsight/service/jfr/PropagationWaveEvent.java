@@ -0,0 +1,52 @@
+package com.gridinsight.service.jfr;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Enabled;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+import jdk.jfr.Timespan;
+
+/**
+ * JFR事件：处理一个指标更新事件，重新计算直接依赖它的所有派生指标
+ */
+@Name("com.gridinsight.PropagationWave")
+@Label("Propagation Wave")
+@Category({"GridInsight", "Propagation"})
+@Description("处理一个指标更新事件并重新计算直接依赖它的派生指标")
+@Enabled(false)
+@StackTrace(false)
+public class PropagationWaveEvent extends Event {
+
+    @Label("Source Metric")
+    public String metricIdentifier;
+
+    @Label("Depth")
+    @Description("触发事件的依赖深度，基础指标为0")
+    public int depth;
+
+    @Label("Dependents")
+    @Description("直接依赖该指标的派生指标数量")
+    public int dependentCount;
+
+    @Label("Queue Wait")
+    @Description("事件从发布到开始处理的等待时间")
+    @Timespan(Timespan.NANOSECONDS)
+    public long queueWait;
+
+    /**
+     * 结束计时，开启记录且超过阈值时填充字段并提交
+     */
+    public void complete(String metricIdentifier, int depth, int dependentCount, long queueWaitNanos) {
+        end();
+        if (shouldCommit()) {
+            this.metricIdentifier = metricIdentifier;
+            this.depth = depth;
+            this.dependentCount = dependentCount;
+            this.queueWait = queueWaitNanos;
+            commit();
+        }
+    }
+}
@@ -0,0 +1,40 @@
+package com.gridinsight.service.jfr;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Enabled;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/**
+ * JFR事件：MapTSDB写后队列的一次统一提交
+ */
+@Name("com.gridinsight.TsdbCommit")
+@Label("TSDB Commit")
+@Category({"GridInsight", "Storage"})
+@Description("MapTSDB写后队列统一提交一批数据点")
+@Enabled(false)
+@StackTrace(false)
+public class TsdbCommitEvent extends Event {
+
+    @Label("Points")
+    @Description("本次提交的数据点数")
+    public int points;
+
+    @Label("Success")
+    public boolean success;
+
+    /**
+     * 结束计时，开启记录且超过阈值时填充字段并提交
+     */
+    public void complete(int points, boolean success) {
+        end();
+        if (shouldCommit()) {
+            this.points = points;
+            this.success = success;
+            commit();
+        }
+    }
+}
@@ -0,0 +1,163 @@
+package com.gridinsight.service.timeseries;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.PriorityQueue;
+
+/**
+ * 时间对齐的多指标矩阵
+ * 所有指标共享同一时间戳列，每个指标一列数值，缺失值为NaN
+ */
+public final class AlignedSeries {
+
+    private final List<String> metrics;
+    private final long[] timestamps;
+    private final double[][] columns;
+
+    private AlignedSeries(List<String> metrics, long[] timestamps, double[][] columns) {
+        this.metrics = metrics;
+        this.timestamps = timestamps;
+        this.columns = columns;
+    }
+
+    /**
+     * k路归并多个按时间排序的序列，时间戳取所有序列的并集，再按策略填充缺失值
+     * @param metrics 指标标识符，与series一一对应
+     * @param series 各指标的数据（时间升序）
+     * @param fill 缺失值填充策略
+     */
+    public static AlignedSeries merge(List<String> metrics, List<SeriesBuffer> series, FillPolicy fill) {
+        int k = series.size();
+        if (metrics.size() != k) {
+            throw new IllegalArgumentException("指标数量与序列数量不一致");
+        }
+
+        int[] cursors = new int[k];
+        PriorityQueue<Integer> heap = new PriorityQueue<>(Math.max(1, k),
+                (a, b) -> Long.compare(series.get(a).getTimestamp(cursors[a]), series.get(b).getTimestamp(cursors[b])));
+        int capacity = 16;
+        for (int i = 0; i < k; i++) {
+            if (!series.get(i).isEmpty()) {
+                heap.add(i);
+                capacity = Math.max(capacity, series.get(i).size());
+            }
+        }
+
+        long[] timestamps = new long[capacity];
+        double[][] columns = new double[k][capacity];
+        int rows = 0;
+        while (!heap.isEmpty()) {
+            int first = heap.peek();
+            long timestamp = series.get(first).getTimestamp(cursors[first]);
+            if (rows == timestamps.length) {
+                int newCapacity = rows * 2;
+                timestamps = Arrays.copyOf(timestamps, newCapacity);
+                for (int i = 0; i < k; i++) {
+                    columns[i] = Arrays.copyOf(columns[i], newCapacity);
+                }
+            }
+            timestamps[rows] = timestamp;
+            for (int i = 0; i < k; i++) {
+                columns[i][rows] = Double.NaN;
+            }
+
+            // 取出所有位于当前时间戳的序列头部，同一序列的重复时间戳以后者为准
+            while (!heap.isEmpty()) {
+                int index = heap.peek();
+                SeriesBuffer buffer = series.get(index);
+                if (buffer.getTimestamp(cursors[index]) != timestamp) {
+                    break;
+                }
+                heap.poll();
+                columns[index][rows] = buffer.getValue(cursors[index]);
+                cursors[index]++;
+                if (cursors[index] < buffer.size()) {
+                    heap.add(index);
+                }
+            }
+            rows++;
+        }
+
+        timestamps = Arrays.copyOf(timestamps, rows);
+        for (int i = 0; i < k; i++) {
+            columns[i] = Arrays.copyOf(columns[i], rows);
+            fillColumn(timestamps, columns[i], fill);
+        }
+        return new AlignedSeries(Collections.unmodifiableList(new ArrayList<>(metrics)), timestamps, columns);
+    }
+
+    private static void fillColumn(long[] timestamps, double[] column, FillPolicy fill) {
+        if (fill == FillPolicy.NULL) {
+            return;
+        }
+        int lastKnown = -1;
+        for (int row = 0; row < column.length; row++) {
+            if (Double.isNaN(column[row])) {
+                if (fill == FillPolicy.PREVIOUS && lastKnown >= 0) {
+                    column[row] = column[lastKnown];
+                }
+                continue;
+            }
+            if (fill == FillPolicy.LINEAR && lastKnown >= 0 && row - lastKnown > 1) {
+                double startValue = column[lastKnown];
+                double slope = (column[row] - startValue) / (timestamps[row] - timestamps[lastKnown]);
+                for (int gap = lastKnown + 1; gap < row; gap++) {
+                    column[gap] = startValue + slope * (timestamps[gap] - timestamps[lastKnown]);
+                }
+            }
+            lastKnown = row;
+        }
+    }
+
+    public List<String> getMetrics() {
+        return metrics;
+    }
+
+    public int getRowCount() {
+        return timestamps.length;
+    }
+
+    public long getTimestamp(int row) {
+        return timestamps[row];
+    }
+
+    /**
+     * 获取值，缺失时返回NaN
+     */
+    public double getValue(int row, int metricIndex) {
+        return columns[metricIndex][row];
+    }
+
+    public long[] timestampArray() {
+        return timestamps.clone();
+    }
+
+    /**
+     * 按行输出数值矩阵，缺失值为null（用于JSON响应）
+     */
+    public List<Double[]> toRows() {
+        List<Double[]> rows = new ArrayList<>(timestamps.length);
+        for (int row = 0; row < timestamps.length; row++) {
+            Double[] values = new Double[columns.length];
+            for (int i = 0; i < columns.length; i++) {
+                double value = columns[i][row];
+                values[i] = Double.isNaN(value) ? null : value;
+            }
+            rows.add(values);
+        }
+        return rows;
+    }
+
+    /**
+     * 以共享时间戳列转换为每个指标一个序列（缺失值为NaN，用于列式二进制格式）
+     */
+    public SeriesBuffer toSeries(int metricIndex) {
+        SeriesBuffer buffer = new SeriesBuffer(timestamps.length);
+        for (int row = 0; row < timestamps.length; row++) {
+            buffer.add(timestamps[row], columns[metricIndex][row]);
+        }
+        return buffer;
+    }
+}
@@ -0,0 +1,93 @@
+package com.gridinsight.service.timeseries;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * 列式二进制时序数据格式（application/vnd.gridinsight.columnar）
+ * 所有整数和浮点数均为大端序：
+ * <pre>
+ * magic        4字节 "GIC1"
+ * seriesCount  int32
+ * 每个序列：
+ *   metricId   uint16长度 + UTF-8字节（DataOutput.writeUTF）
+ *   pointCount int32
+ *   timestamps int64[pointCount]  UTC毫秒
+ *   values     float64[pointCount] IEEE 754
+ * </pre>
+ * 时间戳和数值按列连续存放，不重复指标标识、单位和质量字段，客户端可以直接映射为数组
+ */
+public final class ColumnarSeriesFormat {
+
+    public static final String MEDIA_TYPE = "application/vnd.gridinsight.columnar";
+
+    private static final byte[] MAGIC = {'G', 'I', 'C', '1'};
+
+    private ColumnarSeriesFormat() {
+    }
+
+    /**
+     * 判断Accept请求头是否要求列式二进制格式
+     */
+    public static boolean isAccepted(String acceptHeader) {
+        return acceptHeader != null && acceptHeader.contains(MEDIA_TYPE);
+    }
+
+    /**
+     * 写出文件头
+     */
+    public static void writeHeader(DataOutputStream out, int seriesCount) throws IOException {
+        out.write(MAGIC);
+        out.writeInt(seriesCount);
+    }
+
+    /**
+     * 写出一个序列
+     */
+    public static void writeSeries(DataOutputStream out, String metricIdentifier, SeriesBuffer series) throws IOException {
+        out.writeUTF(metricIdentifier);
+        int size = series.size();
+        out.writeInt(size);
+        for (int i = 0; i < size; i++) {
+            out.writeLong(series.getTimestamp(i));
+        }
+        for (int i = 0; i < size; i++) {
+            out.writeDouble(series.getValue(i));
+        }
+    }
+
+    /**
+     * 读取完整的数据（用于客户端和测试）
+     * @return 按写出顺序排列的 指标标识符 → 序列
+     */
+    public static Map<String, SeriesBuffer> read(InputStream inputStream) throws IOException {
+        DataInputStream in = new DataInputStream(inputStream);
+        byte[] magic = new byte[MAGIC.length];
+        in.readFully(magic);
+        if (!Arrays.equals(magic, MAGIC)) {
+            throw new IOException("不是有效的列式时序数据");
+        }
+
+        int seriesCount = in.readInt();
+        Map<String, SeriesBuffer> result = new LinkedHashMap<>();
+        for (int s = 0; s < seriesCount; s++) {
+            String metricIdentifier = in.readUTF();
+            int size = in.readInt();
+            long[] timestamps = new long[size];
+            for (int i = 0; i < size; i++) {
+                timestamps[i] = in.readLong();
+            }
+            SeriesBuffer series = new SeriesBuffer(size);
+            for (int i = 0; i < size; i++) {
+                series.add(timestamps[i], in.readDouble());
+            }
+            result.put(metricIdentifier, series);
+        }
+        return result;
+    }
+}
@@ -0,0 +1,47 @@
+package com.gridinsight.service.timeseries;
+
+/**
+ * 历史数据降采样方法
+ */
+public enum DownsampleMethod {
+
+    /**
+     * 时间桶平均值（优先使用汇总层级）
+     */
+    AVG("avg"),
+
+    /**
+     * Largest-Triangle-Three-Buckets，保留曲线形状
+     */
+    LTTB("lttb"),
+
+    /**
+     * 每个时间桶保留首、末、最小、最大四个点，保留峰值
+     */
+    M4("m4");
+
+    private final String name;
+
+    DownsampleMethod(String name) {
+        this.name = name;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    /**
+     * 按名称解析降采样方法，为空时返回AVG
+     */
+    public static DownsampleMethod fromName(String name) {
+        if (name == null || name.isEmpty()) {
+            return AVG;
+        }
+        for (DownsampleMethod method : values()) {
+            if (method.name.equalsIgnoreCase(name)) {
+                return method;
+            }
+        }
+        throw new IllegalArgumentException("不支持的降采样方法: " + name);
+    }
+}
@@ -0,0 +1,40 @@
+package com.gridinsight.service.timeseries;
+
+/**
+ * 首末点降采样
+ * maxPoints小于LTTB/M4所需的最少点数时使用：maxPoints为1时只保留最后一个点，为2时保留首末点
+ */
+public class EndpointDownsampler extends StreamingDownsampler {
+
+    private boolean hasFirst;
+    private long firstTs;
+    private double first;
+    private long lastTs;
+    private double last;
+
+    public EndpointDownsampler(long startMillis, long endMillis, int maxPoints) {
+        super(startMillis, endMillis, Math.min(maxPoints, 2));
+    }
+
+    @Override
+    protected void accept(long timestampMillis, double value) {
+        if (!hasFirst) {
+            hasFirst = true;
+            firstTs = timestampMillis;
+            first = value;
+        }
+        lastTs = timestampMillis;
+        last = value;
+    }
+
+    @Override
+    protected void complete() {
+        if (!hasFirst) {
+            return;
+        }
+        if (maxPoints > 1 && firstTs != lastTs) {
+            output.add(firstTs, first);
+        }
+        output.add(lastTs, last);
+    }
+}
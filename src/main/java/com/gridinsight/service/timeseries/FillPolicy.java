@@ -0,0 +1,47 @@
+package com.gridinsight.service.timeseries;
+
+/**
+ * 多指标对齐查询的缺失值填充策略
+ */
+public enum FillPolicy {
+
+    /**
+     * 沿用该指标前一个有值时刻的值，首个值之前保持为空
+     */
+    PREVIOUS("previous"),
+
+    /**
+     * 按时间在前后两个有值时刻之间线性插值，首尾缺失保持为空
+     */
+    LINEAR("linear"),
+
+    /**
+     * 不填充，缺失值为空
+     */
+    NULL("null");
+
+    private final String name;
+
+    FillPolicy(String name) {
+        this.name = name;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    /**
+     * 按名称解析填充策略，为空时返回NULL
+     */
+    public static FillPolicy fromName(String name) {
+        if (name == null || name.isEmpty()) {
+            return NULL;
+        }
+        for (FillPolicy policy : values()) {
+            if (policy.name.equalsIgnoreCase(name)) {
+                return policy;
+            }
+        }
+        throw new IllegalArgumentException("不支持的填充策略: " + name);
+    }
+}
@@ -0,0 +1,107 @@
+package com.gridinsight.service.timeseries;
+
+import com.gridinsight.service.MetricPointVisitor;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.time.format.DateTimeFormatter;
+
+/**
+ * 数据点流式JSON输出
+ * 作为数据点访问器直接挂在存储扫描上，每个点写出后即可丢弃，内存占用恒定；
+ * 写出失败（如客户端断开连接）时返回false，使底层扫描提前结束
+ */
+public class JsonPointStreamWriter implements MetricPointVisitor {
+
+    /**
+     * 输出格式
+     */
+    public enum Format {
+        /**
+         * 每行一个JSON对象（application/x-ndjson）
+         */
+        NDJSON,
+        /**
+         * 分块输出的JSON数组
+         */
+        JSON_ARRAY
+    }
+
+    private static final int FLUSH_INTERVAL_POINTS = 1000;
+
+    private final Writer writer;
+    private final Format format;
+
+    private long written;
+    private IOException failure;
+
+    public JsonPointStreamWriter(OutputStream outputStream, Format format) {
+        this.writer = new BufferedWriter(new OutputStreamWriter(outputStream, StandardCharsets.UTF_8), 8192);
+        this.format = format;
+    }
+
+    /**
+     * 写出开头（JSON数组格式的左括号）
+     */
+    public void begin() throws IOException {
+        if (format == Format.JSON_ARRAY) {
+            writer.write('[');
+        }
+    }
+
+    @Override
+    public boolean visit(long timestampMillis, double value) {
+        try {
+            if (format == Format.JSON_ARRAY && written > 0) {
+                writer.write(',');
+            }
+            writer.write("{\"timestamp\":\"");
+            writer.write(DateTimeFormatter.ISO_LOCAL_DATE_TIME.format(TimeRanges.toLocalDateTime(timestampMillis)));
+            writer.write("\",\"value\":");
+            writer.write(Double.isFinite(value) ? Double.toString(value) : "null");
+            writer.write('}');
+            if (format == Format.NDJSON) {
+                writer.write('\n');
+            }
+            written++;
+
+            // 定期刷新，使数据按块发送给客户端
+            if (written % FLUSH_INTERVAL_POINTS == 0) {
+                writer.flush();
+            }
+            return true;
+        } catch (IOException e) {
+            failure = e;
+            return false;
+        }
+    }
+
+    /**
+     * 写出结尾并刷新
+     * 写出过程中已失败时不再写入
+     */
+    public void end() throws IOException {
+        if (failure != null) {
+            return;
+        }
+        if (format == Format.JSON_ARRAY) {
+            writer.write(']');
+        }
+        writer.flush();
+    }
+
+    public long getWrittenCount() {
+        return written;
+    }
+
+    /**
+     * 写出过程中发生的异常（客户端断开等），没有时返回null
+     */
+    public IOException getFailure() {
+        return failure;
+    }
+}
@@ -0,0 +1,143 @@
+package com.gridinsight.service.timeseries;
+
+/**
+ * 流式LTTB（Largest-Triangle-Three-Buckets）降采样
+ * 保留首末点，其余按时间等分为 maxPoints-2 个桶，每个桶选取与上一个选中点、下一个非空桶平均点
+ * 构成三角形面积最大的数据点；只缓冲当前桶和下一个桶的数据点
+ */
+public class LttbDownsampler extends StreamingDownsampler {
+
+    // 首末点加至少一个桶
+    static final int MIN_POINTS = 3;
+
+    private final int bucketCount;
+
+    // 当前桶（候选点）和下一个桶（用于计算平均点）
+    private SeriesBuffer currentBucket = new SeriesBuffer();
+    private SeriesBuffer nextBucket = new SeriesBuffer();
+    private int currentIndex = -1;
+    private int nextIndex = -1;
+
+    // 上一个选中点
+    private boolean hasSelected;
+    private long selectedTs;
+    private double selectedValue;
+
+    // 最近到达的数据点，直到确认不是最后一个点才放入桶中
+    private boolean hasPendingLast;
+    private long pendingTs;
+    private double pendingValue;
+
+    public LttbDownsampler(long startMillis, long endMillis, int maxPoints) {
+        super(startMillis, endMillis, maxPoints);
+        if (maxPoints < MIN_POINTS) {
+            throw new IllegalArgumentException("LTTB降采样的maxPoints不能小于" + MIN_POINTS + ": " + maxPoints);
+        }
+        this.bucketCount = maxPoints - 2;
+    }
+
+    @Override
+    protected void accept(long timestampMillis, double value) {
+        if (!hasSelected) {
+            // 首点直接保留
+            select(timestampMillis, value);
+            return;
+        }
+        if (hasPendingLast) {
+            addToBucket(pendingTs, pendingValue);
+        }
+        hasPendingLast = true;
+        pendingTs = timestampMillis;
+        pendingValue = value;
+    }
+
+    @Override
+    protected void complete() {
+        if (currentIndex >= 0) {
+            if (nextIndex >= 0) {
+                selectFrom(currentBucket, averageTimestamp(nextBucket), averageValue(nextBucket));
+                selectFrom(nextBucket, lastTimestamp(), lastValue());
+            } else {
+                selectFrom(currentBucket, lastTimestamp(), lastValue());
+            }
+        }
+        if (hasPendingLast) {
+            output.add(pendingTs, pendingValue);
+        }
+    }
+
+    private void addToBucket(long timestampMillis, double value) {
+        int bucket = bucketIndex(timestampMillis, bucketCount);
+        if (currentIndex < 0) {
+            currentIndex = bucket;
+            currentBucket.add(timestampMillis, value);
+        } else if (bucket == currentIndex) {
+            currentBucket.add(timestampMillis, value);
+        } else if (nextIndex < 0 || bucket == nextIndex) {
+            nextIndex = bucket;
+            nextBucket.add(timestampMillis, value);
+        } else {
+            // 下一个桶已完整：从当前桶选点，然后整体前移
+            selectFrom(currentBucket, averageTimestamp(nextBucket), averageValue(nextBucket));
+            SeriesBuffer recycled = currentBucket;
+            recycled.clear();
+            currentBucket = nextBucket;
+            currentIndex = nextIndex;
+            nextBucket = recycled;
+            nextIndex = bucket;
+            nextBucket.add(timestampMillis, value);
+        }
+    }
+
+    private void selectFrom(SeriesBuffer bucket, double nextTs, double nextValue) {
+        if (bucket.isEmpty()) {
+            return;
+        }
+        double ax = selectedTs - startMillis;
+        double ay = selectedValue;
+        double cx = nextTs - startMillis;
+        int bestIndex = 0;
+        double bestArea = -1;
+        for (int i = 0; i < bucket.size(); i++) {
+            double bx = bucket.getTimestamp(i) - startMillis;
+            double by = bucket.getValue(i);
+            double area = Math.abs((ax - cx) * (by - ay) - (ax - bx) * (nextValue - ay));
+            if (area > bestArea) {
+                bestArea = area;
+                bestIndex = i;
+            }
+        }
+        select(bucket.getTimestamp(bestIndex), bucket.getValue(bestIndex));
+    }
+
+    private void select(long timestampMillis, double value) {
+        hasSelected = true;
+        selectedTs = timestampMillis;
+        selectedValue = value;
+        output.add(timestampMillis, value);
+    }
+
+    private double lastTimestamp() {
+        return hasPendingLast ? pendingTs : selectedTs;
+    }
+
+    private double lastValue() {
+        return hasPendingLast ? pendingValue : selectedValue;
+    }
+
+    private double averageTimestamp(SeriesBuffer bucket) {
+        double sum = 0;
+        for (int i = 0; i < bucket.size(); i++) {
+            sum += bucket.getTimestamp(i) - startMillis;
+        }
+        return startMillis + sum / bucket.size();
+    }
+
+    private static double averageValue(SeriesBuffer bucket) {
+        double sum = 0;
+        for (int i = 0; i < bucket.size(); i++) {
+            sum += bucket.getValue(i);
+        }
+        return sum / bucket.size();
+    }
+}
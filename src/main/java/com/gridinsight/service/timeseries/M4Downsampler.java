@@ -0,0 +1,79 @@
+package com.gridinsight.service.timeseries;
+
+/**
+ * M4降采样
+ * 将区间等分为 maxPoints/4 个时间桶，每个桶输出首、末、最小、最大值对应的数据点（按时间排序去重），
+ * 折线图按像素列绘制时与原始数据视觉上一致，峰值不会丢失
+ */
+public class M4Downsampler extends StreamingDownsampler {
+
+    // 每个时间桶最多输出4个点
+    static final int MIN_POINTS = 4;
+
+    private final int bucketCount;
+
+    private int currentBucket = -1;
+    private long firstTs;
+    private double first;
+    private long lastTs;
+    private double last;
+    private long minTs;
+    private double min;
+    private long maxTs;
+    private double max;
+
+    public M4Downsampler(long startMillis, long endMillis, int maxPoints) {
+        super(startMillis, endMillis, maxPoints);
+        if (maxPoints < MIN_POINTS) {
+            throw new IllegalArgumentException("M4降采样的maxPoints不能小于" + MIN_POINTS + ": " + maxPoints);
+        }
+        this.bucketCount = maxPoints / MIN_POINTS;
+    }
+
+    @Override
+    protected void accept(long timestampMillis, double value) {
+        int bucket = bucketIndex(timestampMillis, bucketCount);
+        if (bucket != currentBucket) {
+            flushBucket();
+            currentBucket = bucket;
+            firstTs = lastTs = minTs = maxTs = timestampMillis;
+            first = last = min = max = value;
+            return;
+        }
+        lastTs = timestampMillis;
+        last = value;
+        if (value < min) {
+            min = value;
+            minTs = timestampMillis;
+        }
+        if (value > max) {
+            max = value;
+            maxTs = timestampMillis;
+        }
+    }
+
+    @Override
+    protected void complete() {
+        flushBucket();
+        currentBucket = -1;
+    }
+
+    private void flushBucket() {
+        if (currentBucket < 0) {
+            return;
+        }
+        output.add(firstTs, first);
+        // 极值点按时间顺序输出，与首末点重合时跳过
+        long innerFirstTs = Math.min(minTs, maxTs);
+        long innerSecondTs = Math.max(minTs, maxTs);
+        if (innerFirstTs != firstTs && innerFirstTs != lastTs) {
+            output.add(innerFirstTs, innerFirstTs == minTs ? min : max);
+        }
+        if (innerSecondTs != innerFirstTs && innerSecondTs != firstTs && innerSecondTs != lastTs) {
+            output.add(innerSecondTs, innerSecondTs == minTs ? min : max);
+        }
+        if (lastTs != firstTs) {
+            output.add(lastTs, last);
+        }
+    }
+}
@@ -0,0 +1,399 @@
+package com.gridinsight.service.timeseries;
+
+import org.mapdb.DB;
+import org.mapdb.DBMaker;
+import org.mapdb.Serializer;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentNavigableMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+
+/**
+ * 多分辨率汇总存储
+ * 数据点写入时增量更新各层级（1m/15m/1h）的汇总桶，每个指标每个层级只在内存中保留当前打开的桶，
+ * 桶切换时写入底层有序映射；键为 指标标识符 + '\0' + 定长桶开始时间，同一指标的桶按时间连续存放。
+ * 底层映射可以是内存跳表（JSON存储）或MapDB文件（MapTSDB存储），
+ * 汇总数据的保留天数独立于原始数据配置，每个层级可单独配置；
+ * 过期汇总桶由独立的清理线程按指标的键区间分批删除，不占用写线程
+ */
+public class MetricRollupStore {
+
+    private static final char KEY_SEPARATOR = '\0';
+    private static final int KEY_TIMESTAMP_WIDTH = 16;
+    private static final String COVERAGE_MAP_NAME = "rollup-coverage";
+    private static final long PURGE_INTERVAL_MILLIS = TimeRanges.HOUR_MILLIS;
+    private static final int PURGE_BATCH_SIZE = 10_000;
+
+    private final String filePath;
+
+    // 各层级汇总数据保留天数，小于等于0表示不过期
+    private final Map<RollupTier, Long> retentionDays = new EnumMap<>(RollupTier.class);
+
+    private final Map<RollupTier, ConcurrentNavigableMap<String, double[]>> tierMaps = new EnumMap<>(RollupTier.class);
+
+    // 每个指标开始记录汇总的时间，早于该时间的汇总桶不完整
+    private Map<String, Long> coverageStarts;
+
+    // 每个指标每个层级当前打开的桶，按层级序号索引
+    private final Map<String, RollupBucket[]> openBuckets = new ConcurrentHashMap<>();
+
+    // 自上次提交以来打开的桶发生变化的指标（仅文件模式使用）
+    private final Set<String> dirtyMetrics = new HashSet<>();
+
+    private DB db;
+    private ScheduledExecutorService purger;
+    private final AtomicLong purgedBuckets = new AtomicLong();
+
+    /**
+     * 创建内存汇总存储
+     * @param retentionDays 汇总数据保留天数，小于等于0表示不过期
+     */
+    public MetricRollupStore(long retentionDays) {
+        this(null, retentionDays);
+    }
+
+    /**
+     * 创建基于MapDB文件的汇总存储
+     * @param filePath 文件路径，为null时使用内存存储
+     * @param retentionDays 汇总数据保留天数，小于等于0表示不过期
+     */
+    public MetricRollupStore(String filePath, long retentionDays) {
+        this.filePath = filePath;
+        for (RollupTier tier : RollupTier.values()) {
+            this.retentionDays.put(tier, retentionDays);
+        }
+    }
+
+    /**
+     * 单独设置某个层级的保留天数（在open之前调用）
+     * @param days 保留天数，等于0表示不过期，小于0时保持统一配置
+     */
+    public void setRetentionDays(RollupTier tier, long days) {
+        if (days >= 0) {
+            retentionDays.put(tier, days);
+        }
+    }
+
+    /**
+     * 打开存储
+     */
+    public void open() {
+        if (filePath != null) {
+            Path parent = Paths.get(filePath).toAbsolutePath().getParent();
+            try {
+                if (parent != null) {
+                    Files.createDirectories(parent);
+                }
+            } catch (IOException e) {
+                throw new UncheckedIOException("创建汇总存储目录失败: " + parent, e);
+            }
+            db = DBMaker.fileDB(filePath)
+                    .fileMmapEnableIfSupported()
+                    .transactionEnable()
+                    .make();
+            for (RollupTier tier : RollupTier.values()) {
+                tierMaps.put(tier, db.treeMap("rollup-" + tier.getName(), Serializer.STRING, Serializer.DOUBLE_ARRAY).createOrOpen());
+            }
+            coverageStarts = db.hashMap(COVERAGE_MAP_NAME, Serializer.STRING, Serializer.LONG).createOrOpen();
+        } else {
+            for (RollupTier tier : RollupTier.values()) {
+                tierMaps.put(tier, new ConcurrentSkipListMap<>());
+            }
+            coverageStarts = new ConcurrentHashMap<>();
+        }
+        if (retentionDays.values().stream().anyMatch(days -> days > 0)) {
+            purger = Executors.newSingleThreadScheduledExecutor(runnable -> {
+                Thread thread = new Thread(runnable, "rollup-purge");
+                thread.setDaemon(true);
+                return thread;
+            });
+            purger.scheduleWithFixedDelay(this::purgeExpired, PURGE_INTERVAL_MILLIS, PURGE_INTERVAL_MILLIS,
+                    TimeUnit.MILLISECONDS);
+        }
+    }
+
+    /**
+     * 记录一个数据点，更新所有层级的汇总桶
+     */
+    public void record(String metricIdentifier, long timestampMillis, double value) {
+        if (Double.isNaN(value)) {
+            return;
+        }
+        coverageStarts.putIfAbsent(metricIdentifier, timestampMillis);
+
+        RollupBucket[] buckets = openBuckets.computeIfAbsent(metricIdentifier, k -> new RollupBucket[RollupTier.values().length]);
+        synchronized (buckets) {
+            for (RollupTier tier : RollupTier.values()) {
+                long bucketStart = tier.bucketStart(timestampMillis);
+                RollupBucket open = buckets[tier.ordinal()];
+
+                if (open != null && open.getBucketStart() == bucketStart) {
+                    open.add(timestampMillis, value);
+                } else if (open == null || bucketStart > open.getBucketStart()) {
+                    // 进入新桶：关闭旧桶并写入底层映射
+                    if (open != null) {
+                        tierMaps.get(tier).put(key(metricIdentifier, open.getBucketStart()), open.encode());
+                    }
+                    RollupBucket bucket = loadBucket(tier, metricIdentifier, bucketStart);
+                    bucket.add(timestampMillis, value);
+                    buckets[tier.ordinal()] = bucket;
+                } else {
+                    // 乱序的历史数据点：直接合并到已关闭的桶
+                    RollupBucket closed = loadBucket(tier, metricIdentifier, bucketStart);
+                    closed.add(timestampMillis, value);
+                    tierMaps.get(tier).put(key(metricIdentifier, bucketStart), closed.encode());
+                }
+            }
+        }
+
+        if (db != null) {
+            synchronized (dirtyMetrics) {
+                dirtyMetrics.add(metricIdentifier);
+            }
+        }
+    }
+
+    /**
+     * 按时间顺序遍历指定层级中开始时间在[startMillis, endMillis]内的汇总桶
+     * @return 遍历的桶数量
+     */
+    public int scan(String metricIdentifier, RollupTier tier, long startMillis, long endMillis, Consumer<RollupBucket> consumer) {
+        if (startMillis > endMillis) {
+            return 0;
+        }
+
+        // 打开的桶尚未写入底层映射（或底层映射中的版本已过期），以内存版本为准
+        RollupBucket open = null;
+        RollupBucket[] buckets = openBuckets.get(metricIdentifier);
+        if (buckets != null) {
+            synchronized (buckets) {
+                RollupBucket bucket = buckets[tier.ordinal()];
+                if (bucket != null && bucket.getBucketStart() >= startMillis && bucket.getBucketStart() <= endMillis) {
+                    open = bucket.copy();
+                }
+            }
+        }
+
+        int visited = 0;
+        Map<String, double[]> range = tierMaps.get(tier).subMap(
+                key(metricIdentifier, startMillis), true, key(metricIdentifier, endMillis), true);
+        for (Map.Entry<String, double[]> entry : range.entrySet()) {
+            long bucketStart = parseBucketStart(entry.getKey());
+            if (open != null && open.getBucketStart() <= bucketStart) {
+                consumer.accept(open);
+                visited++;
+                boolean replaced = open.getBucketStart() == bucketStart;
+                open = null;
+                if (replaced) {
+                    continue;
+                }
+            }
+            consumer.accept(RollupBucket.decode(bucketStart, entry.getValue()));
+            visited++;
+        }
+        if (open != null) {
+            consumer.accept(open);
+            visited++;
+        }
+        return visited;
+    }
+
+    /**
+     * 查询指标开始记录汇总的时间
+     * @return UTC毫秒时间戳，未记录过时返回null
+     */
+    public Long getCoverageStart(String metricIdentifier) {
+        return coverageStarts.get(metricIdentifier);
+    }
+
+    /**
+     * 提交：将变化的打开桶写入底层映射，文件模式下提交事务
+     */
+    public void commit() {
+        if (db != null) {
+            Set<String> metrics;
+            synchronized (dirtyMetrics) {
+                metrics = new HashSet<>(dirtyMetrics);
+                dirtyMetrics.clear();
+            }
+            for (String metricIdentifier : metrics) {
+                RollupBucket[] buckets = openBuckets.get(metricIdentifier);
+                if (buckets == null) {
+                    continue;
+                }
+                synchronized (buckets) {
+                    for (RollupTier tier : RollupTier.values()) {
+                        RollupBucket open = buckets[tier.ordinal()];
+                        if (open != null) {
+                            tierMaps.get(tier).put(key(metricIdentifier, open.getBucketStart()), open.encode());
+                        }
+                    }
+                }
+            }
+        }
+
+        if (db != null) {
+            db.commit();
+        }
+    }
+
+    /**
+     * 按各层级的保留天数删除过期汇总桶（清理线程定时调用）
+     * @return 删除的桶数量
+     */
+    public int purgeExpired() {
+        long now = System.currentTimeMillis();
+        int removed = 0;
+        try {
+            for (RollupTier tier : RollupTier.values()) {
+                long days = retentionDays.get(tier);
+                if (days > 0) {
+                    removed += purgeBefore(tier, now - days * TimeRanges.DAY_MILLIS);
+                }
+            }
+        } catch (RuntimeException e) {
+            // 存储已关闭或清理失败，下次定时清理重试
+        }
+        return removed;
+    }
+
+    /**
+     * 删除所有层级中开始时间早于截止时间的汇总桶
+     * @return 删除的桶数量
+     */
+    public int purgeBefore(long cutoffMillis) {
+        int removed = 0;
+        for (RollupTier tier : RollupTier.values()) {
+            removed += purgeBefore(tier, cutoffMillis);
+        }
+        return removed;
+    }
+
+    /**
+     * 删除指定层级中开始时间早于截止时间的汇总桶
+     * 同一指标的桶按时间连续存放，按指标取键区间 [指标+0, 指标+截止时间) 删除，不遍历未过期的桶；
+     * 每删除一批提交一次，限制单个事务的大小
+     * @return 删除的桶数量
+     */
+    public int purgeBefore(RollupTier tier, long cutoffMillis) {
+        ConcurrentNavigableMap<String, double[]> tierMap = tierMaps.get(tier);
+        int removed = 0;
+        int batch = 0;
+        for (String metricIdentifier : coverageStarts.keySet()) {
+            if (Thread.currentThread().isInterrupted()) {
+                // 存储正在关闭
+                break;
+            }
+            Iterator<String> iterator = tierMap.subMap(
+                    key(metricIdentifier, 0L), true, key(metricIdentifier, cutoffMillis), false).keySet().iterator();
+            while (iterator.hasNext()) {
+                iterator.next();
+                iterator.remove();
+                removed++;
+                if (++batch >= PURGE_BATCH_SIZE) {
+                    commitPurgeBatch();
+                    batch = 0;
+                }
+            }
+        }
+        if (batch > 0) {
+            commitPurgeBatch();
+        }
+        purgedBuckets.addAndGet(removed);
+        return removed;
+    }
+
+    private void commitPurgeBatch() {
+        if (db != null) {
+            db.commit();
+        }
+    }
+
+    /**
+     * 清空所有汇总数据
+     */
+    public void clear() {
+        openBuckets.clear();
+        synchronized (dirtyMetrics) {
+            dirtyMetrics.clear();
+        }
+        for (ConcurrentNavigableMap<String, double[]> tierMap : tierMaps.values()) {
+            tierMap.clear();
+        }
+        coverageStarts.clear();
+        if (db != null) {
+            db.commit();
+        }
+    }
+
+    /**
+     * 关闭存储（提交未写入的打开桶）
+     */
+    public void close() {
+        if (purger != null) {
+            purger.shutdownNow();
+            try {
+                purger.awaitTermination(5, TimeUnit.SECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        if (db != null && !db.isClosed()) {
+            commit();
+            db.close();
+        }
+    }
+
+    /**
+     * 获取各层级的汇总桶数量
+     */
+    public Map<String, Object> getStatistics() {
+        Map<String, Object> stats = new HashMap<>();
+        for (Map.Entry<RollupTier, ConcurrentNavigableMap<String, double[]>> entry : tierMaps.entrySet()) {
+            stats.put("buckets_" + entry.getKey().getName(), entry.getValue().size());
+        }
+        stats.put("metrics", coverageStarts.size());
+        Map<String, Object> retention = new HashMap<>();
+        for (Map.Entry<RollupTier, Long> entry : retentionDays.entrySet()) {
+            retention.put(entry.getKey().getName(), entry.getValue());
+        }
+        stats.put("retentionDays", retention);
+        stats.put("purgedBuckets", purgedBuckets.get());
+        stats.put("persistent", db != null);
+        return stats;
+    }
+
+    private RollupBucket loadBucket(RollupTier tier, String metricIdentifier, long bucketStart) {
+        double[] encoded = tierMaps.get(tier).get(key(metricIdentifier, bucketStart));
+        return encoded != null ? RollupBucket.decode(bucketStart, encoded) : new RollupBucket(bucketStart);
+    }
+
+    private static String key(String metricIdentifier, long bucketStart) {
+        String timestamp = Long.toString(Math.max(0L, bucketStart));
+        StringBuilder key = new StringBuilder(metricIdentifier.length() + 1 + KEY_TIMESTAMP_WIDTH);
+        key.append(metricIdentifier).append(KEY_SEPARATOR);
+        for (int i = timestamp.length(); i < KEY_TIMESTAMP_WIDTH; i++) {
+            key.append('0');
+        }
+        return key.append(timestamp).toString();
+    }
+
+    private static long parseBucketStart(String key) {
+        return Long.parseLong(key.substring(key.lastIndexOf(KEY_SEPARATOR) + 1));
+    }
+}
@@ -0,0 +1,192 @@
+package com.gridinsight.service.timeseries;
+
+/**
+ * 可合并的分位数草图（对数分桶，DDSketch思路）
+ * 按相对误差分桶计数，任意分位数的相对误差不超过relativeAccuracy，
+ * 多个草图可直接按桶相加合并，适合分段统计和汇总数据的合并
+ */
+public class QuantileSketch {
+
+    /**
+     * 绝对值小于该阈值的数值计入零桶
+     */
+    private static final double MIN_INDEXABLE_VALUE = 1e-9;
+
+    private final double relativeAccuracy;
+    private final double gamma;
+    private final double logGamma;
+
+    private final BinStore positive = new BinStore();
+    private final BinStore negative = new BinStore();
+    private long zeroCount;
+    private long count;
+
+    /**
+     * 默认相对误差1%
+     */
+    public QuantileSketch() {
+        this(0.01);
+    }
+
+    public QuantileSketch(double relativeAccuracy) {
+        if (relativeAccuracy <= 0 || relativeAccuracy >= 1) {
+            throw new IllegalArgumentException("相对误差必须在(0, 1)之间: " + relativeAccuracy);
+        }
+        this.relativeAccuracy = relativeAccuracy;
+        this.gamma = (1 + relativeAccuracy) / (1 - relativeAccuracy);
+        this.logGamma = Math.log(gamma);
+    }
+
+    /**
+     * 添加一个数值
+     */
+    public void add(double value) {
+        add(value, 1);
+    }
+
+    /**
+     * 添加一个带权重的数值
+     */
+    public void add(double value, long weight) {
+        if (weight <= 0 || Double.isNaN(value)) {
+            return;
+        }
+        if (value > MIN_INDEXABLE_VALUE) {
+            positive.add(index(value), weight);
+        } else if (value < -MIN_INDEXABLE_VALUE) {
+            negative.add(index(-value), weight);
+        } else {
+            zeroCount += weight;
+        }
+        count += weight;
+    }
+
+    /**
+     * 合并另一个草图，两者必须使用相同的相对误差
+     */
+    public void merge(QuantileSketch other) {
+        if (other.relativeAccuracy != relativeAccuracy) {
+            throw new IllegalArgumentException("相对误差不同的草图不能合并");
+        }
+        positive.merge(other.positive);
+        negative.merge(other.negative);
+        zeroCount += other.zeroCount;
+        count += other.count;
+    }
+
+    /**
+     * 查询分位数
+     * @param quantile 分位点，取值[0, 1]
+     * @return 分位数估计值，草图为空时返回NaN
+     */
+    public double quantile(double quantile) {
+        if (quantile < 0 || quantile > 1) {
+            throw new IllegalArgumentException("分位点必须在[0, 1]之间: " + quantile);
+        }
+        if (count == 0) {
+            return Double.NaN;
+        }
+
+        long rank = (long) (quantile * (count - 1));
+        long seen = 0;
+
+        // 负数：绝对值从大到小
+        for (int i = negative.maxIndex(); i >= negative.minIndex(); i--) {
+            seen += negative.get(i);
+            if (seen > rank) {
+                return -value(i);
+            }
+        }
+
+        seen += zeroCount;
+        if (seen > rank) {
+            return 0.0;
+        }
+
+        // 正数：从小到大
+        for (int i = positive.minIndex(); i <= positive.maxIndex(); i++) {
+            seen += positive.get(i);
+            if (seen > rank) {
+                return value(i);
+            }
+        }
+
+        return value(positive.maxIndex());
+    }
+
+    public long getCount() {
+        return count;
+    }
+
+    public double getRelativeAccuracy() {
+        return relativeAccuracy;
+    }
+
+    private int index(double value) {
+        return (int) Math.ceil(Math.log(value) / logGamma);
+    }
+
+    private double value(int index) {
+        return 2 * Math.pow(gamma, index) / (gamma + 1);
+    }
+
+    /**
+     * 连续桶计数存储，按需向两端扩容
+     */
+    private static final class BinStore {
+        private long[] counts = new long[0];
+        private int offset;
+        private int minIndex = Integer.MAX_VALUE;
+        private int maxIndex = Integer.MIN_VALUE;
+
+        void add(int index, long weight) {
+            ensureCapacity(index);
+            counts[index - offset] += weight;
+            minIndex = Math.min(minIndex, index);
+            maxIndex = Math.max(maxIndex, index);
+        }
+
+        long get(int index) {
+            if (counts.length == 0 || index < offset || index >= offset + counts.length) {
+                return 0;
+            }
+            return counts[index - offset];
+        }
+
+        void merge(BinStore other) {
+            for (int i = other.minIndex; i <= other.maxIndex; i++) {
+                long c = other.get(i);
+                if (c > 0) {
+                    add(i, c);
+                }
+            }
+        }
+
+        int minIndex() {
+            return minIndex;
+        }
+
+        int maxIndex() {
+            return maxIndex;
+        }
+
+        private void ensureCapacity(int index) {
+            if (counts.length == 0) {
+                counts = new long[64];
+                offset = index - 32;
+                return;
+            }
+            if (index >= offset && index < offset + counts.length) {
+                return;
+            }
+            int newMin = Math.min(offset, index);
+            int newMax = Math.max(offset + counts.length - 1, index);
+            int newLength = Math.max(counts.length * 2, newMax - newMin + 1);
+            long[] newCounts = new long[newLength];
+            int newOffset = index < offset ? newMax - newLength + 1 : newMin;
+            System.arraycopy(counts, 0, newCounts, offset - newOffset, counts.length);
+            counts = newCounts;
+            offset = newOffset;
+        }
+    }
+}
@@ -0,0 +1,148 @@
+package com.gridinsight.service.timeseries;
+
+/**
+ * 汇总桶
+ * 保存一个时间桶内数据点的可合并聚合值，可与其他桶或原始数据点合并
+ */
+public final class RollupBucket {
+
+    private static final int ENCODED_LENGTH = 9;
+
+    private final long bucketStart;
+    private long count;
+    private double sum;
+    private double sumOfSquares;
+    private double min = Double.POSITIVE_INFINITY;
+    private double max = Double.NEGATIVE_INFINITY;
+    private long firstTimestamp = Long.MAX_VALUE;
+    private double first = Double.NaN;
+    private long lastTimestamp = Long.MIN_VALUE;
+    private double last = Double.NaN;
+
+    public RollupBucket(long bucketStart) {
+        this.bucketStart = bucketStart;
+    }
+
+    /**
+     * 添加一个原始数据点
+     */
+    public void add(long timestampMillis, double value) {
+        count++;
+        sum += value;
+        sumOfSquares += value * value;
+        min = Math.min(min, value);
+        max = Math.max(max, value);
+        if (timestampMillis < firstTimestamp) {
+            firstTimestamp = timestampMillis;
+            first = value;
+        }
+        if (timestampMillis >= lastTimestamp) {
+            lastTimestamp = timestampMillis;
+            last = value;
+        }
+    }
+
+    /**
+     * 合并另一个桶的聚合值（桶开始时间保持不变）
+     */
+    public void merge(RollupBucket other) {
+        if (other.count == 0) {
+            return;
+        }
+        count += other.count;
+        sum += other.sum;
+        sumOfSquares += other.sumOfSquares;
+        min = Math.min(min, other.min);
+        max = Math.max(max, other.max);
+        if (other.firstTimestamp < firstTimestamp) {
+            firstTimestamp = other.firstTimestamp;
+            first = other.first;
+        }
+        if (other.lastTimestamp >= lastTimestamp) {
+            lastTimestamp = other.lastTimestamp;
+            last = other.last;
+        }
+    }
+
+    /**
+     * 将聚合值并入流式统计
+     */
+    public void addTo(StreamingStatistics statistics) {
+        statistics.addAggregate(count, sum, sumOfSquares, min, max, firstTimestamp, first, lastTimestamp, last);
+    }
+
+    public RollupBucket copy() {
+        RollupBucket copy = new RollupBucket(bucketStart);
+        copy.merge(this);
+        return copy;
+    }
+
+    /**
+     * 编码为定长数组用于持久化
+     */
+    public double[] encode() {
+        return new double[] {
+            count, sum, sumOfSquares, min, max, firstTimestamp, first, lastTimestamp, last
+        };
+    }
+
+    /**
+     * 从持久化数组解码
+     */
+    public static RollupBucket decode(long bucketStart, double[] encoded) {
+        if (encoded == null || encoded.length < ENCODED_LENGTH) {
+            throw new IllegalArgumentException("汇总桶数据格式错误");
+        }
+        RollupBucket bucket = new RollupBucket(bucketStart);
+        bucket.count = (long) encoded[0];
+        bucket.sum = encoded[1];
+        bucket.sumOfSquares = encoded[2];
+        bucket.min = encoded[3];
+        bucket.max = encoded[4];
+        bucket.firstTimestamp = (long) encoded[5];
+        bucket.first = encoded[6];
+        bucket.lastTimestamp = (long) encoded[7];
+        bucket.last = encoded[8];
+        return bucket;
+    }
+
+    public long getBucketStart() {
+        return bucketStart;
+    }
+
+    public long getCount() {
+        return count;
+    }
+
+    public double getSum() {
+        return sum;
+    }
+
+    public double getMin() {
+        return min;
+    }
+
+    public double getMax() {
+        return max;
+    }
+
+    public double getAverage() {
+        return count > 0 ? sum / count : Double.NaN;
+    }
+
+    public long getFirstTimestamp() {
+        return firstTimestamp;
+    }
+
+    public double getFirst() {
+        return first;
+    }
+
+    public long getLastTimestamp() {
+        return lastTimestamp;
+    }
+
+    public double getLast() {
+        return last;
+    }
+}
@@ -0,0 +1,161 @@
+package com.gridinsight.service.timeseries;
+
+import com.gridinsight.service.MetricPointVisitor;
+import com.gridinsight.service.TimeSeriesDataService;
+
+import java.util.function.Consumer;
+
+/**
+ * 基于汇总层级的查询
+ * 将查询区间拆分为 原始数据头部 + 完整汇总桶 + 原始数据尾部，
+ * 汇总只用于完全落在区间内、且在指标开始记录汇总之后的桶，结果与直接扫描原始数据一致；
+ * 汇总桶不保留数值分布，使用汇总的统计结果不含分位数
+ */
+public final class RollupQueries {
+
+    /**
+     * 统计查询中每个区间至少包含的汇总桶数量，用于选择层级
+     */
+    private static final int STATISTICS_MIN_BUCKETS = 24;
+
+    private RollupQueries() {
+    }
+
+    /**
+     * 计算区间统计信息，长区间优先使用汇总数据（此时不计算分位数）
+     * @return 使用的分辨率（raw或层级名称）
+     */
+    public static String collectStatistics(TimeSeriesDataService rawData, MetricRollupStore rollups,
+                                           String metricIdentifier, long startMillis, long endMillis,
+                                           StreamingStatistics statistics) {
+        RollupTier tier = RollupTier.coarsestFor((endMillis - startMillis) / STATISTICS_MIN_BUCKETS);
+        return scanSegments(rawData, rollups, metricIdentifier, startMillis, endMillis, tier,
+                statistics, bucket -> bucket.addTo(statistics));
+    }
+
+    /**
+     * 降采样查询历史数据
+     * AVG：选择桶宽不超过步长的最粗汇总层级，步长向上取整为该层级桶宽的整数倍，返回每个时间桶的平均值；
+     * 步长小于最细层级时直接聚合原始数据。
+     * LTTB/M4：单次遍历原始数据，结果不超过maxPoints个点
+     * @param stepMillis 步长（毫秒），小于等于0时仅由maxPoints决定（仅AVG使用）
+     * @param maxPoints 最大返回点数，小于等于0时不限制
+     * @param method 降采样方法
+     * @return 降采样结果；未指定步长和最大点数时返回原始数据
+     */
+    public static SeriesBuffer downsample(TimeSeriesDataService rawData, MetricRollupStore rollups,
+                                          String metricIdentifier, long startMillis, long endMillis,
+                                          long stepMillis, int maxPoints, DownsampleMethod method) {
+        if (method != DownsampleMethod.AVG && maxPoints > 0) {
+            StreamingDownsampler downsampler = StreamingDownsampler.create(method, startMillis, endMillis, maxPoints);
+            rawData.scanMetricHistory(metricIdentifier, startMillis, endMillis, downsampler);
+            return downsampler.finish();
+        }
+
+        long effectiveStep = effectiveStep(startMillis, endMillis, stepMillis, maxPoints);
+        if (effectiveStep <= 0) {
+            SeriesBuffer raw = new SeriesBuffer();
+            rawData.scanMetricHistory(metricIdentifier, startMillis, endMillis, (timestampMillis, value) -> {
+                raw.add(timestampMillis, value);
+                return true;
+            });
+            return raw;
+        }
+
+        RollupTier tier = RollupTier.coarsestFor(effectiveStep);
+        StepAggregator aggregator = new StepAggregator(effectiveStep);
+        scanSegments(rawData, rollups, metricIdentifier, startMillis, endMillis, tier,
+                aggregator::addPoint, aggregator::addBucket);
+        return aggregator.finish();
+    }
+
+    /**
+     * 计算实际步长：取显式步长与 区间/最大点数 中的较大者，
+     * 存在可用汇总层级时向上取整为该层级桶宽的整数倍
+     * @return 实际步长（毫秒），步长和最大点数都未指定时返回0
+     */
+    public static long effectiveStep(long startMillis, long endMillis, long stepMillis, int maxPoints) {
+        long step = Math.max(0L, stepMillis);
+        if (maxPoints > 0) {
+            long span = endMillis - startMillis + 1;
+            step = Math.max(step, (span + maxPoints - 1) / maxPoints);
+        }
+        RollupTier tier = RollupTier.coarsestFor(step);
+        if (tier != null) {
+            long bucketMillis = tier.getBucketMillis();
+            step = (step + bucketMillis - 1) / bucketMillis * bucketMillis;
+        }
+        return step;
+    }
+
+    private static String scanSegments(TimeSeriesDataService rawData, MetricRollupStore rollups,
+                                       String metricIdentifier, long startMillis, long endMillis,
+                                       RollupTier tier, MetricPointVisitor pointVisitor,
+                                       Consumer<RollupBucket> bucketConsumer) {
+        Long coverageStart = rollups != null ? rollups.getCoverageStart(metricIdentifier) : null;
+        if (tier == null || coverageStart == null) {
+            rawData.scanMetricHistory(metricIdentifier, startMillis, endMillis, pointVisitor);
+            return "raw";
+        }
+
+        // 完整汇总桶区间 [rollupFrom, rollupTo)
+        long rollupFrom = Math.max(tier.nextBucketStart(startMillis), tier.nextBucketStart(coverageStart));
+        long rollupTo = tier.bucketStart(endMillis + 1);
+        if (rollupFrom >= rollupTo) {
+            rawData.scanMetricHistory(metricIdentifier, startMillis, endMillis, pointVisitor);
+            return "raw";
+        }
+
+        if (startMillis < rollupFrom) {
+            rawData.scanMetricHistory(metricIdentifier, startMillis, rollupFrom - 1, pointVisitor);
+        }
+        rollups.scan(metricIdentifier, tier, rollupFrom, rollupTo - tier.getBucketMillis(), bucketConsumer);
+        if (rollupTo <= endMillis) {
+            rawData.scanMetricHistory(metricIdentifier, rollupTo, endMillis, pointVisitor);
+        }
+        return tier.getName();
+    }
+
+    /**
+     * 按步长对齐的桶聚合器（数据按时间顺序到达）
+     */
+    private static final class StepAggregator {
+        private final long stepMillis;
+        private final SeriesBuffer result = new SeriesBuffer();
+        private RollupBucket current;
+
+        StepAggregator(long stepMillis) {
+            this.stepMillis = stepMillis;
+        }
+
+        boolean addPoint(long timestampMillis, double value) {
+            bucketFor(timestampMillis).add(timestampMillis, value);
+            return true;
+        }
+
+        void addBucket(RollupBucket bucket) {
+            bucketFor(bucket.getBucketStart()).merge(bucket);
+        }
+
+        private RollupBucket bucketFor(long timestampMillis) {
+            long bucketStart = Math.floorDiv(timestampMillis, stepMillis) * stepMillis;
+            if (current == null || current.getBucketStart() != bucketStart) {
+                emit();
+                current = new RollupBucket(bucketStart);
+            }
+            return current;
+        }
+
+        private void emit() {
+            if (current != null && current.getCount() > 0) {
+                result.add(current.getBucketStart(), current.getAverage());
+            }
+        }
+
+        SeriesBuffer finish() {
+            emit();
+            current = null;
+            return result;
+        }
+    }
+}
@@ -0,0 +1,58 @@
+package com.gridinsight.service.timeseries;
+
+/**
+ * 汇总层级
+ * 每个层级按固定时间桶（UTC对齐）保存数据点数、和、平方和、极值和首末值
+ */
+public enum RollupTier {
+
+    ONE_MINUTE("1m", TimeRanges.MINUTE_MILLIS),
+    FIFTEEN_MINUTES("15m", 15 * TimeRanges.MINUTE_MILLIS),
+    ONE_HOUR("1h", TimeRanges.HOUR_MILLIS);
+
+    private final String name;
+    private final long bucketMillis;
+
+    RollupTier(String name, long bucketMillis) {
+        this.name = name;
+        this.bucketMillis = bucketMillis;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public long getBucketMillis() {
+        return bucketMillis;
+    }
+
+    /**
+     * 时间戳所在桶的开始时间
+     */
+    public long bucketStart(long timestampMillis) {
+        return Math.floorDiv(timestampMillis, bucketMillis) * bucketMillis;
+    }
+
+    /**
+     * 不早于时间戳的第一个桶开始时间
+     */
+    public long nextBucketStart(long timestampMillis) {
+        long start = bucketStart(timestampMillis);
+        return start == timestampMillis ? start : start + bucketMillis;
+    }
+
+    /**
+     * 选择桶宽不超过给定步长的最粗层级
+     * @param stepMillis 步长（毫秒）
+     * @return 满足条件的层级，步长小于最细层级时返回null（应使用原始数据）
+     */
+    public static RollupTier coarsestFor(long stepMillis) {
+        RollupTier selected = null;
+        for (RollupTier tier : values()) {
+            if (tier.bucketMillis <= stepMillis) {
+                selected = tier;
+            }
+        }
+        return selected;
+    }
+}
@@ -0,0 +1,85 @@
+package com.gridinsight.service.timeseries;
+
+import com.gridinsight.domain.model.MetricValue;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * 基于原始数组的时序数据缓冲区
+ * 以long[]/double[]按列保存时间戳和数值，按需扩容，避免为每个数据点创建对象
+ */
+public final class SeriesBuffer {
+
+    private long[] timestamps;
+    private double[] values;
+    private int size;
+
+    public SeriesBuffer() {
+        this(16);
+    }
+
+    public SeriesBuffer(int initialCapacity) {
+        int capacity = Math.max(1, initialCapacity);
+        this.timestamps = new long[capacity];
+        this.values = new double[capacity];
+    }
+
+    public void add(long timestampMillis, double value) {
+        if (size == timestamps.length) {
+            int capacity = size * 2;
+            timestamps = Arrays.copyOf(timestamps, capacity);
+            values = Arrays.copyOf(values, capacity);
+        }
+        timestamps[size] = timestampMillis;
+        values[size] = value;
+        size++;
+    }
+
+    public void clear() {
+        size = 0;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    public long getTimestamp(int index) {
+        return timestamps[index];
+    }
+
+    public double getValue(int index) {
+        return values[index];
+    }
+
+    /**
+     * 复制时间戳列
+     */
+    public long[] timestampArray() {
+        return Arrays.copyOf(timestamps, size);
+    }
+
+    /**
+     * 复制数值列
+     */
+    public double[] valueArray() {
+        return Arrays.copyOf(values, size);
+    }
+
+    /**
+     * 转换为MetricValue列表（用于兼容现有接口）
+     */
+    public List<MetricValue> toMetricValues(String metricIdentifier, String unit) {
+        List<MetricValue> result = new ArrayList<>(size);
+        for (int i = 0; i < size; i++) {
+            result.add(new MetricValue(metricIdentifier, values[i], unit,
+                    TimeRanges.toLocalDateTime(timestamps[i]), MetricValue.DataQuality.GOOD));
+        }
+        return result;
+    }
+}
@@ -0,0 +1,103 @@
+package com.gridinsight.service.timeseries;
+
+import com.gridinsight.service.MetricPointVisitor;
+
+/**
+ * 流式降采样基类
+ * 数据点按时间顺序到达；点数不超过maxPoints时原样返回，
+ * 超过后将已缓冲的点回放给子类并切换到降采样模式，内存占用与查询区间宽度无关
+ */
+public abstract class StreamingDownsampler implements MetricPointVisitor {
+
+    protected final long startMillis;
+    protected final long endMillis;
+    protected final int maxPoints;
+    protected final SeriesBuffer output;
+
+    private SeriesBuffer pending;
+
+    protected StreamingDownsampler(long startMillis, long endMillis, int maxPoints) {
+        if (maxPoints <= 0) {
+            throw new IllegalArgumentException("maxPoints必须大于0: " + maxPoints);
+        }
+        this.startMillis = startMillis;
+        this.endMillis = Math.max(startMillis, endMillis);
+        this.maxPoints = maxPoints;
+        this.output = new SeriesBuffer(Math.min(maxPoints, 1024));
+        this.pending = new SeriesBuffer(Math.min(maxPoints, 1024));
+    }
+
+    /**
+     * 根据降采样方法创建降采样器
+     * maxPoints小于方法所需的最少点数（M4为4，LTTB为3）时退回LTTB或首末点，结果仍不超过maxPoints个点
+     * @return 降采样器，AVG方法不在此处理，返回null
+     */
+    public static StreamingDownsampler create(DownsampleMethod method, long startMillis, long endMillis, int maxPoints) {
+        switch (method) {
+            case LTTB:
+                return maxPoints >= LttbDownsampler.MIN_POINTS
+                    ? new LttbDownsampler(startMillis, endMillis, maxPoints)
+                    : new EndpointDownsampler(startMillis, endMillis, maxPoints);
+            case M4:
+                if (maxPoints >= M4Downsampler.MIN_POINTS) {
+                    return new M4Downsampler(startMillis, endMillis, maxPoints);
+                }
+                return create(DownsampleMethod.LTTB, startMillis, endMillis, maxPoints);
+            default:
+                return null;
+        }
+    }
+
+    @Override
+    public final boolean visit(long timestampMillis, double value) {
+        if (Double.isNaN(value)) {
+            return true;
+        }
+        if (pending != null) {
+            pending.add(timestampMillis, value);
+            if (pending.size() <= maxPoints) {
+                return true;
+            }
+            // 超出点数上限：回放缓冲的数据点
+            SeriesBuffer buffered = pending;
+            pending = null;
+            for (int i = 0; i < buffered.size(); i++) {
+                accept(buffered.getTimestamp(i), buffered.getValue(i));
+            }
+            return true;
+        }
+        accept(timestampMillis, value);
+        return true;
+    }
+
+    /**
+     * 结束遍历并返回降采样结果
+     */
+    public final SeriesBuffer finish() {
+        if (pending != null) {
+            SeriesBuffer result = pending;
+            pending = null;
+            return result;
+        }
+        complete();
+        return output;
+    }
+
+    /**
+     * 时间戳所在的时间桶序号
+     */
+    protected int bucketIndex(long timestampMillis, int bucketCount) {
+        long offset = Math.min(Math.max(0L, timestampMillis - startMillis), endMillis - startMillis);
+        return (int) ((double) offset * bucketCount / (endMillis - startMillis + 1));
+    }
+
+    /**
+     * 处理一个数据点（降采样模式）
+     */
+    protected abstract void accept(long timestampMillis, double value);
+
+    /**
+     * 输出剩余的数据点
+     */
+    protected abstract void complete();
+}
@@ -0,0 +1,207 @@
+package com.gridinsight.service.timeseries;
+
+import com.gridinsight.service.MetricPointVisitor;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * 流式统计累加器
+ * 单次遍历原始数值完成计数、求和、均值、极值、标准差（Welford算法）、首末值和分位数（可合并草图），
+ * 不保留数据点；也可以直接合并预先计算好的汇总（如汇总层级的分桶）。
+ * 汇总分桶不保留数值分布，合并过汇总后不再给出分位数
+ */
+public class StreamingStatistics implements MetricPointVisitor {
+
+    private static final double[] REPORTED_QUANTILES = {0.5, 0.9, 0.95, 0.99};
+
+    private final QuantileSketch sketch = new QuantileSketch();
+
+    private long count;
+    private double sum;
+    private double mean;
+    private double m2;
+    private double min = Double.POSITIVE_INFINITY;
+    private double max = Double.NEGATIVE_INFINITY;
+    private long firstTimestamp = Long.MAX_VALUE;
+    private double first = Double.NaN;
+    private long lastTimestamp = Long.MIN_VALUE;
+    private double last = Double.NaN;
+    // 是否合并过汇总分桶（分位数草图不完整）
+    private boolean aggregated;
+
+    @Override
+    public boolean visit(long timestampMillis, double value) {
+        add(timestampMillis, value);
+        return true;
+    }
+
+    /**
+     * 添加一个数据点
+     */
+    public void add(long timestampMillis, double value) {
+        if (Double.isNaN(value)) {
+            return;
+        }
+        count++;
+        sum += value;
+        double delta = value - mean;
+        mean += delta / count;
+        m2 += delta * (value - mean);
+        min = Math.min(min, value);
+        max = Math.max(max, value);
+        updateFirstLast(timestampMillis, value, timestampMillis, value);
+        sketch.add(value);
+    }
+
+    /**
+     * 合并一个预先计算好的汇总分桶
+     * 分桶只有矩和极值，无法得到分位数，合并后分位数不可用
+     * @param aggregateCount 数据点数
+     * @param aggregateSum 数值和
+     * @param aggregateSumOfSquares 数值平方和
+     * @param aggregateMin 最小值
+     * @param aggregateMax 最大值
+     * @param firstTimestampMillis 首个数据点时间戳
+     * @param firstValue 首个数据点数值
+     * @param lastTimestampMillis 最后数据点时间戳
+     * @param lastValue 最后数据点数值
+     */
+    public void addAggregate(long aggregateCount, double aggregateSum, double aggregateSumOfSquares,
+                             double aggregateMin, double aggregateMax,
+                             long firstTimestampMillis, double firstValue,
+                             long lastTimestampMillis, double lastValue) {
+        if (aggregateCount <= 0) {
+            return;
+        }
+        double aggregateMean = aggregateSum / aggregateCount;
+        double aggregateM2 = Math.max(0.0, aggregateSumOfSquares - aggregateSum * aggregateMean);
+        mergeMoments(aggregateCount, aggregateSum, aggregateMean, aggregateM2);
+        min = Math.min(min, aggregateMin);
+        max = Math.max(max, aggregateMax);
+        updateFirstLast(firstTimestampMillis, firstValue, lastTimestampMillis, lastValue);
+        aggregated = true;
+    }
+
+    /**
+     * 合并另一个累加器
+     */
+    public void merge(StreamingStatistics other) {
+        if (other.count == 0) {
+            return;
+        }
+        mergeMoments(other.count, other.sum, other.mean, other.m2);
+        min = Math.min(min, other.min);
+        max = Math.max(max, other.max);
+        updateFirstLast(other.firstTimestamp, other.first, other.lastTimestamp, other.last);
+        sketch.merge(other.sketch);
+        aggregated |= other.aggregated;
+    }
+
+    /**
+     * 按Chan等人的并行算法合并均值和二阶中心矩
+     */
+    private void mergeMoments(long otherCount, double otherSum, double otherMean, double otherM2) {
+        long total = count + otherCount;
+        double delta = otherMean - mean;
+        m2 = m2 + otherM2 + delta * delta * ((double) count * otherCount / total);
+        mean = mean + delta * otherCount / total;
+        sum += otherSum;
+        count = total;
+    }
+
+    private void updateFirstLast(long firstTs, double firstValue, long lastTs, double lastValue) {
+        if (firstTs < firstTimestamp) {
+            firstTimestamp = firstTs;
+            first = firstValue;
+        }
+        if (lastTs >= lastTimestamp) {
+            lastTimestamp = lastTs;
+            last = lastValue;
+        }
+    }
+
+    public long getCount() {
+        return count;
+    }
+
+    public double getSum() {
+        return sum;
+    }
+
+    public double getMean() {
+        return count > 0 ? mean : 0.0;
+    }
+
+    public double getMin() {
+        return count > 0 ? min : 0.0;
+    }
+
+    public double getMax() {
+        return count > 0 ? max : 0.0;
+    }
+
+    /**
+     * 总体标准差
+     */
+    public double getStddev() {
+        return count > 0 ? Math.sqrt(m2 / count) : 0.0;
+    }
+
+    public double getFirst() {
+        return first;
+    }
+
+    public double getLast() {
+        return last;
+    }
+
+    /**
+     * 分位数是否可用（只由原始数据点计算）
+     */
+    public boolean hasQuantiles() {
+        return !aggregated;
+    }
+
+    /**
+     * 分位数估计值，结果限定在[min, max]内
+     * @return 估计值；合并过汇总分桶时返回NaN
+     */
+    public double getQuantile(double quantile) {
+        if (count == 0) {
+            return 0.0;
+        }
+        if (aggregated) {
+            return Double.NaN;
+        }
+        double estimate = sketch.quantile(quantile);
+        return Math.max(min, Math.min(max, estimate));
+    }
+
+    /**
+     * 转换为统计结果映射
+     * 保留count/average/max/min字段以兼容已有接口；使用汇总数据时不输出分位数，percentilesAvailable为false
+     */
+    public Map<String, Object> toMap() {
+        Map<String, Object> stats = new HashMap<>();
+        stats.put("count", (int) count);
+        stats.put("sum", sum);
+        stats.put("average", getMean());
+        stats.put("max", getMax());
+        stats.put("min", getMin());
+        stats.put("stddev", getStddev());
+        if (count > 0) {
+            stats.put("first", first);
+            stats.put("firstTime", TimeRanges.toLocalDateTime(firstTimestamp));
+            stats.put("last", last);
+            stats.put("lastTime", TimeRanges.toLocalDateTime(lastTimestamp));
+            stats.put("percentilesAvailable", !aggregated);
+            if (!aggregated) {
+                for (double quantile : REPORTED_QUANTILES) {
+                    stats.put("p" + Math.round(quantile * 100), getQuantile(quantile));
+                }
+            }
+        }
+        return stats;
+    }
+}
@@ -0,0 +1,74 @@
+package com.gridinsight.service.timeseries;
+
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.util.TimeZone;
+
+/**
+ * 时间范围与时间戳转换工具
+ * 时序存储统一将LocalDateTime按UTC解释为毫秒时间戳
+ */
+public final class TimeRanges {
+
+    public static final long MINUTE_MILLIS = 60_000L;
+    public static final long HOUR_MILLIS = 60 * MINUTE_MILLIS;
+    public static final long DAY_MILLIS = 24 * HOUR_MILLIS;
+
+    // 启动时的本地时区，与LocalDateTime.now()使用的时区一致
+    private static final TimeZone LOCAL_ZONE = TimeZone.getDefault();
+
+    private TimeRanges() {
+    }
+
+    /**
+     * 当前时间的毫秒时间戳，与toEpochMillis(LocalDateTime.now())相同，但不创建任何对象
+     */
+    public static long nowEpochMillis() {
+        long now = System.currentTimeMillis();
+        return now + LOCAL_ZONE.getOffset(now);
+    }
+
+    /**
+     * LocalDateTime转换为UTC毫秒时间戳（不创建Instant对象）
+     */
+    public static long toEpochMillis(LocalDateTime timestamp) {
+        return timestamp.toEpochSecond(ZoneOffset.UTC) * 1000L + timestamp.getNano() / 1_000_000;
+    }
+
+    /**
+     * UTC毫秒时间戳转换为LocalDateTime
+     */
+    public static LocalDateTime toLocalDateTime(long epochMillis) {
+        return LocalDateTime.ofInstant(Instant.ofEpochMilli(epochMillis), ZoneOffset.UTC);
+    }
+
+    /**
+     * 解析时间范围字符串，如 30m、1h、7d；纯数字按分钟处理
+     * @param timeRange 时间范围字符串
+     * @param defaultMillis 为空或格式错误时的默认值
+     * @return 时间范围（毫秒）
+     */
+    public static long parseDurationMillis(String timeRange, long defaultMillis) {
+        if (timeRange == null || timeRange.isEmpty()) {
+            return defaultMillis;
+        }
+
+        try {
+            String amount = timeRange.substring(0, timeRange.length() - 1);
+            if (timeRange.endsWith("s")) {
+                return Long.parseLong(amount) * 1000L;
+            } else if (timeRange.endsWith("m")) {
+                return Long.parseLong(amount) * MINUTE_MILLIS;
+            } else if (timeRange.endsWith("h")) {
+                return Long.parseLong(amount) * HOUR_MILLIS;
+            } else if (timeRange.endsWith("d")) {
+                return Long.parseLong(amount) * DAY_MILLIS;
+            } else {
+                return Long.parseLong(timeRange) * MINUTE_MILLIS;
+            }
+        } catch (NumberFormatException e) {
+            return defaultMillis;
+        }
+    }
+}
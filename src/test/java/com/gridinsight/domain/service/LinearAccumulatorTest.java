@@ -0,0 +1,98 @@
+package com.gridinsight.domain.service;
+
+import com.gridinsight.service.MetricSymbolTable;
+import org.junit.jupiter.api.Test;
+import static org.assertj.core.api.Assertions.*;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * LinearAccumulator测试
+ */
+public class LinearAccumulatorTest {
+
+    private final MetricSymbolTable symbols = new MetricSymbolTable();
+
+    private LinearForm weightedSum(int inputs) {
+        StringBuilder formula = new StringBuilder("1");
+        for (int i = 0; i < inputs; i++) {
+            formula.append(" + 0.5 * 测试.馈线.F").append(i);
+        }
+        Map<String, String> formulas = new LinkedHashMap<>();
+        formulas.put("测试.汇总.总负荷", formula.toString());
+        return SharedFormulaGraph.build(formulas, symbols::intern).linearFormOf(symbols.idOf("测试.汇总.总负荷"));
+    }
+
+    private int feeder(String name) {
+        return symbols.intern("测试.馈线." + name);
+    }
+
+    @Test
+    void testDeltaUpdateMatchesFullRecompute() {
+        Map<String, Double> values = new HashMap<>();
+        for (int i = 0; i < 200; i++) {
+            values.put("测试.馈线.F" + i, (double) i);
+        }
+        AtomicInteger reads = new AtomicInteger();
+        LinearAccumulator accumulator = new LinearAccumulator(weightedSum(200));
+        assertThat(accumulator.needsFullRecompute(0L, 1000, 60_000L)).isTrue();
+
+        // 1 + 0.5 * (0 + 1 + ... + 199)
+        double full = accumulator.recompute(id -> {
+            reads.incrementAndGet();
+            return values.get(symbols.nameOf(id));
+        }, 0L);
+        assertThat(full).isCloseTo(9951.0, within(1e-9));
+        assertThat(reads.get()).isEqualTo(200);
+
+        // 单个输入变化只修正对应的一项
+        values.put("测试.馈线.F7", 107.0);
+        assertThat(accumulator.needsFullRecompute(1L, 1000, 60_000L)).isFalse();
+        assertThat(accumulator.applyDelta(feeder("F7"), 107.0, 1L)).isCloseTo(10001.0, within(1e-9));
+        assertThat(accumulator.applyDelta(feeder("F7"), 107.0, 2L)).isCloseTo(10001.0, within(1e-9));
+        assertThat(reads.get()).isEqualTo(200);
+        assertThat(accumulator.recompute(id -> values.get(symbols.nameOf(id)), 3L)).isCloseTo(10001.0, within(1e-9));
+    }
+
+    @Test
+    void testOutOfOrderSamplesIgnored() {
+        LinearAccumulator accumulator = new LinearAccumulator(weightedSum(4));
+        accumulator.recompute(id -> 2.0, 1_000L);
+
+        // 较新的样本先到达，较旧的样本随后到达时不再修正结果
+        assertThat(accumulator.applyDelta(feeder("F0"), 10.0, 1_200L)).isCloseTo(9.0, within(1e-9));
+        assertThat(accumulator.isStale(feeder("F0"), 1_100L)).isTrue();
+        assertThat(accumulator.isStale(feeder("F1"), 1_100L)).isFalse();
+
+        // 早于全量计算读取时间的样本已包含在全量计算结果中
+        assertThat(accumulator.isStale(feeder("F1"), 999L)).isTrue();
+
+        // 样本时间相同无法判断先后，由调用方全量计算
+        assertThat(accumulator.applyDelta(feeder("F0"), 4.0, 1_200L)).isNaN();
+        assertThat(accumulator.getResult()).isCloseTo(9.0, within(1e-9));
+    }
+
+    @Test
+    void testFullRecomputeTriggers() {
+        LinearAccumulator accumulator = new LinearAccumulator(weightedSum(4));
+        accumulator.recompute(id -> 1.0, 1_000L);
+
+        assertThat(accumulator.applyDelta(feeder("F0"), 3.0, 1_001L)).isCloseTo(4.0, within(1e-9));
+        assertThat(accumulator.applyDelta(feeder("F1"), 3.0, 1_001L)).isCloseTo(5.0, within(1e-9));
+        // 增量修正次数、距上次全量计算的时间达到阈值
+        assertThat(accumulator.needsFullRecompute(1_000L, 2, 60_000L)).isTrue();
+        assertThat(accumulator.needsFullRecompute(1_000L, 3, 60_000L)).isFalse();
+        assertThat(accumulator.needsFullRecompute(61_000L, 3, 60_000L)).isTrue();
+
+        // 不在公式中的输入、无效值无法增量修正
+        assertThat(accumulator.applyDelta(feeder("X"), 3.0, 1_002L)).isNaN();
+        assertThat(accumulator.applyDelta(feeder("F2"), Double.NaN, 1_002L)).isNaN();
+        assertThat(accumulator.getResult()).isCloseTo(5.0, within(1e-9));
+
+        // 输入缺失时全量计算结果无效，下次仍全量计算
+        assertThat(accumulator.recompute(id -> Double.NaN, 2_000L)).isNaN();
+        assertThat(accumulator.needsFullRecompute(2_000L, 3, 60_000L)).isTrue();
+    }
+}
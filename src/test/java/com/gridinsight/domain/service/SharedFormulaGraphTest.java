@@ -0,0 +1,133 @@
+package com.gridinsight.domain.service;
+
+import com.gridinsight.service.MetricSymbolTable;
+import org.junit.jupiter.api.Test;
+import static org.assertj.core.api.Assertions.*;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * SharedFormulaGraph / FormulaWave测试
+ */
+public class SharedFormulaGraphTest {
+
+    private final MetricSymbolTable symbols = new MetricSymbolTable();
+
+    private SharedFormulaGraph buildGraph() {
+        Map<String, String> formulas = new LinkedHashMap<>();
+        formulas.put("测试.派生.X", "(测试.基础.A + 测试.基础.B) / 测试.基础.C * 100");
+        formulas.put("测试.派生.Y", "(测试.基础.B + 测试.基础.A) / 测试.基础.C * 50");
+        formulas.put("测试.派生.Z", "sqrt(测试.基础.A)");
+        formulas.put("测试.派生.W", "测试.基础.A % 2");
+        return SharedFormulaGraph.build(formulas, symbols::intern);
+    }
+
+    private int id(String identifier) {
+        return symbols.idOf(identifier);
+    }
+
+    @Test
+    void testCommonSubexpressionsMerged() {
+        SharedFormulaGraph graph = buildGraph();
+
+        // A + B 与 B + A 合并，(A + B) / C 被两个公式共享
+        assertThat(graph.getCompiledCount()).isEqualTo(3);
+        assertThat(graph.getUncompiled()).containsExactly("测试.派生.W");
+        assertThat(graph.getTreeNodeCount()).isEqualTo(16);
+        assertThat(graph.getNodeCount()).isEqualTo(10);
+        assertThat(graph.getSharedNodeCount()).isEqualTo(1);
+        assertThat(graph.rootOf("测试.派生.W")).isEqualTo(-1);
+
+        // 根节点、叶子节点按符号表ID索引
+        assertThat(graph.metricIdOf("测试.派生.X")).isEqualTo(id("测试.派生.X"));
+        assertThat(graph.rootOf(id("测试.派生.X"))).isEqualTo(graph.rootOf("测试.派生.X"));
+        assertThat(graph.rootOf(id("测试.派生.W"))).isEqualTo(-1);
+        assertThat(graph.leafOf(id("测试.基础.A")) >= 0).isTrue();
+        assertThat(graph.leafOf(id("测试.派生.X"))).isEqualTo(-1);
+    }
+
+    @Test
+    void testWaveEvaluatesSharedNodesOnce() {
+        Map<String, Double> values = new HashMap<>();
+        values.put("测试.基础.A", 4.0);
+        values.put("测试.基础.B", 6.0);
+        values.put("测试.基础.C", 2.0);
+        AtomicInteger reads = new AtomicInteger();
+        FormulaWave wave = new FormulaWave(buildGraph(), metricId -> {
+            reads.incrementAndGet();
+            return values.getOrDefault(symbols.nameOf(metricId), Double.NaN);
+        });
+
+        assertThat(wave.evaluate(id("测试.派生.X"))).isCloseTo(500.0, within(0.001));
+        assertThat(wave.evaluate(id("测试.派生.Y"))).isCloseTo(250.0, within(0.001));
+        assertThat(wave.evaluate(id("测试.派生.Z"))).isCloseTo(2.0, within(0.001));
+        assertThat(wave.evaluate(id("测试.派生.W"))).isNull();
+
+        assertThat(reads.get()).isEqualTo(3);
+        assertThat(wave.getRootsEvaluated()).isEqualTo(3);
+        assertThat(wave.getTreeNodes()).isEqualTo(16);
+        assertThat(wave.getNodesEvaluated()).isEqualTo(10);
+        assertThat(wave.getNodesReused()).isEqualTo(2);
+
+        // 波次内依赖写入新值后重新读取
+        values.put("测试.基础.A", 16.0);
+        wave.metricUpdated(id("测试.基础.A"));
+        assertThat(wave.evaluate(id("测试.派生.Z"))).isCloseTo(4.0, within(0.001));
+
+        // 波次内计算出的新值直接传给下游，不再从存储读取
+        int readsBefore = reads.get();
+        wave.metricStored(id("测试.基础.A"), 25.0);
+        assertThat(wave.evaluate(id("测试.派生.Z"))).isCloseTo(5.0, within(0.001));
+        assertThat(reads.get()).isEqualTo(readsBefore);
+    }
+
+    @Test
+    void testLinearFormDerivation() {
+        Map<String, String> formulas = new LinkedHashMap<>();
+        formulas.put("测试.派生.S", "测试.基础.A + 2 * 测试.基础.B - (测试.基础.C - 测试.基础.A) / 4 + 10");
+        formulas.put("测试.派生.N", "测试.基础.A * 测试.基础.B + 测试.基础.C");
+        formulas.put("测试.派生.D", "测试.基础.A / 测试.基础.B");
+        formulas.put("测试.派生.K", "2 * 3");
+        SharedFormulaGraph graph = SharedFormulaGraph.build(formulas, symbols::intern);
+
+        // 同一指标多次出现时系数合并：A系数 1 + 0.25
+        LinearForm form = graph.linearFormOf(id("测试.派生.S"));
+        assertThat(graph.linearFormOf("测试.派生.S") == form).isTrue();
+        assertThat(form.size()).isEqualTo(3);
+        assertThat(form.coefficientAt(form.indexOfId(id("测试.基础.A")))).isCloseTo(1.25, within(1e-12));
+        assertThat(form.inputIdAt(form.indexOf("测试.基础.B"))).isEqualTo(id("测试.基础.B"));
+        assertThat(form.coefficientAt(form.indexOf("测试.基础.A"))).isCloseTo(1.25, within(1e-12));
+        assertThat(form.coefficientAt(form.indexOf("测试.基础.B"))).isCloseTo(2.0, within(1e-12));
+        assertThat(form.coefficientAt(form.indexOf("测试.基础.C"))).isCloseTo(-0.25, within(1e-12));
+        assertThat(form.getConstant()).isCloseTo(10.0, within(1e-12));
+        assertThat(form.indexOf("测试.基础.D")).isEqualTo(-1);
+        assertThat(form.indexOfId(symbols.intern("测试.基础.D"))).isEqualTo(-1);
+
+        // 指标相乘、除以指标、不引用指标的公式不是线性公式
+        assertThat(graph.linearFormOf(id("测试.派生.N"))).isNull();
+        assertThat(graph.linearFormOf(id("测试.派生.D"))).isNull();
+        assertThat(graph.linearFormOf(id("测试.派生.K"))).isNull();
+        assertThat(graph.getLinearCount()).isEqualTo(1);
+    }
+
+    @Test
+    void testOperatorPrecedenceAndErrors() {
+        Map<String, String> formulas = new LinkedHashMap<>();
+        formulas.put("测试.派生.P", "-测试.基础.A + 2 * 3 - max(1, 测试.基础.B, 2.5e0)");
+        formulas.put("测试.派生.Q", "测试.基础.A / 测试.基础.C");
+        formulas.put("测试.派生.R", "测试.基础.A + 测试.基础.D");
+        Map<String, Double> values = new HashMap<>();
+        values.put("测试.基础.A", 4.0);
+        values.put("测试.基础.B", 3.0);
+        values.put("测试.基础.C", 0.0);
+        FormulaWave wave = new FormulaWave(SharedFormulaGraph.build(formulas, symbols::intern),
+                metricId -> values.getOrDefault(symbols.nameOf(metricId), Double.NaN));
+
+        assertThat(wave.evaluate(id("测试.派生.P"))).isCloseTo(-1.0, within(0.001));
+        // 除零、依赖缺失返回NaN
+        assertThat(wave.evaluate(id("测试.派生.Q"))).isNaN();
+        assertThat(wave.evaluate(id("测试.派生.R"))).isNaN();
+    }
+}
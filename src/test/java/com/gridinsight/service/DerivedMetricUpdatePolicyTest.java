@@ -0,0 +1,118 @@
+package com.gridinsight.service;
+
+import com.gridinsight.domain.model.BasicMetric;
+import com.gridinsight.domain.model.DerivedMetric;
+import com.gridinsight.domain.model.DerivedMetricUpdateStrategy;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * 派生指标更新策略决策测试
+ */
+class DerivedMetricUpdatePolicyTest {
+
+    private static DerivedMetric derived(String name, DerivedMetricUpdateStrategy strategy) {
+        BasicMetric basic = new BasicMetric("总发电量", "生产指标", "电量", "kWh", "", null);
+        DerivedMetric metric = new DerivedMetric(name, "生产指标", "比率", "%", "",
+                "生产指标.电量.总发电量 * 0.1", Collections.singletonList(basic));
+        metric.setUpdateStrategy(strategy);
+        return metric;
+    }
+
+    @Test
+    void testRealtimeComputesOnReadOnlyAfterInputChange() {
+        DerivedMetricUpdatePolicy policy = new DerivedMetricUpdatePolicy();
+        DerivedMetric metric = derived("厂用电率", DerivedMetricUpdateStrategy.REALTIME);
+
+        assertFalse(policy.onInputChanged(metric, 1));
+        assertFalse(policy.onInputChanged(metric, 1));
+        long version = policy.staleVersionForRead(metric, 1);
+        assertEquals(2, version);
+        policy.markComputed(1, version);
+
+        // 依赖未再变化时直接使用上次结果
+        assertEquals(-1, policy.staleVersionForRead(metric, 1));
+        assertTrue(policy.onInputChanged(derived("综合厂用电率", DerivedMetricUpdateStrategy.DEPENDENCY_DRIVEN), 2));
+        assertEquals(-1, policy.staleVersionForRead(metric, 1));
+
+        policy.onInputChanged(metric, 1);
+        assertEquals(3, policy.staleVersionForRead(metric, 1));
+    }
+
+    @Test
+    void testScheduledRunsAtIntervalOnlyWhenInputsChanged() {
+        DerivedMetric metric = derived("设备健康度", DerivedMetricUpdateStrategy.SCHEDULED);
+        metric.setCalculationInterval(60);
+        Map<String, DerivedMetric> derivedMetrics = new HashMap<>();
+        derivedMetrics.put(metric.getIdentifier(), metric);
+        MetricRegistrySnapshot registry = new MetricRegistrySnapshot(1L, new MetricSymbolTable(),
+                Collections.emptyMap(), derivedMetrics);
+        int id = registry.idOf(metric.getIdentifier());
+
+        DerivedMetricUpdatePolicy policy = new DerivedMetricUpdatePolicy();
+        // 依赖未变化：到期也跳过
+        assertEquals(0, policy.dueScheduledIds(registry, 1_000L).length);
+
+        assertFalse(policy.onInputChanged(metric, id));
+        // 未到计算间隔
+        assertEquals(0, policy.dueScheduledIds(registry, 30_000L).length);
+        assertArrayEquals(new int[]{id}, policy.dueScheduledIds(registry, 61_000L));
+        policy.markComputed(id, policy.inputVersion(id));
+
+        assertEquals(0, policy.dueScheduledIds(registry, 200_000L).length);
+        assertEquals(-1, policy.staleVersionForRead(metric, id));
+    }
+
+    @Test
+    void testHybridSwitchesByReadWriteRatio() {
+        DerivedMetricUpdatePolicy policy = new DerivedMetricUpdatePolicy();
+        ReflectionTestUtils.setField(policy, "hybridWindowMs", 50L);
+        AtomicLong now = new AtomicLong(1_000_000L);
+        policy.setClock(now::get);
+        DerivedMetric metric = derived("负荷密度", DerivedMetricUpdateStrategy.HYBRID);
+
+        // 初始按依赖驱动
+        assertTrue(policy.onInputChanged(metric, 1));
+        assertTrue(policy.onInputChanged(metric, 1));
+        policy.markComputed(1, policy.inputVersion(1));
+        assertEquals(-1, policy.staleVersionForRead(metric, 1));
+
+        // 上一窗口变化多于查询，切换为按需计算，查询时计算
+        now.addAndGet(60);
+        assertFalse(policy.onInputChanged(metric, 1));
+        assertEquals(3, policy.staleVersionForRead(metric, 1));
+        policy.markComputed(1, 3);
+        assertEquals(-1, policy.staleVersionForRead(metric, 1));
+
+        // 上一窗口查询不少于变化，切换回依赖驱动
+        now.addAndGet(60);
+        assertTrue(policy.onInputChanged(metric, 1));
+    }
+
+    @Test
+    void testPullModeDefersAllButScheduled() {
+        DerivedMetricUpdatePolicy policy = new DerivedMetricUpdatePolicy();
+        ReflectionTestUtils.setField(policy, "propagationMode", "pull");
+        ReflectionTestUtils.setField(policy, "metricConfigService", new ExternalMetricConfigService());
+        DerivedMetric eager = derived("厂用电率", DerivedMetricUpdateStrategy.DEPENDENCY_DRIVEN);
+        DerivedMetric scheduled = derived("设备健康度", DerivedMetricUpdateStrategy.SCHEDULED);
+
+        // 依赖变化只推进输入版本，不立即计算
+        assertFalse(policy.onInputChanged(eager, 1));
+        assertFalse(policy.onInputChanged(scheduled, 2));
+
+        assertEquals(1, policy.staleVersionForRead(eager, 1));
+        policy.markComputed(1, 1);
+        assertEquals(-1, policy.staleVersionForRead(eager, 1));
+        // 定时计算指标仍由定时任务计算
+        assertEquals(-1, policy.staleVersionForRead(scheduled, 2));
+        assertEquals("pull", policy.getStatistics().get("propagationMode"));
+    }
+}
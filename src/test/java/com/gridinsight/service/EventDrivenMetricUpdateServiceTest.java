@@ -0,0 +1,283 @@
+package com.gridinsight.service;
+
+import com.gridinsight.domain.event.MetricUpdateEvent;
+import com.gridinsight.domain.event.MetricValueChangedEvent;
+import com.gridinsight.domain.model.BasicMetric;
+import com.gridinsight.domain.model.DerivedMetric;
+import com.gridinsight.domain.model.DerivedMetricUpdateStrategy;
+import com.gridinsight.domain.model.Metric;
+import com.gridinsight.domain.service.MetricCalculationService;
+import com.gridinsight.service.timeseries.TimeRanges;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.io.File;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * 事件驱动的派生指标更新测试（MapTSDB存储，事件同步分发）
+ */
+class EventDrivenMetricUpdateServiceTest {
+
+    private static final String A = "测试.基础.A";
+
+    @TempDir
+    File tempDir;
+
+    private MapTsdbTimeSeriesDataService timeSeriesDataService;
+    private ExternalMetricConfigService metricConfigService;
+    private DerivedMetricUpdatePolicy updatePolicy;
+    private EventDrivenMetricUpdateService service;
+    private MetricSubscriptionService subscriptions;
+
+    @BeforeEach
+    void setUp() {
+        // 注册表、时序存储和计算服务共用同一个符号表（与Spring容器中一致）
+        MetricSymbolTable symbols = new MetricSymbolTable();
+        timeSeriesDataService = new MapTsdbTimeSeriesDataService();
+        ReflectionTestUtils.setField(timeSeriesDataService, "symbols", symbols);
+        ReflectionTestUtils.setField(timeSeriesDataService, "dataPath", tempDir.getAbsolutePath());
+        ReflectionTestUtils.setField(timeSeriesDataService, "enableCache", true);
+        ReflectionTestUtils.setField(timeSeriesDataService, "retentionDays", 30);
+        ReflectionTestUtils.setField(timeSeriesDataService, "rollupRetentionDays", 365);
+        ReflectionTestUtils.setField(timeSeriesDataService, "commitBatchSize", 5000);
+        ReflectionTestUtils.setField(timeSeriesDataService, "commitIntervalMs", 200L);
+        ReflectionTestUtils.setField(timeSeriesDataService, "writeQueueCapacity", 1024);
+        ReflectionTestUtils.setField(timeSeriesDataService, "latestReadThreads", 2);
+        timeSeriesDataService.init();
+
+        MetricCalculationService metricCalculationService = new MetricCalculationService();
+        ReflectionTestUtils.setField(metricCalculationService, "symbols", symbols);
+        metricConfigService = new ExternalMetricConfigService();
+        ReflectionTestUtils.setField(metricConfigService, "symbols", symbols);
+        ReflectionTestUtils.setField(metricConfigService, "metricCalculationService", metricCalculationService);
+
+        updatePolicy = new DerivedMetricUpdatePolicy();
+        ReflectionTestUtils.setField(updatePolicy, "metricConfigService", metricConfigService);
+
+        CompiledFormulaService compiledFormulas = new CompiledFormulaService();
+        ReflectionTestUtils.setField(compiledFormulas, "metricConfigService", metricConfigService);
+        ReflectionTestUtils.setField(compiledFormulas, "timeSeriesDataService", timeSeriesDataService);
+
+        IncrementalFormulaService incrementalFormulas = new IncrementalFormulaService();
+        ReflectionTestUtils.setField(incrementalFormulas, "compiledFormulaService", compiledFormulas);
+        ReflectionTestUtils.setField(incrementalFormulas, "metricConfigService", metricConfigService);
+        ReflectionTestUtils.setField(incrementalFormulas, "timeSeriesDataService", timeSeriesDataService);
+        ReflectionTestUtils.setField(incrementalFormulas, "updatePolicy", updatePolicy);
+
+        PropagationLatencyTracker latencyTracker = new PropagationLatencyTracker();
+        ReflectionTestUtils.setField(latencyTracker, "metricConfigService", metricConfigService);
+
+        subscriptions = new MetricSubscriptionService();
+        service = new EventDrivenMetricUpdateService();
+        // 事件在发布线程中同步处理
+        ApplicationEventPublisher eventPublisher = event -> {
+            if (event instanceof MetricUpdateEvent) {
+                service.handleMetricUpdateEvent((MetricUpdateEvent) event);
+                subscriptions.onMetricUpdate((MetricUpdateEvent) event);
+            } else if (event instanceof MetricValueChangedEvent) {
+                subscriptions.onMetricValueChanged((MetricValueChangedEvent) event);
+            }
+        };
+        MetricEventPublisher metricEventPublisher = new MetricEventPublisher();
+        ReflectionTestUtils.setField(metricEventPublisher, "eventPublisher", eventPublisher);
+        ReflectionTestUtils.setField(metricEventPublisher, "traceSampler", new UpdateTraceSampler());
+        ReflectionTestUtils.setField(service, "eventPublisher", eventPublisher);
+        ReflectionTestUtils.setField(service, "metricEventPublisher", metricEventPublisher);
+        ReflectionTestUtils.setField(service, "metricConfigService", metricConfigService);
+        ReflectionTestUtils.setField(service, "metricCalculationService", metricCalculationService);
+        ReflectionTestUtils.setField(service, "timeSeriesDataService", timeSeriesDataService);
+        ReflectionTestUtils.setField(service, "latencyTracker", latencyTracker);
+        ReflectionTestUtils.setField(service, "meters", GridInsightMeters.noop());
+        ReflectionTestUtils.setField(service, "updatePolicy", updatePolicy);
+        ReflectionTestUtils.setField(service, "compiledFormulas", compiledFormulas);
+        ReflectionTestUtils.setField(service, "incrementalFormulas", incrementalFormulas);
+
+        metricConfigService.addBasicMetric(A, new BasicMetric("A", "测试", "基础", "kW", "", null));
+    }
+
+    @AfterEach
+    void tearDown() {
+        timeSeriesDataService.destroy();
+    }
+
+    private DerivedMetric addDerived(String name, String formula, DerivedMetricUpdateStrategy strategy,
+                                     String... dependencies) {
+        List<Metric> metrics = new ArrayList<>();
+        for (String dependency : dependencies) {
+            metrics.add(metricConfigService.getMetric(dependency));
+        }
+        DerivedMetric metric = new DerivedMetric(name, "测试", "派生", "kW", "", formula, metrics);
+        metric.setUpdateStrategy(strategy);
+        metricConfigService.addDerivedMetric(metric.getIdentifier(), metric);
+        return metric;
+    }
+
+    private void storeBasic(double value) {
+        storeBasic(A, value);
+    }
+
+    private void storeBasic(String identifier, double value) {
+        timeSeriesDataService.storeSample(identifier, System.currentTimeMillis(), value);
+        service.publishMetricUpdateEvent(identifier, value, "TEST");
+    }
+
+    @Test
+    void testEagerDependentRefreshesStaleRealtimeInput() {
+        addDerived("B", A + " * 2", DerivedMetricUpdateStrategy.REALTIME, A);
+        addDerived("C", "测试.派生.B + 1", DerivedMetricUpdateStrategy.DEPENDENCY_DRIVEN, "测试.派生.B");
+
+        storeBasic(1.0);
+        assertEquals(3.0, timeSeriesDataService.getLatestValue("测试.派生.C"));
+
+        // B只被标记过期，C计算前先按新的A计算B
+        storeBasic(5.0);
+        assertEquals(10.0, timeSeriesDataService.getLatestValue("测试.派生.B"));
+        assertEquals(11.0, timeSeriesDataService.getLatestValue("测试.派生.C"));
+    }
+
+    @Test
+    void testReadRecomputeVisibleBeforeReturn() {
+        addDerived("B", A + " * 2", DerivedMetricUpdateStrategy.REALTIME, A);
+
+        storeBasic(3.0);
+        long version = timeSeriesDataService.getMetricVersion("测试.派生.B");
+        service.refreshIfStale("测试.派生.B");
+
+        // 查询接口随后读取的值和ETag版本号已是重新计算的结果
+        assertTrue(timeSeriesDataService.getMetricVersion("测试.派生.B") > version);
+        assertEquals(6.0, timeSeriesDataService.getLatestMetricValue("测试.派生.B").getValue());
+    }
+
+    @Test
+    void testReadRecomputePushedToSubscribers() {
+        addDerived("B", A + " * 2", DerivedMetricUpdateStrategy.REALTIME, A);
+        MetricSubscription subscription = subscriptions.register(
+                new HashSet<>(Collections.singletonList("测试.派生.B")), Collections.emptyList(),
+                new SseConnection(new RecordingServletOutputStream(), () -> { }));
+
+        storeBasic(3.0);
+        assertFalse(subscription.hasPending());
+
+        // 查询时重新计算的新值推送给订阅者
+        service.refreshIfStale("测试.派生.B");
+        List<MetricSubscription.Update> batch = subscription.drainChanged();
+        assertEquals(1, batch.size());
+        assertEquals(6.0, batch.get(0).getValue());
+
+        // 依赖未变化时不重新计算，也不推送
+        service.refreshIfStale("测试.派生.B");
+        assertFalse(subscription.hasPending());
+    }
+
+    @Test
+    void testPullModeRefreshesDirtyChain() {
+        ReflectionTestUtils.setField(updatePolicy, "propagationMode", "pull");
+        addDerived("B", A + " * 2", DerivedMetricUpdateStrategy.DEPENDENCY_DRIVEN, A);
+        addDerived("C", "测试.派生.B + 1", DerivedMetricUpdateStrategy.DEPENDENCY_DRIVEN, "测试.派生.B");
+        addDerived("D", "测试.派生.C * 10", DerivedMetricUpdateStrategy.DEPENDENCY_DRIVEN, "测试.派生.C");
+
+        storeBasic(1.0);
+        service.refreshIfStale("测试.派生.D");
+        assertEquals(30.0, timeSeriesDataService.getLatestValue("测试.派生.D"));
+
+        // 只有B被标记过期，查询D时沿链路逐级计算，每一级使用上一级的新值
+        storeBasic(4.0);
+        service.refreshIfStale("测试.派生.D");
+        assertEquals(8.0, timeSeriesDataService.getLatestValue("测试.派生.B"));
+        assertEquals(9.0, timeSeriesDataService.getLatestValue("测试.派生.C"));
+        assertEquals(90.0, timeSeriesDataService.getLatestValue("测试.派生.D"));
+
+        // 拉取模式下查询计算的结果同样推送给订阅者
+        MetricSubscription subscription = subscriptions.register(
+                new HashSet<>(Collections.singletonList("测试.派生.D")), Collections.emptyList(),
+                new SseConnection(new RecordingServletOutputStream(), () -> { }));
+        storeBasic(5.0);
+        service.refreshIfStale("测试.派生.D");
+        List<MetricSubscription.Update> batch = subscription.drainChanged();
+        assertEquals(1, batch.size());
+        assertEquals(110.0, batch.get(0).getValue());
+
+        // 链路已计算，再次查询不重新计算
+        long version = timeSeriesDataService.getMetricVersion("测试.派生.D");
+        service.refreshIfStale("测试.派生.D");
+        assertEquals(version, timeSeriesDataService.getMetricVersion("测试.派生.D"));
+    }
+
+    @Test
+    void testOutOfOrderEventsDoNotRegressIncrementalResult() {
+        String[] inputs = {A, "测试.基础.B", "测试.基础.C", "测试.基础.E"};
+        for (int i = 1; i < inputs.length; i++) {
+            String name = inputs[i].substring(inputs[i].lastIndexOf('.') + 1);
+            metricConfigService.addBasicMetric(inputs[i], new BasicMetric(name, "测试", "基础", "kW", "", null));
+        }
+        addDerived("S", String.join(" + ", inputs), DerivedMetricUpdateStrategy.DEPENDENCY_DRIVEN, inputs);
+        String sum = "测试.派生.S";
+        for (String input : inputs) {
+            storeBasic(input, 1.0);
+        }
+        assertEquals(4.0, timeSeriesDataService.getLatestValue(sum));
+
+        // A先后写入10和20，两个事件在线程池中按相反顺序处理
+        long now = TimeRanges.nowEpochMillis();
+        timeSeriesDataService.storeSample(A, now + 1000, 10.0);
+        timeSeriesDataService.storeSample(A, now + 2000, 20.0);
+        service.handleMetricUpdateEvent(new MetricUpdateEvent(A, "BASIC", 20.0, LocalDateTime.now(), "TEST",
+                now + 2000, System.nanoTime(), 0));
+        assertEquals(23.0, timeSeriesDataService.getLatestValue(sum));
+        service.handleMetricUpdateEvent(new MetricUpdateEvent(A, "BASIC", 10.0, LocalDateTime.now(), "TEST",
+                now + 1000, System.nanoTime(), 0));
+        assertEquals(23.0, timeSeriesDataService.getLatestValue(sum));
+    }
+
+    @Test
+    void testHybridSwitchedBackToEagerUsesCurrentInputs() {
+        ReflectionTestUtils.setField(updatePolicy, "hybridWindowMs", 200L);
+        AtomicLong now = new AtomicLong(System.currentTimeMillis());
+        updatePolicy.setClock(now::get);
+        String[] inputs = {A, "测试.基础.B", "测试.基础.C", "测试.基础.E"};
+        for (int i = 1; i < inputs.length; i++) {
+            String name = inputs[i].substring(inputs[i].lastIndexOf('.') + 1);
+            metricConfigService.addBasicMetric(inputs[i], new BasicMetric(name, "测试", "基础", "kW", "", null));
+        }
+        addDerived("S", String.join(" + ", inputs), DerivedMetricUpdateStrategy.HYBRID, inputs);
+        String sum = "测试.派生.S";
+
+        for (int i = 0; i < inputs.length; i++) {
+            timeSeriesDataService.storeSample(inputs[i], System.currentTimeMillis(), i + 1);
+        }
+        // 初始按依赖驱动计算
+        for (int i = 0; i < inputs.length; i++) {
+            storeBasic(inputs[i], i + 1);
+        }
+        assertEquals(10.0, timeSeriesDataService.getLatestValue(sum));
+
+        // 上一窗口只有依赖变化没有查询，切换为按需计算：A、B的变化只标记过期，由查询计算
+        now.addAndGet(250);
+        storeBasic(A, 10.0);
+        storeBasic("测试.基础.B", 20.0);
+        assertEquals(10.0, timeSeriesDataService.getLatestValue(sum));
+        for (int i = 0; i < 3; i++) {
+            service.refreshIfStale(sum);
+        }
+        assertEquals(37.0, timeSeriesDataService.getLatestValue(sum));
+
+        // 上一窗口查询多于变化，切换回依赖驱动：按所有输入的当前值计算
+        now.addAndGet(250);
+        storeBasic("测试.基础.C", 30.0);
+        assertEquals(64.0, timeSeriesDataService.getLatestValue(sum));
+        storeBasic("测试.基础.E", 40.0);
+        assertEquals(100.0, timeSeriesDataService.getLatestValue(sum));
+    }
+}
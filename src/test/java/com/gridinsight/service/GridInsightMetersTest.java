@@ -0,0 +1,46 @@
+package com.gridinsight.service;
+
+import com.gridinsight.domain.model.DataSource;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * 热路径度量测试
+ */
+class GridInsightMetersTest {
+
+    @Test
+    void testHostOf() {
+        assertEquals("10.0.0.5", GridInsightMeters.hostOf("http://10.0.0.5:8080/api/value?ts=${timestamp}"));
+        assertEquals("broker", GridInsightMeters.hostOf("mqtt://broker:1883/grid/topic"));
+        assertEquals("db.local", GridInsightMeters.hostOf("jdbc:mysql://db.local:3306/grid"));
+        assertEquals("local", GridInsightMeters.hostOf("jdbc:sqlite:data/grid.db"));
+        assertEquals("local", GridInsightMeters.hostOf("/data/files/value.csv"));
+        assertEquals("local", GridInsightMeters.hostOf("not a uri"));
+    }
+
+    @Test
+    void testFetchMetersSharedPerHost() {
+        SimpleMeterRegistry registry = new SimpleMeterRegistry();
+        GridInsightMeters meters = new GridInsightMeters(registry, "maptsdb");
+
+        DataSource first = httpSource("http://10.0.0.5/a");
+        DataSource second = httpSource("http://10.0.0.5/b");
+        assertSame(meters.fetchMeters(first), meters.fetchMeters(second));
+
+        meters.fetchMeters(first).record(1_000_000L, true);
+        meters.fetchMeters(second).record(2_000_000L, false);
+
+        assertEquals(2, registry.get("gridinsight.fetch.latency").tag("host", "10.0.0.5").timer().count());
+        assertEquals(1.0, registry.get("gridinsight.fetch.errors").tag("sourceType", "HTTP_API").counter().count());
+        assertEquals(1, registry.find("gridinsight.store.latency").tag("backend", "maptsdb").timers().size());
+    }
+
+    private static DataSource httpSource(String address) {
+        DataSource dataSource = new DataSource(DataSource.SourceType.HTTP_API, "采集网关", "", 5, true);
+        dataSource.setSourceAddress(address);
+        return dataSource;
+    }
+}
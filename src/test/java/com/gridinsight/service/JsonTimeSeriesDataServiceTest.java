@@ -1,6 +1,9 @@
 package com.gridinsight.service;
 
 import com.gridinsight.domain.model.MetricValue;
+import com.gridinsight.service.timeseries.DownsampleMethod;
+import com.gridinsight.service.timeseries.SeriesBuffer;
+import com.gridinsight.service.timeseries.TimeRanges;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.io.TempDir;
@@ -10,6 +13,10 @@ import java.io.File;
 import java.time.LocalDateTime;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
 
 import static org.junit.jupiter.api.Assertions.*;
 
@@ -118,6 +125,116 @@ class JsonTimeSeriesDataServiceTest {
         assertEquals(10.0, (Double) stats.get("min"));
     }
 
+    @Test
+    void testDownsampledHistoryUsesRollups() {
+        String metricId = "test.metric.rollup";
+        LocalDateTime baseTime = LocalDateTime.of(2024, 1, 1, 0, 0);
+
+        // 两小时，每分钟一个点，数值等于分钟序号
+        for (int i = 0; i < 120; i++) {
+            service.storeMetricValue(metricId, MetricValue.good(metricId, (double) i, "kW"), baseTime.plusMinutes(i));
+        }
+
+        long startMillis = TimeRanges.toEpochMillis(baseTime);
+        long endMillis = TimeRanges.toEpochMillis(baseTime.plusMinutes(119));
+
+        // 指定步长：每15分钟一个平均值
+        SeriesBuffer quarterHours = service.getDownsampledHistory(metricId, startMillis, endMillis, 15 * 60_000L, 0, DownsampleMethod.AVG);
+        assertEquals(8, quarterHours.size());
+        assertEquals(7.0, quarterHours.getValue(0), 1e-9);
+        assertEquals(startMillis + 15 * 60_000L, quarterHours.getTimestamp(1));
+        assertEquals(112.0, quarterHours.getValue(7), 1e-9);
+
+        // 指定最大点数：自动选择1小时层级
+        SeriesBuffer hours = service.getDownsampledHistory(metricId, startMillis, endMillis, 0L, 2, DownsampleMethod.AVG);
+        assertEquals(2, hours.size());
+        assertEquals(29.5, hours.getValue(0), 1e-9);
+        assertEquals(89.5, hours.getValue(1), 1e-9);
+
+        // 未指定步长和最大点数时返回原始数据
+        assertEquals(120, service.getDownsampledHistory(metricId, startMillis, endMillis, 0L, 0, DownsampleMethod.AVG).size());
+
+        // M4：每个时间桶保留首末和极值
+        SeriesBuffer m4 = service.getDownsampledHistory(metricId, startMillis, endMillis, 0L, 8, DownsampleMethod.M4);
+        assertTrue(m4.size() <= 8);
+        assertEquals(0.0, m4.getValue(0));
+        assertEquals(119.0, m4.getValue(m4.size() - 1));
+    }
+
+    @Test
+    void testLongRangeStatisticsUseRollups() {
+        String metricId = "test.metric.rollup.stats";
+        LocalDateTime now = LocalDateTime.now();
+
+        // 最近一天内每10分钟一个点
+        double sum = 0;
+        for (int i = 143; i >= 1; i--) {
+            double value = i % 10;
+            sum += value;
+            service.storeMetricValue(metricId, MetricValue.good(metricId, value, "kW"), now.minusMinutes(i * 10L));
+        }
+
+        Map<String, Object> stats = service.getMetricStatistics(metricId, "1d");
+
+        assertEquals("1h", stats.get("resolution"));
+        assertEquals(143, stats.get("count"));
+        assertEquals(sum / 143, (Double) stats.get("average"), 1e-9);
+        assertEquals(9.0, (Double) stats.get("max"));
+        assertEquals(0.0, (Double) stats.get("min"));
+
+        // 汇总路径不给出分位数，而不是给出分桶均值的分位数
+        assertEquals(false, stats.get("percentilesAvailable"));
+        assertFalse(stats.containsKey("p99"));
+    }
+
+    @Test
+    void testBatchLatestLoadsMissesFromFiles() {
+        // 另一个服务实例在本实例启动后写入文件，本实例缓存中没有这些指标
+        JsonTimeSeriesDataService writer = new JsonTimeSeriesDataService();
+        ReflectionTestUtils.setField(writer, "dataPath", tempDir.getAbsolutePath());
+        writer.init();
+        writer.storeMetricValue("test.batch.1", MetricValue.good("test.batch.1", 1.0, "kW"), LocalDateTime.now());
+        writer.storeMetricValue("test.batch.2", MetricValue.good("test.batch.2", 2.0, "kW"), LocalDateTime.now());
+        service.storeMetricValue("test.batch.3", MetricValue.good("test.batch.3", 3.0, "kW"), LocalDateTime.now());
+
+        Map<String, MetricValue> latest = service.getLatestMetricValues(
+                List.of("test.batch.1", "test.batch.2", "test.batch.3", "test.batch.missing"));
+
+        assertEquals(4, latest.size());
+        assertEquals(1.0, latest.get("test.batch.1").getValue());
+        assertEquals(2.0, latest.get("test.batch.2").getValue());
+        assertEquals(3.0, latest.get("test.batch.3").getValue());
+        assertFalse(latest.get("test.batch.missing").isValid());
+    }
+
+    @Test
+    void testScanVisitorDoesNotBlockWrites() throws Exception {
+        String metricId = "test.metric.scan";
+        LocalDateTime baseTime = LocalDateTime.now().minusMinutes(10);
+        for (int i = 0; i < 5; i++) {
+            service.storeMetricValue(metricId, MetricValue.good(metricId, (double) i, "kW"), baseTime.plusMinutes(i));
+        }
+
+        // 回调（如向慢客户端写出）期间其他线程仍可写入
+        ExecutorService writer = Executors.newSingleThreadExecutor();
+        try {
+            long visited = service.scanMetricHistory(metricId, TimeRanges.toEpochMillis(baseTime.minusMinutes(1)),
+                    TimeRanges.toEpochMillis(baseTime.plusMinutes(10)), (timestampMillis, value) -> {
+                        Future<?> write = writer.submit(() -> service.storeMetricValue(metricId,
+                                MetricValue.good(metricId, 100.0, "kW"), LocalDateTime.now()));
+                        try {
+                            write.get(5, TimeUnit.SECONDS);
+                        } catch (Exception e) {
+                            fail("扫描回调期间写入被阻塞");
+                        }
+                        return true;
+                    });
+            assertEquals(5, visited);
+        } finally {
+            writer.shutdownNow();
+        }
+    }
+
     @Test
     void testGetStorageStats() {
         // 存储一些数据
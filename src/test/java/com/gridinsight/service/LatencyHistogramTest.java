@@ -0,0 +1,66 @@
+package com.gridinsight.service;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * 延迟直方图测试
+ */
+class LatencyHistogramTest {
+
+    @Test
+    void testPercentilesWithinPrecision() {
+        LatencyHistogram histogram = new LatencyHistogram(6);
+        for (int ms = 1; ms <= 1000; ms++) {
+            histogram.recordMicros(ms * 1000L);
+        }
+
+        assertEquals(1000, histogram.getCount());
+        assertEquals(500_000, histogram.getValueAtPercentile(0.50), 500_000 * 0.04);
+        assertEquals(990_000, histogram.getValueAtPercentile(0.99), 990_000 * 0.04);
+        // 最高分位数不超过实际最大值
+        assertEquals(1_000_000, histogram.getValueAtPercentile(1.0));
+
+        Map<String, Object> summary = histogram.summary();
+        assertEquals(1000L, summary.get("count"));
+        assertEquals(500.5, (Double) summary.get("meanMs"), 0.001);
+        assertEquals(1000.0, (Double) summary.get("maxMs"), 0.001);
+    }
+
+    @Test
+    void testSmallValuesAreExactAndResetClears() {
+        LatencyHistogram histogram = new LatencyHistogram(3);
+        histogram.recordMicros(3);
+        histogram.recordMicros(5);
+        histogram.recordNanos(-100);
+
+        assertEquals(3, histogram.getCount());
+        assertEquals(0, histogram.getValueAtPercentile(0.1));
+        assertEquals(3, histogram.getValueAtPercentile(0.5));
+        assertEquals(5, histogram.getValueAtPercentile(1.0));
+
+        // 超过上限的值计入最后一个桶，最大值仍精确
+        histogram.recordMicros(Long.MAX_VALUE / 2);
+        assertEquals(Long.MAX_VALUE / 2, histogram.getValueAtPercentile(1.0));
+
+        histogram.reset();
+        assertEquals(0, histogram.getCount());
+        assertEquals(0, histogram.getValueAtPercentile(0.99));
+    }
+
+    @Test
+    void testCappedRangeKeepsExactMax() {
+        LatencyHistogram histogram = new LatencyHistogram(3, 27);
+        histogram.recordMicros(1000);
+        histogram.recordMicros(1L << 30);
+
+        assertEquals(2, histogram.getCount());
+        assertEquals(1000, histogram.getValueAtPercentile(0.5), 1000 * 0.25);
+        // 超过上限的值计入最后一个桶，最大值仍精确
+        assertEquals(1L << 30, histogram.getValueAtPercentile(1.0));
+        assertThrows(IllegalArgumentException.class, () -> new LatencyHistogram(3, 41));
+    }
+}
@@ -0,0 +1,71 @@
+package com.gridinsight.service;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.File;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * MapTSDB最新值索引测试
+ */
+class MapTsdbLatestValueIndexTest {
+
+    @TempDir
+    File tempDir;
+
+    @Test
+    void testLatestValuePersistedAndPreloaded() {
+        String indexPath = new File(tempDir, "latest-index.db").getAbsolutePath();
+
+        MapTsdbLatestValueIndex index = new MapTsdbLatestValueIndex(indexPath);
+        index.open();
+        index.update("test.metric.1", 1000L, 1.5);
+        index.update("test.metric.1", 2000L, 2.5);
+        index.update("test.metric.2", 1500L, 10.0);
+        index.commit();
+        index.close();
+
+        // 重新打开后应从文件预加载
+        MapTsdbLatestValueIndex reopened = new MapTsdbLatestValueIndex(indexPath);
+        reopened.open();
+
+        assertEquals(2, reopened.size());
+        MapTsdbLatestValueIndex.LatestPoint point = reopened.get("test.metric.1");
+        assertNotNull(point);
+        assertEquals(2000L, point.getTimestampMillis());
+        assertEquals(2.5, point.getValue());
+        assertEquals(10.0, reopened.get("test.metric.2").getValue());
+        assertNull(reopened.get("test.metric.unknown"));
+
+        reopened.close();
+    }
+
+    @Test
+    void testOpenCreatesMissingDirectory() {
+        File indexFile = new File(tempDir, "nested/data/latest-index.db");
+
+        MapTsdbLatestValueIndex index = new MapTsdbLatestValueIndex(indexFile.getAbsolutePath());
+        index.open();
+        index.update("test.metric.4", 1000L, 4.0);
+        index.close();
+
+        assertTrue(indexFile.getParentFile().isDirectory());
+    }
+
+    @Test
+    void testOlderPointIgnored() {
+        MapTsdbLatestValueIndex index = new MapTsdbLatestValueIndex(
+                new File(tempDir, "latest-index.db").getAbsolutePath());
+        index.open();
+
+        index.update("test.metric.3", 5000L, 5.0);
+        index.update("test.metric.3", 4000L, 4.0);
+
+        assertEquals(5000L, index.get("test.metric.3").getTimestampMillis());
+        assertEquals(5.0, index.get("test.metric.3").getValue());
+
+        index.close();
+    }
+}
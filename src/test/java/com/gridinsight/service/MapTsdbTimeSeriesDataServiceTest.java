@@ -0,0 +1,162 @@
+package com.gridinsight.service;
+
+import com.gridinsight.domain.model.MetricValue;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.io.File;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * MapTSDB时序数据服务测试
+ */
+class MapTsdbTimeSeriesDataServiceTest {
+
+    @TempDir
+    File tempDir;
+
+    private MapTsdbTimeSeriesDataService service;
+
+    private MapTsdbTimeSeriesDataService createService(boolean enableCache) {
+        service = new MapTsdbTimeSeriesDataService();
+        ReflectionTestUtils.setField(service, "dataPath", tempDir.getAbsolutePath());
+        ReflectionTestUtils.setField(service, "enableCache", enableCache);
+        ReflectionTestUtils.setField(service, "retentionDays", 30);
+        ReflectionTestUtils.setField(service, "rollupRetentionDays", 365);
+        ReflectionTestUtils.setField(service, "commitBatchSize", 5000);
+        ReflectionTestUtils.setField(service, "commitIntervalMs", 200L);
+        ReflectionTestUtils.setField(service, "writeQueueCapacity", 1024);
+        ReflectionTestUtils.setField(service, "latestReadThreads", 2);
+        service.init();
+        return service;
+    }
+
+    @AfterEach
+    void tearDown() {
+        if (service != null) {
+            service.destroy();
+        }
+    }
+
+    @Test
+    void testStoredSampleReadableWithoutFlush() {
+        assertSampleReadableWithoutFlush(createService(true));
+    }
+
+    @Test
+    void testStoredSampleReadableWithoutFlushCacheDisabled() {
+        assertSampleReadableWithoutFlush(createService(false));
+    }
+
+    private void assertSampleReadableWithoutFlush(MapTsdbTimeSeriesDataService service) {
+        String metricId = "test.metric.sample";
+        long now = System.currentTimeMillis();
+
+        service.storeSample(metricId, now - 1000, 1.5);
+        long version = service.getMetricVersion(metricId);
+        assertTrue(version > 0);
+
+        // 不调用commitAll，写入后立即读取到新值，版本号已推进
+        service.storeSample(metricId, now, 2.5);
+        assertEquals(2.5, service.getLatestValue(metricId));
+        MetricValue latest = service.getLatestMetricValue(metricId);
+        assertNotNull(latest);
+        assertEquals(2.5, latest.getValue());
+        assertEquals(2.5, service.getLatestMetricValues(Collections.singletonList(metricId)).get(metricId).getValue());
+        assertTrue(service.getMetricVersion(metricId) > version);
+
+        // 写线程写入后仍读取到同一个值
+        service.commitAll();
+        assertEquals(2.5, service.getLatestValue(metricId));
+    }
+
+    @Test
+    void testIdAndIdentifierPathsShareLatestValue() {
+        MapTsdbTimeSeriesDataService service = createService(true);
+        MetricSymbolTable symbols = new MetricSymbolTable();
+        ReflectionTestUtils.setField(service, "symbols", symbols);
+        int metricId = symbols.intern("test.metric.byid");
+        long now = System.currentTimeMillis();
+
+        // 按ID写入，按标识符和ID读取到同一个值和版本号
+        service.storeSample(metricId, now, 3.5);
+        assertEquals(3.5, service.getLatestValue(metricId));
+        assertEquals(3.5, service.getLatestValue("test.metric.byid"));
+        assertEquals(3.5, service.getLatestMetricValue("test.metric.byid").getValue());
+        assertEquals(service.getMetricVersion(metricId), service.getMetricVersion("test.metric.byid"));
+
+        // 按标识符写入后按ID读取
+        service.storeSample("test.metric.byid", now + 1, 4.5);
+        assertEquals(4.5, service.getLatestValue(metricId));
+
+        // 未注册的ID不能写入，读取返回NaN
+        assertThrows(IllegalArgumentException.class, () -> service.storeSample(symbols.size() + 10, now, 1.0));
+        assertTrue(Double.isNaN(service.getLatestValue(symbols.size() + 10)));
+    }
+
+    @Test
+    void testLatestSampleKeepsQualityAndUnit() {
+        MapTsdbTimeSeriesDataService service = createService(true);
+        MetricSymbolTable symbols = new MetricSymbolTable();
+        ReflectionTestUtils.setField(service, "symbols", symbols);
+        int metricId = symbols.intern("test.metric.quality");
+        long now = System.currentTimeMillis();
+
+        // 按基本类型写入ERROR质量的样本：数值读取为NaN，构造的MetricValue保留质量
+        service.storeSample(metricId, now, 7.5, MetricValue.DataQuality.ERROR.code());
+        assertTrue(Double.isNaN(service.getLatestValue(metricId)));
+        MetricValue latest = service.getLatestMetricValue("test.metric.quality");
+        assertEquals(7.5, latest.getValue());
+        assertEquals(MetricValue.DataQuality.ERROR, latest.getQuality());
+
+        // 通过MetricValue写入的单位在之后按基本类型写入时保留
+        LocalDateTime timestamp = LocalDateTime.now();
+        service.storeMetricValue("test.metric.quality", new MetricValue("test.metric.quality", 8.5, "kW",
+            timestamp, MetricValue.DataQuality.WARNING), timestamp);
+        assertEquals(MetricValue.DataQuality.WARNING, service.getLatestMetricValue("test.metric.quality").getQuality());
+        service.storeSample(metricId, now + 1000, 9.5, MetricValue.DataQuality.GOOD.code());
+        latest = service.getLatestMetricValue("test.metric.quality");
+        assertEquals(9.5, latest.getValue());
+        assertEquals("kW", latest.getUnit());
+        assertEquals(MetricValue.DataQuality.GOOD, latest.getQuality());
+        assertEquals(9.5, service.getLatestValue(metricId));
+    }
+
+    @Test
+    void testScanPagesThroughTimeWindows() {
+        MapTsdbTimeSeriesDataService service = createService(true);
+        ReflectionTestUtils.setField(service, "scanWindowMs", 1000L);
+        String metricId = "test.metric.scan";
+        long start = System.currentTimeMillis() - 60_000L;
+        for (int i = 0; i < 50; i++) {
+            service.storeSample(metricId, start + i * 300L, i);
+        }
+        service.commitAll();
+
+        // 跨越多个窗口的数据点按时间顺序完整遍历
+        List<Double> values = new ArrayList<>();
+        long visited = service.scanMetricHistory(metricId, start, start + 49 * 300L, (timestampMillis, value) -> {
+            values.add(value);
+            return true;
+        });
+        assertEquals(50, visited);
+        for (int i = 0; i < 50; i++) {
+            assertEquals(i, values.get(i));
+        }
+
+        // 回调返回false时停止遍历，不再查询后续窗口
+        values.clear();
+        visited = service.scanMetricHistory(metricId, start, start + 49 * 300L, (timestampMillis, value) -> {
+            values.add(value);
+            return values.size() < 7;
+        });
+        assertEquals(7, visited);
+    }
+}
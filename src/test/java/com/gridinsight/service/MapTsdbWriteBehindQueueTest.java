@@ -0,0 +1,256 @@
+package com.gridinsight.service;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * MapTSDB写后队列测试
+ */
+class MapTsdbWriteBehindQueueTest {
+
+    /**
+     * 记录写入和提交的处理器
+     */
+    private static class RecordingHandler implements MapTsdbWriteBehindQueue.WriteHandler {
+        final List<String> written = Collections.synchronizedList(new ArrayList<>());
+        final List<Integer> metricIds = Collections.synchronizedList(new ArrayList<>());
+        final AtomicInteger commits = new AtomicInteger();
+        volatile int committedSize;
+
+        @Override
+        public void write(int metricId, String metricIdentifier, long timestampMillis, double value, boolean publish) {
+            written.add(metricIdentifier + "@" + timestampMillis + "=" + value);
+            metricIds.add(metricId);
+        }
+
+        @Override
+        public void commit() {
+            commits.incrementAndGet();
+            committedSize = written.size();
+        }
+    }
+
+    @Test
+    void testMetricIdPassedToWriter() {
+        RecordingHandler handler = new RecordingHandler();
+        MapTsdbWriteBehindQueue queue = new MapTsdbWriteBehindQueue(handler, 16, 10, 60_000);
+        queue.start();
+
+        // 入队时携带的指标ID原样传给写线程，按标识符入队时为-1
+        queue.enqueue(7, "test.metric.id", 1L, 1.0, true);
+        queue.enqueue("test.metric.id", 2L, 2.0);
+        assertTrue(queue.flush(5_000));
+
+        assertEquals(Arrays.asList(7, -1), handler.metricIds);
+        assertEquals(Arrays.asList("test.metric.id@1=1.0", "test.metric.id@2=2.0"), handler.written);
+
+        queue.shutdown(5_000);
+    }
+
+    @Test
+    void testCommitOnSizeThreshold() {
+        RecordingHandler handler = new RecordingHandler();
+        // 时间阈值足够长，只由数量阈值触发提交
+        MapTsdbWriteBehindQueue queue = new MapTsdbWriteBehindQueue(handler, 1000, 10, 60_000);
+        queue.start();
+
+        for (int i = 0; i < 25; i++) {
+            queue.enqueue("test.metric.size", i, i);
+        }
+        assertTrue(queue.flush(5_000));
+
+        assertEquals(25, handler.written.size());
+        assertEquals(25, handler.committedSize);
+        // 两次数量阈值提交 + 一次屏障提交
+        assertEquals(3, handler.commits.get());
+
+        queue.shutdown(5_000);
+    }
+
+    @Test
+    void testCommitOnTimeThreshold() throws InterruptedException {
+        RecordingHandler handler = new RecordingHandler();
+        MapTsdbWriteBehindQueue queue = new MapTsdbWriteBehindQueue(handler, 1000, 10_000, 50);
+        queue.start();
+
+        queue.enqueue("test.metric.time", 1L, 1.0);
+
+        // 数量阈值远未达到，依靠时间阈值提交
+        long deadline = System.currentTimeMillis() + 5_000;
+        while (handler.commits.get() == 0 && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+        assertEquals(1, handler.commits.get());
+        assertEquals(1, handler.committedSize);
+
+        queue.shutdown(5_000);
+    }
+
+    @Test
+    void testShutdownDrainsQueue() {
+        RecordingHandler handler = new RecordingHandler();
+        MapTsdbWriteBehindQueue queue = new MapTsdbWriteBehindQueue(handler, 1000, 10_000, 60_000);
+        queue.start();
+
+        for (int i = 0; i < 100; i++) {
+            queue.enqueue("test.metric.shutdown", i, i * 2.0);
+        }
+        queue.shutdown(5_000);
+
+        assertEquals(100, handler.written.size());
+        assertEquals(100, handler.committedSize);
+        assertEquals(0, queue.getQueueDepth());
+    }
+
+    @Test
+    void testStatistics() {
+        RecordingHandler handler = new RecordingHandler();
+        MapTsdbWriteBehindQueue queue = new MapTsdbWriteBehindQueue(handler, 1000, 5, 60_000);
+        queue.start();
+
+        for (int i = 0; i < 12; i++) {
+            queue.enqueue("test.metric.stats", i, i);
+        }
+        assertTrue(queue.flush(5_000));
+
+        Map<String, Object> stats = queue.getStatistics();
+        assertEquals(12L, stats.get("enqueuedPoints"));
+        assertEquals(12L, stats.get("committedPoints"));
+        assertEquals(3L, stats.get("commitCount"));
+        assertEquals(0, stats.get("queueDepth"));
+        assertNotNull(stats.get("avgCommitLatencyMs"));
+
+        queue.shutdown(5_000);
+    }
+
+    @Test
+    void testFailedWriteDoesNotStopWriter() {
+        RecordingHandler handler = new RecordingHandler() {
+            @Override
+            public void write(int metricId, String metricIdentifier, long timestampMillis, double value, boolean publish) {
+                if (timestampMillis == 3L) {
+                    throw new IllegalStateException("模拟写入失败");
+                }
+                super.write(metricId, metricIdentifier, timestampMillis, value, publish);
+            }
+        };
+        MapTsdbWriteBehindQueue queue = new MapTsdbWriteBehindQueue(handler, 1000, 100, 60_000);
+        queue.start();
+
+        for (int i = 0; i < 6; i++) {
+            queue.enqueue("test.metric.fail", i, i);
+        }
+        assertTrue(queue.flush(5_000));
+
+        assertEquals(5, handler.written.size());
+        assertEquals(1L, queue.getStatistics().get("failedWrites"));
+
+        queue.shutdown(5_000);
+    }
+
+    @Test
+    void testFailedCommitNotCountedAsCommitted() {
+        AtomicInteger attempts = new AtomicInteger();
+        RecordingHandler handler = new RecordingHandler() {
+            @Override
+            public void commit() {
+                // 第一次提交失败，之后恢复
+                if (attempts.incrementAndGet() == 1) {
+                    throw new IllegalStateException("模拟提交失败");
+                }
+                super.commit();
+            }
+        };
+        MapTsdbWriteBehindQueue queue = new MapTsdbWriteBehindQueue(handler, 1000, 100, 200);
+        queue.start();
+
+        for (int i = 0; i < 3; i++) {
+            queue.enqueue("test.metric.commit", i, i);
+        }
+        // 提交失败时刷新屏障不能视为完成
+        assertFalse(queue.flush(100));
+        Map<String, Object> stats = queue.getStatistics();
+        assertEquals(0L, stats.get("committedPoints"));
+        assertEquals(1L, stats.get("failedCommits"));
+
+        // 间隔一个提交周期后重试成功
+        assertTrue(queue.flush(5_000));
+        stats = queue.getStatistics();
+        assertEquals(3L, stats.get("committedPoints"));
+        assertEquals(1L, stats.get("commitCount"));
+        assertEquals(3, handler.committedSize);
+
+        queue.shutdown(5_000);
+    }
+
+    @Test
+    void testEnqueueAfterShutdownRejected() throws InterruptedException {
+        RecordingHandler handler = new RecordingHandler() {
+            @Override
+            public void write(int metricId, String metricIdentifier, long timestampMillis, double value, boolean publish) {
+                // 写线程卡住，队列无法排空
+                try {
+                    Thread.sleep(300);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+                super.write(metricId, metricIdentifier, timestampMillis, value, publish);
+            }
+        };
+        MapTsdbWriteBehindQueue queue = new MapTsdbWriteBehindQueue(handler, 1, 10, 60_000);
+        queue.start();
+        queue.enqueue("test.metric.stop", 1L, 1.0);
+        queue.enqueue("test.metric.stop", 2L, 2.0);
+
+        // 队列满时阻塞的入队方在停止后收到异常，而不是永久阻塞
+        AtomicInteger rejected = new AtomicInteger();
+        Thread blocked = new Thread(() -> {
+            try {
+                queue.enqueue("test.metric.stop", 3L, 3.0);
+            } catch (IllegalStateException e) {
+                rejected.incrementAndGet();
+            }
+        });
+        blocked.start();
+        Thread.sleep(50);
+
+        // 写线程未在超时内结束
+        assertFalse(queue.shutdown(10));
+        blocked.join(5_000);
+        assertFalse(blocked.isAlive());
+        assertEquals(1, rejected.get());
+        assertThrows(IllegalStateException.class, () -> queue.enqueue("test.metric.stop", 4L, 4.0));
+
+        assertTrue(queue.shutdown(5_000));
+        assertEquals(2, handler.committedSize);
+    }
+
+    @Test
+    void testBackpressureWrapsRingInOrder() {
+        RecordingHandler handler = new RecordingHandler();
+        // 容量远小于写入数量，入队方在队列满时阻塞，环形缓冲区多次回绕
+        MapTsdbWriteBehindQueue queue = new MapTsdbWriteBehindQueue(handler, 4, 3, 60_000);
+        queue.start();
+
+        for (int i = 0; i < 50; i++) {
+            queue.enqueue("test.metric.ring", i, i, i % 2 == 0);
+        }
+        assertTrue(queue.flush(5_000));
+
+        assertEquals(50, handler.written.size());
+        for (int i = 0; i < 50; i++) {
+            assertEquals("test.metric.ring@" + i + "=" + (double) i, handler.written.get(i));
+        }
+        assertEquals(50, handler.committedSize);
+
+        queue.shutdown(5_000);
+    }
+}
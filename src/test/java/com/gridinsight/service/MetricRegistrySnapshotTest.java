@@ -0,0 +1,83 @@
+package com.gridinsight.service;
+
+import com.gridinsight.domain.model.BasicMetric;
+import com.gridinsight.domain.model.DerivedMetric;
+import org.junit.jupiter.api.Test;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * 指标注册表快照测试
+ */
+class MetricRegistrySnapshotTest {
+
+    @Test
+    void testIndexesByIdentifierAndUuid() {
+        BasicMetric basic = new BasicMetric("总发电量", "生产指标", "电量", "kWh", "", null);
+        DerivedMetric derived = new DerivedMetric("综合厂用电率", "生产指标", "比率", "%", "",
+                "{生产指标.电量.总发电量} * 0.1", Collections.singletonList(basic));
+
+        Map<String, BasicMetric> basicMetrics = new HashMap<>();
+        basicMetrics.put(basic.getIdentifier(), basic);
+        Map<String, DerivedMetric> derivedMetrics = new HashMap<>();
+        derivedMetrics.put(derived.getIdentifier(), derived);
+
+        MetricRegistrySnapshot snapshot = new MetricRegistrySnapshot(1L, new MetricSymbolTable(), basicMetrics, derivedMetrics);
+
+        assertSame(basic, snapshot.getMetric(basic.getIdentifier()));
+        assertSame(derived, snapshot.getMetric(derived.getIdentifier()));
+        assertSame(basic, snapshot.getMetricByUuid(basic.getUuid()));
+        assertSame(derived, snapshot.getMetricByUuid(derived.getUuid()));
+        assertSame(basic, snapshot.getBasicMetricByUuid(basic.getUuid()));
+        assertNull(snapshot.getBasicMetricByUuid(derived.getUuid()));
+        assertNull(snapshot.getMetricByUuid("unknown"));
+        assertEquals(2, snapshot.getAllMetrics().size());
+    }
+
+    @Test
+    void testIdIndexesAndDependents() {
+        BasicMetric basic = new BasicMetric("总发电量", "生产指标", "电量", "kWh", "", null);
+        DerivedMetric derived = new DerivedMetric("综合厂用电率", "生产指标", "比率", "%", "",
+                "{生产指标.电量.总发电量} * 0.1", Collections.singletonList(basic));
+        Map<String, BasicMetric> basicMetrics = new HashMap<>();
+        basicMetrics.put(basic.getIdentifier(), basic);
+        Map<String, DerivedMetric> derivedMetrics = new HashMap<>();
+        derivedMetrics.put(derived.getIdentifier(), derived);
+
+        MetricSymbolTable symbols = new MetricSymbolTable();
+        MetricRegistrySnapshot first = new MetricRegistrySnapshot(1L, symbols, basicMetrics, derivedMetrics);
+        MetricRegistrySnapshot second = new MetricRegistrySnapshot(2L, symbols, basicMetrics, derivedMetrics);
+
+        int basicId = first.idOf(basic.getIdentifier());
+        int derivedId = first.idOf(derived.getIdentifier());
+        // 同一符号表上重建快照时ID保持不变
+        assertEquals(basicId, second.idOf(basic.getIdentifier()));
+        assertEquals(basic.getIdentifier(), symbols.nameOf(basicId));
+        assertArrayEquals(new int[]{basicId}, first.getBasicMetricIds());
+        assertSame(basic, first.getBasicMetricArray()[0]);
+        assertSame(derived, first.getMetric(derivedId));
+        assertArrayEquals(new int[]{derivedId}, first.getDependentIds(basicId));
+        assertEquals(0, first.getDependentIds(derivedId).length);
+        assertEquals(MetricSymbolTable.UNKNOWN, first.idOf("unknown"));
+        assertEquals(0, first.getDependentIds(MetricSymbolTable.UNKNOWN).length);
+    }
+
+    @Test
+    void testSnapshotIsImmutable() {
+        BasicMetric basic = new BasicMetric("总发电量", "生产指标", "电量", "kWh", "", null);
+        Map<String, BasicMetric> basicMetrics = new HashMap<>();
+        basicMetrics.put(basic.getIdentifier(), basic);
+
+        MetricRegistrySnapshot snapshot = new MetricRegistrySnapshot(1L, new MetricSymbolTable(), basicMetrics, Collections.emptyMap());
+
+        // 构造后修改源集合不影响快照，快照视图不可修改
+        basicMetrics.clear();
+        assertEquals(1, snapshot.getBasicMetrics().size());
+        assertThrows(UnsupportedOperationException.class, () -> snapshot.getBasicMetrics().clear());
+        assertThrows(UnsupportedOperationException.class, () -> snapshot.getAllMetrics().clear());
+    }
+}
@@ -0,0 +1,180 @@
+package com.gridinsight.service;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import com.fasterxml.jackson.datatype.jsr310.JavaTimeModule;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.time.LocalDateTime;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * 实时推送订阅测试：匹配、合并、只推送变化值、慢消费者断开
+ */
+class MetricSubscriptionServiceTest {
+
+    private static SseConnection connection() {
+        return new SseConnection(new RecordingServletOutputStream(), () -> { });
+    }
+
+    private static MetricSubscriptionService createService() {
+        MetricSubscriptionService service = new MetricSubscriptionService();
+        ObjectMapper objectMapper = new ObjectMapper().registerModule(new JavaTimeModule())
+                .disable(SerializationFeature.WRITE_DATES_AS_TIMESTAMPS);
+        ReflectionTestUtils.setField(service, "objectMapper", objectMapper);
+        return service;
+    }
+
+    @Test
+    void testMatchesIdentifiersAndPrefixes() {
+        MetricSubscription subscription = new MetricSubscription("s1",
+                new HashSet<>(Collections.singletonList("生产指标.电量.总发电量")),
+                Collections.singletonList("经营指标."), connection());
+
+        assertTrue(subscription.matches("生产指标.电量.总发电量"));
+        assertTrue(subscription.matches("经营指标.收入.售电收入"));
+        assertFalse(subscription.matches("生产指标.电量.厂用电量"));
+    }
+
+    @Test
+    void testConflatesAndSkipsUnchangedValues() {
+        MetricSubscription subscription = new MetricSubscription("s1",
+                new HashSet<>(Arrays.asList("a", "b")), Collections.emptyList(), connection());
+        LocalDateTime now = LocalDateTime.now();
+
+        subscription.offer(new MetricSubscription.Update("a", 1.0, now));
+        subscription.offer(new MetricSubscription.Update("a", 2.0, now.plusSeconds(1)));
+        subscription.offer(new MetricSubscription.Update("b", 5.0, now));
+
+        List<MetricSubscription.Update> batch = subscription.drainChanged();
+        assertEquals(2, batch.size());
+        for (MetricSubscription.Update update : batch) {
+            if ("a".equals(update.getMetric())) {
+                assertEquals(2.0, update.getValue());
+            }
+        }
+        assertEquals(1L, subscription.getStatistics().get("conflatedUpdates"));
+
+        // 值未变化的更新不再推送
+        subscription.offer(new MetricSubscription.Update("a", 2.0, now.plusSeconds(2)));
+        subscription.offer(new MetricSubscription.Update("b", 6.0, now.plusSeconds(2)));
+        batch = subscription.drainChanged();
+        assertEquals(1, batch.size());
+        assertEquals("b", batch.get(0).getMetric());
+        assertFalse(subscription.hasPending());
+    }
+
+    @Test
+    void testDispatchRoutesOnlyToMatchingSubscriptions() {
+        MetricSubscriptionService service = createService();
+        MetricSubscription first = service.register(
+                new HashSet<>(Collections.singletonList("a")), Collections.emptyList(), connection());
+        MetricSubscription second = service.register(
+                new HashSet<>(), Collections.singletonList("c."), connection());
+        // 标识符和互相包含的前缀同时命中时只放入一次
+        SseConnection thirdConnection = connection();
+        MetricSubscription third = service.register(
+                new HashSet<>(Collections.singletonList("c.x")), Arrays.asList("c.x", "c."), thirdConnection);
+
+        service.dispatch("a", 1.0, LocalDateTime.now());
+        service.dispatch("c.x", 2.0, LocalDateTime.now());
+        service.dispatch("c.xy", 2.5, LocalDateTime.now());
+        service.dispatch("c", 4.0, LocalDateTime.now());
+        service.dispatch("z", 3.0, LocalDateTime.now());
+
+        assertEquals(1, first.drainChanged().size());
+        assertEquals(2, second.drainChanged().size());
+        assertEquals(2L, third.getStatistics().get("receivedUpdates"));
+        assertEquals(0L, third.getStatistics().get("conflatedUpdates"));
+
+        Map<String, Object> stats = service.getStatistics();
+        assertEquals(3, stats.get("activeConnections"));
+
+        // 连接关闭后从索引中移除
+        thirdConnection.close();
+        service.dispatch("c.y", 5.0, LocalDateTime.now());
+        assertEquals(2L, third.getStatistics().get("receivedUpdates"));
+        assertEquals(1, second.drainChanged().size());
+        assertEquals(2, service.getStatistics().get("activeConnections"));
+    }
+
+    @Test
+    void testSendWritesEventFrames() {
+        MetricSubscriptionService service = createService();
+        RecordingServletOutputStream out = new RecordingServletOutputStream();
+        MetricSubscription subscription = service.register(
+                new HashSet<>(Collections.singletonList("a")), Collections.emptyList(),
+                new SseConnection(out, () -> { }));
+
+        service.dispatch("a", 1.5, LocalDateTime.now());
+        assertTrue(subscription.tryStartSending(System.currentTimeMillis()));
+        service.send(subscription);
+
+        assertTrue(out.getWritten().startsWith("event: metrics\ndata: [{\"metric\":\"a\",\"value\":1.5"));
+        assertTrue(out.getWritten().endsWith("\n\n"));
+        assertEquals(1, out.getFlushes());
+        assertFalse(subscription.isSending());
+    }
+
+    @Test
+    void testStalledConsumerEvictedWithoutBlockingSender() throws Exception {
+        MetricSubscriptionService service = createService();
+        ReflectionTestUtils.setField(service, "slowConsumerTimeoutMs", 20L);
+        RecordingServletOutputStream out = new RecordingServletOutputStream();
+        out.setReady(false);
+        AtomicInteger completed = new AtomicInteger();
+        SseConnection connection = new SseConnection(out, completed::incrementAndGet);
+        MetricSubscription subscription = service.register(
+                new HashSet<>(Collections.singletonList("a")), Collections.emptyList(), connection);
+
+        // 客户端不接收时发送只写入缓冲区，立即返回
+        service.dispatch("a", 1.0, LocalDateTime.now());
+        assertTrue(subscription.tryStartSending(System.currentTimeMillis()));
+        service.send(subscription);
+        assertFalse(subscription.isSending());
+        assertTrue(connection.getQueuedBytes() > 0);
+        assertEquals("", out.getWritten());
+
+        // 输出流持续不可写超过阈值，断开并结束异步请求
+        Thread.sleep(50);
+        service.flush();
+        assertEquals(1, completed.get());
+        assertTrue(connection.isClosed());
+        Map<String, Object> stats = service.getStatistics();
+        assertEquals(0, stats.get("activeConnections"));
+        assertEquals(1L, stats.get("evictedConnections"));
+    }
+
+    @Test
+    void testBufferLimitEvictsConsumer() {
+        MetricSubscriptionService service = createService();
+        ReflectionTestUtils.setField(service, "maxBufferedBytes", 64L);
+        RecordingServletOutputStream out = new RecordingServletOutputStream();
+        out.setReady(false);
+        AtomicInteger completed = new AtomicInteger();
+        MetricSubscription subscription = service.register(
+                new HashSet<>(Collections.singletonList("a")), Collections.emptyList(),
+                new SseConnection(out, completed::incrementAndGet));
+
+        service.dispatch("a", 1.0, LocalDateTime.now());
+        assertTrue(subscription.tryStartSending(System.currentTimeMillis()));
+        service.send(subscription);
+        assertEquals(0, completed.get());
+
+        // 写缓冲超过上限时断开
+        service.dispatch("a", 2.0, LocalDateTime.now());
+        assertTrue(subscription.tryStartSending(System.currentTimeMillis()));
+        service.send(subscription);
+        assertEquals(1, completed.get());
+        assertEquals(1L, service.getStatistics().get("evictedConnections"));
+        assertEquals(0, service.getStatistics().get("activeConnections"));
+    }
+}
@@ -0,0 +1,58 @@
+package com.gridinsight.service;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * 指标版本号与ETag匹配测试
+ */
+class MetricVersionTrackerTest {
+
+    private static final int A = 0;
+    private static final int B = 1;
+
+    @Test
+    void testVersionsIncreasePerMetric() {
+        MetricVersionTracker tracker = new MetricVersionTracker();
+        long initial = tracker.get(A);
+        assertEquals(initial, tracker.get(B));
+
+        long first = tracker.bump(A);
+        assertTrue(first > initial);
+        assertEquals(first, tracker.get(A));
+        assertEquals(initial, tracker.get(B));
+
+        long second = tracker.bump(A);
+        assertTrue(second > first);
+        assertEquals(second, tracker.get(A));
+
+        // 超出初始容量的ID扩容后仍保留已有版本号；未注册的指标返回基线版本号
+        long far = tracker.bump(5000);
+        assertEquals(far, tracker.get(5000));
+        assertEquals(second, tracker.get(A));
+        assertEquals(initial, tracker.get(MetricSymbolTable.UNKNOWN));
+    }
+
+    @Test
+    void testResetAdvancesAllVersions() {
+        MetricVersionTracker tracker = new MetricVersionTracker();
+        long before = tracker.bump(A);
+        long untouched = tracker.get(B);
+
+        tracker.reset();
+
+        assertTrue(tracker.get(A) > before);
+        assertTrue(tracker.get(B) > untouched);
+    }
+
+    @Test
+    void testIfNoneMatch() {
+        String etag = "\"abc\"";
+        assertTrue(MetricResponseCache.matches("\"abc\"", etag));
+        assertTrue(MetricResponseCache.matches("\"x\", W/\"abc\"", etag));
+        assertTrue(MetricResponseCache.matches("*", etag));
+        assertFalse(MetricResponseCache.matches("\"abd\"", etag));
+        assertFalse(MetricResponseCache.matches(null, etag));
+    }
+}
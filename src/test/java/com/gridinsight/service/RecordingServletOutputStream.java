@@ -0,0 +1,50 @@
+package com.gridinsight.service;
+
+import javax.servlet.ServletOutputStream;
+import javax.servlet.WriteListener;
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * 测试用Servlet输出流：记录写出的数据，可模拟客户端接收过慢（输出流不可写）
+ */
+class RecordingServletOutputStream extends ServletOutputStream {
+
+    private final ByteArrayOutputStream written = new ByteArrayOutputStream();
+    private volatile boolean ready = true;
+    private int flushes;
+
+    void setReady(boolean ready) {
+        this.ready = ready;
+    }
+
+    String getWritten() {
+        return new String(written.toByteArray(), StandardCharsets.UTF_8);
+    }
+
+    int getFlushes() {
+        return flushes;
+    }
+
+    @Override
+    public boolean isReady() {
+        return ready;
+    }
+
+    @Override
+    public void setWriteListener(WriteListener writeListener) {
+    }
+
+    @Override
+    public void write(int b) {
+        if (!ready) {
+            throw new IllegalStateException("输出流不可写时写入");
+        }
+        written.write(b);
+    }
+
+    @Override
+    public void flush() {
+        flushes++;
+    }
+}
@@ -0,0 +1,72 @@
+package com.gridinsight.service.jfr;
+
+import jdk.jfr.Configuration;
+import jdk.jfr.Recording;
+import jdk.jfr.consumer.RecordedEvent;
+import jdk.jfr.consumer.RecordingFile;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.List;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * GridInsight JFR事件测试
+ */
+class GridInsightJfrEventsTest {
+
+    @TempDir
+    Path tempDir;
+
+    @Test
+    void testDisabledByDefault() {
+        MetricFetchEvent event = new MetricFetchEvent();
+        event.begin();
+        assertFalse(event.isEnabled());
+        event.complete("生产指标.电量.总发电量", "HTTP_API", "http://127.0.0.1/value", true);
+    }
+
+    @Test
+    void testBundledSettingsRecordEvents() throws Exception {
+        Configuration configuration = Configuration.create(Paths.get("config/jfr/gridinsight.jfc"));
+        Path file = tempDir.resolve("gridinsight.jfr");
+
+        try (Recording recording = new Recording(configuration)) {
+            recording.start();
+
+            MetricFetchEvent fetch = new MetricFetchEvent();
+            fetch.begin();
+            Thread.sleep(5);
+            fetch.complete("生产指标.电量.总发电量", "HTTP_API", "http://127.0.0.1/value", true);
+
+            TsdbCommitEvent commit = new TsdbCommitEvent();
+            commit.begin();
+            commit.complete(128, false);
+
+            recording.stop();
+            recording.dump(file);
+        }
+
+        List<RecordedEvent> events = RecordingFile.readAllEvents(file).stream()
+            .filter(e -> e.getEventType().getName().startsWith("com.gridinsight."))
+            .collect(Collectors.toList());
+
+        RecordedEvent fetch = events.stream()
+            .filter(e -> e.getEventType().getName().equals("com.gridinsight.MetricFetch"))
+            .findFirst().orElseThrow(AssertionError::new);
+        assertEquals("生产指标.电量.总发电量", fetch.getString("metricIdentifier"));
+        assertEquals("HTTP_API", fetch.getString("sourceType"));
+        assertTrue(fetch.getBoolean("success"));
+        assertTrue(fetch.getDuration().toMillis() >= 1);
+
+        RecordedEvent commit = events.stream()
+            .filter(e -> e.getEventType().getName().equals("com.gridinsight.TsdbCommit"))
+            .findFirst().orElseThrow(AssertionError::new);
+        assertEquals(128, commit.getInt("points"));
+        assertFalse(commit.getBoolean("success"));
+    }
+}
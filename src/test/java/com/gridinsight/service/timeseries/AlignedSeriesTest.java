@@ -0,0 +1,74 @@
+package com.gridinsight.service.timeseries;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * 多指标对齐（k路归并 + 缺失值填充）测试
+ */
+class AlignedSeriesTest {
+
+    private static SeriesBuffer series(long[] timestamps, double[] values) {
+        SeriesBuffer buffer = new SeriesBuffer();
+        for (int i = 0; i < timestamps.length; i++) {
+            buffer.add(timestamps[i], values[i]);
+        }
+        return buffer;
+    }
+
+    private static AlignedSeries sample(FillPolicy fill) {
+        SeriesBuffer a = series(new long[]{0, 20, 40}, new double[]{1.0, 3.0, 5.0});
+        SeriesBuffer b = series(new long[]{10, 20, 30}, new double[]{10.0, 20.0, 30.0});
+        SeriesBuffer c = new SeriesBuffer();
+        return AlignedSeries.merge(Arrays.asList("a", "b", "c"), Arrays.asList(a, b, c), fill);
+    }
+
+    @Test
+    void testMergeProducesUnionOfTimestamps() {
+        AlignedSeries aligned = sample(FillPolicy.NULL);
+
+        assertArrayEquals(new long[]{0, 10, 20, 30, 40}, aligned.timestampArray());
+        assertEquals(3.0, aligned.getValue(2, 0), 1e-9);
+        assertEquals(20.0, aligned.getValue(2, 1), 1e-9);
+        assertTrue(Double.isNaN(aligned.getValue(1, 0)));
+        assertTrue(Double.isNaN(aligned.getValue(0, 2)));
+
+        List<Double[]> rows = aligned.toRows();
+        assertEquals(5, rows.size());
+        assertNull(rows.get(0)[1]);
+        assertEquals(10.0, rows.get(1)[1], 1e-9);
+    }
+
+    @Test
+    void testPreviousFill() {
+        AlignedSeries aligned = sample(FillPolicy.PREVIOUS);
+
+        assertEquals(1.0, aligned.getValue(1, 0), 1e-9);
+        assertEquals(3.0, aligned.getValue(3, 0), 1e-9);
+        // 首个值之前保持为空，末尾沿用最后一个值
+        assertTrue(Double.isNaN(aligned.getValue(0, 1)));
+        assertEquals(30.0, aligned.getValue(4, 1), 1e-9);
+    }
+
+    @Test
+    void testLinearFill() {
+        AlignedSeries aligned = sample(FillPolicy.LINEAR);
+
+        assertEquals(2.0, aligned.getValue(1, 0), 1e-9);
+        assertEquals(4.0, aligned.getValue(3, 0), 1e-9);
+        // 首尾缺失不外推
+        assertTrue(Double.isNaN(aligned.getValue(0, 1)));
+        assertTrue(Double.isNaN(aligned.getValue(4, 1)));
+    }
+
+    @Test
+    void testFillPolicyFromName() {
+        assertEquals(FillPolicy.NULL, FillPolicy.fromName(null));
+        assertEquals(FillPolicy.LINEAR, FillPolicy.fromName("Linear"));
+        assertThrows(IllegalArgumentException.class, () -> FillPolicy.fromName("spline"));
+    }
+}
@@ -0,0 +1,57 @@
+package com.gridinsight.service.timeseries;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * 列式二进制格式测试
+ */
+class ColumnarSeriesFormatTest {
+
+    @Test
+    void testRoundTrip() throws IOException {
+        SeriesBuffer power = new SeriesBuffer();
+        for (int i = 0; i < 1000; i++) {
+            power.add(1_704_067_200_000L + i * 2000L, i * 0.5);
+        }
+        SeriesBuffer empty = new SeriesBuffer();
+
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(bytes);
+        ColumnarSeriesFormat.writeHeader(out, 2);
+        ColumnarSeriesFormat.writeSeries(out, "电网.功率", power);
+        ColumnarSeriesFormat.writeSeries(out, "test.empty", empty);
+        out.flush();
+
+        // 每个点固定16字节
+        assertTrue(bytes.size() < 1000 * 16 + 64);
+
+        Map<String, SeriesBuffer> decoded = ColumnarSeriesFormat.read(new ByteArrayInputStream(bytes.toByteArray()));
+        assertEquals(2, decoded.size());
+        SeriesBuffer decodedPower = decoded.get("电网.功率");
+        assertEquals(1000, decodedPower.size());
+        assertEquals(1_704_067_200_000L + 999 * 2000L, decodedPower.getTimestamp(999));
+        assertEquals(499.5, decodedPower.getValue(999));
+        assertEquals(0, decoded.get("test.empty").size());
+    }
+
+    @Test
+    void testRejectsUnknownMagic() {
+        byte[] invalid = {'J', 'S', 'O', 'N', 0, 0, 0, 0};
+        assertThrows(IOException.class, () -> ColumnarSeriesFormat.read(new ByteArrayInputStream(invalid)));
+    }
+
+    @Test
+    void testAcceptHeaderNegotiation() {
+        assertTrue(ColumnarSeriesFormat.isAccepted("application/vnd.gridinsight.columnar, application/json;q=0.5"));
+        assertFalse(ColumnarSeriesFormat.isAccepted("application/json"));
+        assertFalse(ColumnarSeriesFormat.isAccepted(null));
+    }
+}
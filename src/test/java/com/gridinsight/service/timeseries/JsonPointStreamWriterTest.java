@@ -0,0 +1,80 @@
+package com.gridinsight.service.timeseries;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * 数据点流式JSON输出测试
+ */
+class JsonPointStreamWriterTest {
+
+    private static final long START = 1_704_067_200_000L; // 2024-01-01T00:00:00Z
+
+    @Test
+    void testNdjsonOutput() throws IOException {
+        ByteArrayOutputStream output = new ByteArrayOutputStream();
+        JsonPointStreamWriter writer = new JsonPointStreamWriter(output, JsonPointStreamWriter.Format.NDJSON);
+
+        writer.begin();
+        assertTrue(writer.visit(START, 1.5));
+        assertTrue(writer.visit(START + 1000L, 2.0));
+        writer.end();
+
+        assertEquals("{\"timestamp\":\"2024-01-01T00:00:00\",\"value\":1.5}\n"
+                + "{\"timestamp\":\"2024-01-01T00:00:01\",\"value\":2.0}\n",
+                output.toString(StandardCharsets.UTF_8));
+        assertEquals(2, writer.getWrittenCount());
+    }
+
+    @Test
+    void testJsonArrayOutput() throws IOException {
+        ByteArrayOutputStream output = new ByteArrayOutputStream();
+        JsonPointStreamWriter writer = new JsonPointStreamWriter(output, JsonPointStreamWriter.Format.JSON_ARRAY);
+
+        writer.begin();
+        writer.end();
+        assertEquals("[]", output.toString(StandardCharsets.UTF_8));
+
+        output.reset();
+        writer = new JsonPointStreamWriter(output, JsonPointStreamWriter.Format.JSON_ARRAY);
+        writer.begin();
+        writer.visit(START, 1.0);
+        writer.visit(START, Double.NaN);
+        writer.end();
+        assertEquals("[{\"timestamp\":\"2024-01-01T00:00:00\",\"value\":1.0},"
+                + "{\"timestamp\":\"2024-01-01T00:00:00\",\"value\":null}]",
+                output.toString(StandardCharsets.UTF_8));
+    }
+
+    @Test
+    void testStopsScanWhenClientDisconnects() throws IOException {
+        OutputStream disconnected = new OutputStream() {
+            @Override
+            public void write(int b) throws IOException {
+                throw new IOException("Broken pipe");
+            }
+
+            @Override
+            public void write(byte[] b, int off, int len) throws IOException {
+                throw new IOException("Broken pipe");
+            }
+        };
+        JsonPointStreamWriter writer = new JsonPointStreamWriter(disconnected, JsonPointStreamWriter.Format.NDJSON);
+
+        writer.begin();
+        int visited = 0;
+        while (visited < 1_000_000 && writer.visit(START + visited, visited)) {
+            visited++;
+        }
+        writer.end();
+
+        assertTrue(visited < 1_000_000);
+        assertNotNull(writer.getFailure());
+    }
+}
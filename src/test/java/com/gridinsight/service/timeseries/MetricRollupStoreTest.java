@@ -0,0 +1,126 @@
+package com.gridinsight.service.timeseries;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * 多分辨率汇总存储测试
+ */
+class MetricRollupStoreTest {
+
+    private static final long BASE = 1_704_067_200_000L; // 2024-01-01T00:00:00Z
+
+    @Test
+    void testIncrementalRollupAcrossTiers() {
+        MetricRollupStore store = new MetricRollupStore(0);
+        store.open();
+
+        // 30分钟，每10秒一个点
+        for (int i = 0; i < 180; i++) {
+            store.record("test.metric", BASE + i * 10_000L, i);
+        }
+
+        List<RollupBucket> minutes = scan(store, RollupTier.ONE_MINUTE, BASE, BASE + TimeRanges.HOUR_MILLIS);
+        assertEquals(30, minutes.size());
+        assertEquals(6, minutes.get(0).getCount());
+        assertEquals(2.5, minutes.get(0).getAverage(), 1e-9);
+        assertEquals(0.0, minutes.get(0).getMin());
+        assertEquals(5.0, minutes.get(0).getMax());
+
+        // 最后一个桶仍处于打开状态，也应能查询到
+        RollupBucket lastMinute = minutes.get(29);
+        assertEquals(BASE + 29 * TimeRanges.MINUTE_MILLIS, lastMinute.getBucketStart());
+        assertEquals(179.0, lastMinute.getLast());
+
+        List<RollupBucket> quarters = scan(store, RollupTier.FIFTEEN_MINUTES, BASE, BASE + TimeRanges.HOUR_MILLIS);
+        assertEquals(2, quarters.size());
+        assertEquals(90, quarters.get(0).getCount());
+        assertEquals(0.0, quarters.get(0).getFirst());
+        assertEquals(89.0, quarters.get(0).getLast());
+
+        List<RollupBucket> hours = scan(store, RollupTier.ONE_HOUR, BASE, BASE);
+        assertEquals(1, hours.size());
+        assertEquals(180, hours.get(0).getCount());
+        assertEquals(BASE, store.getCoverageStart("test.metric").longValue());
+    }
+
+    @Test
+    void testOutOfOrderPointMergedIntoClosedBucket() {
+        MetricRollupStore store = new MetricRollupStore(0);
+        store.open();
+
+        store.record("test.metric", BASE, 1.0);
+        store.record("test.metric", BASE + 2 * TimeRanges.MINUTE_MILLIS, 3.0);
+        store.record("test.metric", BASE + 30_000L, 5.0);
+
+        List<RollupBucket> minutes = scan(store, RollupTier.ONE_MINUTE, BASE, BASE + 10 * TimeRanges.MINUTE_MILLIS);
+        assertEquals(2, minutes.size());
+        assertEquals(2, minutes.get(0).getCount());
+        assertEquals(5.0, minutes.get(0).getLast());
+        assertEquals(1, minutes.get(1).getCount());
+    }
+
+    @Test
+    void testPurgeAndClear() {
+        MetricRollupStore store = new MetricRollupStore(0);
+        store.open();
+
+        for (int i = 0; i < 5; i++) {
+            store.record("test.metric", BASE + i * TimeRanges.HOUR_MILLIS, i);
+        }
+
+        // 关闭的4个小时桶在1分钟/15分钟/1小时层级各有一个
+        assertEquals(12, store.purgeBefore(BASE + 10 * TimeRanges.HOUR_MILLIS));
+        assertEquals(1, scan(store, RollupTier.ONE_HOUR, BASE, BASE + 10 * TimeRanges.HOUR_MILLIS).size());
+
+        store.clear();
+        assertTrue(scan(store, RollupTier.ONE_HOUR, BASE, BASE + 10 * TimeRanges.HOUR_MILLIS).isEmpty());
+        assertNull(store.getCoverageStart("test.metric"));
+    }
+
+    @Test
+    void testPurgeExpiredPerTierRetention() {
+        MetricRollupStore store = new MetricRollupStore(365);
+        store.setRetentionDays(RollupTier.ONE_MINUTE, 1);
+        store.setRetentionDays(RollupTier.FIFTEEN_MINUTES, 10);
+        store.open();
+        try {
+            long now = System.currentTimeMillis();
+            for (String metric : new String[] {"test.metric", "other.metric"}) {
+                store.record(metric, now - 20 * TimeRanges.DAY_MILLIS, 1.0);
+                store.record(metric, now - 5 * TimeRanges.DAY_MILLIS, 2.0);
+                store.record(metric, now, 3.0);
+            }
+
+            // 1分钟层级删除两个关闭的桶，15分钟层级删除20天前的桶，1小时层级全部保留
+            assertEquals(6, store.purgeExpired());
+            long from = now - 30 * TimeRanges.DAY_MILLIS;
+            assertEquals(1, scan(store, RollupTier.ONE_MINUTE, from, now).size());
+            assertEquals(2, scan(store, RollupTier.FIFTEEN_MINUTES, from, now).size());
+            assertEquals(3, scan(store, RollupTier.ONE_HOUR, from, now).size());
+            assertEquals(0, store.purgeExpired());
+        } finally {
+            store.close();
+        }
+    }
+
+    @Test
+    void testCoarsestTierSelection() {
+        assertNull(RollupTier.coarsestFor(30_000L));
+        assertEquals(RollupTier.ONE_MINUTE, RollupTier.coarsestFor(5 * TimeRanges.MINUTE_MILLIS));
+        assertEquals(RollupTier.FIFTEEN_MINUTES, RollupTier.coarsestFor(30 * TimeRanges.MINUTE_MILLIS));
+        assertEquals(RollupTier.ONE_HOUR, RollupTier.coarsestFor(TimeRanges.DAY_MILLIS));
+        assertEquals(15 * TimeRanges.MINUTE_MILLIS, RollupQueries.effectiveStep(BASE, BASE + TimeRanges.HOUR_MILLIS - 1, 0, 4));
+        assertEquals(2 * TimeRanges.MINUTE_MILLIS, RollupQueries.effectiveStep(BASE, BASE, 90_000L, 0));
+    }
+
+    private static List<RollupBucket> scan(MetricRollupStore store, RollupTier tier, long start, long end) {
+        List<RollupBucket> buckets = new ArrayList<>();
+        store.scan("test.metric", tier, start, end, buckets::add);
+        return buckets;
+    }
+}
@@ -0,0 +1,107 @@
+package com.gridinsight.service.timeseries;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * LTTB/M4流式降采样测试
+ */
+class StreamingDownsamplerTest {
+
+    private static final long START = 1_704_067_200_000L;
+    private static final int POINTS = 100_000;
+
+    @Test
+    void testSmallSeriesReturnedUnchanged() {
+        StreamingDownsampler downsampler = new LttbDownsampler(START, START + 9_000L, 100);
+        for (int i = 0; i < 10; i++) {
+            downsampler.visit(START + i * 1000L, i);
+        }
+
+        SeriesBuffer result = downsampler.finish();
+        assertEquals(10, result.size());
+        assertEquals(START + 9_000L, result.getTimestamp(9));
+    }
+
+    @Test
+    void testLttbBoundedAndKeepsSpike() {
+        StreamingDownsampler downsampler = new LttbDownsampler(START, START + POINTS * 1000L, 500);
+        feedSeriesWithSpike(downsampler);
+
+        SeriesBuffer result = downsampler.finish();
+        assertTrue(result.size() <= 500);
+        assertTrue(result.size() > 400);
+        assertEquals(START, result.getTimestamp(0));
+        assertEquals(START + (POINTS - 1) * 1000L, result.getTimestamp(result.size() - 1));
+        assertEquals(1000.0, maxOf(result));
+        assertTimestampsIncreasing(result);
+    }
+
+    @Test
+    void testM4BoundedAndKeepsExtremes() {
+        StreamingDownsampler downsampler = new M4Downsampler(START, START + POINTS * 1000L, 400);
+        feedSeriesWithSpike(downsampler);
+
+        SeriesBuffer result = downsampler.finish();
+        assertTrue(result.size() <= 400);
+        assertEquals(1000.0, maxOf(result));
+        assertEquals(-1.0, minOf(result), 1e-6);
+        assertTimestampsIncreasing(result);
+    }
+
+    @Test
+    void testSmallMaxPointsRespected() {
+        for (DownsampleMethod method : new DownsampleMethod[]{DownsampleMethod.M4, DownsampleMethod.LTTB}) {
+            for (int maxPoints = 1; maxPoints <= 4; maxPoints++) {
+                StreamingDownsampler downsampler = StreamingDownsampler.create(
+                        method, START, START + POINTS * 1000L, maxPoints);
+                feedSeriesWithSpike(downsampler);
+
+                SeriesBuffer result = downsampler.finish();
+                assertTrue(result.size() <= maxPoints, method + " maxPoints=" + maxPoints);
+                assertTrue(result.size() > 0);
+                // 最新的点始终保留
+                assertEquals(START + (POINTS - 1) * 1000L, result.getTimestamp(result.size() - 1));
+            }
+        }
+        assertThrows(IllegalArgumentException.class, () -> new M4Downsampler(START, START + 1000L, 3));
+    }
+
+    @Test
+    void testMethodParsing() {
+        assertEquals(DownsampleMethod.AVG, DownsampleMethod.fromName(null));
+        assertEquals(DownsampleMethod.LTTB, DownsampleMethod.fromName("LTTB"));
+        assertEquals(DownsampleMethod.M4, DownsampleMethod.fromName("m4"));
+        assertThrows(IllegalArgumentException.class, () -> DownsampleMethod.fromName("median"));
+    }
+
+    private static void feedSeriesWithSpike(StreamingDownsampler downsampler) {
+        for (int i = 0; i < POINTS; i++) {
+            double value = i == 54_321 ? 1000.0 : Math.sin(i / 500.0);
+            downsampler.visit(START + i * 1000L, value);
+        }
+    }
+
+    private static double maxOf(SeriesBuffer buffer) {
+        double max = Double.NEGATIVE_INFINITY;
+        for (int i = 0; i < buffer.size(); i++) {
+            max = Math.max(max, buffer.getValue(i));
+        }
+        return max;
+    }
+
+    private static double minOf(SeriesBuffer buffer) {
+        double min = Double.POSITIVE_INFINITY;
+        for (int i = 0; i < buffer.size(); i++) {
+            min = Math.min(min, buffer.getValue(i));
+        }
+        return min;
+    }
+
+    private static void assertTimestampsIncreasing(SeriesBuffer buffer) {
+        for (int i = 1; i < buffer.size(); i++) {
+            assertTrue(buffer.getTimestamp(i) > buffer.getTimestamp(i - 1));
+        }
+    }
+}
@@ -0,0 +1,137 @@
+package com.gridinsight.service.timeseries;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * 流式统计与分位数草图测试
+ */
+class StreamingStatisticsTest {
+
+    @Test
+    void testBasicStatistics() {
+        StreamingStatistics statistics = new StreamingStatistics();
+        double[] values = {2, 4, 4, 4, 5, 5, 7, 9};
+        for (int i = 0; i < values.length; i++) {
+            statistics.add(1000L * i, values[i]);
+        }
+
+        assertEquals(8, statistics.getCount());
+        assertEquals(40.0, statistics.getSum(), 1e-9);
+        assertEquals(5.0, statistics.getMean(), 1e-9);
+        assertEquals(2.0, statistics.getStddev(), 1e-9);
+        assertEquals(2.0, statistics.getMin());
+        assertEquals(9.0, statistics.getMax());
+        assertEquals(2.0, statistics.getFirst());
+        assertEquals(9.0, statistics.getLast());
+
+        Map<String, Object> map = statistics.toMap();
+        assertEquals(8, map.get("count"));
+        assertEquals(5.0, (Double) map.get("average"), 1e-9);
+        assertNotNull(map.get("p95"));
+    }
+
+    @Test
+    void testEmptyStatistics() {
+        Map<String, Object> map = new StreamingStatistics().toMap();
+
+        assertEquals(0, map.get("count"));
+        assertEquals(0.0, map.get("average"));
+        assertEquals(0.0, map.get("max"));
+        assertEquals(0.0, map.get("min"));
+        assertFalse(map.containsKey("p50"));
+    }
+
+    @Test
+    void testMergeMatchesSinglePass() {
+        StreamingStatistics all = new StreamingStatistics();
+        StreamingStatistics left = new StreamingStatistics();
+        StreamingStatistics right = new StreamingStatistics();
+        for (int i = 0; i < 1000; i++) {
+            double value = Math.sin(i / 10.0) * 100 + i * 0.1;
+            all.add(i, value);
+            (i < 400 ? left : right).add(i, value);
+        }
+
+        left.merge(right);
+
+        assertEquals(all.getCount(), left.getCount());
+        assertEquals(all.getMean(), left.getMean(), 1e-9);
+        assertEquals(all.getStddev(), left.getStddev(), 1e-9);
+        assertEquals(all.getMin(), left.getMin());
+        assertEquals(all.getMax(), left.getMax());
+        assertEquals(all.getFirst(), left.getFirst());
+        assertEquals(all.getLast(), left.getLast());
+        assertEquals(all.getQuantile(0.5), left.getQuantile(0.5), 1e-9);
+    }
+
+    @Test
+    void testAddAggregateMatchesRawPoints() {
+        StreamingStatistics raw = new StreamingStatistics();
+        StreamingStatistics aggregated = new StreamingStatistics();
+        for (int bucket = 0; bucket < 10; bucket++) {
+            long count = 0;
+            double sum = 0;
+            double sumOfSquares = 0;
+            double min = Double.POSITIVE_INFINITY;
+            double max = Double.NEGATIVE_INFINITY;
+            for (int i = 0; i < 60; i++) {
+                double value = bucket * 10 + (i % 7);
+                raw.add(bucket * 60_000L + i * 1000L, value);
+                count++;
+                sum += value;
+                sumOfSquares += value * value;
+                min = Math.min(min, value);
+                max = Math.max(max, value);
+            }
+            aggregated.addAggregate(count, sum, sumOfSquares, min, max,
+                    bucket * 60_000L, bucket * 10, bucket * 60_000L + 59_000L, bucket * 10 + (59 % 7));
+        }
+
+        assertEquals(raw.getCount(), aggregated.getCount());
+        assertEquals(raw.getSum(), aggregated.getSum(), 1e-9);
+        assertEquals(raw.getMean(), aggregated.getMean(), 1e-9);
+        assertEquals(raw.getStddev(), aggregated.getStddev(), 1e-6);
+        assertEquals(raw.getMin(), aggregated.getMin());
+        assertEquals(raw.getMax(), aggregated.getMax());
+        assertEquals(raw.getFirst(), aggregated.getFirst());
+        assertEquals(raw.getLast(), aggregated.getLast());
+
+        // 分桶均值的分位数不是原始数据的分位数，合并汇总后不再给出
+        assertTrue(raw.hasQuantiles());
+        assertFalse(aggregated.hasQuantiles());
+        assertTrue(Double.isNaN(aggregated.getQuantile(0.99)));
+        Map<String, Object> map = aggregated.toMap();
+        assertEquals(false, map.get("percentilesAvailable"));
+        assertFalse(map.containsKey("p99"));
+    }
+
+    @Test
+    void testQuantileSketchRelativeAccuracy() {
+        QuantileSketch sketch = new QuantileSketch(0.01);
+        for (int i = 1; i <= 10000; i++) {
+            sketch.add(i);
+        }
+
+        assertEquals(10000, sketch.getCount());
+        assertEquals(5000.0, sketch.quantile(0.5), 5000.0 * 0.01 + 1);
+        assertEquals(9900.0, sketch.quantile(0.99), 9900.0 * 0.01 + 1);
+        assertEquals(1.0, sketch.quantile(0.0), 0.01 + 1e-9);
+    }
+
+    @Test
+    void testQuantileSketchNegativeAndZeroValues() {
+        QuantileSketch sketch = new QuantileSketch();
+        for (int i = -50; i <= 50; i++) {
+            sketch.add(i);
+        }
+
+        assertEquals(0.0, sketch.quantile(0.5));
+        assertEquals(-50.0, sketch.quantile(0.0), 50 * 0.01);
+        assertEquals(50.0, sketch.quantile(1.0), 50 * 0.01);
+        assertTrue(Double.isNaN(new QuantileSketch().quantile(0.5)));
+    }
+}
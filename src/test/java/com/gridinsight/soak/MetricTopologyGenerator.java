@@ -0,0 +1,314 @@
+package com.gridinsight.soak;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.UUID;
+
+/**
+ * 合成指标拓扑生成器
+ * 生成与config/metrics格式一致的basic-metrics.yaml和derived-metrics.yaml，
+ * 用于在大规模指标（如5万基础指标、2万派生指标、依赖深度10）下验证系统行为。
+ *
+ * 派生指标按层分配：第k层的派生指标至少依赖一个第k-1层的指标（第0层为基础指标），
+ * 其余依赖从更低的层中随机选取，因此依赖深度恰好为depth且不存在环。
+ * 单个指标被依赖的次数不超过fanOut（候选不足时放宽）。
+ *
+ * 用法：java ... MetricTopologyGenerator --out=target/soak/metrics --basic=50000 --derived=20000 --depth=10
+ */
+public class MetricTopologyGenerator {
+
+    /**
+     * 生成参数
+     */
+    public static class Options {
+        int basicCount = 50_000;
+        int derivedCount = 20_000;
+        int depth = 10;
+        int minFanIn = 2;
+        int maxFanIn = 6;
+        int fanOut = 50;
+        long seed = 42L;
+        // 刷新间隔（秒）→ 权重
+        Map<Integer, Integer> refreshIntervals = parseWeights("1:10,5:40,30:30,60:20");
+        // 数据源类型 → 权重
+        Map<String, Integer> sourceTypes = parseStringWeights("http:60,database:20,mqtt:20");
+        String httpBaseUrl = "http://127.0.0.1:18080";
+        String sqlitePath = "target/soak/stub-sources.db";
+
+        /**
+         * 解析 --key=value 形式的命令行参数，未识别的参数忽略
+         */
+        public static Options parse(String[] args) {
+            Options options = new Options();
+            for (String arg : args) {
+                if (!arg.startsWith("--") || !arg.contains("=")) {
+                    continue;
+                }
+                String key = arg.substring(2, arg.indexOf('='));
+                String value = arg.substring(arg.indexOf('=') + 1);
+                switch (key) {
+                    case "basic": options.basicCount = Integer.parseInt(value); break;
+                    case "derived": options.derivedCount = Integer.parseInt(value); break;
+                    case "depth": options.depth = Integer.parseInt(value); break;
+                    case "fan-in":
+                        String[] range = value.split("-");
+                        options.minFanIn = Integer.parseInt(range[0]);
+                        options.maxFanIn = Integer.parseInt(range[range.length - 1]);
+                        break;
+                    case "fan-out": options.fanOut = Integer.parseInt(value); break;
+                    case "seed": options.seed = Long.parseLong(value); break;
+                    case "intervals": options.refreshIntervals = parseWeights(value); break;
+                    case "sources": options.sourceTypes = parseStringWeights(value); break;
+                    case "http-base-url": options.httpBaseUrl = value; break;
+                    case "sqlite-path": options.sqlitePath = value; break;
+                    default: break;
+                }
+            }
+            if (options.depth < 1 || options.derivedCount < options.depth) {
+                throw new IllegalArgumentException("派生指标数量必须不少于依赖深度，且深度至少为1");
+            }
+            if (options.minFanIn < 1 || options.maxFanIn < options.minFanIn) {
+                throw new IllegalArgumentException("fan-in范围无效: " + options.minFanIn + "-" + options.maxFanIn);
+            }
+            return options;
+        }
+
+        static Map<Integer, Integer> parseWeights(String value) {
+            Map<Integer, Integer> weights = new LinkedHashMap<>();
+            for (Map.Entry<String, Integer> entry : parseStringWeights(value).entrySet()) {
+                weights.put(Integer.parseInt(entry.getKey()), entry.getValue());
+            }
+            return weights;
+        }
+
+        static Map<String, Integer> parseStringWeights(String value) {
+            Map<String, Integer> weights = new LinkedHashMap<>();
+            for (String part : value.split(",")) {
+                String[] pair = part.trim().split(":");
+                weights.put(pair[0], pair.length > 1 ? Integer.parseInt(pair[1]) : 1);
+            }
+            return weights;
+        }
+    }
+
+    /**
+     * 生成结果摘要
+     */
+    public static class Topology {
+        final List<String> basicIdentifiers = new ArrayList<>();
+        final List<String> derivedIdentifiers = new ArrayList<>();
+        // 按数据源类型统计的基础指标数量
+        final Map<String, Integer> sourceCounts = new LinkedHashMap<>();
+        int maxFanOut;
+        int dependencyCount;
+
+        public List<String> getBasicIdentifiers() {
+            return basicIdentifiers;
+        }
+
+        public List<String> getDerivedIdentifiers() {
+            return derivedIdentifiers;
+        }
+
+        @Override
+        public String toString() {
+            return "基础指标 " + basicIdentifiers.size() + ", 派生指标 " + derivedIdentifiers.size()
+                    + ", 依赖边 " + dependencyCount + ", 最大被依赖数 " + maxFanOut + ", 数据源 " + sourceCounts;
+        }
+    }
+
+    private final Options options;
+    private final Random random;
+
+    public MetricTopologyGenerator(Options options) {
+        this.options = options;
+        this.random = new Random(options.seed);
+    }
+
+    public static void main(String[] args) throws IOException {
+        Options options = Options.parse(args);
+        String out = "target/soak/metrics";
+        for (String arg : args) {
+            if (arg.startsWith("--out=")) {
+                out = arg.substring("--out=".length());
+            }
+        }
+        Topology topology = new MetricTopologyGenerator(options).generate(Paths.get(out));
+        System.out.println("拓扑已生成到 " + out + ": " + topology);
+    }
+
+    /**
+     * 生成拓扑并写入outputDir下的basic-metrics.yaml和derived-metrics.yaml
+     */
+    public Topology generate(Path outputDir) throws IOException {
+        Files.createDirectories(outputDir);
+        Topology topology = new Topology();
+
+        // 第0层：基础指标
+        List<List<String>> layers = new ArrayList<>();
+        List<String> basicLayer = new ArrayList<>(options.basicCount);
+        try (BufferedWriter writer = Files.newBufferedWriter(outputDir.resolve("basic-metrics.yaml"), StandardCharsets.UTF_8)) {
+            writer.write("# 合成基础指标拓扑（由MetricTopologyGenerator生成）\n\nbasicMetrics:\n");
+            for (int i = 0; i < options.basicCount; i++) {
+                String name = String.format("基础%06d", i);
+                String subCategory = String.format("分组%03d", i / 1000);
+                String identifier = "合成." + subCategory + "." + name;
+                String sourceType = pickWeighted(options.sourceTypes);
+                writeBasicMetric(writer, identifier, name, subCategory, i, sourceType,
+                        pickWeighted(options.refreshIntervals));
+                topology.sourceCounts.merge(sourceType, 1, Integer::sum);
+                basicLayer.add(identifier);
+            }
+        }
+        layers.add(basicLayer);
+        topology.basicIdentifiers.addAll(basicLayer);
+
+        // 第1..depth层：派生指标，每层数量尽量平均
+        Map<String, Integer> fanOut = new LinkedHashMap<>();
+        try (BufferedWriter writer = Files.newBufferedWriter(outputDir.resolve("derived-metrics.yaml"), StandardCharsets.UTF_8)) {
+            writer.write("# 合成派生指标拓扑（由MetricTopologyGenerator生成）\n\nderivedMetrics:\n");
+            int index = 0;
+            for (int level = 1; level <= options.depth; level++) {
+                int layerSize = options.derivedCount / options.depth
+                        + (level <= options.derivedCount % options.depth ? 1 : 0);
+                List<String> layer = new ArrayList<>(layerSize);
+                for (int i = 0; i < layerSize; i++, index++) {
+                    String name = String.format("派生%06d", index);
+                    String subCategory = String.format("层%02d", level);
+                    String identifier = "合成." + subCategory + "." + name;
+
+                    int fanIn = options.minFanIn + random.nextInt(options.maxFanIn - options.minFanIn + 1);
+                    List<String> dependencies = new ArrayList<>(fanIn);
+                    // 至少一个依赖来自上一层，保证深度
+                    dependencies.add(pickDependency(layers.get(level - 1), fanOut, dependencies));
+                    while (dependencies.size() < fanIn) {
+                        List<String> source = layers.get(random.nextInt(level));
+                        String dependency = pickDependency(source, fanOut, dependencies);
+                        if (dependency == null) {
+                            break;
+                        }
+                        dependencies.add(dependency);
+                    }
+                    for (String dependency : dependencies) {
+                        fanOut.merge(dependency, 1, Integer::sum);
+                    }
+                    topology.dependencyCount += dependencies.size();
+
+                    writeDerivedMetric(writer, identifier, name, subCategory, index, dependencies);
+                    layer.add(identifier);
+                }
+                layers.add(layer);
+                topology.derivedIdentifiers.addAll(layer);
+            }
+        }
+        for (int count : fanOut.values()) {
+            topology.maxFanOut = Math.max(topology.maxFanOut, count);
+        }
+        return topology;
+    }
+
+    /**
+     * 从候选层中选一个未被选过、被依赖次数未达上限的指标；多次尝试失败后放宽上限
+     */
+    private String pickDependency(List<String> candidates, Map<String, Integer> fanOut, List<String> chosen) {
+        String fallback = null;
+        for (int attempt = 0; attempt < 16; attempt++) {
+            String candidate = candidates.get(random.nextInt(candidates.size()));
+            if (chosen.contains(candidate)) {
+                continue;
+            }
+            if (fanOut.getOrDefault(candidate, 0) < options.fanOut) {
+                return candidate;
+            }
+            fallback = candidate;
+        }
+        return fallback;
+    }
+
+    private <T> T pickWeighted(Map<T, Integer> weights) {
+        int total = 0;
+        for (int weight : weights.values()) {
+            total += weight;
+        }
+        int target = random.nextInt(total);
+        for (Map.Entry<T, Integer> entry : weights.entrySet()) {
+            target -= entry.getValue();
+            if (target < 0) {
+                return entry.getKey();
+            }
+        }
+        throw new IllegalStateException("权重配置为空");
+    }
+
+    private void writeBasicMetric(BufferedWriter writer, String identifier, String name, String subCategory,
+                                  int index, String sourceType, int refreshInterval) throws IOException {
+        writer.write("  \"" + identifier + "\":\n");
+        writer.write("    name: \"" + name + "\"\n");
+        writer.write("    category: \"合成\"\n");
+        writer.write("    subCategory: \"" + subCategory + "\"\n");
+        writer.write("    unit: \"个\"\n");
+        writer.write("    uuid: \"" + uuidFor("basic", index) + "\"\n");
+        writer.write("    dataSource:\n");
+        switch (sourceType) {
+            case "http":
+                writer.write("      sourceType: \"HTTP_API\"\n");
+                writer.write("      sourceAddress: \"" + options.httpBaseUrl + "/metrics/" + index + "\"\n");
+                writer.write("      sourceName: \"合成HTTP桩\"\n");
+                break;
+            case "database":
+                String connection = "jdbc:sqlite:" + options.sqlitePath;
+                writer.write("      sourceType: \"DATABASE\"\n");
+                writer.write("      sourceAddress: \"" + connection + "\"\n");
+                writer.write("      sourceName: \"合成SQLite桩\"\n");
+                break;
+            case "mqtt":
+                writer.write("      sourceType: \"MQTT\"\n");
+                writer.write("      sourceAddress: \"mqtt://127.0.0.1:1883/soak/" + index + "\"\n");
+                writer.write("      sourceName: \"合成MQTT\"\n");
+                break;
+            default:
+                throw new IllegalArgumentException("不支持的数据源类型: " + sourceType);
+        }
+        writer.write("      refreshInterval: " + refreshInterval + "\n");
+        writer.write("      enabled: true\n");
+        if ("database".equals(sourceType)) {
+            writer.write("      config:\n");
+            writer.write("        connectionString: \"jdbc:sqlite:" + options.sqlitePath + "\"\n");
+            writer.write("        driver: \"org.sqlite.JDBC\"\n");
+            writer.write("        query: \"SELECT value FROM " + StubDataSources.SQLITE_TABLE + " WHERE id = " + index + "\"\n");
+            writer.write("        username: \"\"\n");
+            writer.write("        password: \"\"\n");
+        }
+    }
+
+    private void writeDerivedMetric(BufferedWriter writer, String identifier, String name, String subCategory,
+                                    int index, List<String> dependencies) throws IOException {
+        writer.write("  \"" + identifier + "\":\n");
+        writer.write("    name: \"" + name + "\"\n");
+        writer.write("    category: \"合成\"\n");
+        writer.write("    subCategory: \"" + subCategory + "\"\n");
+        writer.write("    unit: \"个\"\n");
+        writer.write("    uuid: \"" + uuidFor("derived", index) + "\"\n");
+        writer.write("    formula: \"(" + String.join(" + ", dependencies) + ") / " + dependencies.size() + "\"\n");
+        writer.write("    dependencies:\n");
+        for (String dependency : dependencies) {
+            writer.write("      - \"" + dependency + "\"\n");
+        }
+    }
+
+    /**
+     * 由种子和序号生成确定的UUID，同一参数重复生成时UUID不变
+     */
+    private String uuidFor(String kind, int index) {
+        return UUID.nameUUIDFromBytes((options.seed + ":" + kind + ":" + index).getBytes(StandardCharsets.UTF_8)).toString();
+    }
+}
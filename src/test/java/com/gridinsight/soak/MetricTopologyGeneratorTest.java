@@ -0,0 +1,87 @@
+package com.gridinsight.soak;
+
+import com.gridinsight.domain.model.MetricValue;
+import com.gridinsight.domain.service.FormulaEngine;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.yaml.snakeyaml.Yaml;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * 合成指标拓扑生成器测试
+ */
+class MetricTopologyGeneratorTest {
+
+    @TempDir
+    Path tempDir;
+
+    @Test
+    @SuppressWarnings("unchecked")
+    void testGeneratesLayeredTopology() throws IOException {
+        MetricTopologyGenerator.Options options = MetricTopologyGenerator.Options.parse(new String[]{
+                "--basic=200", "--derived=100", "--depth=5", "--fan-in=2-4", "--fan-out=10", "--seed=7"});
+        MetricTopologyGenerator.Topology topology = new MetricTopologyGenerator(options).generate(tempDir);
+
+        Map<String, Object> basic = (Map<String, Object>) load(tempDir.resolve("basic-metrics.yaml")).get("basicMetrics");
+        Map<String, Object> derived = (Map<String, Object>) load(tempDir.resolve("derived-metrics.yaml")).get("derivedMetrics");
+        assertEquals(200, basic.size());
+        assertEquals(100, derived.size());
+        assertEquals(200, topology.getBasicIdentifiers().size());
+        assertEquals(100, topology.getDerivedIdentifiers().size());
+
+        // 依赖都存在、fan-in在范围内，按声明顺序计算的深度恰好为5
+        Map<String, Integer> depths = new HashMap<>();
+        for (String identifier : basic.keySet()) {
+            depths.put(identifier, 0);
+        }
+        int maxDepth = 0;
+        for (Map.Entry<String, Object> entry : derived.entrySet()) {
+            List<String> dependencies = (List<String>) ((Map<String, Object>) entry.getValue()).get("dependencies");
+            assertTrue(dependencies.size() >= 2 && dependencies.size() <= 4, "fan-in越界: " + entry.getKey());
+            int depth = 0;
+            for (String dependency : dependencies) {
+                assertTrue(depths.containsKey(dependency), "依赖未定义或不在前面的层: " + dependency);
+                depth = Math.max(depth, depths.get(dependency) + 1);
+            }
+            depths.put(entry.getKey(), depth);
+            maxDepth = Math.max(maxDepth, depth);
+        }
+        assertEquals(5, maxDepth);
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    void testGeneratedFormulaIsComputable() throws IOException {
+        MetricTopologyGenerator.Options options = MetricTopologyGenerator.Options.parse(new String[]{
+                "--basic=50", "--derived=10", "--depth=1", "--fan-in=3-3"});
+        new MetricTopologyGenerator(options).generate(tempDir);
+
+        Map<String, Object> derived = (Map<String, Object>) load(tempDir.resolve("derived-metrics.yaml")).get("derivedMetrics");
+        Map<String, Object> metric = (Map<String, Object>) derived.values().iterator().next();
+        List<String> dependencies = (List<String>) metric.get("dependencies");
+
+        Map<String, MetricValue> values = new HashMap<>();
+        for (int i = 0; i < dependencies.size(); i++) {
+            values.put(dependencies.get(i), MetricValue.good(dependencies.get(i), 3.0 * (i + 1), "个"));
+        }
+        MetricValue result = FormulaEngine.calculate((String) metric.get("formula"), values);
+        assertTrue(result.isValid());
+        assertEquals(6.0, result.getValue(), 0.0001);
+    }
+
+    private static Map<String, Object> load(Path file) throws IOException {
+        try (Reader reader = Files.newBufferedReader(file, StandardCharsets.UTF_8)) {
+            return new Yaml().load(reader);
+        }
+    }
+}
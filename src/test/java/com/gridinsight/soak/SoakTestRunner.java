@@ -0,0 +1,272 @@
+package com.gridinsight.soak;
+
+import com.gridinsight.GridInsightApplication;
+import com.gridinsight.domain.event.MetricUpdateEvent;
+import com.gridinsight.domain.model.DerivedMetric;
+import com.gridinsight.domain.model.Metric;
+import com.gridinsight.service.ExternalMetricConfigService;
+import com.gridinsight.service.timeseries.TimeRanges;
+import org.springframework.boot.SpringApplication;
+import org.springframework.context.ApplicationEvent;
+import org.springframework.context.ApplicationListener;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.context.PayloadApplicationEvent;
+
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryUsage;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Stream;
+
+/**
+ * 浸泡测试运行器
+ * 生成合成拓扑、启动本地桩数据源和完整应用，按固定间隔报告：
+ * 基础/派生指标更新速率、传播延迟分位数、堆内存、GC次数与耗时、时序存储增长，
+ * 结果同时写入 输出目录/soak-report.csv。
+ *
+ * 传播延迟：派生指标更新事件的时间减去其依赖链上最近一次触发它的基础指标更新事件的时间。
+ *
+ * 用法（参数同MetricTopologyGenerator，另有）：
+ * --out=target/soak --duration=4h --report-interval=60s --http-port=18080 --server-port=19000
+ */
+public class SoakTestRunner {
+
+    public static void main(String[] args) throws Exception {
+        String out = "target/soak";
+        long durationMillis = TimeRanges.HOUR_MILLIS;
+        long reportIntervalMillis = TimeRanges.MINUTE_MILLIS;
+        int httpPort = 18080;
+        int serverPort = 19000;
+        for (String arg : args) {
+            if (arg.startsWith("--out=")) {
+                out = arg.substring("--out=".length());
+            } else if (arg.startsWith("--duration=")) {
+                durationMillis = TimeRanges.parseDurationMillis(arg.substring("--duration=".length()), durationMillis);
+            } else if (arg.startsWith("--report-interval=")) {
+                reportIntervalMillis = TimeRanges.parseDurationMillis(
+                        arg.substring("--report-interval=".length()), reportIntervalMillis);
+            } else if (arg.startsWith("--http-port=")) {
+                httpPort = Integer.parseInt(arg.substring("--http-port=".length()));
+            } else if (arg.startsWith("--server-port=")) {
+                serverPort = Integer.parseInt(arg.substring("--server-port=".length()));
+            }
+        }
+
+        Path outDir = Paths.get(out).toAbsolutePath();
+        Path metricsDir = outDir.resolve("metrics");
+        Path dataDir = outDir.resolve("timeseries");
+        Path sqlitePath = outDir.resolve("stub-sources.db");
+
+        // 桩地址由运行器决定，命令行中的同名参数仍可覆盖
+        List<String> generatorArgs = new ArrayList<>();
+        generatorArgs.add("--http-base-url=http://127.0.0.1:" + httpPort);
+        generatorArgs.add("--sqlite-path=" + sqlitePath);
+        generatorArgs.addAll(Arrays.asList(args));
+        MetricTopologyGenerator.Options options = MetricTopologyGenerator.Options.parse(generatorArgs.toArray(new String[0]));
+        MetricTopologyGenerator.Topology topology = new MetricTopologyGenerator(options).generate(metricsDir);
+        System.out.println("合成拓扑: " + topology);
+
+        try (StubDataSources stubs = new StubDataSources(httpPort, sqlitePath, options.basicCount)) {
+            stubs.start();
+
+            PropagationRecorder recorder = new PropagationRecorder();
+            SpringApplication app = new SpringApplication(GridInsightApplication.class);
+            app.addListeners(recorder);
+            try (ConfigurableApplicationContext context = app.run(
+                    "--spring.config.location=config/application.properties",
+                    "--server.port=" + serverPort,
+                    "--management.server.port=" + (serverPort + 1),
+                    "--gridinsight.metrics.basic-config-file=" + metricsDir.resolve("basic-metrics.yaml"),
+                    "--gridinsight.metrics.derived-config-file=" + metricsDir.resolve("derived-metrics.yaml"),
+                    "--gridinsight.timeseries.data-path=" + dataDir)) {
+                recorder.setConfigService(context.getBean(ExternalMetricConfigService.class));
+                report(recorder, dataDir, outDir.resolve("soak-report.csv"), durationMillis, reportIntervalMillis);
+            }
+        }
+    }
+
+    /**
+     * 按间隔采样并输出报告，直到达到运行时长
+     */
+    private static void report(PropagationRecorder recorder, Path dataDir, Path reportFile,
+                               long durationMillis, long reportIntervalMillis) throws IOException, InterruptedException {
+        long start = System.currentTimeMillis();
+        long lastTime = start;
+        long lastBasic = 0;
+        long lastDerived = 0;
+        long lastGcCount = gcCount();
+        long lastGcMillis = gcMillis();
+        long initialStorage = directorySize(dataDir);
+
+        try (PrintWriter csv = new PrintWriter(Files.newBufferedWriter(reportFile, StandardCharsets.UTF_8))) {
+            csv.println("elapsedSeconds,basicUpdatesPerSec,derivedUpdatesPerSec,latencyP50Ms,latencyP90Ms,"
+                    + "latencyP99Ms,latencyMaxMs,heapUsedMb,heapCommittedMb,gcCount,gcMillis,storageMb,storageGrowthMbPerHour");
+            while (System.currentTimeMillis() - start < durationMillis) {
+                Thread.sleep(reportIntervalMillis);
+
+                long now = System.currentTimeMillis();
+                double seconds = (now - lastTime) / 1000.0;
+                long basic = recorder.basicUpdates.get();
+                long derived = recorder.derivedUpdates.get();
+                long[] latencies = recorder.drainLatencies();
+                MemoryUsage heap = ManagementFactory.getMemoryMXBean().getHeapMemoryUsage();
+                long gcCount = gcCount();
+                long gcMillis = gcMillis();
+                long storage = directorySize(dataDir);
+                double elapsedHours = (now - start) / (double) TimeRanges.HOUR_MILLIS;
+
+                String line = String.format("%d,%.1f,%.1f,%.1f,%.1f,%.1f,%.1f,%.1f,%.1f,%d,%d,%.1f,%.1f",
+                        (now - start) / 1000,
+                        (basic - lastBasic) / seconds,
+                        (derived - lastDerived) / seconds,
+                        percentile(latencies, 0.50), percentile(latencies, 0.90),
+                        percentile(latencies, 0.99), percentile(latencies, 1.0),
+                        heap.getUsed() / 1048576.0, heap.getCommitted() / 1048576.0,
+                        gcCount - lastGcCount, gcMillis - lastGcMillis,
+                        storage / 1048576.0,
+                        elapsedHours > 0 ? (storage - initialStorage) / 1048576.0 / elapsedHours : 0.0);
+                csv.println(line);
+                csv.flush();
+                System.out.println("[浸泡测试] " + line);
+
+                lastTime = now;
+                lastBasic = basic;
+                lastDerived = derived;
+                lastGcCount = gcCount;
+                lastGcMillis = gcMillis;
+            }
+        }
+        System.out.println("浸泡测试结束，报告已写入 " + reportFile);
+    }
+
+    /**
+     * 已排序数组的分位数（毫秒），没有样本时返回0
+     */
+    static double percentile(long[] sortedNanos, double quantile) {
+        if (sortedNanos.length == 0) {
+            return 0.0;
+        }
+        int index = (int) Math.ceil(quantile * sortedNanos.length) - 1;
+        return sortedNanos[Math.max(0, Math.min(index, sortedNanos.length - 1))] / 1_000_000.0;
+    }
+
+    private static long gcCount() {
+        long count = 0;
+        for (GarbageCollectorMXBean gc : ManagementFactory.getGarbageCollectorMXBeans()) {
+            count += Math.max(0, gc.getCollectionCount());
+        }
+        return count;
+    }
+
+    private static long gcMillis() {
+        long millis = 0;
+        for (GarbageCollectorMXBean gc : ManagementFactory.getGarbageCollectorMXBeans()) {
+            millis += Math.max(0, gc.getCollectionTime());
+        }
+        return millis;
+    }
+
+    private static long directorySize(Path dir) throws IOException {
+        if (!Files.exists(dir)) {
+            return 0L;
+        }
+        try (Stream<Path> files = Files.walk(dir)) {
+            return files.filter(Files::isRegularFile).mapToLong(file -> file.toFile().length()).sum();
+        }
+    }
+
+    /**
+     * 监听指标更新事件，统计更新次数并记录传播延迟
+     */
+    static class PropagationRecorder implements ApplicationListener<ApplicationEvent> {
+
+        // 每个报告周期最多保留的延迟样本数（蓄水池抽样）
+        private static final int MAX_SAMPLES = 100_000;
+
+        final AtomicLong basicUpdates = new AtomicLong();
+        final AtomicLong derivedUpdates = new AtomicLong();
+
+        // 指标 → 触发其最近一次更新的基础指标事件时间（纳秒）
+        private final Map<String, Long> originNanos = new ConcurrentHashMap<>();
+        private volatile ExternalMetricConfigService configService;
+
+        private long[] samples = new long[MAX_SAMPLES];
+        private int sampleCount;
+        private long seen;
+
+        void setConfigService(ExternalMetricConfigService configService) {
+            this.configService = configService;
+        }
+
+        @Override
+        public void onApplicationEvent(ApplicationEvent event) {
+            if (!(event instanceof PayloadApplicationEvent)
+                    || !(((PayloadApplicationEvent<?>) event).getPayload() instanceof MetricUpdateEvent)) {
+                return;
+            }
+            MetricUpdateEvent update = (MetricUpdateEvent) ((PayloadApplicationEvent<?>) event).getPayload();
+            long now = System.nanoTime();
+            if ("BASIC".equals(update.getMetricType())) {
+                basicUpdates.incrementAndGet();
+                originNanos.put(update.getMetricIdentifier(), now);
+                return;
+            }
+
+            derivedUpdates.incrementAndGet();
+            ExternalMetricConfigService service = configService;
+            if (service == null) {
+                return;
+            }
+            Metric metric = service.getRegistrySnapshot().getMetric(update.getMetricIdentifier());
+            if (!(metric instanceof DerivedMetric)) {
+                return;
+            }
+            long origin = Long.MIN_VALUE;
+            for (Metric dependency : ((DerivedMetric) metric).getDependencies()) {
+                Long dependencyOrigin = originNanos.get(dependency.getIdentifier());
+                if (dependencyOrigin != null && dependencyOrigin > origin) {
+                    origin = dependencyOrigin;
+                }
+            }
+            if (origin != Long.MIN_VALUE) {
+                originNanos.put(update.getMetricIdentifier(), origin);
+                record(now - origin);
+            }
+        }
+
+        private synchronized void record(long latencyNanos) {
+            seen++;
+            if (sampleCount < MAX_SAMPLES) {
+                samples[sampleCount++] = latencyNanos;
+            } else {
+                long slot = ThreadLocalRandom.current().nextLong(seen);
+                if (slot < MAX_SAMPLES) {
+                    samples[(int) slot] = latencyNanos;
+                }
+            }
+        }
+
+        /**
+         * 取出本周期的延迟样本（已排序）并开始新周期
+         */
+        synchronized long[] drainLatencies() {
+            long[] drained = Arrays.copyOf(samples, sampleCount);
+            Arrays.sort(drained);
+            sampleCount = 0;
+            seen = 0;
+            return drained;
+        }
+    }
+}
@@ -0,0 +1,139 @@
+package com.gridinsight.soak;
+
+import com.sun.net.httpserver.HttpServer;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 本地桩数据源
+ * 内嵌HTTP服务器按 /metrics/{序号} 返回纯文本数值（与DataSourceService的HTTP解析方式一致），
+ * SQLite文件中的表按序号保存数值并定期随机游走更新，供浸泡测试使用，不访问任何外部服务
+ */
+public class StubDataSources implements AutoCloseable {
+
+    static final String SQLITE_TABLE = "soak_values";
+
+    private final int httpPort;
+    private final Path sqlitePath;
+    private final int rowCount;
+
+    private HttpServer httpServer;
+    private ExecutorService httpExecutor;
+    private ScheduledExecutorService sqliteUpdater;
+
+    /**
+     * @param httpPort HTTP桩端口
+     * @param sqlitePath SQLite桩文件路径
+     * @param rowCount SQLite表的行数（不少于基础指标数量）
+     */
+    public StubDataSources(int httpPort, Path sqlitePath, int rowCount) {
+        this.httpPort = httpPort;
+        this.sqlitePath = sqlitePath;
+        this.rowCount = rowCount;
+    }
+
+    /**
+     * 启动HTTP桩并初始化SQLite桩
+     */
+    public void start() throws IOException, SQLException {
+        httpServer = HttpServer.create(new InetSocketAddress("127.0.0.1", httpPort), 1024);
+        httpServer.createContext("/metrics/", exchange -> {
+            String path = exchange.getRequestURI().getPath();
+            int index = Integer.parseInt(path.substring(path.lastIndexOf('/') + 1));
+            byte[] body = String.valueOf(valueFor(index)).getBytes(StandardCharsets.UTF_8);
+            exchange.getResponseHeaders().set("Content-Type", "text/plain");
+            exchange.sendResponseHeaders(200, body.length);
+            try (OutputStream out = exchange.getResponseBody()) {
+                out.write(body);
+            }
+        });
+        httpExecutor = Executors.newFixedThreadPool(8);
+        httpServer.setExecutor(httpExecutor);
+        httpServer.start();
+
+        initSqlite();
+        sqliteUpdater = Executors.newSingleThreadScheduledExecutor();
+        sqliteUpdater.scheduleWithFixedDelay(this::updateSqlite, 1, 1, TimeUnit.SECONDS);
+    }
+
+    /**
+     * HTTP桩的当前数值：围绕序号的小幅波动，每次请求都可能变化
+     */
+    private static double valueFor(int index) {
+        return Math.round((100 + index % 1000 + ThreadLocalRandom.current().nextDouble(-5, 5)) * 100) / 100.0;
+    }
+
+    private String jdbcUrl() {
+        return "jdbc:sqlite:" + sqlitePath;
+    }
+
+    private void initSqlite() throws IOException, SQLException {
+        Files.createDirectories(sqlitePath.toAbsolutePath().getParent());
+        try (Connection conn = DriverManager.getConnection(jdbcUrl());
+             Statement stmt = conn.createStatement()) {
+            stmt.execute("CREATE TABLE IF NOT EXISTS " + SQLITE_TABLE + " (id INTEGER PRIMARY KEY, value REAL NOT NULL)");
+            stmt.execute("DELETE FROM " + SQLITE_TABLE);
+            conn.setAutoCommit(false);
+            try (PreparedStatement insert = conn.prepareStatement(
+                    "INSERT INTO " + SQLITE_TABLE + " (id, value) VALUES (?, ?)")) {
+                for (int i = 0; i < rowCount; i++) {
+                    insert.setInt(1, i);
+                    insert.setDouble(2, valueFor(i));
+                    insert.addBatch();
+                }
+                insert.executeBatch();
+            }
+            conn.commit();
+        }
+    }
+
+    /**
+     * 每秒随机更新约1%的行
+     */
+    private void updateSqlite() {
+        try (Connection conn = DriverManager.getConnection(jdbcUrl());
+             PreparedStatement update = conn.prepareStatement(
+                     "UPDATE " + SQLITE_TABLE + " SET value = ? WHERE id = ?")) {
+            conn.setAutoCommit(false);
+            ThreadLocalRandom random = ThreadLocalRandom.current();
+            for (int i = 0; i < Math.max(1, rowCount / 100); i++) {
+                int index = random.nextInt(rowCount);
+                update.setDouble(1, valueFor(index));
+                update.setInt(2, index);
+                update.addBatch();
+            }
+            update.executeBatch();
+            conn.commit();
+        } catch (SQLException e) {
+            System.err.println("更新SQLite桩数据失败: " + e.getMessage());
+        }
+    }
+
+    @Override
+    public void close() {
+        if (httpServer != null) {
+            httpServer.stop(0);
+        }
+        if (httpExecutor != null) {
+            httpExecutor.shutdownNow();
+        }
+        if (sqliteUpdater != null) {
+            sqliteUpdater.shutdownNow();
+        }
+    }
+}